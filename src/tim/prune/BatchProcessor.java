@@ -0,0 +1,643 @@
+package tim.prune;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import tim.prune.data.Altitude;
+import tim.prune.data.Field;
+import tim.prune.data.FileInfo;
+import tim.prune.data.NumberUtils;
+import tim.prune.data.Track;
+import tim.prune.data.TrackFileInfo;
+import tim.prune.function.compress.ClosePointsAlgorithm;
+import tim.prune.function.compress.CompressionAlgorithm;
+import tim.prune.function.compress.DouglasPeuckerAlgorithm;
+import tim.prune.function.compress.DuplicatePointAlgorithm;
+import tim.prune.function.compress.SingleParameterAlgorithm;
+import tim.prune.function.compress.SingletonAlgorithm;
+import tim.prune.function.compress.SynchronisedDistanceAlgorithm;
+import tim.prune.function.compress.TrackDetails;
+import tim.prune.function.compress.VisvalingamAlgorithm;
+import tim.prune.function.compress.WackyPointAlgorithm;
+import tim.prune.function.srtm.LookupSrtmFunction;
+import tim.prune.load.FieldGuesser;
+import tim.prune.load.FileCacher;
+import tim.prune.load.FileSplitter;
+import tim.prune.load.NmeaFileLoader;
+import tim.prune.load.xml.XmlFileLoader;
+import tim.prune.load.xml.XmlHandler;
+import tim.prune.load.xml.ZipFileLoader;
+import tim.prune.save.ExportJob;
+import tim.prune.save.ExportPoints;
+import tim.prune.save.MultiExporter;
+
+/**
+ * Class to process files from the command line without any gui.
+ * Each file is loaded, then optionally compressed, given SRTM altitudes
+ * and offsets, and finally exported to the chosen formats.
+ * Several files are processed at once on a pool of threads,
+ * and the timings and point counts are printed for each file.
+ */
+public class BatchProcessor
+{
+	/** Files to process */
+	private ArrayList<File> _files = new ArrayList<File>();
+	/** Directory for output files, or null to use the directory of each input file */
+	private File _outputDir = null;
+	/** Flags for export formats */
+	private boolean _exportGpx = false, _exportKml = false, _exportKmz = false, _exportText = false;
+	/** True to remove duplicate points */
+	private boolean _removeDuplicates = false;
+	/** Parameters for the compression algorithms, or zero if not used */
+	private double _closePointsParam = 0.0, _wackyPointsParam = 0.0, _singletonsParam = 0.0;
+	/** Tolerances for the line simplification algorithms, or zero if not used */
+	private double _douglasPeuckerParam = 0.0, _visvalingamParam = 0.0;
+	/** Distance and altitude tolerances and maximum time gap for time-aware simplification */
+	private double[] _synchronisedParams = null;
+	/** True to look up altitudes using SRTM */
+	private boolean _lookupSrtm = false;
+	/** Time offset in seconds */
+	private long _timeOffset = 0L;
+	/** Altitude offset in metres as given, or null */
+	private String _altitudeOffset = null;
+	/** Number of files to process at once */
+	private int _numThreads = Runtime.getRuntime().availableProcessors();
+
+	/** File extensions to take from directories */
+	private static final String[] FILE_EXTENSIONS = {".gpx", ".kml", ".kmz", ".zip", ".gz", ".xml",
+		".nmea", ".txt", ".csv"};
+	/** Delimiters to try for text files */
+	private static final char[] DELIMITERS = {',', '\t', ';', ' '};
+	/** Suffix added to file names when writing next to the input file */
+	private static final String OUTPUT_SUFFIX = "_pruned";
+
+
+	/**
+	 * Class to hold the outcome of processing one file
+	 */
+	private static class FileResult
+	{
+		private int _numFailures = 0;
+		private int _numPoints = 0;
+		private String _message = null;
+	}
+
+
+	/**
+	 * @return usage text for the batch parameters
+	 */
+	public static String getUsage()
+	{
+		return "\n   --batch             process the given files and directories without a window"
+			+ "\n   --export=<formats>  with --batch, formats to write from gpx,kml,kmz,csv (default gpx)"
+			+ "\n   --outdir=<dir>      with --batch, directory for the output files"
+			+ "\n   --compress=<algs>   with --batch, compression such as duplicates,close:200,wacky:2,singletons:2"
+			+ "\n                       or douglaspeucker:<metres>,visvalingam:<square metres>"
+			+ "\n                       or synchronised:<metres>[:<altitude metres>[:<max seconds>]]"
+			+ "\n   --srtm              with --batch, look up missing altitudes using SRTM"
+			+ "\n   --timeoffset=<s>    with --batch, add the given number of seconds to all timestamps"
+			+ "\n   --altoffset=<m>     with --batch, add the given number of metres to all altitudes"
+			+ "\n   --threads=<n>       with --batch, number of files to process at once";
+	}
+
+	/**
+	 * Parse a single command line argument
+	 * @param inArg argument
+	 * @return true if the argument was recognised and valid
+	 */
+	public boolean parseArgument(String inArg)
+	{
+		try
+		{
+			if (inArg.equals("--batch")) {
+				return true;
+			}
+			if (inArg.startsWith("--export=")) {
+				return parseFormats(inArg.substring(9));
+			}
+			if (inArg.startsWith("--outdir="))
+			{
+				_outputDir = new File(inArg.substring(9));
+				return _outputDir.isDirectory() || _outputDir.mkdirs();
+			}
+			if (inArg.startsWith("--compress=")) {
+				return parseCompression(inArg.substring(11));
+			}
+			if (inArg.equals("--srtm"))
+			{
+				_lookupSrtm = true;
+				return true;
+			}
+			if (inArg.startsWith("--timeoffset="))
+			{
+				_timeOffset = Long.parseLong(inArg.substring(13));
+				return true;
+			}
+			if (inArg.startsWith("--altoffset="))
+			{
+				_altitudeOffset = inArg.substring(12);
+				Double.parseDouble(_altitudeOffset);
+				return true;
+			}
+			if (inArg.startsWith("--threads="))
+			{
+				_numThreads = Integer.parseInt(inArg.substring(10));
+				return _numThreads > 0;
+			}
+		}
+		catch (NumberFormatException nfe) {} // fall through
+		return false;
+	}
+
+	/**
+	 * Parse the list of export formats
+	 * @param inFormats comma-separated list of formats
+	 * @return true if all formats recognised
+	 */
+	private boolean parseFormats(String inFormats)
+	{
+		for (String format : inFormats.toLowerCase().split(","))
+		{
+			if (format.equals("gpx")) {_exportGpx = true;}
+			else if (format.equals("kml")) {_exportKml = true;}
+			else if (format.equals("kmz")) {_exportKmz = true;}
+			else if (format.equals("csv") || format.equals("txt")) {_exportText = true;}
+			else return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the list of compression algorithms and their parameters
+	 * @param inAlgorithms comma-separated list of algorithms
+	 * @return true if all algorithms recognised
+	 */
+	private boolean parseCompression(String inAlgorithms)
+	{
+		for (String algorithm : inAlgorithms.toLowerCase().split(","))
+		{
+			if (algorithm.equals("duplicates"))
+			{
+				_removeDuplicates = true;
+				continue;
+			}
+			final int colonPos = algorithm.indexOf(':');
+			if (colonPos < 0) {return false;}
+			final String name = algorithm.substring(0, colonPos);
+			if (name.equals("synchronised"))
+			{
+				String[] values = algorithm.substring(colonPos + 1).split(":");
+				if (values.length > 3) {return false;}
+				_synchronisedParams = new double[3];
+				for (int i=0; i<values.length; i++) {
+					_synchronisedParams[i] = Double.parseDouble(values[i]);
+				}
+				if (_synchronisedParams[0] <= 0.0) {return false;}
+				continue;
+			}
+			final double param = Double.parseDouble(algorithm.substring(colonPos + 1));
+			if (param <= 0.0) {return false;}
+			if (name.equals("close")) {_closePointsParam = param;}
+			else if (name.equals("wacky")) {_wackyPointsParam = param;}
+			else if (name.equals("singletons")) {_singletonsParam = param;}
+			else if (name.equals("douglaspeucker")) {_douglasPeuckerParam = param;}
+			else if (name.equals("visvalingam")) {_visvalingamParam = param;}
+			else return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Add a file to process, or all the loadable files in a directory
+	 * @param inFile file or directory
+	 */
+	public void addFile(File inFile)
+	{
+		if (inFile.isDirectory())
+		{
+			File[] files = inFile.listFiles();
+			if (files == null) {return;}
+			Arrays.sort(files);
+			for (File file : files)
+			{
+				if (file.isFile() && hasKnownExtension(file)) {
+					_files.add(file);
+				}
+			}
+		}
+		else {
+			_files.add(inFile);
+		}
+	}
+
+	/**
+	 * @param inFile file to check
+	 * @return true if the file name ends with one of the loadable extensions
+	 */
+	private static boolean hasKnownExtension(File inFile)
+	{
+		final String name = inFile.getName().toLowerCase();
+		for (String extension : FILE_EXTENSIONS)
+		{
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Process all the files and print the results
+	 * @return number of failures
+	 */
+	public int run()
+	{
+		if (!_exportGpx && !_exportKml && !_exportKmz && !_exportText) {
+			_exportGpx = true;
+		}
+		if (_files.isEmpty())
+		{
+			System.out.println("No files to process.");
+			return 0;
+		}
+		final long startTime = System.currentTimeMillis();
+		int numFailures = 0, totalPoints = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(_numThreads, _files.size()));
+		try
+		{
+			List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>();
+			// Outputs mustn't overwrite any of the inputs, or each other
+			HashSet<File> takenFiles = new HashSet<File>();
+			for (File file : _files) {
+				takenFiles.add(getCanonicalFile(file));
+			}
+			for (final File file : _files)
+			{
+				// Files which only differ by extension need the extension in the output name
+				File baseFile = getBaseFile(file, false);
+				if (!reserveOutputs(baseFile, takenFiles))
+				{
+					baseFile = getBaseFile(file, true);
+					if (!reserveOutputs(baseFile, takenFiles)) {baseFile = null;}
+				}
+				final File outputBase = baseFile;
+				futures.add(outputBase == null ? null : executor.submit(new Callable<FileResult>() {
+					public FileResult call() {
+						return processFile(file, outputBase);
+					}
+				}));
+			}
+			for (int i=0; i<futures.size(); i++)
+			{
+				FileResult result = null;
+				try
+				{
+					if (futures.get(i) == null)
+					{
+						result = new FileResult();
+						result._numFailures = 1;
+						result._message = _files.get(i).getName() + ": skipped - output would overwrite another file";
+					}
+					else {
+						result = futures.get(i).get();
+					}
+				}
+				catch (ExecutionException ee)
+				{
+					result = new FileResult();
+					result._numFailures = 1;
+					result._message = _files.get(i).getName() + ": failed - " + ee.getCause();
+				}
+				catch (InterruptedException ie) {
+					break;
+				}
+				System.out.println(result._message);
+				numFailures += result._numFailures;
+				totalPoints += result._numPoints;
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		System.out.println("Processed " + _files.size() + " files, " + totalPoints + " points in "
+			+ (System.currentTimeMillis() - startTime) + " ms, " + numFailures + " failures");
+		return numFailures;
+	}
+
+	/**
+	 * Load, edit and export a single file
+	 * @param inFile file to process
+	 * @param inBaseFile output file without extension
+	 * @return result of processing
+	 */
+	private FileResult processFile(File inFile, File inBaseFile)
+	{
+		FileResult result = new FileResult();
+		StringBuilder message = new StringBuilder(inFile.getName()).append(':');
+		long startTime = System.currentTimeMillis();
+		Track track = null;
+		try {
+			track = loadFile(inFile);
+		}
+		catch (Exception e)
+		{
+			result._numFailures = 1;
+			result._message = message.append(" failed to load - ").append(e.getMessage()).toString();
+			return result;
+		}
+		final int numLoaded = track.getNumPoints();
+		message.append(' ').append(numLoaded).append(" points loaded in ")
+			.append(System.currentTimeMillis() - startTime).append(" ms");
+		if (numLoaded == 0)
+		{
+			result._numFailures = 1;
+			result._message = message.toString();
+			return result;
+		}
+
+		// Compression
+		if (_removeDuplicates || _closePointsParam > 0.0 || _wackyPointsParam > 0.0 || _singletonsParam > 0.0
+			|| _douglasPeuckerParam > 0.0 || _visvalingamParam > 0.0 || _synchronisedParams != null)
+		{
+			startTime = System.currentTimeMillis();
+			final int numDeleted = compress(track);
+			message.append(", ").append(numDeleted).append(" compressed in ")
+				.append(System.currentTimeMillis() - startTime).append(" ms");
+		}
+		// Altitudes
+		if (_lookupSrtm)
+		{
+			startTime = System.currentTimeMillis();
+			final int numFound = LookupSrtmFunction.lookupAltitudes(track);
+			message.append(", ").append(numFound).append(" altitudes found in ")
+				.append(System.currentTimeMillis() - startTime).append(" ms");
+		}
+		// Offsets
+		final int lastIndex = track.getNumPoints() - 1;
+		if (_timeOffset != 0L) {
+			track.addTimeOffset(0, lastIndex, _timeOffset, false);
+		}
+		if (_altitudeOffset != null)
+		{
+			track.addAltitudeOffset(0, lastIndex, Double.parseDouble(_altitudeOffset),
+				Altitude.Format.METRES, NumberUtils.getDecimalPlaces(_altitudeOffset));
+		}
+
+		// Export
+		ExportJob job = MultiExporter.makeJob(new ExportPoints(track, true, true, 0, track.getNumPoints() - 1),
+			track.getFieldList(), inBaseFile, inBaseFile.getName(), _exportGpx, _exportKml, _exportKmz, _exportText);
+		List<ExportJob.Result> exports = job.run();
+		for (ExportJob.Result export : exports)
+		{
+			message.append("\n   ").append(export.getFile().getPath());
+			if (export.getError() == null)
+			{
+				message.append(" - ").append(export.getNumPoints()).append(" points in ")
+					.append(export.getMillis()).append(" ms, ")
+					.append(export.getPointsPerSecond()).append(" points/s, ")
+					.append(export.getKilobytesPerSecond()).append(" kB/s");
+			}
+			else
+			{
+				message.append(" - failed : ").append(export.getError().getMessage());
+				result._numFailures++;
+			}
+		}
+		result._numPoints = track.getNumPoints();
+		result._message = message.toString();
+		return result;
+	}
+
+	/**
+	 * Load the given file into a new track
+	 * @param inFile file to load
+	 * @return track containing the loaded points
+	 * @throws Exception if the file couldn't be loaded
+	 */
+	private static Track loadFile(File inFile) throws Exception
+	{
+		final String name = inFile.getName().toLowerCase();
+		Field[] fields = null;
+		Object[][] data = null;
+		if (name.endsWith(".nmea"))
+		{
+			fields = NmeaFileLoader.getFieldArray();
+			data = NmeaFileLoader.loadData(inFile);
+		}
+		else if (name.endsWith(".gpx") || name.endsWith(".kml") || name.endsWith(".xml")
+			|| name.endsWith(".gz") || name.endsWith(".kmz") || name.endsWith(".zip"))
+		{
+			FileInfo info = parseXml(inFile);
+			if (info instanceof TrackFileInfo)
+			{
+				fields = ((TrackFileInfo) info).getFieldArray();
+				data = ((TrackFileInfo) info).getDataArray();
+			}
+		}
+		else
+		{
+			// Text file, so use the delimiter giving the most columns
+			FileSplitter splitter = new FileSplitter(new FileCacher(inFile));
+			char bestDelimiter = DELIMITERS[0];
+			int maxColumns = 0;
+			for (char delimiter : DELIMITERS)
+			{
+				splitter.splitFieldData(delimiter);
+				if (splitter.getNumColumns() > maxColumns)
+				{
+					maxColumns = splitter.getNumColumns();
+					bestDelimiter = delimiter;
+				}
+			}
+			String[][] rows = splitter.splitFieldData(bestDelimiter);
+			if (rows != null && maxColumns > 1)
+			{
+				fields = FieldGuesser.inferFields(rows, splitter.getFirstFullRow()).getFields();
+				data = rows;
+			}
+		}
+		Track track = new Track();
+		track.load(fields, data, Altitude.Format.METRES);
+		return track;
+	}
+
+	/**
+	 * Parse an xml file, which may be gzipped or inside a zip file
+	 * @param inFile file to parse
+	 * @return file info holding the loaded data
+	 * @throws Exception if the file couldn't be parsed
+	 */
+	private static FileInfo parseXml(File inFile) throws Exception
+	{
+		final String name = inFile.getName().toLowerCase();
+		if (name.endsWith(".kmz") || name.endsWith(".zip"))
+		{
+			// Combine all the xml entries in the same way as when loading in the gui
+			ZipFile zipFile = new ZipFile(inFile);
+			try
+			{
+				List<XmlHandler> handlers = ZipFileLoader.parseEntries(null, zipFile);
+				if (handlers == null) {
+					throw new IOException(I18nManager.getText("error.load.noxmlinzip"));
+				}
+				if (handlers.isEmpty()) {
+					throw new IOException(I18nManager.getText("error.load.unknownxml"));
+				}
+				return ZipFileLoader.combineFileInfos(handlers);
+			}
+			finally {
+				zipFile.close();
+			}
+		}
+		InputStream stream = new FileInputStream(inFile);
+		try
+		{
+			if (name.endsWith(".gz")) {
+				stream = new GZIPInputStream(stream);
+			}
+			XmlFileLoader loader = new XmlFileLoader(null);
+			SAXParserFactory.newInstance().newSAXParser().parse(stream, loader);
+			if (loader.getHandler() == null) {
+				throw new IOException(I18nManager.getText("error.load.unknownxml"));
+			}
+			return loader.getHandler().getFileInfo();
+		}
+		finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Get the output file name without extension for the given input file
+	 * @param inFile input file
+	 * @param inKeepExtension true to keep the input extension as part of the name
+	 * @return output file without extension
+	 */
+	private File getBaseFile(File inFile, boolean inKeepExtension)
+	{
+		String name = inFile.getName();
+		if (inKeepExtension) {
+			name = name.replace('.', '_');
+		}
+		else
+		{
+			if (name.toLowerCase().endsWith(".gz")) {
+				name = name.substring(0, name.length() - 3);
+			}
+			final int dotPos = name.lastIndexOf('.');
+			if (dotPos > 0) {
+				name = name.substring(0, dotPos);
+			}
+		}
+		// Suffix is always added so that the output can't have the same name as the input
+		File directory = (_outputDir == null ? inFile.getAbsoluteFile().getParentFile() : _outputDir);
+		return new File(directory, name + OUTPUT_SUFFIX);
+	}
+
+	/**
+	 * Reserve the output files for the given base file if none of them are taken yet
+	 * @param inBaseFile output file without extension
+	 * @param inTakenFiles input files and outputs already reserved, added to if successful
+	 * @return true if the outputs were free and have been reserved
+	 */
+	private boolean reserveOutputs(File inBaseFile, HashSet<File> inTakenFiles)
+	{
+		ArrayList<File> outputs = new ArrayList<File>();
+		if (_exportGpx) {outputs.add(getCanonicalFile(new File(inBaseFile.getPath() + ".gpx")));}
+		if (_exportKml) {outputs.add(getCanonicalFile(new File(inBaseFile.getPath() + ".kml")));}
+		if (_exportKmz) {outputs.add(getCanonicalFile(new File(inBaseFile.getPath() + ".kmz")));}
+		if (_exportText) {outputs.add(getCanonicalFile(new File(inBaseFile.getPath() + ".csv")));}
+		for (File output : outputs)
+		{
+			if (inTakenFiles.contains(output)) {return false;}
+		}
+		inTakenFiles.addAll(outputs);
+		return true;
+	}
+
+	/**
+	 * @param inFile file
+	 * @return canonical form of file so that different paths to the same file can be compared
+	 */
+	private static File getCanonicalFile(File inFile)
+	{
+		try {
+			return inFile.getCanonicalFile();
+		}
+		catch (IOException e) {
+			return inFile.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * Mark and delete the points chosen by the selected compression algorithms
+	 * @param inTrack track to compress
+	 * @return number of points deleted
+	 */
+	private int compress(Track inTrack)
+	{
+		TrackDetails details = new TrackDetails(inTrack);
+		ArrayList<CompressionAlgorithm> algorithms = new ArrayList<CompressionAlgorithm>();
+		if (_removeDuplicates) {
+			algorithms.add(new DuplicatePointAlgorithm(inTrack, details, null));
+		}
+		if (_closePointsParam > 0.0) {
+			algorithms.add(withParameter(new ClosePointsAlgorithm(inTrack, details, null), _closePointsParam));
+		}
+		if (_wackyPointsParam > 0.0) {
+			algorithms.add(withParameter(new WackyPointAlgorithm(inTrack, details, null), _wackyPointsParam));
+		}
+		if (_singletonsParam > 0.0) {
+			algorithms.add(withParameter(new SingletonAlgorithm(inTrack, details, null), _singletonsParam));
+		}
+		if (_douglasPeuckerParam > 0.0) {
+			algorithms.add(withParameter(new DouglasPeuckerAlgorithm(inTrack, details, null), _douglasPeuckerParam));
+		}
+		if (_visvalingamParam > 0.0) {
+			algorithms.add(withParameter(new VisvalingamAlgorithm(inTrack, details, null), _visvalingamParam));
+		}
+		if (_synchronisedParams != null)
+		{
+			SynchronisedDistanceAlgorithm synchronised = new SynchronisedDistanceAlgorithm(inTrack, details, null);
+			synchronised.setAltitudeTolerance(_synchronisedParams[1]);
+			synchronised.setMaxTimeGap(_synchronisedParams[2]);
+			algorithms.add(withParameter(synchronised, _synchronisedParams[0]));
+		}
+		// Combine the flags from all the algorithms, in the same order as the dialog
+		boolean[] deleteFlags = new boolean[inTrack.getNumPoints()];
+		for (CompressionAlgorithm algorithm : algorithms) {
+			algorithm.apply(deleteFlags);
+		}
+		for (int i=0; i<deleteFlags.length; i++) {
+			inTrack.getPoint(i).setMarkedForDeletion(deleteFlags[i]);
+		}
+		return inTrack.deleteMarkedPoints();
+	}
+
+	/**
+	 * Set the parameter of the given algorithm
+	 * @param inAlgorithm algorithm
+	 * @param inParam parameter value
+	 * @return the same algorithm
+	 */
+	private static CompressionAlgorithm withParameter(SingleParameterAlgorithm inAlgorithm, double inParam)
+	{
+		inAlgorithm.setParameter(inParam);
+		return inAlgorithm;
+	}
+}
@@ -13,6 +13,7 @@ import tim.prune.function.HelpScreen;
 import tim.prune.function.PasteCoordinates;
 import tim.prune.function.RearrangeWaypointsFunction;
 import tim.prune.function.SaveConfig;
+import tim.prune.function.SetAltitudeFilter;
 import tim.prune.function.SetColours;
 import tim.prune.function.SetKmzImageSize;
 import tim.prune.function.SetLanguage;
@@ -26,9 +27,12 @@ import tim.prune.function.distance.DistanceFunction;
 import tim.prune.function.edit.PointNameEditor;
 import tim.prune.function.srtm.LookupSrtmFunction;
 import tim.prune.load.GpsLoader;
+import tim.prune.load.NmeaStreamLoader;
 import tim.prune.save.GpsSaver;
 import tim.prune.save.GpxExporter;
 import tim.prune.save.KmlExporter;
+import tim.prune.save.MultiExporter;
+import tim.prune.save.SessionSaver;
 
 /**
  * Class to provide access to functions
@@ -37,7 +41,10 @@ public abstract class FunctionLibrary
 {
 	public static GenericFunction FUNCTION_GPXEXPORT = null;
 	public static GenericFunction FUNCTION_KMLEXPORT = null;
+	public static GenericFunction FUNCTION_MULTIEXPORT = null;
+	public static GenericFunction FUNCTION_SESSIONSAVE = null;
 	public static GenericFunction FUNCTION_GPSLOAD  = null;
+	public static GenericFunction FUNCTION_NMEASTREAM = null;
 	public static GenericFunction FUNCTION_GPSSAVE  = null;
 	public static GenericFunction FUNCTION_SAVECONFIG  = null;
 	public static GenericFunction FUNCTION_EDIT_WAYPOINT_NAME = null;
@@ -60,6 +67,7 @@ public abstract class FunctionLibrary
 	public static GenericFunction FUNCTION_SET_KMZ_IMAGE_SIZE = null;
 	public static GenericFunction FUNCTION_SET_COLOURS = null;
 	public static GenericFunction FUNCTION_SET_LINE_WIDTH = null;
+	public static GenericFunction FUNCTION_SET_ALTITUDE_FILTER = null;
 	public static GenericFunction FUNCTION_SET_LANGUAGE = null;
 	public static GenericFunction FUNCTION_HELP   = null;
 	public static GenericFunction FUNCTION_SHOW_KEYS = null;
@@ -75,6 +83,9 @@ public abstract class FunctionLibrary
 		if( inApp instanceof PruneApp ) {
 			FUNCTION_GPXEXPORT = new GpxExporter(inApp);
 			FUNCTION_KMLEXPORT = new KmlExporter(inApp);
+			FUNCTION_MULTIEXPORT = new MultiExporter(inApp);
+			FUNCTION_SESSIONSAVE = new SessionSaver(inApp);
+			FUNCTION_NMEASTREAM = new NmeaStreamLoader(inApp);
 		}
 		FUNCTION_GPSLOAD   = new GpsLoader(inApp);
 		FUNCTION_GPSSAVE   = new GpsSaver(inApp);
@@ -101,6 +112,7 @@ public abstract class FunctionLibrary
 		FUNCTION_SET_KMZ_IMAGE_SIZE = new SetKmzImageSize(inApp);
 		FUNCTION_SET_COLOURS = new SetColours(inApp);
 		FUNCTION_SET_LINE_WIDTH = new SetLineWidth(inApp);
+		FUNCTION_SET_ALTITUDE_FILTER = new SetAltitudeFilter(inApp);
 		FUNCTION_SET_LANGUAGE = new SetLanguage(inApp);
 		FUNCTION_HELP   = new HelpScreen(inApp);
 		FUNCTION_SHOW_KEYS = new ShowKeysScreen(inApp);
@@ -51,10 +51,23 @@ public class GpsPruner
 	 */
 	public static void main(String[] args)
 	{
-		try {
-			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-		} catch (Exception e) { }
-		
+		// Batch mode doesn't need any windows, so check for it before touching the gui
+		BatchProcessor batch = null;
+		for (int i=0; i<args.length && batch == null; i++)
+		{
+			if (args[i].equals("--batch"))
+			{
+				System.setProperty("java.awt.headless", "true");
+				batch = new BatchProcessor();
+			}
+		}
+		if (batch == null)
+		{
+			try {
+				UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+			} catch (Exception e) { }
+		}
+
 		Locale locale = null;
 		String localeCode = null;
 		String langFilename = null;
@@ -87,6 +100,14 @@ public class GpsPruner
 			else if (arg.startsWith("--help")) {
 				showUsage = true;
 			}
+			else if (batch != null && arg.startsWith("--"))
+			{
+				if (!batch.parseArgument(arg))
+				{
+					System.out.println("Invalid batch parameter '" + arg + "'.");
+					showUsage = true;
+				}
+			}
 			else
 			{
 				// Check if a data file has been given
@@ -104,7 +125,11 @@ public class GpsPruner
 			System.out.println("Possible parameters:"
 				+ "\n   --configfile=<file> used to specify a configuration file"
 				+ "\n   --lang=<code>       used to specify language code such as DE"
-				+ "\n   --langfile=<file>   used to specify an alternative language file\n");
+				+ "\n   --langfile=<file>   used to specify an alternative language file"
+				+ BatchProcessor.getUsage() + "\n");
+			if (batch != null) {
+				System.exit(1);
+			}
 		}
 		// Initialise configuration if selected
 		try
@@ -147,6 +172,14 @@ public class GpsPruner
 				System.err.println("Failed to load language file: " + langFilename);
 			}
 		}
+		if (batch != null)
+		{
+			// Process the files without a window and finish
+			for (File file : dataFiles) {
+				batch.addFile(file);
+			}
+			System.exit(batch.run() == 0 ? 0 : 1);
+		}
 		// Set up the window and go
 		launch(dataFiles);
 	}
@@ -4,7 +4,6 @@ import java.awt.Color;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.Collections;
 
 import javax.swing.JFileChooser;
@@ -30,6 +29,7 @@ import tim.prune.function.edit.PointEditor;
 import tim.prune.load.GenericFileFilter;
 import tim.prune.load.TrackNameList;
 import tim.prune.load.xml.GpxMetadata;
+import tim.prune.save.ExportWriter;
 import tim.prune.save.GpxExporter;
 import tim.prune.save.TrackFileSaver;
 import tim.prune.undo.UndoAddAltitudeOffset;
@@ -53,6 +53,10 @@ public class PruneApp extends App {
 	private Track _track = null;
 	private TrackInfo _trackInfo = null;
 	private boolean _mangleTimestampsConfirmed = false;
+	/** Points shown while a file is still being loaded, or null if none */
+	private Track _loadingTrack = null;
+	/** Number of rows of the loading data already in the loading track */
+	private int _loadingRowCount = 0;
 
 	private Color[] trackColors = {
 			Color.BLUE,
@@ -108,10 +112,10 @@ public class PruneApp extends App {
 		}
 
 		if( selectedFile != null ) {
-			OutputStreamWriter writer = null;
+			ExportWriter writer = null;
 			try {
 				if(selectedFile.getName().endsWith(".gpx")) {
-					writer = new OutputStreamWriter(new FileOutputStream(selectedFile));
+					writer = new ExportWriter(new FileOutputStream(selectedFile));
 					final boolean[] saveFlags = {true, true, false, true };
 					// write file
 					GpxExporter.exportData(writer, _trackInfo, 
@@ -169,10 +173,10 @@ public class PruneApp extends App {
 		}
 
 		if( selectedFile != null ) {
-			OutputStreamWriter writer = null;
+			ExportWriter writer = null;
 			try {
 				if(selectedFile.getName().endsWith(".gpx")) {
-					writer = new OutputStreamWriter(new FileOutputStream(selectedFile));
+					writer = new ExportWriter(new FileOutputStream(selectedFile));
 					final boolean[] saveFlags = {true, true, true, true };
 					// write file
 					GpxExporter.exportData(writer, _trackInfo, 
@@ -581,8 +585,19 @@ public class PruneApp extends App {
 			TrackNameList inTrackNameList, String[] inLinkArray, GpxMetadata gpxMetadata)
 	{
 		// Check whether loaded array can be properly parsed into a Track
-		Track loadedTrack = new Track(trackColors[_dataFiles.size() % trackColors.length]);
-		loadedTrack.load(inFieldArray, inDataArray, inAltFormat);
+		Track loadedTrack = null;
+		if (_loadingTrack != null)
+		{
+			// Points already shown during the load are reused, only the rest need parsing
+			loadedTrack = _loadingTrack;
+			loadedTrack.appendPoints(inFieldArray, inDataArray, _loadingRowCount, inDataArray.length, inAltFormat);
+			cancelPartialData();
+		}
+		else
+		{
+			loadedTrack = new Track(trackColors[_dataFiles.size() % trackColors.length]);
+			loadedTrack.load(inFieldArray, inDataArray, inAltFormat);
+		}
 		loadedTrack.setGpxMetadata(gpxMetadata);
 		if (loadedTrack.getNumPoints() <= 0)
 		{
@@ -610,6 +625,52 @@ public class PruneApp extends App {
 	}
 
 
+	/**
+	 * Receive the data loaded since the last call while a file is still being loaded, so that
+	 * the points can be shown before the load is complete.  Only done if there's no data yet,
+	 * and the whole load is still completed later by informDataLoaded with one undo operation.
+	 * Must be called on the event dispatch thread.
+	 * @param inFieldArray array of fields, the same for each call during a load
+	 * @param inDataArray array of the data loaded since the last call
+	 * @param inStartIndex index of the first of these rows within the whole load
+	 */
+	public void informPartialDataLoaded(Field[] inFieldArray, Object[][] inDataArray, int inStartIndex)
+	{
+		if (_loadingTrack == null)
+		{
+			// Only start showing points from the beginning of the file, and if there aren't any others
+			if (inStartIndex > 0 || _track.getNumPoints() > 0) {return;}
+			int colourIndex = (_dataFiles == null ? 0 : _dataFiles.size());
+			_loadingTrack = new Track(trackColors[colourIndex % trackColors.length]);
+			_loadingRowCount = 0;
+		}
+		if (inStartIndex != _loadingRowCount) {return;}
+		final boolean firstPoints = (_loadingTrack.getNumPoints() == 0);
+		_loadingTrack.appendPoints(inFieldArray, inDataArray, 0, inDataArray.length,
+			Altitude.Format.METRES);
+		_loadingRowCount += inDataArray.length;
+		_track.load(_loadingTrack);
+		if (firstPoints) {
+			getCanvas().zoomToFit();
+		}
+		UpdateMessageBroker.informSubscribers();
+	}
+
+	/**
+	 * Remove any points shown during a load, eg if the load failed or was cancelled
+	 */
+	public void cancelPartialData()
+	{
+		if (_loadingTrack != null)
+		{
+			_loadingTrack = null;
+			_loadingRowCount = 0;
+			_track.load(new Track());
+			UpdateMessageBroker.informSubscribers();
+		}
+	}
+
+
 	/**
 	 * Receive loaded data and optionally merge with current Track
 	 * @param inLoadedTrack loaded track
@@ -678,6 +739,39 @@ public class PruneApp extends App {
 		loadNextFile();
 	}
 
+	/**
+	 * Receive a track restored from a session file, replacing the current data
+	 * @param inLoadedTrack restored track
+	 * @param inFileInfo sources restored from the session
+	 * @param inName name of the session file
+	 */
+	public void informSessionLoaded(Track inLoadedTrack, FileInfo inFileInfo, String inName)
+	{
+		if (inLoadedTrack.getNumPoints() <= 0)
+		{
+			showErrorMessage("error.load.dialogtitle", "error.load.nopoints");
+			loadNextFile();
+			return;
+		}
+		UndoLoad undo = new UndoLoad(inLoadedTrack, inFileInfo, inName, _trackInfo);
+		getUndoStack().add(undo);
+		_lastSavePosition = getUndoStack().size();
+		_trackInfo.getSelection().clearAll();
+		_track.load(inLoadedTrack);
+		_trackInfo.setFileInfo(inFileInfo.clone());
+		getCanvas().zoomToFit();
+		UpdateMessageBroker.informSubscribers();
+		// Update status bar
+		UpdateMessageBroker.informSubscribers(I18nManager.getText("confirm.loadfile")
+				+ " '" + inName + "'");
+		getMenuManager().informFileLoaded();
+		if (getDataFiles() == null || getDataFiles().isEmpty()) {
+			loadComplete();
+		}
+		// load next file if there's a queue
+		loadNextFile();
+	}
+
 	/**
 	 * Inform the app that NO data was loaded, eg cancel pressed
 	 * Only needed if there's another file waiting in the queue
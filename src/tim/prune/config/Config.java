@@ -86,6 +86,30 @@ public abstract class Config
 	public static final String KEY_LAST_SCREEN_WIDTH = "prune.lastScreenWidth";
 	/** Key for last loc lon */
 	public static final String KEY_LAST_SCREEN_HEIGHT = "prune.lastScreenHeight";
+	/** Key for source of live nmea stream, either host:port or a device path */
+	public static final String KEY_NMEA_SOURCE = "prune.nmeasource";
+	/** Key for interval in milliseconds between display updates of live nmea stream */
+	public static final String KEY_NMEA_REFRESH = "prune.nmearefresh";
+	/** Key for maximum number of points kept from live nmea stream */
+	public static final String KEY_NMEA_WINDOW = "prune.nmeawindow";
+	/** Key for tolerance in metres for dropping points from live nmea stream, or 0 to keep all */
+	public static final String KEY_NMEA_TOLERANCE = "prune.nmeatolerance";
+	/** Key for directory of stored SRTM hgt files */
+	public static final String KEY_SRTM_DIR = "prune.srtmdirectory";
+	/** Key for url prefix of zipped hgt tiles to use instead of the SRTM site */
+	public static final String KEY_ELEVATION_URL = "prune.elevationurl";
+	/** Key for flag to use bicubic interpolation of elevations */
+	public static final String KEY_ELEVATION_BICUBIC = "prune.elevationbicubic";
+	/** Key for maximum size in megabytes of mapped elevation tiles */
+	public static final String KEY_ELEVATION_CACHE = "prune.elevationcache";
+	/** Key for type of filter for altitude noise */
+	public static final String KEY_ALTITUDE_FILTER = "prune.altitudefilter";
+	/** Key for number of points in window of altitude median filter */
+	public static final String KEY_ALTITUDE_WINDOW = "prune.altitudewindow";
+	/** Key for expected altitude noise in metres for altitude Kalman filter */
+	public static final String KEY_ALTITUDE_NOISE = "prune.altitudenoise";
+	/** Key for threshold in metres before altitude changes count as climb or descent */
+	public static final String KEY_CLIMB_THRESHOLD = "prune.climbthreshold";
 
 	/**
 	 * Save the default configuration file
@@ -200,6 +224,8 @@ public abstract class Config
 		}
 
 		props.put(KEY_DISK_CACHE, supportLoc+"/map_cache");
+		props.put(KEY_SRTM_DIR, supportLoc+"/srtm");
+		props.put(KEY_ELEVATION_BICUBIC, "0");
 		props.put(KEY_TILE_LOCATION, tilesPath);
 		props.put(KEY_BASE_FILE_LOCATION, basePath);
 		props.put(KEY_BASE_SUPPORT_LOCATION, supportLoc);
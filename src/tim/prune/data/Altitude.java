@@ -124,6 +124,17 @@ public class Altitude
 		return _value;
 	}
 
+	/**
+	 * Convert a value in metres to the given format
+	 * @param inMetres value in metres
+	 * @param inFormat desired format
+	 * @return value in feet if requested, otherwise unchanged
+	 */
+	public static double convertFromMetres(double inMetres, Format inFormat)
+	{
+		return (inFormat == Format.FEET ? inMetres * CONVERT_METRES_TO_FEET : inMetres);
+	}
+
 	/**
 	 * Get a string version of the value
 	 * @param inFormat specified format
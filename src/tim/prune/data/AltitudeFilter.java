@@ -0,0 +1,145 @@
+package tim.prune.data;
+
+import java.util.Arrays;
+
+import tim.prune.config.Config;
+
+/**
+ * Class to reduce the noise in a run of altitude values, either with a
+ * running median or with a Kalman filter and smoother.
+ * The values are only filtered for display and for the climb and descent,
+ * the altitudes of the points themselves are never changed.
+ */
+public class AltitudeFilter
+{
+	/** Type of filter */
+	private int _type = NONE;
+	/** Number of points in median window */
+	private int _window = 0;
+	/** Expected noise of altitude values in metres */
+	private double _noise = 0.0;
+
+	/** Filter type for no filtering */
+	public static final int NONE = 0;
+	/** Filter type for running median */
+	public static final int MEDIAN = 1;
+	/** Filter type for Kalman smoother */
+	public static final int KALMAN = 2;
+
+	/** Default number of points in median window */
+	public static final int DEFAULT_WINDOW = 5;
+	/** Default noise in metres for Kalman smoother */
+	public static final int DEFAULT_NOISE = 5;
+
+
+	/**
+	 * Constructor
+	 * @param inType type of filter, NONE, MEDIAN or KALMAN
+	 * @param inWindow number of points in median window
+	 * @param inNoise expected noise of altitude values in metres, for Kalman filter
+	 */
+	public AltitudeFilter(int inType, int inWindow, double inNoise)
+	{
+		_type = inType;
+		_window = inWindow;
+		_noise = inNoise;
+	}
+
+	/**
+	 * @return filter using the settings from the config
+	 */
+	public static AltitudeFilter getConfiguredFilter()
+	{
+		return new AltitudeFilter(Config.getConfigInt(Config.KEY_ALTITUDE_FILTER, NONE),
+			Config.getConfigInt(Config.KEY_ALTITUDE_WINDOW, DEFAULT_WINDOW),
+			Config.getConfigInt(Config.KEY_ALTITUDE_NOISE, DEFAULT_NOISE));
+	}
+
+	/**
+	 * @return true if this filter changes any values
+	 */
+	public boolean isActive()
+	{
+		return (_type == MEDIAN && _window > 1) || (_type == KALMAN && _noise > 0.0);
+	}
+
+	/**
+	 * Filter a run of values, such as a single track segment
+	 * @param inValues input values
+	 * @param inStart index of first value in run
+	 * @param inEnd index after last value in run
+	 * @param inResults array to hold the filtered values, at the same indexes
+	 */
+	public void filter(double[] inValues, int inStart, int inEnd, double[] inResults)
+	{
+		if (!isActive() || inEnd - inStart < 3)
+		{
+			System.arraycopy(inValues, inStart, inResults, inStart, inEnd - inStart);
+			return;
+		}
+		if (_type == MEDIAN) {
+			filterMedian(inValues, inStart, inEnd, inResults);
+		}
+		else {
+			filterKalman(inValues, inStart, inEnd, inResults);
+		}
+	}
+
+	/**
+	 * Take the median of the window around each value, which removes spikes without flattening steps
+	 * @param inValues input values
+	 * @param inStart index of first value in run
+	 * @param inEnd index after last value in run
+	 * @param inResults array to hold the filtered values
+	 */
+	private void filterMedian(double[] inValues, int inStart, int inEnd, double[] inResults)
+	{
+		final int halfWindow = _window / 2;
+		double[] window = new double[2 * halfWindow + 1];
+		for (int i=inStart; i<inEnd; i++)
+		{
+			// Window is shrunk symmetrically near the ends of the run
+			final int halfSize = Math.min(halfWindow, Math.min(i - inStart, inEnd - 1 - i));
+			final int size = 2 * halfSize + 1;
+			System.arraycopy(inValues, i - halfSize, window, 0, size);
+			Arrays.sort(window, 0, size);
+			inResults[i] = window[halfSize];
+		}
+	}
+
+	/**
+	 * Run a Kalman filter forwards over the values, treating the altitude as a random walk
+	 * of one metre per point, and then smooth it backwards (Rauch-Tung-Striebel)
+	 * @param inValues input values
+	 * @param inStart index of first value in run
+	 * @param inEnd index after last value in run
+	 * @param inResults array to hold the filtered values
+	 */
+	private void filterKalman(double[] inValues, int inStart, int inEnd, double[] inResults)
+	{
+		final double processVariance = 1.0;
+		final double noiseVariance = _noise * _noise;
+		final int numValues = inEnd - inStart;
+		double[] variances = new double[numValues];
+		double[] predictedVariances = new double[numValues];
+		// Forward pass
+		double estimate = inValues[inStart];
+		double variance = noiseVariance;
+		for (int i=0; i<numValues; i++)
+		{
+			final double predictedVariance = (i == 0 ? variance : variance + processVariance);
+			final double gain = predictedVariance / (predictedVariance + noiseVariance);
+			estimate += gain * (inValues[inStart + i] - estimate);
+			variance = (1.0 - gain) * predictedVariance;
+			inResults[inStart + i] = estimate;
+			variances[i] = variance;
+			predictedVariances[i] = predictedVariance;
+		}
+		// Backward pass, each estimate also taking the later values into account
+		for (int i=numValues-2; i>=0; i--)
+		{
+			final double gain = variances[i] / predictedVariances[i+1];
+			inResults[inStart + i] += gain * (inResults[inStart + i + 1] - inResults[inStart + i]);
+		}
+	}
+}
@@ -26,12 +26,16 @@ public abstract class Coordinate
 	public static final int FORMAT_DECIMAL_FORCE_POINT = 17;
 	public static final int FORMAT_NONE = 19;
 
-	/** Number formatter for fixed decimals with forced decimal point */
-	private static final NumberFormat EIGHT_DP = NumberFormat.getNumberInstance(Locale.UK);
-	// Select the UK locale for this formatter so that decimal point is always used (not comma)
-	static {
-		if (EIGHT_DP instanceof DecimalFormat) ((DecimalFormat) EIGHT_DP).applyPattern("0.00000000");
-	}
+	/** Number formatter for fixed decimals with forced decimal point, one per thread */
+	private static final ThreadLocal<NumberFormat> EIGHT_DP = new ThreadLocal<NumberFormat>() {
+		protected NumberFormat initialValue()
+		{
+			// Select the UK locale for this formatter so that decimal point is always used (not comma)
+			NumberFormat format = NumberFormat.getNumberInstance(Locale.UK);
+			if (format instanceof DecimalFormat) ((DecimalFormat) format).applyPattern("0.00000000");
+			return format;
+		}
+	};
 
 	// Instance variables
 	private boolean _valid = false;
@@ -248,6 +252,16 @@ public abstract class Coordinate
 		return _asDouble;
 	}
 
+	/**
+	 * @return true if the original string is already decimal degrees with a decimal point,
+	 *         so it can be used for FORMAT_DECIMAL_FORCE_POINT
+	 */
+	public boolean hasDecimalPointOriginal()
+	{
+		return _originalString != null && (_originalFormat == FORMAT_DECIMAL_FORCE_POINT
+			|| (_originalFormat == FORMAT_DEG_WITHOUT_CARDINAL && _originalString.indexOf('.') >= 0));
+	}
+
 	/**
 	 * @return true if Coordinate is valid
 	 */
@@ -318,8 +332,8 @@ public abstract class Coordinate
 				case FORMAT_DECIMAL_FORCE_POINT:
 				{
 					// Forcing a decimal point instead of system-dependent commas etc
-					if (_originalFormat != FORMAT_DEG_WITHOUT_CARDINAL || answer.indexOf('.') < 0) {
-						answer = EIGHT_DP.format(_asDouble);
+					if (!hasDecimalPointOriginal()) {
+						answer = EIGHT_DP.get().format(_asDouble);
 					}
 					break;
 				}
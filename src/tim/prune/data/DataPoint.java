@@ -44,6 +44,30 @@ public class DataPoint
 	}
 
 
+	/**
+	 * Constructor for points whose altitude and timestamp have already been parsed,
+	 * eg when reopening a session file
+	 * @param inValueArray array of String values
+	 * @param inFieldList list of fields
+	 * @param inAltitude altitude object
+	 * @param inTimestamp timestamp object
+	 * @param inColor colour of point
+	 */
+	public DataPoint(String[] inValueArray, FieldList inFieldList, Altitude inAltitude, Timestamp inTimestamp, Color inColor)
+	{
+		_fieldValues = inValueArray;
+		_fieldList = inFieldList;
+		_color = inColor;
+		_altitude = inAltitude;
+		_timestamp = inTimestamp;
+		// parse the remaining fields
+		parseFields(Field.LATITUDE, null);
+		parseFields(Field.LONGITUDE, null);
+		parseFields(Field.WAYPT_NAME, null);
+		parseFields(Field.NEW_SEGMENT, null);
+	}
+
+
 	/**
 	 * Parse the string values into objects eg Coordinates
 	 * @param inField field which has changed, or null for all
@@ -22,6 +22,7 @@ public abstract class Distance
 	private static final double EARTH_RADIUS_KM = 6372.795;
 	// Conversion constants
 	private static final double CONVERT_KM_TO_MILES = 0.621371192;
+	private static final double CONVERT_MILES_TO_FEET = 5280.0;
 
 
 	/**
@@ -37,6 +38,8 @@ public abstract class Distance
 			return inAngDist * EARTH_RADIUS_KM * CONVERT_KM_TO_MILES;
 		else if (inUnits == Units.METRES)
 			return inAngDist * EARTH_RADIUS_KM * 1000;
+		else if (inUnits == Units.FEET)
+			return inAngDist * EARTH_RADIUS_KM * CONVERT_KM_TO_MILES * CONVERT_MILES_TO_FEET;
 		// default kilometres
 		return inAngDist * EARTH_RADIUS_KM;
 	}
@@ -54,6 +57,8 @@ public abstract class Distance
 			return inDist / EARTH_RADIUS_KM / CONVERT_KM_TO_MILES;
 		else if (inUnits == Units.METRES)
 			return inDist / EARTH_RADIUS_KM / 1000;
+		else if (inUnits == Units.FEET)
+			return inDist / EARTH_RADIUS_KM / CONVERT_KM_TO_MILES / CONVERT_MILES_TO_FEET;
 		// default kilometres
 		return inDist / EARTH_RADIUS_KM;
 	}
@@ -88,6 +88,7 @@ public class Field
 	 */
 	public boolean equals(Field inOther)
 	{
+		if (inOther == this) {return true;}
 		return (isBuiltIn() == inOther.isBuiltIn() && getName().equals(inOther.getName()));
 	}
 
@@ -109,6 +110,34 @@ public class Field
 		return null;
 	}
 
+	/**
+	 * @return index of this field in the list of built-in fields, or -1 for custom fields
+	 */
+	public int getBuiltInIndex()
+	{
+		if (!isBuiltIn()) {return -1;}
+		for (int i=0; i<ALL_AVAILABLE_FIELDS.length; i++)
+		{
+			if (ALL_AVAILABLE_FIELDS[i] == this) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the built-in field with the given index, independent of the language
+	 * @param inIndex index as returned by getBuiltInIndex
+	 * @return built-in Field if found, or null otherwise
+	 */
+	public static Field getBuiltInField(int inIndex)
+	{
+		if (inIndex < 0 || inIndex >= ALL_AVAILABLE_FIELDS.length || !ALL_AVAILABLE_FIELDS[inIndex].isBuiltIn()) {
+			return null;
+		}
+		return ALL_AVAILABLE_FIELDS[inIndex];
+	}
+
 	/**
 	 * @return array of field names
 	 */
@@ -0,0 +1,120 @@
+package tim.prune.data;
+
+/**
+ * Compressor deciding whether to keep each point as it arrives, so that a
+ * track being recorded or streamed doesn't grow without limit.
+ * Uses dead reckoning: the position is predicted from the last kept point
+ * and the speed and direction there, and a new point is only kept if it is
+ * further than the tolerance from this prediction.  Points without timestamps
+ * are kept if they are further than the tolerance from the last kept point.
+ * Waypoints and segment starts are always kept.
+ * As the latest point may be dropped, the track can hold it provisionally
+ * so that it still shows the current position until the next points arrive.
+ */
+public class OnlineCompressor
+{
+	/** Tolerance in metres */
+	private double _tolerance = 0.0;
+	/** Last point which was kept */
+	private DataPoint _lastKept = null;
+	/** Last point received, whether kept or not */
+	private DataPoint _lastReceived = null;
+	/** Velocity at the last kept point in metres per second, east and north */
+	private double _eastSpeed = 0.0, _northSpeed = 0.0;
+	/** Latest point which was dropped but is held by the track until more points arrive */
+	private DataPoint _provisionalPoint = null;
+
+	/** Metres per radian of latitude */
+	private static final double METRES_PER_RADIAN = Distance.convertRadiansToDistance(1.0, Distance.Units.METRES);
+
+
+	/**
+	 * Constructor
+	 * @param inTolerance tolerance in metres
+	 */
+	public OnlineCompressor(double inTolerance)
+	{
+		_tolerance = inTolerance;
+	}
+
+	/**
+	 * Decide whether to keep the given point, which follows the previous one given
+	 * @param inPoint new point
+	 * @return true to keep the point
+	 */
+	public boolean keepPoint(DataPoint inPoint)
+	{
+		final DataPoint prevPoint = _lastReceived;
+		_lastReceived = inPoint;
+		if (_lastKept == null || inPoint.isWaypoint() || inPoint.getSegmentStart())
+		{
+			_lastKept = inPoint;
+			_eastSpeed = _northSpeed = 0.0;
+			return true;
+		}
+		double east = 0.0, north = 0.0;
+		if (inPoint.hasTimestamp() && _lastKept.hasTimestamp())
+		{
+			// Predict where the point should be by now
+			final long seconds = inPoint.getTimestamp().getSecondsSince(_lastKept.getTimestamp());
+			east = _eastSpeed * seconds;
+			north = _northSpeed * seconds;
+		}
+		east -= getEastMetres(_lastKept, inPoint);
+		north -= getNorthMetres(_lastKept, inPoint);
+		if (east * east + north * north <= _tolerance * _tolerance) {
+			return false;
+		}
+		// Keep this point, and take the velocity from the previous point to this one
+		_lastKept = inPoint;
+		_eastSpeed = _northSpeed = 0.0;
+		if (prevPoint != null && prevPoint.hasTimestamp() && inPoint.hasTimestamp())
+		{
+			final long seconds = inPoint.getTimestamp().getSecondsSince(prevPoint.getTimestamp());
+			if (seconds > 0)
+			{
+				_eastSpeed = getEastMetres(prevPoint, inPoint) / seconds;
+				_northSpeed = getNorthMetres(prevPoint, inPoint) / seconds;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param inFrom first point
+	 * @param inTo second point
+	 * @return distance east from first point to second in metres
+	 */
+	private static double getEastMetres(DataPoint inFrom, DataPoint inTo)
+	{
+		final double lat = Math.toRadians(inFrom.getLatitude().getDouble());
+		return Math.toRadians(inTo.getLongitude().getDouble() - inFrom.getLongitude().getDouble())
+			* Math.cos(lat) * METRES_PER_RADIAN;
+	}
+
+	/**
+	 * @param inFrom first point
+	 * @param inTo second point
+	 * @return distance north from first point to second in metres
+	 */
+	private static double getNorthMetres(DataPoint inFrom, DataPoint inTo)
+	{
+		return Math.toRadians(inTo.getLatitude().getDouble() - inFrom.getLatitude().getDouble()) * METRES_PER_RADIAN;
+	}
+
+	/**
+	 * @return point held provisionally at the end of the track, or null
+	 */
+	public DataPoint getProvisionalPoint()
+	{
+		return _provisionalPoint;
+	}
+
+	/**
+	 * @param inPoint dropped point being held at the end of the track, or null
+	 */
+	public void setProvisionalPoint(DataPoint inPoint)
+	{
+		_provisionalPoint = inPoint;
+	}
+}
@@ -2,6 +2,7 @@ package tim.prune.data;
 
 import tim.prune.DataSubscriber;
 import tim.prune.UpdateMessageBroker;
+import tim.prune.config.Config;
 
 /**
  * Class to represent a selected portion of a Track
@@ -77,15 +78,19 @@ public class Selection
 			_altitudeRange = new IntegerRange();
 			_climb = 0;
 			_descent = 0;
+			// Climb and descent use the filtered altitudes, and ignore changes smaller than the threshold
+			final TrackMetrics metrics = _track.getMetrics();
+			final double thresholdMetres = Config.getConfigInt(Config.KEY_CLIMB_THRESHOLD, 0);
+			double threshold = 0.0, referenceAlt = 0.0;
+			double climb = 0.0, descent = 0.0;
 			Altitude altitude = null;
 			Timestamp time = null, startTime = null, endTime = null;
 			Timestamp previousTime = null;
 			DataPoint lastPoint = null, currPoint = null;
 			_angDistance = 0.0; _angMovingDistance = 0.0;
 			_totalSeconds = 0L; _movingSeconds = 0L;
-			int altValue = 0;
-			int lastAltValue = 0;
 			boolean foundAlt = false;
+			int firstTrackIndex = -1, lastTrackIndex = -1;
 			for (int i=_startIndex; i<=_endIndex; i++)
 			{
 				currPoint = _track.getPoint(i);
@@ -93,18 +98,26 @@ public class Selection
 				// Ignore waypoints in altitude calculations
 				if (!currPoint.isWaypoint() && altitude.isValid())
 				{
-					altValue = altitude.getValue(_altitudeFormat);
 					if (_altitudeFormat == Altitude.Format.NO_FORMAT)
+					{
 						_altitudeFormat = altitude.getFormat();
-					_altitudeRange.addValue(altValue);
-					if (foundAlt)
+						threshold = Altitude.convertFromMetres(thresholdMetres, _altitudeFormat);
+					}
+					_altitudeRange.addValue(altitude.getValue(_altitudeFormat));
+					final double altValue = metrics.getAltitude(i, _altitudeFormat);
+					if (!foundAlt) {
+						referenceAlt = altValue;
+					}
+					else if (altValue - referenceAlt >= threshold)
+					{
+						climb += (altValue - referenceAlt);
+						referenceAlt = altValue;
+					}
+					else if (referenceAlt - altValue >= threshold)
 					{
-						if (altValue > lastAltValue)
-							_climb += (altValue - lastAltValue);
-						else
-							_descent += (lastAltValue - altValue);
+						descent += (referenceAlt - altValue);
+						referenceAlt = altValue;
 					}
-					lastAltValue = altValue;
 					foundAlt = true;
 				}
 				// Store the first and last timestamp in the range
@@ -122,22 +135,31 @@ public class Selection
 				// Calculate distances, again ignoring waypoints
 				if (!currPoint.isWaypoint())
 				{
-					if (lastPoint != null)
+					if (lastPoint == null) {
+						firstTrackIndex = lastTrackIndex = i;
+					}
+					else
 					{
-						double radians = DataPoint.calculateRadiansBetween(lastPoint, currPoint);
-						_angDistance += radians;
-						if (currPoint.getSegmentStart()) {
+						// Distances within segments come from the metrics, so only the jumps between them are needed
+						if (currPoint.getSegmentStart())
+						{
 							_numSegments++;
+							_angDistance += DataPoint.calculateRadiansBetween(lastPoint, currPoint);
 						}
-						else {
-							_angMovingDistance += radians;
-						}
+						lastTrackIndex = i;
 					}
 					lastPoint = currPoint;
 					// If it's a track point then there must be at least one segment
 					if (_numSegments == 0) {_numSegments = 1;}
 				}
 			}
+			if (firstTrackIndex >= 0)
+			{
+				_angMovingDistance = metrics.getDistance(lastTrackIndex) - metrics.getDistance(firstTrackIndex);
+				_angDistance += _angMovingDistance;
+			}
+			_climb = (int) Math.round(climb);
+			_descent = (int) Math.round(descent);
 			if (endTime != null) {
 				_totalSeconds = endTime.getSecondsSince(startTime);
 			}
@@ -1,6 +1,7 @@
 package tim.prune.data;
 
 import java.io.File;
+import java.util.IdentityHashMap;
 
 /**
  * Class to hold the source of the point data, including the original file
@@ -24,6 +25,8 @@ public class SourceInfo
 	private int _numPoints = 0;
 	/** Array of point indices (if necessary) */
 	private int[] _pointIndices = null;
+	/** Map from point object to its position in the points array */
+	private IdentityHashMap<DataPoint, Integer> _pointPositions = null;
 
 
 	/**
@@ -112,6 +115,68 @@ public class SourceInfo
 			System.arraycopy(inTrack.cloneContents(), trackLen-inNumPoints, _points, 0, inNumPoints);
 			// Note data copied twice here but still more efficient than looping
 		}
+		buildPointPositions();
+	}
+
+	/**
+	 * Build the map from point objects to positions, so that lookups don't need to scan the array.
+	 * Points are mapped by identity, so the map stays valid when the track is reordered or
+	 * points are deleted from it.
+	 */
+	private void buildPointPositions()
+	{
+		if (_points == null)
+		{
+			_pointPositions = null;
+			return;
+		}
+		_pointPositions = new IdentityHashMap<DataPoint, Integer>(_points.length * 2);
+		for (int i=0; i<_points.length; i++)
+		{
+			if (_points[i] != null) {
+				_pointPositions.put(_points[i], Integer.valueOf(i));
+			}
+		}
+	}
+
+	/**
+	 * @return number of point objects held for this source
+	 */
+	public int getNumPointObjects()
+	{
+		return (_points == null ? 0 : _points.length);
+	}
+
+	/**
+	 * @param inIndex index of point object
+	 * @return point object, or null if not available
+	 */
+	public DataPoint getPointObject(int inIndex)
+	{
+		if (_points == null || inIndex < 0 || inIndex >= _points.length) {return null;}
+		return _points[inIndex];
+	}
+
+	/**
+	 * @return array of point indices, or null if all points were loaded
+	 */
+	public int[] getPointIndices()
+	{
+		return _pointIndices;
+	}
+
+	/**
+	 * Restore the point objects and index mapping, eg when reopening a session file
+	 * @param inNumPoints number of points in the source
+	 * @param inPoints point objects, null where a point is no longer in the track
+	 * @param inPointIndices array of point indices, or null if all points were loaded
+	 */
+	public void restorePoints(int inNumPoints, DataPoint[] inPoints, int[] inPointIndices)
+	{
+		_numPoints = inNumPoints;
+		_points = inPoints;
+		_pointIndices = inPointIndices;
+		buildPointPositions();
 	}
 
 	/**
@@ -121,10 +186,10 @@ public class SourceInfo
 	 */
 	public int getIndex(DataPoint inPoint)
 	{
-		int idx = -1;
-		for (int i=0; i<_points.length && (idx < 0); i++) {
-			if (_points[i] == inPoint) {idx = i;}
-		}
+		if (_pointPositions == null) {return -1;}
+		Integer position = _pointPositions.get(inPoint);
+		if (position == null) {return -1;}
+		final int idx = position.intValue();
 		if (_pointIndices == null) {return idx;} // All points loaded
 		return _pointIndices[idx]; // use point index mapping
 	}
@@ -22,8 +22,31 @@ public class Timestamp
 	private static final DateFormat DEFAULT_DATE_FORMAT = DateFormat.getDateTimeInstance();
 	private static final DateFormat DEFAULT_TIME_FORMAT = DateFormat.getTimeInstance();
 	private static final DateFormat ISO_8601_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-	private static final DateFormat ISO_8601_FORMAT_NOZ = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-	private static DateFormat[] ALL_DATE_FORMATS = null;
+	/** Date formats for parsing, one set per thread as they can't be shared */
+	private static final ThreadLocal<DateFormat[]> PARSE_FORMATS = new ThreadLocal<DateFormat[]>() {
+		protected DateFormat[] initialValue()
+		{
+			return new DateFormat[] {
+				DateFormat.getDateTimeInstance(),
+				new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy"),
+				new SimpleDateFormat("HH:mm:ss dd MMM yyyy"),
+				new SimpleDateFormat("dd MMM yyyy HH:mm:ss"),
+				new SimpleDateFormat("yyyy MMM dd HH:mm:ss"),
+				new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'"),
+				new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss")
+			};
+		}
+	};
+	/**
+	 * Index of the date format which parsed the last string on each thread, tried first for the next one.
+	 * Each file is loaded on a single thread, so this follows the timestamp column of the file
+	 */
+	private static final ThreadLocal<int[]> PREFERRED_FORMAT = new ThreadLocal<int[]>() {
+		protected int[] initialValue()
+		{
+			return new int[1];
+		}
+	};
 	private static Calendar CALENDAR = null;
 	private static final Pattern GENERAL_TIMESTAMP_PATTERN
 		= Pattern.compile("(\\d{4})\\D(\\d{2})\\D(\\d{2})\\D(\\d{2})\\D(\\d{2})\\D(\\d{2})");
@@ -51,15 +74,6 @@ public class Timestamp
 		CALENDAR.add(Calendar.YEAR, -20);
 		MSECS_SINCE_1990 = CALENDAR.getTimeInMillis();
 		TWENTY_YEARS_IN_SECS = (MSECS_SINCE_1970 - MSECS_SINCE_1990) / 1000L;
-		// Date formats
-		ALL_DATE_FORMATS = new DateFormat[] {
-			DEFAULT_DATE_FORMAT,
-			new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy"),
-			new SimpleDateFormat("HH:mm:ss dd MMM yyyy"),
-			new SimpleDateFormat("dd MMM yyyy HH:mm:ss"),
-			new SimpleDateFormat("yyyy MMM dd HH:mm:ss"),
-			ISO_8601_FORMAT, ISO_8601_FORMAT_NOZ
-		};
 	}
 
 
@@ -82,16 +96,20 @@ public class Timestamp
 			catch (NumberFormatException nfe)
 			{
 				// String is not a long, so try a date/time string instead
-				// try each of the date formatters in turn
+				// try the formatter which worked last time, then each of the others in turn
 				Date date = null;
-				for (int i=0; i<ALL_DATE_FORMATS.length && !_valid; i++)
+				final DateFormat[] formats = PARSE_FORMATS.get();
+				final int[] preferred = PREFERRED_FORMAT.get();
+				final int preferredIndex = preferred[0];
+				for (int n=0; n<formats.length && !_valid; n++)
 				{
+					final int i = (n == 0 ? preferredIndex : (n <= preferredIndex ? n-1 : n));
 					try
 					{
-						date = ALL_DATE_FORMATS[i].parse(inString);
-						CALENDAR.setTime(date);
-						_seconds = CALENDAR.getTimeInMillis() / 1000L;
+						date = formats[i].parse(inString);
+						_seconds = date.getTime() / 1000L;
 						_valid = true;
+						preferred[0] = i;
 					}
 					catch (ParseException e) {}
 				}
@@ -214,6 +232,14 @@ public class Timestamp
 		return _valid;
 	}
 
+	/**
+	 * @return milliseconds since 1970
+	 */
+	public long getMilliseconds()
+	{
+		return _seconds * 1000L;
+	}
+
 	/**
 	 * @param inOther other Timestamp
 	 * @return true if this one is after the other
@@ -321,8 +347,12 @@ public class Timestamp
 	 */
 	private String format(DateFormat inFormat)
 	{
-		CALENDAR.setTimeInMillis(_seconds * 1000L);
-		return inFormat.format(CALENDAR.getTime());
+		// Formatters and calendar are shared, so only one thread can use them at once
+		synchronized (CALENDAR)
+		{
+			CALENDAR.setTimeInMillis(_seconds * 1000L);
+			return inFormat.format(CALENDAR.getTime());
+		}
 	}
 
 	/**
@@ -23,6 +23,8 @@ public class Track
 	private double[] _xValues = null;
 	private double[] _yValues = null;
 	private boolean _scaled = false;
+	// Derived distances and speeds, calculated when needed
+	private TrackMetrics _metrics = null;
 	private int _numPoints = 0;
 	private boolean _hasTrackpoint = false;
 	private boolean _hasWaypoint = false;
@@ -93,7 +95,7 @@ public class Track
 			firstTrackPoint.setSegmentStart(true);
 		}
 		// needs to be scaled
-		_scaled = false;
+		dataChanged();
 	}
 
 
@@ -108,15 +110,118 @@ public class Track
 		_dataPoints = inOther._dataPoints;
 		_gpxMetadata = inOther._gpxMetadata;
 		// needs to be scaled
-		_scaled = false;
+		dataChanged();
+	}
+
+	/**
+	 * Load the track from points which have already been constructed, eg from a session file
+	 * @param inFieldList master field list shared by the points
+	 * @param inPoints array of DataPoint objects
+	 */
+	public void load(FieldList inFieldList, DataPoint[] inPoints)
+	{
+		_masterFieldList = inFieldList;
+		_dataPoints = inPoints;
+		_numPoints = inPoints.length;
+		// needs to be scaled
+		dataChanged();
+	}
+
+	/**
+	 * Append points to the track from part of an array of loaded data,
+	 * used to show the points while a file is still being loaded
+	 * @param inFieldArray array of fields, the same for every call
+	 * @param inPointArray array of data
+	 * @param inStartIndex index of first row to append
+	 * @param inEndIndex index after the last row to append
+	 * @param inAltFormat altitude format
+	 */
+	public void appendPoints(Field[] inFieldArray, Object[][] inPointArray,
+		int inStartIndex, int inEndIndex, Altitude.Format inAltFormat)
+	{
+		appendPoints(inFieldArray, inPointArray, inStartIndex, inEndIndex, inAltFormat, null);
+	}
+
+	/**
+	 * Append points to the track from part of an array of loaded data,
+	 * only keeping the ones chosen by the given compressor
+	 * @param inFieldArray array of fields, the same for every call
+	 * @param inPointArray array of data
+	 * @param inStartIndex index of first row to append
+	 * @param inEndIndex index after the last row to append
+	 * @param inAltFormat altitude format
+	 * @param inCompressor compressor to choose which points to keep, or null to keep all
+	 */
+	public void appendPoints(Field[] inFieldArray, Object[][] inPointArray,
+		int inStartIndex, int inEndIndex, Altitude.Format inAltFormat, OnlineCompressor inCompressor)
+	{
+		if (_numPoints == 0) {
+			_masterFieldList = new FieldList(inFieldArray);
+		}
+		// Take off the latest point from last time if it wasn't kept, it's only put back if nothing newer is dropped
+		DataPoint lastDropped = null;
+		if (inCompressor != null && _numPoints > 0 && inCompressor.getProvisionalPoint() == _dataPoints[_numPoints-1])
+		{
+			lastDropped = _dataPoints[_numPoints-1];
+			_numPoints--;
+		}
+		DataPoint[] newPoints = new DataPoint[_numPoints + inEndIndex - inStartIndex + (lastDropped == null ? 0 : 1)];
+		System.arraycopy(_dataPoints, 0, newPoints, 0, _numPoints);
+		int pointIndex = _numPoints;
+		for (int p=inStartIndex; p<inEndIndex; p++)
+		{
+			DataPoint point = new DataPoint((String[]) inPointArray[p], _masterFieldList, inAltFormat, _color);
+			if (point.isValid())
+			{
+				if (inCompressor == null || inCompressor.keepPoint(point))
+				{
+					newPoints[pointIndex] = point;
+					pointIndex++;
+					lastDropped = null;
+				}
+				else {
+					lastDropped = point;
+				}
+			}
+		}
+		if (inCompressor != null)
+		{
+			// Hold the latest point for now so the track still ends at the current position
+			if (lastDropped != null) {
+				newPoints[pointIndex++] = lastDropped;
+			}
+			inCompressor.setProvisionalPoint(lastDropped);
+		}
+		final int oldNumPoints = _numPoints;
+		_dataPoints = newPoints;
+		_numPoints = pointIndex;
+		// Set first track point to be start of segment, if it was just added
+		if (oldNumPoints == 0 || getNextTrackPoint(0, oldNumPoints-1) == null)
+		{
+			DataPoint firstTrackPoint = getNextTrackPoint(oldNumPoints);
+			if (firstTrackPoint != null) {
+				firstTrackPoint.setSegmentStart(true);
+			}
+		}
+		// needs to be scaled
+		dataChanged();
 	}
 
 	/**
 	 * Request that a rescale be done to recalculate derived values
 	 */
 	public void requestRescale()
+	{
+		dataChanged();
+	}
+
+	/**
+	 * Mark the scaled values and metrics as needing recalculation after a change
+	 */
+	private void dataChanged()
 	{
 		_scaled = false;
+		_metrics = null;
 	}
 
 	/**
@@ -148,7 +253,7 @@ public class Track
 		// combine point count
 		_numPoints = totalPoints;
 		// needs to be scaled again
-		_scaled = false;
+		dataChanged();
 		// inform listeners
 		UpdateMessageBroker.informSubscribers();
 	}
@@ -164,7 +269,7 @@ public class Track
 		{
 			_numPoints = inNewSize;
 			// needs to be scaled again
-			_scaled = false;
+			dataChanged();
 			UpdateMessageBroker.informSubscribers();
 		}
 	}
@@ -197,7 +302,7 @@ public class Track
 			_dataPoints = new DataPoint[numCopied];
 			System.arraycopy(newPointArray, 0, _dataPoints, 0, numCopied);
 			_numPoints = _dataPoints.length;
-			_scaled = false;
+			dataChanged();
 		}
 		return numDeleted;
 	}
@@ -256,7 +361,7 @@ public class Track
 		_dataPoints = newPointArray;
 		_numPoints -= numToDelete;
 		// needs to be scaled again
-		_scaled = false;
+		dataChanged();
 		return true;
 	}
 
@@ -291,7 +396,7 @@ public class Track
 		DataPoint nextTrackPoint = getNextTrackPoint(inEnd+1);
 		if (nextTrackPoint != null) {nextTrackPoint.setSegmentStart(true);}
 		// needs to be scaled again
-		_scaled = false;
+		dataChanged();
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -324,6 +429,9 @@ public class Track
 				_dataPoints[i].setModified(inUndo);
 			}
 		}
+		if (foundTimestamp) {
+			dataChanged();
+		}
 		return foundTimestamp;
 	}
 
@@ -357,11 +465,36 @@ public class Track
 			}
 		}
 		// needs to be scaled again
-		_scaled = false;
+		dataChanged();
 		return foundAlt;
 	}
 
 
+	/**
+	 * Set the altitudes of a batch of points, rescaling once for the whole batch
+	 * @param inIndices indexes of the points
+	 * @param inAltitudes altitudes in metres, or NaN to leave the point unchanged
+	 * @param inNumValues number of values to use from the arrays
+	 * @return number of altitudes set
+	 */
+	public int setAltitudes(int[] inIndices, double[] inAltitudes, int inNumValues)
+	{
+		int numSet = 0;
+		for (int i=0; i<inNumValues; i++)
+		{
+			if (!Double.isNaN(inAltitudes[i]))
+			{
+				_dataPoints[inIndices[i]].setFieldValue(Field.ALTITUDE, "" + inAltitudes[i], false);
+				numSet++;
+			}
+		}
+		if (numSet > 0) {
+			dataChanged();
+		}
+		return numSet;
+	}
+
+
 	/**
 	 * Collect all waypoints to the start or end of the track
 	 * @param inAtStart true to collect at start, false for end
@@ -411,7 +544,7 @@ public class Track
 			System.arraycopy(waypoints, 0, _dataPoints, numNonWaypoints, numWaypoints);
 		}
 		// needs to be scaled again
-		_scaled = false;
+		dataChanged();
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -469,7 +602,7 @@ public class Track
 		// Copy data back to track
 		_dataPoints = dataCopy;
 		// needs to be scaled again to recalc x, y
-		_scaled = false;
+		dataChanged();
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -528,7 +661,7 @@ public class Track
 			}
 			// Copy array references
 			_dataPoints = newPointArray;
-			_scaled = false;
+			dataChanged();
 			return true;
 		}
 		return false;
@@ -618,7 +751,7 @@ public class Track
 			insertRange(inPoints, _numPoints);
 		}
 		// needs to be scaled again to recalc x, y
-		_scaled = false;
+		dataChanged();
 		UpdateMessageBroker.informSubscribers();
 	}
 
@@ -858,6 +991,42 @@ public class Track
 		}
 	}
 
+	/**
+	 * @return distance, speed and gradient metrics for all points, calculated if necessary
+	 */
+	public TrackMetrics getMetrics()
+	{
+		if (_metrics == null)
+		{
+			TrackMetrics metrics = new TrackMetrics(this);
+			metrics.calculate();
+			_metrics = metrics;
+		}
+		return _metrics;
+	}
+
+	/**
+	 * Get the distance along the track to the given point, not counting the gaps between segments
+	 * @param inPointIndex index of point
+	 * @param inUnits distance units
+	 * @return distance along track
+	 */
+	public double getDistanceAlongTrack(int inPointIndex, Distance.Units inUnits)
+	{
+		return Distance.convertRadiansToDistance(getMetrics().getDistance(inPointIndex), inUnits);
+	}
+
+	/**
+	 * Find the first track point at or beyond the given distance along the track
+	 * @param inDistance distance along track
+	 * @param inUnits distance units
+	 * @return index of track point, or -1 if the track isn't that long
+	 */
+	public int getPointIndexAtDistance(double inDistance, Distance.Units inUnits)
+	{
+		return getMetrics().getIndexAtDistance(Distance.convertDistanceToRadians(inDistance, inUnits));
+	}
+
 	/**
 	 * Search for the given Point in the track and return the index
 	 * @param inPoint Point to look for
@@ -1141,7 +1310,7 @@ public class Track
 		_dataPoints = newPointArray;
 		_numPoints++;
 		// needs to be scaled again
-		_scaled = false;
+		dataChanged();
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -1174,7 +1343,7 @@ public class Track
 		_dataPoints = newPointArray;
 		_numPoints += inPoints.length;
 		// needs to be scaled again
-		_scaled = false;
+		dataChanged();
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -1192,7 +1361,7 @@ public class Track
 		// replace data array
 		_dataPoints = inContents;
 		_numPoints = _dataPoints.length;
-		_scaled = false;
+		dataChanged();
 		UpdateMessageBroker.informSubscribers();
 		return true;
 	}
@@ -1209,6 +1378,7 @@ public class Track
 	{
 		if (inPoint != null && inEditList != null && inEditList.getNumEdits() > 0)
 		{
+			final int pointIndex = (_metrics == null ? -1 : getPointIndex(inPoint));
 			// go through edits one by one
 			int numEdits = inEditList.getNumEdits();
 			for (int i=0; i<numEdits; i++)
@@ -1223,6 +1393,10 @@ public class Track
 			}
 			// point possibly needs to be scaled again
 			_scaled = false;
+			// but only the metrics around this point need to be recalculated
+			if (pointIndex >= 0) {
+				_metrics.updatePoint(pointIndex);
+			}
 			// trigger listeners
 			UpdateMessageBroker.informSubscribers();
 			return true;
@@ -0,0 +1,435 @@
+package tim.prune.data;
+
+/**
+ * Class to hold the values derived from neighbouring points of a track,
+ * namely the cumulative distance and time, the speed, the vertical speed
+ * and the gradient at each point, and the altitudes after any filtering.
+ * These are all calculated together in one pass and kept in primitive arrays,
+ * so that the charts and the profile don't each need to loop over the points
+ * doing the same calculations.
+ * Values are stored in fixed units and converted by the caller as needed.
+ */
+public class TrackMetrics
+{
+	/** Track object */
+	private Track _track = null;
+	/** Number of points */
+	private int _numPoints = 0;
+	/** Cumulative distance along the track in radians */
+	private double[] _distances = null;
+	/** Cumulative time along the track in seconds */
+	private long[] _seconds = null;
+	/** Flags for points with timestamps */
+	private boolean[] _hasTime = null;
+	/** Speed in radians per second */
+	private double[] _speeds = null;
+	/** Flags for points with speeds */
+	private boolean[] _hasSpeed = null;
+	/** Vertical speed in metres per second */
+	private double[] _vertSpeeds = null;
+	/** Flags for points with vertical speeds */
+	private boolean[] _hasVertSpeed = null;
+	/** Gradient as a percentage */
+	private double[] _gradients = null;
+	/** Flags for points with gradients */
+	private boolean[] _hasGradient = null;
+	/** Filtered altitudes in metres, or null if not filtered */
+	private double[] _altitudes = null;
+
+	/** Flag for neighbours needing a timestamp */
+	private static final int NEED_TIME = 1;
+	/** Flag for neighbours needing an altitude */
+	private static final int NEED_ALTITUDE = 2;
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 */
+	TrackMetrics(Track inTrack)
+	{
+		_track = inTrack;
+	}
+
+	/**
+	 * Calculate all the values for the whole track
+	 */
+	void calculate()
+	{
+		_numPoints = _track.getNumPoints();
+		_distances = new double[_numPoints];
+		_seconds = new long[_numPoints];
+		_hasTime = new boolean[_numPoints];
+		_speeds = new double[_numPoints];
+		_hasSpeed = new boolean[_numPoints];
+		_vertSpeeds = new double[_numPoints];
+		_hasVertSpeed = new boolean[_numPoints];
+		_gradients = new double[_numPoints];
+		_hasGradient = new boolean[_numPoints];
+		// Cumulative values first, as the gradients need the distances
+		double totalRads = 0.0;
+		long totalSeconds = 0L;
+		for (int i=0; i<_numPoints; i++)
+		{
+			totalRads += getDistanceStep(i);
+			_distances[i] = totalRads;
+			totalSeconds += getTimeStep(i);
+			_seconds[i] = totalSeconds;
+			_hasTime[i] = _track.getPoint(i).hasTimestamp();
+		}
+		filterAltitudes();
+		// Each point only looks as far as its neighbours, so this is still a single pass
+		for (int i=0; i<_numPoints; i++) {
+			calculateRates(i);
+		}
+	}
+
+	/**
+	 * Recalculate the values affected by an edit to a single point,
+	 * which are the rates of the point and its neighbours, and the
+	 * cumulative values from this point onwards
+	 * @param inIndex index of edited point
+	 */
+	void updatePoint(int inIndex)
+	{
+		if (inIndex < 0 || inIndex >= _numPoints || _numPoints != _track.getNumPoints()) {
+			return;
+		}
+		if (_altitudes != null)
+		{
+			// The filtered altitudes of a whole window around the point may change
+			calculate();
+			return;
+		}
+		// Steps to this point and to the next one may have changed
+		final int nextTrackPoint = findNeighbour(inIndex, 1, 0);
+		final int nextTimedPoint = findTimedPoint(inIndex, 1);
+		shiftDistances(inIndex);
+		if (nextTrackPoint > inIndex) {
+			shiftDistances(nextTrackPoint);
+		}
+		_hasTime[inIndex] = _track.getPoint(inIndex).hasTimestamp();
+		shiftSeconds(inIndex);
+		if (nextTimedPoint > inIndex) {
+			shiftSeconds(nextTimedPoint);
+		}
+		// Rates of the point itself and its neighbours of each kind
+		final int[] needs = {NEED_TIME, NEED_TIME | NEED_ALTITUDE, NEED_ALTITUDE};
+		calculateRates(inIndex);
+		for (int need : needs)
+		{
+			int prev = findNeighbour(inIndex, -1, need);
+			if (prev >= 0) {calculateRates(prev);}
+			int next = findNeighbour(inIndex, 1, need);
+			if (next >= 0) {calculateRates(next);}
+		}
+	}
+
+	/**
+	 * Filter the altitudes of the track points in each segment, if a filter is configured
+	 */
+	private void filterAltitudes()
+	{
+		_altitudes = null;
+		AltitudeFilter filter = AltitudeFilter.getConfiguredFilter();
+		if (!filter.isActive()) {return;}
+		// Collect the track points with altitudes, so each segment is one run of values
+		int[] indices = new int[_numPoints];
+		double[] values = new double[_numPoints];
+		int numValues = 0;
+		_altitudes = new double[_numPoints];
+		double[] filtered = new double[_numPoints];
+		int runStart = 0;
+		for (int i=0; i<=_numPoints; i++)
+		{
+			DataPoint point = (i < _numPoints ? _track.getPoint(i) : null);
+			if (point != null && (point.isWaypoint() || !point.hasAltitude()))
+			{
+				if (point.hasAltitude()) {
+					_altitudes[i] = point.getAltitude().getValue(Altitude.Format.METRES);
+				}
+				continue;
+			}
+			if (point == null || point.getSegmentStart())
+			{
+				filter.filter(values, runStart, numValues, filtered);
+				runStart = numValues;
+			}
+			if (point != null)
+			{
+				indices[numValues] = i;
+				values[numValues] = point.getAltitude().getValue(Altitude.Format.METRES);
+				numValues++;
+			}
+		}
+		for (int v=0; v<numValues; v++) {
+			_altitudes[indices[v]] = filtered[v];
+		}
+	}
+
+	/**
+	 * Correct the cumulative distances from the given point onwards
+	 * @param inIndex index of point whose step has changed
+	 */
+	private void shiftDistances(int inIndex)
+	{
+		final double prevTotal = (inIndex > 0 ? _distances[inIndex-1] : 0.0);
+		final double delta = prevTotal + getDistanceStep(inIndex) - _distances[inIndex];
+		if (delta != 0.0)
+		{
+			for (int i=inIndex; i<_numPoints; i++) {
+				_distances[i] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Correct the cumulative times from the given point onwards
+	 * @param inIndex index of point whose step has changed
+	 */
+	private void shiftSeconds(int inIndex)
+	{
+		final long prevTotal = (inIndex > 0 ? _seconds[inIndex-1] : 0L);
+		final long delta = prevTotal + getTimeStep(inIndex) - _seconds[inIndex];
+		if (delta != 0L)
+		{
+			for (int i=inIndex; i<_numPoints; i++) {
+				_seconds[i] += delta;
+			}
+		}
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @return distance in radians from the previous point, or 0 if it doesn't count
+	 */
+	private double getDistanceStep(int inIndex)
+	{
+		DataPoint point = _track.getPoint(inIndex);
+		if (point.isWaypoint() || point.getSegmentStart()) {
+			return 0.0;
+		}
+		final int prevIndex = findNeighbour(inIndex, -1, 0);
+		return (prevIndex < 0 ? 0.0 : DataPoint.calculateRadiansBetween(_track.getPoint(prevIndex), point));
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @return seconds since the previous point with a timestamp, or 0 if it doesn't count
+	 */
+	private long getTimeStep(int inIndex)
+	{
+		DataPoint point = _track.getPoint(inIndex);
+		if (!point.hasTimestamp() || point.getSegmentStart()) {
+			return 0L;
+		}
+		final int prevIndex = findTimedPoint(inIndex, -1);
+		return (prevIndex < 0 ? 0L : point.getTimestamp().getSecondsSince(_track.getPoint(prevIndex).getTimestamp()));
+	}
+
+	/**
+	 * Calculate the speed, vertical speed and gradient at the given point
+	 * @param inIndex point index
+	 */
+	private void calculateRates(int inIndex)
+	{
+		DataPoint point = _track.getPoint(inIndex);
+		_hasSpeed[inIndex] = _hasVertSpeed[inIndex] = _hasGradient[inIndex] = false;
+		if (point.isWaypoint()) {
+			return;
+		}
+		// Speed uses the neighbouring track points with timestamps
+		if (point.hasTimestamp())
+		{
+			int prev = findNeighbour(inIndex, -1, NEED_TIME), next = findNeighbour(inIndex, 1, NEED_TIME);
+			if (prev >= 0 && next >= 0)
+			{
+				DataPoint prevPoint = _track.getPoint(prev), nextPoint = _track.getPoint(next);
+				long seconds = nextPoint.getTimestamp().getSecondsSince(prevPoint.getTimestamp());
+				if (seconds > 0)
+				{
+					_speeds[inIndex] = (DataPoint.calculateRadiansBetween(prevPoint, point)
+						+ DataPoint.calculateRadiansBetween(point, nextPoint)) / seconds;
+					_hasSpeed[inIndex] = true;
+				}
+			}
+		}
+		if (!point.hasAltitude()) {
+			return;
+		}
+		// Vertical speed needs timestamps and altitudes
+		if (point.hasTimestamp())
+		{
+			final int need = NEED_TIME | NEED_ALTITUDE;
+			int prev = findNeighbour(inIndex, -1, need), next = findNeighbour(inIndex, 1, need);
+			if (prev >= 0 && next >= 0)
+			{
+				DataPoint prevPoint = _track.getPoint(prev), nextPoint = _track.getPoint(next);
+				long seconds = nextPoint.getTimestamp().getSecondsSince(prevPoint.getTimestamp());
+				if (seconds > 0)
+				{
+					_vertSpeeds[inIndex] = (getMetres(next) - getMetres(prev)) / seconds;
+					_hasVertSpeed[inIndex] = true;
+				}
+			}
+		}
+		// Gradient uses the distance along the track between neighbours with altitudes
+		int prev = findNeighbour(inIndex, -1, NEED_ALTITUDE), next = findNeighbour(inIndex, 1, NEED_ALTITUDE);
+		if (prev >= 0 && next >= 0)
+		{
+			double metres = Distance.convertRadiansToDistance(_distances[next] - _distances[prev], Distance.Units.METRES);
+			if (metres > 0.0)
+			{
+				_gradients[inIndex] = (getMetres(next) - getMetres(prev)) / metres * 100.0;
+				_hasGradient[inIndex] = true;
+			}
+		}
+	}
+
+	/**
+	 * @param inIndex index of point with altitude
+	 * @return altitude in metres, after any filtering
+	 */
+	private double getMetres(int inIndex)
+	{
+		if (_altitudes != null) {
+			return _altitudes[inIndex];
+		}
+		return _track.getPoint(inIndex).getAltitude().getValue(Altitude.Format.METRES);
+	}
+
+	/**
+	 * Find the nearest track point in the given direction
+	 * @param inIndex index to start from
+	 * @param inStep -1 to look backwards, 1 to look forwards
+	 * @param inNeeds flags for the values the neighbour must have
+	 * @return index of neighbour, or -1 if none found
+	 */
+	private int findNeighbour(int inIndex, int inStep, int inNeeds)
+	{
+		for (int i=inIndex+inStep; i>=0 && i<_numPoints; i+=inStep)
+		{
+			DataPoint point = _track.getPoint(i);
+			if (!point.isWaypoint()
+				&& ((inNeeds & NEED_TIME) == 0 || point.hasTimestamp())
+				&& ((inNeeds & NEED_ALTITUDE) == 0 || point.hasAltitude()))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the nearest point of either type with a timestamp
+	 * @param inIndex index to start from
+	 * @param inStep -1 to look backwards, 1 to look forwards
+	 * @return index of point, or -1 if none found
+	 */
+	private int findTimedPoint(int inIndex, int inStep)
+	{
+		for (int i=inIndex+inStep; i>=0 && i<_numPoints; i+=inStep)
+		{
+			if (_track.getPoint(i).hasTimestamp()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** @return number of points */
+	public int getNumPoints() {return _numPoints;}
+
+	/**
+	 * @param inIndex index of point with altitude
+	 * @param inFormat altitude format for the value
+	 * @return altitude after any filtering, or the point's own altitude if not filtered
+	 */
+	public double getAltitude(int inIndex, Altitude.Format inFormat)
+	{
+		if (_altitudes == null) {
+			return _track.getPoint(inIndex).getAltitude().getValue(inFormat);
+		}
+		return Altitude.convertFromMetres(_altitudes[inIndex], inFormat);
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @return distance along track to this point in radians
+	 */
+	public double getDistance(int inIndex) {return _distances[inIndex];}
+
+	/**
+	 * Find the first track point at or beyond the given distance along the track
+	 * @param inRadians distance along track in radians
+	 * @return index of track point, or -1 if the track isn't that long
+	 */
+	public int getIndexAtDistance(double inRadians)
+	{
+		// Cumulative distances never decrease, so a binary search finds the first one far enough
+		int low = 0, high = _numPoints;
+		while (low < high)
+		{
+			final int mid = (low + high) >>> 1;
+			if (_distances[mid] < inRadians) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		// Waypoints share the distance of the track point before them, so skip over them
+		while (low < _numPoints && _track.getPoint(low).isWaypoint()) {
+			low++;
+		}
+		return (low < _numPoints ? low : -1);
+	}
+
+	/**
+	 * @param inIndex point index
+	 * @return true if the point has a timestamp
+	 */
+	public boolean hasTime(int inIndex) {return _hasTime[inIndex];}
+
+	/**
+	 * @param inIndex point index
+	 * @return time along track to this point in seconds
+	 */
+	public long getSeconds(int inIndex) {return _seconds[inIndex];}
+
+	/**
+	 * @param inIndex point index
+	 * @return true if a speed could be calculated for this point
+	 */
+	public boolean hasSpeed(int inIndex) {return _hasSpeed[inIndex];}
+
+	/**
+	 * @param inIndex point index
+	 * @return speed in radians per second
+	 */
+	public double getSpeed(int inIndex) {return _speeds[inIndex];}
+
+	/**
+	 * @param inIndex point index
+	 * @return true if a vertical speed could be calculated for this point
+	 */
+	public boolean hasVerticalSpeed(int inIndex) {return _hasVertSpeed[inIndex];}
+
+	/**
+	 * @param inIndex point index
+	 * @return vertical speed in metres per second
+	 */
+	public double getVerticalSpeed(int inIndex) {return _vertSpeeds[inIndex];}
+
+	/**
+	 * @param inIndex point index
+	 * @return true if a gradient could be calculated for this point
+	 */
+	public boolean hasGradient(int inIndex) {return _hasGradient[inIndex];}
+
+	/**
+	 * @param inIndex point index
+	 * @return gradient as a percentage
+	 */
+	public double getGradient(int inIndex) {return _gradients[inIndex];}
+}
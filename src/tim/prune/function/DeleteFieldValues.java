@@ -163,6 +163,7 @@ public class DeleteFieldValues extends GenericFunction
 			for (int i=selStart; i<= selEnd; i++) {
 				track.getPoint(i).setFieldValue(field, null, false);
 			}
+			track.requestRescale();
 			_dialog.dispose();
 			_pruneApp.getTrackInfo().getSelection().markInvalid();
 			UpdateMessageBroker.informSubscribers(DataSubscriber.DATA_EDITED);
@@ -0,0 +1,175 @@
+package tim.prune.function;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
+
+import tim.prune.App;
+import tim.prune.DataSubscriber;
+import tim.prune.GenericFunction;
+import tim.prune.I18nManager;
+import tim.prune.UpdateMessageBroker;
+import tim.prune.config.Config;
+import tim.prune.data.AltitudeFilter;
+import tim.prune.gui.WholeNumberField;
+
+/**
+ * Class to provide the function to set the filtering of altitude noise.
+ * The filtered altitudes are used for the profile, the charts and the
+ * climb and descent, but the altitudes of the points are left unchanged.
+ */
+public class SetAltitudeFilter extends GenericFunction
+{
+	private JDialog _dialog = null;
+	private JComboBox _typeCombo = null;
+	private WholeNumberField _windowField = null, _noiseField = null, _thresholdField = null;
+
+
+	/**
+	 * Constructor
+	 * @param inApp application object for callback
+	 */
+	public SetAltitudeFilter(App inApp)
+	{
+		super(inApp);
+	}
+
+	/** Get the name key */
+	public String getNameKey() {
+		return "function.setaltitudefilter";
+	}
+
+	/**
+	 * Begin the function
+	 */
+	public void begin()
+	{
+		// Make dialog window
+		if (_dialog == null)
+		{
+			_dialog = new JDialog(_parentFrame, I18nManager.getText(getNameKey()), true);
+			_dialog.setLocationRelativeTo(_parentFrame);
+			_dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+			_dialog.getContentPane().add(makeDialogComponents());
+			_dialog.pack();
+		}
+		// Initialise values from config
+		int type = Config.getConfigInt(Config.KEY_ALTITUDE_FILTER, AltitudeFilter.NONE);
+		_typeCombo.setSelectedIndex(type >= 0 && type < _typeCombo.getItemCount() ? type : AltitudeFilter.NONE);
+		_windowField.setValue(Config.getConfigInt(Config.KEY_ALTITUDE_WINDOW, AltitudeFilter.DEFAULT_WINDOW));
+		_noiseField.setValue(Config.getConfigInt(Config.KEY_ALTITUDE_NOISE, AltitudeFilter.DEFAULT_NOISE));
+		_thresholdField.setValue(Config.getConfigInt(Config.KEY_CLIMB_THRESHOLD, 0));
+		enableFields();
+		_dialog.setVisible(true);
+	}
+
+
+	/**
+	 * Create dialog components
+	 * @return Panel containing all gui elements in dialog
+	 */
+	private Component makeDialogComponents()
+	{
+		JPanel dialogPanel = new JPanel();
+		dialogPanel.setLayout(new BorderLayout());
+
+		// Make a central panel with the type selection and the parameters
+		JPanel mainPanel = new JPanel();
+		mainPanel.setLayout(new GridLayout(0, 2));
+		mainPanel.add(makeRightLabel("dialog.altitudefilter.type"));
+		String[] typeKeys = {"dialog.altitudefilter.none", "dialog.altitudefilter.median", "dialog.altitudefilter.kalman"};
+		String[] typeNames = new String[typeKeys.length];
+		for (int i=0; i<typeKeys.length; i++) {
+			typeNames[i] = I18nManager.getText(typeKeys[i]);
+		}
+		_typeCombo = new JComboBox(typeNames);
+		_typeCombo.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				enableFields();
+			}
+		});
+		mainPanel.add(_typeCombo);
+		mainPanel.add(makeRightLabel("dialog.altitudefilter.window"));
+		_windowField = new WholeNumberField(2);
+		mainPanel.add(_windowField);
+		mainPanel.add(makeRightLabel("dialog.altitudefilter.noise"));
+		_noiseField = new WholeNumberField(3);
+		mainPanel.add(_noiseField);
+		mainPanel.add(makeRightLabel("dialog.altitudefilter.threshold"));
+		_thresholdField = new WholeNumberField(3);
+		mainPanel.add(_thresholdField);
+		dialogPanel.add(mainPanel, BorderLayout.CENTER);
+
+		// button panel at bottom
+		JPanel buttonPanel = new JPanel();
+		buttonPanel.setLayout(new FlowLayout(FlowLayout.RIGHT));
+		JButton okButton = new JButton(I18nManager.getText("button.ok"));
+		okButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e)
+			{
+				finish();
+			}
+		});
+		buttonPanel.add(okButton);
+		JButton cancelButton = new JButton(I18nManager.getText("button.cancel"));
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e)
+			{
+				_dialog.dispose();
+			}
+		});
+		buttonPanel.add(cancelButton);
+		dialogPanel.add(buttonPanel, BorderLayout.SOUTH);
+		dialogPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 15));
+		return dialogPanel;
+	}
+
+	/**
+	 * @param inKey text key
+	 * @return right-aligned label
+	 */
+	private static final JLabel makeRightLabel(String inKey)
+	{
+		JLabel label = new JLabel(I18nManager.getText(inKey) + " : ");
+		label.setHorizontalAlignment(SwingConstants.RIGHT);
+		return label;
+	}
+
+	/**
+	 * Enable only the parameter fields used by the selected filter
+	 */
+	private void enableFields()
+	{
+		final int type = _typeCombo.getSelectedIndex();
+		_windowField.setEnabled(type == AltitudeFilter.MEDIAN);
+		_noiseField.setEnabled(type == AltitudeFilter.KALMAN);
+	}
+
+
+	/**
+	 * Finish the dialog when OK pressed
+	 */
+	private void finish()
+	{
+		Config.setConfigInt(Config.KEY_ALTITUDE_FILTER, _typeCombo.getSelectedIndex());
+		Config.setConfigInt(Config.KEY_ALTITUDE_WINDOW, _windowField.getValue());
+		Config.setConfigInt(Config.KEY_ALTITUDE_NOISE, _noiseField.getValue());
+		Config.setConfigInt(Config.KEY_CLIMB_THRESHOLD, _thresholdField.getValue());
+		_dialog.dispose();
+		// Filtered altitudes and climbs need recalculating, but the points themselves haven't changed
+		_pruneApp.getTrackInfo().getTrack().requestRescale();
+		_pruneApp.getTrackInfo().getSelection().markInvalid();
+		UpdateMessageBroker.informSubscribers(DataSubscriber.UNITS_CHANGED);
+	}
+}
@@ -0,0 +1,115 @@
+package tim.prune.function.charts;
+
+/**
+ * Class to hold a series reduced to one entry per pixel column of the chart.
+ * The lowest and highest values falling in each column are both kept,
+ * so that peaks don't get lost however many points the track has.
+ */
+public class ChartColumns
+{
+	/** Range of x values */
+	private double _xMin = 0.0, _xMax = 0.0;
+	/** Range of y values */
+	private double _yMin = 0.0, _yMax = 0.0;
+	/** Flags for columns with data */
+	private boolean[] _hasData = null;
+	/** Lowest value in each column */
+	private double[] _minValues = null;
+	/** Highest value in each column */
+	private double[] _maxValues = null;
+	/** True if any column has data */
+	private boolean _hasAnyData = false;
+
+
+	/**
+	 * Constructor
+	 * @param inXValues values for x axis
+	 * @param inYValues values for y axis
+	 * @param inNumPoints number of points in each series
+	 * @param inNumColumns number of columns, usually the width in pixels
+	 */
+	public ChartColumns(ChartSeries inXValues, ChartSeries inYValues, int inNumPoints, int inNumColumns)
+	{
+		final int numColumns = Math.max(inNumColumns, 1);
+		_hasData = new boolean[numColumns];
+		_minValues = new double[numColumns];
+		_maxValues = new double[numColumns];
+		// First pass to get the ranges
+		for (int i=0; i<inNumPoints; i++)
+		{
+			if (inXValues.hasData(i) && inYValues.hasData(i))
+			{
+				final double x = inXValues.getData(i), y = inYValues.getData(i);
+				if (!_hasAnyData)
+				{
+					_xMin = _xMax = x;
+					_yMin = _yMax = y;
+					_hasAnyData = true;
+				}
+				else
+				{
+					_xMin = Math.min(_xMin, x); _xMax = Math.max(_xMax, x);
+					_yMin = Math.min(_yMin, y); _yMax = Math.max(_yMax, y);
+				}
+			}
+		}
+		if (!_hasAnyData) {return;}
+		// Second pass to fill the columns
+		final double xRange = _xMax - _xMin;
+		for (int i=0; i<inNumPoints; i++)
+		{
+			if (inXValues.hasData(i) && inYValues.hasData(i))
+			{
+				final int column = (xRange > 0.0 ? (int) ((inXValues.getData(i) - _xMin) / xRange * (numColumns - 1)) : 0);
+				final double y = inYValues.getData(i);
+				if (!_hasData[column])
+				{
+					_minValues[column] = _maxValues[column] = y;
+					_hasData[column] = true;
+				}
+				else
+				{
+					_minValues[column] = Math.min(_minValues[column], y);
+					_maxValues[column] = Math.max(_maxValues[column], y);
+				}
+			}
+		}
+	}
+
+	/** @return true if there is any data to draw */
+	public boolean hasAnyData() {return _hasAnyData;}
+
+	/** @return number of columns */
+	public int getNumColumns() {return _hasData.length;}
+
+	/** @return true if given column has data */
+	public boolean hasData(int inColumn) {return _hasData[inColumn];}
+
+	/** @return lowest value in given column */
+	public double getMinValue(int inColumn) {return _minValues[inColumn];}
+
+	/** @return highest value in given column */
+	public double getMaxValue(int inColumn) {return _maxValues[inColumn];}
+
+	/** @return lowest x value */
+	public double getXMin() {return _xMin;}
+
+	/** @return highest x value */
+	public double getXMax() {return _xMax;}
+
+	/** @return lowest y value */
+	public double getYMin() {return _yMin;}
+
+	/** @return highest y value */
+	public double getYMax() {return _yMax;}
+
+	/**
+	 * @param inColumn column index
+	 * @return x value at the given column
+	 */
+	public double getXValue(int inColumn)
+	{
+		if (_hasData.length <= 1) {return _xMin;}
+		return _xMin + (_xMax - _xMin) * inColumn / (_hasData.length - 1);
+	}
+}
@@ -0,0 +1,296 @@
+package tim.prune.function.charts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tim.prune.I18nManager;
+import tim.prune.config.Config;
+import tim.prune.data.Altitude;
+import tim.prune.data.Distance;
+import tim.prune.data.Track;
+import tim.prune.data.TrackMetrics;
+import tim.prune.data.Distance.Units;
+
+/**
+ * Class to calculate the data series for the charts.
+ * Distances and speeds come from the track's shared metrics,
+ * and the chosen series are converted to display units
+ * at the same time on separate threads.
+ */
+public class ChartData
+{
+	/** Values for x axis */
+	private ChartSeries _xValues = null;
+	/** Values for each y axis, or null if not chosen */
+	private ChartSeries[] _yValues = null;
+
+	/** Indexes of y axes */
+	public static final int AXIS_DISTANCE = 0;
+	public static final int AXIS_ALTITUDE = 1;
+	public static final int AXIS_SPEED = 2;
+	public static final int AXIS_VERTICAL_SPEED = 3;
+	/** Number of possible y axes */
+	public static final int NUM_Y_AXES = 4;
+
+
+	/**
+	 * Constructor, calculating all the chosen series
+	 * @param inTrack track object
+	 * @param inDistance true if x axis is distance, false for time
+	 * @param inYaxes flags for each of the y axes
+	 */
+	public ChartData(final Track inTrack, boolean inDistance, boolean[] inYaxes)
+	{
+		final boolean needDistance = inDistance || inYaxes[AXIS_DISTANCE];
+		// Fetch the metrics first so they're not calculated by several threads at once
+		final TrackMetrics metrics = inTrack.getMetrics();
+		// One task for the x axis, and one for each of the other y axes
+		ExecutorService executor = Executors.newFixedThreadPool(
+			Math.min(NUM_Y_AXES + 1, Runtime.getRuntime().availableProcessors()));
+		try
+		{
+			Future<ChartSeries> distanceFuture = null, timeFuture = null;
+			if (needDistance) {
+				distanceFuture = executor.submit(new SeriesTask(inTrack, metrics, AXIS_DISTANCE));
+			}
+			if (!inDistance) {
+				timeFuture = executor.submit(new SeriesTask(inTrack, metrics, -1));
+			}
+			// One entry for each y axis, null if not chosen
+			List<Future<ChartSeries>> yFutures = new ArrayList<Future<ChartSeries>>();
+			for (int i=0; i<NUM_Y_AXES; i++)
+			{
+				if (i != AXIS_DISTANCE && inYaxes[i]) {
+					yFutures.add(executor.submit(new SeriesTask(inTrack, metrics, i)));
+				}
+				else {
+					yFutures.add(null);
+				}
+			}
+			// Collect the results
+			ChartSeries distValues = (needDistance ? distanceFuture.get() : null);
+			_xValues = (inDistance ? distValues : timeFuture.get());
+			_yValues = new ChartSeries[NUM_Y_AXES];
+			if (inYaxes[AXIS_DISTANCE]) {
+				_yValues[AXIS_DISTANCE] = distValues;
+			}
+			for (int i=AXIS_ALTITUDE; i<NUM_Y_AXES; i++)
+			{
+				if (yFutures.get(i) != null) {
+					_yValues[i] = yFutures.get(i).get();
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			throw new IllegalStateException(ie);
+		}
+		catch (ExecutionException ee) {
+			throw new IllegalStateException(ee.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Task to calculate a single series
+	 */
+	private static class SeriesTask implements Callable<ChartSeries>
+	{
+		private Track _track = null;
+		private TrackMetrics _metrics = null;
+		private int _axis = 0;
+
+		/**
+		 * Constructor
+		 * @param inTrack track object
+		 * @param inMetrics metrics of track
+		 * @param inAxis index of y axis, or -1 for time
+		 */
+		public SeriesTask(Track inTrack, TrackMetrics inMetrics, int inAxis)
+		{
+			_track = inTrack;
+			_metrics = inMetrics;
+			_axis = inAxis;
+		}
+
+		/** Calculate the values */
+		public ChartSeries call()
+		{
+			switch (_axis)
+			{
+				case AXIS_DISTANCE: return getDistanceValues(_metrics);
+				case AXIS_ALTITUDE: return getAltitudeValues(_track, _metrics);
+				case AXIS_SPEED: return getSpeedValues(_metrics);
+				case AXIS_VERTICAL_SPEED: return getVertSpeedValues(_metrics);
+			}
+			return getTimeValues(_metrics);
+		}
+	}
+
+	/**
+	 * @return values for x axis
+	 */
+	public ChartSeries getXValues()
+	{
+		return _xValues;
+	}
+
+	/**
+	 * @param inAxis index of y axis
+	 * @return values for this y axis, or null if not chosen
+	 */
+	public ChartSeries getYValues(int inAxis)
+	{
+		return _yValues[inAxis];
+	}
+
+	/**
+	 * @param inDistance true if x axis is distance, false for time
+	 * @return label for x axis including units
+	 */
+	public static String getXAxisLabel(boolean inDistance)
+	{
+		if (inDistance) {
+			return I18nManager.getText("fieldname.distance") + " (" + getUnitsLabel("units.kilometres.short", "units.miles.short") + ")";
+		}
+		return I18nManager.getText("fieldname.time") + " (" + I18nManager.getText("units.hours") + ")";
+	}
+
+	/**
+	 * @param inAxis index of y axis
+	 * @return label for y axis including units
+	 */
+	public static String getYAxisLabel(int inAxis)
+	{
+		switch (inAxis)
+		{
+			case AXIS_DISTANCE:
+				return getTitle(inAxis) + " (" + getUnitsLabel("units.kilometres.short", "units.miles.short") + ")";
+			case AXIS_ALTITUDE:
+				return getTitle(inAxis) + " (" + getUnitsLabel("units.metres.short", "units.feet.short") + ")";
+			case AXIS_SPEED:
+				return getTitle(inAxis) + " (" + getUnitsLabel("units.kmh", "units.mph") + ")";
+		}
+		return getTitle(inAxis) + " (" + getUnitsLabel("units.metrespersec", "units.feetpersec") + ")";
+	}
+
+	/**
+	 * @param inAxis index of y axis
+	 * @return title of chart for this y axis
+	 */
+	public static String getTitle(int inAxis)
+	{
+		final String[] keys = {"fieldname.distance", "fieldname.altitude", "fieldname.speed", "fieldname.verticalspeed"};
+		return I18nManager.getText(keys[inAxis]);
+	}
+
+	/**
+	 * Get the units label for the given keys
+	 * @param inMetric key if metric
+	 * @param inImperial key if imperial
+	 * @return display label with appropriate text
+	 */
+	private static String getUnitsLabel(String inMetric, String inImperial)
+	{
+		String key = Config.getConfigBoolean(Config.KEY_METRIC_UNITS)?inMetric:inImperial;
+		return I18nManager.getText(key);
+	}
+
+
+	/**
+	 * Get the distance values for each point in the given track
+	 * @param inMetrics metrics of track
+	 * @return distance values in a ChartSeries object
+	 */
+	private static ChartSeries getDistanceValues(TrackMetrics inMetrics)
+	{
+		ChartSeries values = new ChartSeries(inMetrics.getNumPoints());
+		final Units units = Config.getConfigBoolean(Config.KEY_METRIC_UNITS) ? Units.KILOMETRES : Units.MILES;
+		for (int i=0; i<inMetrics.getNumPoints(); i++) {
+			values.setData(i, Distance.convertRadiansToDistance(inMetrics.getDistance(i), units));
+		}
+		return values;
+	}
+
+	/**
+	 * Get the time values for each point in the given track
+	 * @param inMetrics metrics of track
+	 * @return time values in a ChartSeries object
+	 */
+	private static ChartSeries getTimeValues(TrackMetrics inMetrics)
+	{
+		ChartSeries values = new ChartSeries(inMetrics.getNumPoints());
+		for (int i=0; i<inMetrics.getNumPoints(); i++)
+		{
+			if (inMetrics.hasTime(i)) {
+				values.setData(i, inMetrics.getSeconds(i) / 60.0 / 60.0);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Calculate the altitude values for each point in the given track, after any filtering
+	 * @param inTrack track object
+	 * @param inMetrics metrics of track
+	 * @return altitude values in a ChartSeries object
+	 */
+	private static ChartSeries getAltitudeValues(Track inTrack, TrackMetrics inMetrics)
+	{
+		ChartSeries values = new ChartSeries(inMetrics.getNumPoints());
+		Altitude.Format altFormat = Config.getConfigBoolean(Config.KEY_METRIC_UNITS)?Altitude.Format.METRES:Altitude.Format.FEET;
+		for (int i=0; i<inMetrics.getNumPoints(); i++) {
+			if (inTrack.getPoint(i).hasAltitude()) {
+				values.setData(i, inMetrics.getAltitude(i, altFormat));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Get the speed values for each point in the given track
+	 * @param inMetrics metrics of track
+	 * @return speed values in a ChartSeries object
+	 */
+	private static ChartSeries getSpeedValues(TrackMetrics inMetrics)
+	{
+		ChartSeries values = new ChartSeries(inMetrics.getNumPoints());
+		final Units units = Config.getConfigBoolean(Config.KEY_METRIC_UNITS) ? Units.KILOMETRES : Units.MILES;
+		for (int i=0; i<inMetrics.getNumPoints(); i++)
+		{
+			if (inMetrics.hasSpeed(i)) {
+				values.setData(i, Distance.convertRadiansToDistance(inMetrics.getSpeed(i), units) * 60.0 * 60.0);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Get the vertical speed values for each point in the given track
+	 * @param inMetrics metrics of track
+	 * @return vertical speed values in a ChartSeries object
+	 */
+	private static ChartSeries getVertSpeedValues(TrackMetrics inMetrics)
+	{
+		ChartSeries values = new ChartSeries(inMetrics.getNumPoints());
+		final boolean metric = Config.getConfigBoolean(Config.KEY_METRIC_UNITS);
+		for (int i=0; i<inMetrics.getNumPoints(); i++)
+		{
+			if (inMetrics.hasVerticalSpeed(i))
+			{
+				double vspeed = inMetrics.getVerticalSpeed(i);
+				if (!metric) {
+					vspeed = Distance.convertRadiansToDistance(Distance.convertDistanceToRadians(vspeed, Units.METRES), Units.FEET);
+				}
+				values.setData(i, vspeed);
+			}
+		}
+		return values;
+	}
+}
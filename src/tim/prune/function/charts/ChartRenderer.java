@@ -0,0 +1,413 @@
+package tim.prune.function.charts;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+
+import tim.prune.save.ExportWriter;
+
+/**
+ * Class to draw the charts without any external program,
+ * either onto an image or into an svg file.
+ * Each series is first reduced to one column per pixel,
+ * so drawing takes the same time however long the track is.
+ */
+public class ChartRenderer
+{
+	/** Chart data */
+	private ChartData _data = null;
+	/** Indexes of the y axes to draw, from top to bottom */
+	private int[] _axes = null;
+	/** True if x axis is distance */
+	private boolean _distance = true;
+	/** Total width in pixels */
+	private int _width = 0;
+	/** Total height in pixels */
+	private int _height = 0;
+
+	/** Space around the plotting area of each chart */
+	private static final int LEFT_MARGIN = 70, RIGHT_MARGIN = 20, TOP_MARGIN = 22, BOTTOM_MARGIN = 38;
+	/** Colour of the filled area, matching the previous gnuplot charts */
+	private static final Color FILL_COLOUR = new Color(0, 144, 0);
+	/** Length of tick marks */
+	private static final int TICK_LENGTH = 4;
+	/** Approximate number of ticks on each axis */
+	private static final int NUM_TICKS = 5;
+
+
+	/**
+	 * Interface for the drawing operations, so the same layout code
+	 * can draw onto an image or write svg
+	 */
+	private interface ChartCanvas
+	{
+		/** Fill the polygon with the chart colour and outline it */
+		void drawArea(int[] inXs, int[] inYs, int inNumPoints) throws IOException;
+		/** Draw a black line */
+		void drawLine(int inX1, int inY1, int inX2, int inY2) throws IOException;
+		/** Draw a rectangle outline */
+		void drawRect(int inX, int inY, int inWidth, int inHeight) throws IOException;
+		/**
+		 * Draw text
+		 * @param inAlign -1 for left, 0 for centre, 1 for right aligned
+		 * @param inVertical true to draw upwards
+		 */
+		void drawText(String inText, int inX, int inY, int inAlign, boolean inVertical) throws IOException;
+	}
+
+	/**
+	 * Canvas drawing onto an image
+	 */
+	private static class ImageCanvas implements ChartCanvas
+	{
+		private Graphics2D _g = null;
+		private Color _fillColour = new Color(FILL_COLOUR.getRed(), FILL_COLOUR.getGreen(), FILL_COLOUR.getBlue(), 128);
+
+		/** Constructor */
+		public ImageCanvas(Graphics2D inGraphics)
+		{
+			_g = inGraphics;
+			_g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			_g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			_g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+			_g.setStroke(new BasicStroke(1.0f));
+		}
+
+		public void drawArea(int[] inXs, int[] inYs, int inNumPoints)
+		{
+			_g.setColor(_fillColour);
+			_g.fillPolygon(inXs, inYs, inNumPoints);
+			_g.setColor(FILL_COLOUR);
+			_g.drawPolygon(inXs, inYs, inNumPoints);
+		}
+
+		public void drawLine(int inX1, int inY1, int inX2, int inY2)
+		{
+			_g.setColor(Color.BLACK);
+			_g.drawLine(inX1, inY1, inX2, inY2);
+		}
+
+		public void drawRect(int inX, int inY, int inWidth, int inHeight)
+		{
+			_g.setColor(Color.BLACK);
+			_g.drawRect(inX, inY, inWidth, inHeight);
+		}
+
+		public void drawText(String inText, int inX, int inY, int inAlign, boolean inVertical)
+		{
+			_g.setColor(Color.BLACK);
+			FontMetrics metrics = _g.getFontMetrics();
+			final int offset = (inAlign + 1) * metrics.stringWidth(inText) / 2;
+			if (inVertical)
+			{
+				AffineTransform transform = _g.getTransform();
+				_g.rotate(-Math.PI / 2.0, inX, inY);
+				_g.drawString(inText, inX - offset, inY);
+				_g.setTransform(transform);
+			}
+			else {
+				_g.drawString(inText, inX - offset, inY);
+			}
+		}
+	}
+
+	/**
+	 * Canvas writing svg elements
+	 */
+	private static class SvgCanvas implements ChartCanvas
+	{
+		private ExportWriter _writer = null;
+		private static final String[] ANCHORS = {"start", "middle", "end"};
+
+		/** Constructor */
+		public SvgCanvas(ExportWriter inWriter)
+		{
+			_writer = inWriter;
+		}
+
+		public void drawArea(int[] inXs, int[] inYs, int inNumPoints) throws IOException
+		{
+			_writer.write("<polygon fill=\"#009000\" fill-opacity=\"0.5\" stroke=\"#009000\" points=\"");
+			for (int i=0; i<inNumPoints; i++)
+			{
+				if (i > 0) {_writer.write(' ');}
+				_writer.write(Integer.toString(inXs[i]));
+				_writer.write(',');
+				_writer.write(Integer.toString(inYs[i]));
+			}
+			_writer.write("\"/>\n");
+		}
+
+		public void drawLine(int inX1, int inY1, int inX2, int inY2) throws IOException
+		{
+			_writer.write("<line x1=\"" + inX1 + "\" y1=\"" + inY1 + "\" x2=\"" + inX2 + "\" y2=\"" + inY2
+				+ "\" stroke=\"black\"/>\n");
+		}
+
+		public void drawRect(int inX, int inY, int inWidth, int inHeight) throws IOException
+		{
+			_writer.write("<rect x=\"" + inX + "\" y=\"" + inY + "\" width=\"" + inWidth + "\" height=\"" + inHeight
+				+ "\" fill=\"none\" stroke=\"black\"/>\n");
+		}
+
+		public void drawText(String inText, int inX, int inY, int inAlign, boolean inVertical) throws IOException
+		{
+			_writer.write("<text x=\"" + inX + "\" y=\"" + inY + "\" text-anchor=\"" + ANCHORS[inAlign + 1] + "\"");
+			if (inVertical) {
+				_writer.write(" transform=\"rotate(-90 " + inX + " " + inY + ")\"");
+			}
+			_writer.write(">");
+			_writer.write(inText.replaceAll("&", "&amp;").replaceAll("<", "&lt;").replaceAll(">", "&gt;"));
+			_writer.write("</text>\n");
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param inData chart data
+	 * @param inYaxes flags for each of the y axes
+	 * @param inDistance true if x axis is distance, false for time
+	 * @param inWidth total width in pixels
+	 * @param inHeight total height in pixels
+	 */
+	public ChartRenderer(ChartData inData, boolean[] inYaxes, boolean inDistance, int inWidth, int inHeight)
+	{
+		_data = inData;
+		_distance = inDistance;
+		_width = inWidth;
+		_height = inHeight;
+		ArrayList<Integer> axes = new ArrayList<Integer>();
+		for (int i=0; i<inYaxes.length; i++)
+		{
+			if (inYaxes[i]) {
+				axes.add(i);
+			}
+		}
+		_axes = new int[axes.size()];
+		for (int i=0; i<_axes.length; i++) {
+			_axes[i] = axes.get(i);
+		}
+	}
+
+	/**
+	 * @return image of charts
+	 */
+	public BufferedImage drawImage()
+	{
+		BufferedImage image = new BufferedImage(_width, _height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, _width, _height);
+		try {
+			drawCharts(new ImageCanvas(g));
+		}
+		catch (IOException ioe) {} // can't happen when drawing onto an image
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Write the charts to a png file
+	 * @param inFile file to write
+	 * @throws IOException on write failure
+	 */
+	public void writePng(File inFile) throws IOException
+	{
+		if (!ImageIO.write(drawImage(), "png", inFile)) {
+			throw new IOException("png");
+		}
+	}
+
+	/**
+	 * Write the charts to an svg file
+	 * @param inFile file to write
+	 * @throws IOException on write failure
+	 */
+	public void writeSvg(File inFile) throws IOException
+	{
+		ExportWriter writer = new ExportWriter(new FileOutputStream(inFile), "UTF-8");
+		try
+		{
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + _width + "\" height=\"" + _height
+				+ "\" font-family=\"sans-serif\" font-size=\"11\">\n");
+			writer.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+			drawCharts(new SvgCanvas(writer));
+			writer.write("</svg>\n");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Write the columns of the given chart as gnuplot inline data, ended by 'e'
+	 * @param inWriter writer to the gnuplot process
+	 * @param inAxis index of y axis
+	 * @param inNumColumns number of columns to reduce the series to
+	 * @throws IOException on write failure
+	 */
+	public void writeGnuplotData(Writer inWriter, int inAxis, int inNumColumns) throws IOException
+	{
+		ChartColumns columns = makeColumns(inAxis, inNumColumns);
+		for (int c=0; c<columns.getNumColumns(); c++)
+		{
+			if (columns.hasData(c))
+			{
+				final String x = Double.toString(columns.getXValue(c));
+				inWriter.write(x + " " + columns.getMinValue(c) + "\n");
+				if (columns.getMaxValue(c) != columns.getMinValue(c)) {
+					inWriter.write(x + " " + columns.getMaxValue(c) + "\n");
+				}
+			}
+		}
+		inWriter.write("e\n");
+	}
+
+	/**
+	 * Reduce the given series to columns
+	 * @param inAxis index of y axis
+	 * @param inNumColumns number of columns
+	 * @return columns object
+	 */
+	private ChartColumns makeColumns(int inAxis, int inNumColumns)
+	{
+		ChartSeries xValues = _data.getXValues();
+		ChartSeries yValues = _data.getYValues(inAxis);
+		return new ChartColumns(xValues, yValues, xValues.getNumPoints(), inNumColumns);
+	}
+
+	/**
+	 * Draw all the charts, one above the other
+	 * @param inCanvas canvas to draw on
+	 */
+	private void drawCharts(ChartCanvas inCanvas) throws IOException
+	{
+		int[] heights = Charter.getHeights(_axes.length);
+		for (int c=0; c<_axes.length; c++)
+		{
+			// Heights are given as percentages, measured from the bottom
+			final int top = (int) Math.round(_height * (100 - heights[c*2] - heights[c*2+1]) / 100.0);
+			final int bottom = (int) Math.round(_height * (100 - heights[c*2]) / 100.0);
+			drawChart(inCanvas, _axes[c], top, bottom - top);
+		}
+	}
+
+	/**
+	 * Draw a single chart
+	 * @param inCanvas canvas to draw on
+	 * @param inAxis index of y axis
+	 * @param inTop top of chart in pixels
+	 * @param inHeight height of chart in pixels
+	 */
+	private void drawChart(ChartCanvas inCanvas, int inAxis, int inTop, int inHeight) throws IOException
+	{
+		final int plotLeft = LEFT_MARGIN, plotTop = inTop + TOP_MARGIN;
+		final int plotWidth = Math.max(_width - LEFT_MARGIN - RIGHT_MARGIN, 1);
+		final int plotHeight = Math.max(inHeight - TOP_MARGIN - BOTTOM_MARGIN, 1);
+		ChartColumns columns = makeColumns(inAxis, plotWidth);
+		// Ranges, avoiding zero width
+		double xMin = columns.getXMin(), xMax = columns.getXMax();
+		if (xMax <= xMin) {xMax = xMin + 1.0;}
+		double yMin = columns.getYMin(), yMax = columns.getYMax();
+		if (yMax <= yMin) {yMin -= 1.0; yMax += 1.0;}
+		final double yScale = plotHeight / (yMax - yMin);
+		// Fill down (or up) to zero, or the edge of the plot if zero isn't visible
+		final double baseValue = Math.max(yMin, Math.min(yMax, 0.0));
+		final int baseY = plotTop + plotHeight - (int) Math.round((baseValue - yMin) * yScale);
+
+		// Draw each run of columns with data as a filled area
+		int[] xs = new int[plotWidth * 2 + 2], ys = new int[plotWidth * 2 + 2];
+		int c = 0;
+		while (c < plotWidth)
+		{
+			if (!columns.hasData(c)) {c++; continue;}
+			int runEnd = c;
+			while (runEnd + 1 < plotWidth && columns.hasData(runEnd + 1)) {runEnd++;}
+			int numPoints = 0;
+			// Along the top from left to right, then back along the bottom
+			for (int i=c; i<=runEnd; i++)
+			{
+				xs[numPoints] = plotLeft + i;
+				ys[numPoints++] = plotTop + plotHeight
+					- (int) Math.round((Math.max(columns.getMaxValue(i), baseValue) - yMin) * yScale);
+			}
+			for (int i=runEnd; i>=c; i--)
+			{
+				xs[numPoints] = plotLeft + i;
+				ys[numPoints++] = plotTop + plotHeight
+					- (int) Math.round((Math.min(columns.getMinValue(i), baseValue) - yMin) * yScale);
+			}
+			if (numPoints == 2)
+			{
+				// single column, so make it a line
+				xs[numPoints] = xs[0]; ys[numPoints++] = baseY;
+			}
+			inCanvas.drawArea(xs, ys, numPoints);
+			c = runEnd + 1;
+		}
+
+		// Axes and ticks
+		inCanvas.drawRect(plotLeft, plotTop, plotWidth, plotHeight);
+		final double xStep = getTickStep(xMax - xMin), yStep = getTickStep(yMax - yMin);
+		for (double x = Math.ceil(xMin / xStep) * xStep; x <= xMax + xStep * 1e-6; x += xStep)
+		{
+			final int px = plotLeft + (int) Math.round((x - xMin) / (xMax - xMin) * (plotWidth - 1));
+			inCanvas.drawLine(px, plotTop + plotHeight, px, plotTop + plotHeight - TICK_LENGTH);
+			inCanvas.drawText(formatTick(x, xStep), px, plotTop + plotHeight + 13, 0, false);
+		}
+		for (double y = Math.ceil(yMin / yStep) * yStep; y <= yMax + yStep * 1e-6; y += yStep)
+		{
+			final int py = plotTop + plotHeight - (int) Math.round((y - yMin) * yScale);
+			inCanvas.drawLine(plotLeft, py, plotLeft + TICK_LENGTH, py);
+			inCanvas.drawText(formatTick(y, yStep), plotLeft - 4, py + 4, 1, false);
+		}
+		// Labels and title
+		inCanvas.drawText(ChartData.getXAxisLabel(_distance), plotLeft + plotWidth / 2, plotTop + plotHeight + 30, 0, false);
+		inCanvas.drawText(ChartData.getYAxisLabel(inAxis), 16, plotTop + plotHeight / 2, 0, true);
+		inCanvas.drawText(ChartData.getTitle(inAxis), plotLeft + plotWidth / 2, plotTop - 7, 0, false);
+	}
+
+	/**
+	 * Choose a round step between ticks for the given range
+	 * @param inRange range of values
+	 * @return step of 1, 2 or 5 times a power of ten
+	 */
+	private static double getTickStep(double inRange)
+	{
+		final double rough = inRange / NUM_TICKS;
+		final double power = Math.pow(10.0, Math.floor(Math.log10(rough)));
+		final double fraction = rough / power;
+		if (fraction < 1.5) {return power;}
+		if (fraction < 3.5) {return 2.0 * power;}
+		if (fraction < 7.5) {return 5.0 * power;}
+		return 10.0 * power;
+	}
+
+	/**
+	 * Format a tick value with enough decimal places for the step
+	 * @param inValue value of tick
+	 * @param inStep step between ticks
+	 * @return formatted value
+	 */
+	private static String formatTick(double inValue, double inStep)
+	{
+		final int decimals = Math.max(0, (int) -Math.floor(Math.log10(inStep) + 1e-9));
+		// avoid showing -0
+		final double value = (Math.abs(inValue) < inStep * 1e-6 ? 0.0 : inValue);
+		return String.format("%." + decimals + "f", value);
+	}
+}
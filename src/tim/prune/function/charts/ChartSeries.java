@@ -20,6 +20,14 @@ public class ChartSeries
 		_data = new double[inNumPoints];
 	}
 
+	/**
+	 * @return number of points in series
+	 */
+	public int getNumPoints()
+	{
+		return _data.length;
+	}
+
 	/**
 	 * @param inIndex index of point
 	 * @return true if series has data for this point
@@ -5,14 +5,16 @@ import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
+import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JDialog;
@@ -29,17 +31,13 @@ import tim.prune.ExternalTools;
 import tim.prune.GenericFunction;
 import tim.prune.I18nManager;
 import tim.prune.config.Config;
-import tim.prune.data.Altitude;
-import tim.prune.data.DataPoint;
-import tim.prune.data.Distance;
 import tim.prune.data.Field;
-import tim.prune.data.Timestamp;
 import tim.prune.data.Track;
-import tim.prune.data.Distance.Units;
 import tim.prune.load.GenericFileFilter;
 
 /**
- * Class to manage the generation of charts using gnuplot
+ * Class to manage the generation of charts, either drawn
+ * directly or optionally using gnuplot
  */
 public class Charter extends GenericFunction
 {
@@ -53,7 +51,11 @@ public class Charter extends GenericFunction
 	private JCheckBox[] _yAxesBoxes = null;
 	/** radio button for svg output */
 	private JRadioButton _svgRadio = null;
-	/** file chooser for saving svg file */
+	/** radio button for png output */
+	private JRadioButton _pngRadio = null;
+	/** checkbox for drawing with gnuplot instead */
+	private JCheckBox _gnuplotCheckbox = null;
+	/** file chooser for saving svg or png file */
 	private JFileChooser _fileChooser = null;
 	/** text field for svg width */
 	private JTextField _svgWidthField = null;
@@ -87,12 +89,6 @@ public class Charter extends GenericFunction
 	 */
 	public void begin()
 	{
-		// First check if gnuplot is available
-		if (!ExternalTools.isToolInstalled(ExternalTools.TOOL_GNUPLOT))
-		{
-			_pruneApp.showErrorMessage(getNameKey(), "dialog.charts.gnuplotnotfound");
-			return;
-		}
 		// Make dialog window
 		if (_dialog == null)
 		{
@@ -164,10 +160,16 @@ public class Charter extends GenericFunction
 		JRadioButton screenRadio = new JRadioButton(I18nManager.getText("dialog.charts.screen"));
 		screenRadio.setSelected(true);
 		_svgRadio = new JRadioButton(I18nManager.getText("dialog.charts.svg"));
+		_pngRadio = new JRadioButton(I18nManager.getText("dialog.charts.png"));
 		ButtonGroup outputGroup = new ButtonGroup();
-		outputGroup.add(screenRadio); outputGroup.add(_svgRadio);
-		radiosPanel.add(screenRadio); radiosPanel.add(_svgRadio);
+		outputGroup.add(screenRadio); outputGroup.add(_svgRadio); outputGroup.add(_pngRadio);
+		radiosPanel.add(screenRadio); radiosPanel.add(_svgRadio); radiosPanel.add(_pngRadio);
 		outputPanel.add(radiosPanel, BorderLayout.NORTH);
+		// gnuplot is optional, only enabled if it's installed
+		_gnuplotCheckbox = new JCheckBox(I18nManager.getText("dialog.charts.usegnuplot"));
+		JPanel gnuplotPanel = new JPanel();
+		gnuplotPanel.add(_gnuplotCheckbox);
+		outputPanel.add(gnuplotPanel, BorderLayout.WEST);
 		// panel for svg width, height
 		JPanel sizePanel = new JPanel();
 		sizePanel.setLayout(new GridLayout(2, 2, 10, 1));
@@ -230,6 +232,11 @@ public class Charter extends GenericFunction
 		enableYbox(1, hasAltitudes);
 		enableYbox(2, hasTimes);
 		enableYbox(3, hasTimes && hasAltitudes);
+		final boolean hasGnuplot = ExternalTools.isToolInstalled(ExternalTools.TOOL_GNUPLOT);
+		_gnuplotCheckbox.setEnabled(hasGnuplot);
+		if (!hasGnuplot) {
+			_gnuplotCheckbox.setSelected(false);
+		}
 		return (hasTimes || hasAltitudes);
 	}
 
@@ -264,53 +271,105 @@ public class Charter extends GenericFunction
 			_yAxesBoxes[1].setSelected(true);
 			numCharts = 1;
 		}
-		int[] heights = getHeights(numCharts);
-
-		boolean showSvg = _svgRadio.isSelected();
-		File svgFile = null;
-		if (showSvg) {
-			svgFile = selectSvgFile();
-			if (svgFile == null) {showSvg = false;}
+		boolean[] yAxes = new boolean[_yAxesBoxes.length];
+		for (int i=0; i<yAxes.length; i++) {
+			yAxes[i] = _yAxesBoxes[i].isSelected();
+		}
+		boolean showSvg = _svgRadio.isSelected(), showPng = _pngRadio.isSelected();
+		File outputFile = null;
+		if (showSvg || showPng)
+		{
+			outputFile = (showSvg ? selectOutputFile("svg", "filetype.svg") : selectOutputFile("png", "filetype.png"));
+			if (outputFile == null) {showSvg = showPng = false;}
+		}
+		final int width = Integer.parseInt(getSvgValue(_svgWidthField, DEFAULT_SVG_WIDTH));
+		final int height = Integer.parseInt(getSvgValue(_svgHeightField, DEFAULT_SVG_HEIGHT));
+		// Calculate all the series at once
+		ChartData data = new ChartData(inTrack, _distanceRadio.isSelected(), yAxes);
+		ChartRenderer renderer = new ChartRenderer(data, yAxes, _distanceRadio.isSelected(), width, height);
+		try
+		{
+			if (_gnuplotCheckbox.isSelected()) {
+				runGnuplot(renderer, yAxes, numCharts, outputFile, showSvg, width, height);
+			}
+			else if (showSvg) {
+				renderer.writeSvg(outputFile);
+			}
+			else if (showPng) {
+				renderer.writePng(outputFile);
+			}
+			else
+			{
+				// Show the image in a separate window
+				JDialog chartDialog = new JDialog(_parentFrame, I18nManager.getText(getNameKey()), false);
+				chartDialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+				chartDialog.getContentPane().add(new JLabel(new ImageIcon(renderer.drawImage())));
+				chartDialog.pack();
+				chartDialog.setLocationRelativeTo(_parentFrame);
+				chartDialog.setVisible(true);
+			}
+		}
+		catch (Exception e) {
+			_pruneApp.showErrorMessageNoLookup(getNameKey(), e.getMessage());
 		}
-		OutputStreamWriter writer = null;
+	}
+
+
+	/**
+	 * Draw the charts using gnuplot, piping the commands and data to it
+	 * @param inRenderer renderer to give the data
+	 * @param inYaxes flags for each y axis
+	 * @param inNumCharts number of charts to draw
+	 * @param inFile file to write, or null for the screen
+	 * @param inSvg true for svg, false for png
+	 * @param inWidth width in pixels
+	 * @param inHeight height in pixels
+	 * @throws IOException if gnuplot couldn't be run
+	 */
+	private void runGnuplot(ChartRenderer inRenderer, boolean[] inYaxes, int inNumCharts, File inFile,
+		boolean inSvg, int inWidth, int inHeight)
+	throws IOException
+	{
+		int[] heights = getHeights(inNumCharts);
+		final String gnuplotPath = Config.getConfigString(Config.KEY_GNUPLOT_PATH);
+		Process process = Runtime.getRuntime().exec(gnuplotPath + " -persist");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
 		try
 		{
-			final String gnuplotPath = Config.getConfigString(Config.KEY_GNUPLOT_PATH);
-			Process process = Runtime.getRuntime().exec(gnuplotPath + " -persist");
-			writer = new OutputStreamWriter(process.getOutputStream());
-			if (showSvg)
+			if (inFile != null)
 			{
-				writer.write("set terminal svg size " + getSvgValue(_svgWidthField, DEFAULT_SVG_WIDTH) + " "
-					+ getSvgValue(_svgHeightField, DEFAULT_SVG_HEIGHT) + "\n");
-				writer.write("set out '" + svgFile.getAbsolutePath() + "'\n");
+				if (inSvg) {
+					writer.write("set terminal svg size " + inWidth + " " + inHeight + "\n");
+				}
+				else {
+					writer.write("set terminal png size " + inWidth + "," + inHeight + "\n");
+				}
+				writer.write("set out '" + inFile.getAbsolutePath() + "'\n");
 			}
-			if (numCharts > 1) {
-				writer.write("set multiplot layout " + numCharts + ",1\n");
+			if (inNumCharts > 1) {
+				writer.write("set multiplot layout " + inNumCharts + ",1\n");
 			}
 			// Loop over possible charts
 			int chartNum = 0;
-			for (int c=0; c<_yAxesBoxes.length; c++)
+			for (int c=0; c<inYaxes.length; c++)
 			{
-				if (_yAxesBoxes[c].isSelected())
+				if (inYaxes[c])
 				{
 					writer.write("set size 1," + (0.01*heights[chartNum*2+1]) + "\n");
 					writer.write("set origin 0," + (0.01*heights[chartNum*2]) + "\n");
-					writeChart(writer, inTrack, _distanceRadio.isSelected(), c);
+					writeChart(writer, inRenderer, _distanceRadio.isSelected(), c, inWidth);
 					chartNum++;
 				}
 			}
 			// Close multiplot if open
-			if (numCharts > 1) {
+			if (inNumCharts > 1) {
 				writer.write("unset multiplot\n");
 			}
 		}
-		catch (Exception e) {
-			_pruneApp.showErrorMessageNoLookup(getNameKey(), e.getMessage());
-		}
 		finally {
 			try {
 				// Close writer
-				if (writer != null) writer.close();
+				writer.close();
 			}
 			catch (Exception e) {} // ignore
 		}
@@ -338,296 +397,44 @@ public class Charter extends GenericFunction
 
 
 	/**
-	 * Write out the selected chart to the given Writer object
+	 * Write out the selected chart to the given Writer object, with the data inline
 	 * @param inWriter writer object
-	 * @param inTrack Track containing data
+	 * @param inRenderer renderer to give the data
 	 * @param inDistance true if x axis is distance
 	 * @param inYaxis index of y axis
+	 * @param inWidth width of output, used to reduce the data
 	 * @throws IOException if writing error occurred
 	 */
-	private static void writeChart(OutputStreamWriter inWriter, Track inTrack, boolean inDistance, int inYaxis)
+	private static void writeChart(Writer inWriter, ChartRenderer inRenderer, boolean inDistance,
+		int inYaxis, int inWidth)
 	throws IOException
 	{
-		ChartSeries xValues = null, yValues = null;
-		ChartSeries distValues = getDistanceValues(inTrack);
-		// Choose x values according to axis
-		if (inDistance) {
-			xValues = distValues;
-		}
-		else {
-			xValues = getTimeValues(inTrack);
-		}
-		// Choose y values according to axis
-		switch (inYaxis)
-		{
-		case 0: // y axis is distance
-			yValues = distValues;
-			break;
-		case 1: // y axis is altitude
-			yValues = getAltitudeValues(inTrack);
-			break;
-		case 2: // y axis is speed
-			yValues = getSpeedValues(inTrack);
-			break;
-		case 3: // y axis is vertical speed
-			yValues = getVertSpeedValues(inTrack);
-			break;
-		}
-		// Make a temporary data file for the output (one per subchart)
-		File tempFile = File.createTempFile("prunedata", null);
-		tempFile.deleteOnExit();
-		// write out values for x and y to temporary file
-		FileWriter tempFileWriter = null;
-		try {
-			tempFileWriter = new FileWriter(tempFile);
-			tempFileWriter.write("# Temporary data file for Prune charts\n\n");
-			for (int i=0; i<inTrack.getNumPoints(); i++) {
-				if (xValues.hasData(i) && yValues.hasData(i)) {
-					tempFileWriter.write("" + xValues.getData(i) + ", " + yValues.getData(i) + "\n");
-				}
-			}
-		}
-		catch (IOException ioe) { // rethrow
-			throw ioe;
-		}
-		finally {
-			try {
-				tempFileWriter.close();
-			}
-			catch (Exception e) {}
-		}
-
-		// Set x axis label
-		if (inDistance) {
-			inWriter.write("set xlabel '" + I18nManager.getText("fieldname.distance") + " (" + getUnitsLabel("units.kilometres.short", "units.miles.short") + ")'\n");
-		}
-		else {
-			inWriter.write("set xlabel '" + I18nManager.getText("fieldname.time") + " (" + I18nManager.getText("units.hours") + ")'\n");
-		}
-
-		// set other labels and plot chart
-		String chartTitle = null;
-		switch (inYaxis)
-		{
-		case 0: // y axis is distance
-			inWriter.write("set ylabel '" + I18nManager.getText("fieldname.distance") + " (" + getUnitsLabel("units.kilometres.short", "units.miles.short") + ")'\n");
-			chartTitle = I18nManager.getText("fieldname.distance");
-			break;
-		case 1: // y axis is altitude
-			inWriter.write("set ylabel '" + I18nManager.getText("fieldname.altitude") + " (" + getUnitsLabel("units.metres.short", "units.feet.short") + ")'\n");
-			chartTitle = I18nManager.getText("fieldname.altitude");
-			break;
-		case 2: // y axis is speed
-			inWriter.write("set ylabel '" + I18nManager.getText("fieldname.speed") + " (" + getUnitsLabel("units.kmh", "units.mph") + ")'\n");
-			chartTitle = I18nManager.getText("fieldname.speed");
-			break;
-		case 3: // y axis is vertical speed
-			inWriter.write("set ylabel '" + I18nManager.getText("fieldname.verticalspeed") + " (" + getUnitsLabel("units.metrespersec", "units.feetpersec") + ")'\n");
-			chartTitle = I18nManager.getText("fieldname.verticalspeed");
-			break;
-		}
+		inWriter.write("set xlabel '" + ChartData.getXAxisLabel(inDistance) + "'\n");
+		inWriter.write("set ylabel '" + ChartData.getYAxisLabel(inYaxis) + "'\n");
 		inWriter.write("set style fill solid 0.5 border -1\n");
-		inWriter.write("plot '" + tempFile.getAbsolutePath() + "' title '" + chartTitle + "' with filledcurve y1=0 lt rgb \"#009000\"\n");
-	}
-
-	/**
-	 * Get the units label for the given keys
-	 * @param inMetric key if metric
-	 * @param inImperial key if imperial
-	 * @return display label with appropriate text
-	 */
-	private static String getUnitsLabel(String inMetric, String inImperial)
-	{
-		String key = Config.getConfigBoolean(Config.KEY_METRIC_UNITS)?inMetric:inImperial;
-		return I18nManager.getText(key);
-	}
-
-
-	/**
-	 * Calculate the distance values for each point in the given track
-	 * @param inTrack track object
-	 * @return distance values in a ChartSeries object
-	 */
-	private static ChartSeries getDistanceValues(Track inTrack)
-	{
-		// Calculate distances and fill in in values array
-		ChartSeries values = new ChartSeries(inTrack.getNumPoints());
-		double totalRads = 0;
-		DataPoint prevPoint = null, currPoint = null;
-		for (int i=0; i<inTrack.getNumPoints(); i++)
-		{
-			currPoint = inTrack.getPoint(i);
-			if (prevPoint != null && !currPoint.isWaypoint() && !currPoint.getSegmentStart())
-			{
-				totalRads += DataPoint.calculateRadiansBetween(prevPoint, currPoint);
-			}
-			if (Config.getConfigBoolean(Config.KEY_METRIC_UNITS)) {
-				values.setData(i, Distance.convertRadiansToDistance(totalRads, Units.KILOMETRES));
-			} else {
-				values.setData(i, Distance.convertRadiansToDistance(totalRads, Units.MILES));
-			}
-			prevPoint = currPoint;
-		}
-		return values;
-	}
-
-	/**
-	 * Calculate the time values for each point in the given track
-	 * @param inTrack track object
-	 * @return time values in a ChartSeries object
-	 */
-	private static ChartSeries getTimeValues(Track inTrack)
-	{
-		// Calculate times and fill in in values array
-		ChartSeries values = new ChartSeries(inTrack.getNumPoints());
-		double seconds = 0.0;
-		Timestamp prevTimestamp = null;
-		DataPoint currPoint = null;
-		for (int i=0; i<inTrack.getNumPoints(); i++)
-		{
-			currPoint = inTrack.getPoint(i);
-			if (currPoint.hasTimestamp())
-			{
-				if (!currPoint.getSegmentStart() && prevTimestamp != null) {
-					seconds += (currPoint.getTimestamp().getSecondsSince(prevTimestamp));
-				}
-				values.setData(i, seconds / 60.0 / 60.0);
-				prevTimestamp = currPoint.getTimestamp();
-			}
-		}
-		return values;
+		inWriter.write("plot '-' title '" + ChartData.getTitle(inYaxis) + "' with filledcurve y1=0 lt rgb \"#009000\"\n");
+		inRenderer.writeGnuplotData(inWriter, inYaxis, inWidth);
 	}
 
 	/**
-	 * Calculate the altitude values for each point in the given track
-	 * @param inTrack track object
-	 * @return altitude values in a ChartSeries object
-	 */
-	private static ChartSeries getAltitudeValues(Track inTrack)
-	{
-		ChartSeries values = new ChartSeries(inTrack.getNumPoints());
-		Altitude.Format altFormat = Config.getConfigBoolean(Config.KEY_METRIC_UNITS)?Altitude.Format.METRES:Altitude.Format.FEET;
-		for (int i=0; i<inTrack.getNumPoints(); i++) {
-			if (inTrack.getPoint(i).hasAltitude()) {
-				values.setData(i, inTrack.getPoint(i).getAltitude().getValue(altFormat));
-			}
-		}
-		return values;
-	}
-
-	/**
-	 * Calculate the speed values for each point in the given track
-	 * @param inTrack track object
-	 * @return speed values in a ChartSeries object
-	 */
-	private static ChartSeries getSpeedValues(Track inTrack)
-	{
-		// Calculate speeds and fill in in values array
-		ChartSeries values = new ChartSeries(inTrack.getNumPoints());
-		DataPoint prevPoint = null, currPoint = null, nextPoint = null;
-		DataPoint[] points = getDataPoints(inTrack, false);
-		final boolean useMetric = Config.getConfigBoolean(Config.KEY_METRIC_UNITS);
-		// Loop over collected points
-		for (int i=1; i<(points.length-1); i++)
-		{
-			prevPoint = points[i-1];
-			currPoint = points[i];
-			nextPoint = points[i+1];
-			if (prevPoint != null && currPoint != null && nextPoint != null
-				&& nextPoint.getTimestamp().isAfter(currPoint.getTimestamp())
-				&& currPoint.getTimestamp().isAfter(prevPoint.getTimestamp()))
-			{
-				// Calculate average speed between prevPoint and nextPoint
-				double rads = DataPoint.calculateRadiansBetween(prevPoint, currPoint)
-					+ DataPoint.calculateRadiansBetween(currPoint, nextPoint);
-				double time = nextPoint.getTimestamp().getSecondsSince(prevPoint.getTimestamp()) / 60.0 / 60.0;
-				// Convert to distance and pass to chartseries
-				if (useMetric) {
-					values.setData(i, Distance.convertRadiansToDistance(rads, Units.KILOMETRES) / time);
-				} else {
-					values.setData(i, Distance.convertRadiansToDistance(rads, Units.MILES) / time);
-				}
-			}
-		}
-		return values;
-	}
-
-	/**
-	 * Calculate the vertical speed values for each point in the given track
-	 * @param inTrack track object
-	 * @return vertical speed values in a ChartSeries object
-	 */
-	private static ChartSeries getVertSpeedValues(Track inTrack)
-	{
-		// Calculate speeds and fill in in values array
-		ChartSeries values = new ChartSeries(inTrack.getNumPoints());
-		Altitude.Format altFormat = Config.getConfigBoolean(Config.KEY_METRIC_UNITS)?Altitude.Format.METRES:Altitude.Format.FEET;
-		DataPoint prevPoint = null, currPoint = null, nextPoint = null;
-		DataPoint[] points = getDataPoints(inTrack, true); // require that points have altitudes too
-		// Loop over collected points
-		for (int i=1; i<(points.length-1); i++)
-		{
-			prevPoint = points[i-1];
-			currPoint = points[i];
-			nextPoint = points[i+1];
-			if (prevPoint != null && currPoint != null && nextPoint != null
-				&& nextPoint.getTimestamp().isAfter(currPoint.getTimestamp())
-				&& currPoint.getTimestamp().isAfter(prevPoint.getTimestamp()))
-			{
-				// Calculate average vertical speed between prevPoint and nextPoint
-				double vspeed = (nextPoint.getAltitude().getValue(altFormat) - prevPoint.getAltitude().getValue(altFormat))
-				 * 1.0 / nextPoint.getTimestamp().getSecondsSince(prevPoint.getTimestamp());
-				values.setData(i, vspeed);
-			}
-		}
-		return values;
-	}
-
-
-	/**
-	 * Get an array of DataPoints with data for the charts
-	 * @param inTrack track object containing points
-	 * @param inRequireAltitudes true if only points with altitudes are considered
-	 * @return array of points with contiguous non-null elements (<= size) with timestamps
-	 */
-	private static DataPoint[] getDataPoints(Track inTrack, boolean inRequireAltitudes)
-	{
-		DataPoint[] points = new DataPoint[inTrack.getNumPoints()];
-		DataPoint currPoint = null;
-		int pointNum = 0;
-		// Loop over all points
-		for (int i=0; i<inTrack.getNumPoints(); i++)
-		{
-			currPoint = inTrack.getPoint(i);
-			if (currPoint != null && !currPoint.isWaypoint() && currPoint.hasTimestamp()
-				&& (!inRequireAltitudes || currPoint.hasAltitude()))
-			{
-				points[pointNum] = currPoint;
-				pointNum++;
-			}
-		}
-		// Any elements at the end of the array will stay null
-		// Also note, chronological order is not checked
-		return points;
-	}
-
-
-	/**
-	 * Select a file to write for the SVG output
+	 * Select a file to write for the SVG or PNG output
+	 * @param inExtension file extension without the dot
+	 * @param inTypeKey key for description of file type
 	 * @return selected File object or null if cancelled
 	 */
-	private File selectSvgFile()
+	private File selectOutputFile(String inExtension, String inTypeKey)
 	{
 		if (_fileChooser == null)
 		{
 			_fileChooser = new JFileChooser();
 			_fileChooser.setDialogType(JFileChooser.SAVE_DIALOG);
-			_fileChooser.setFileFilter(new GenericFileFilter("filetype.svg", new String[] {"svg"}));
 			_fileChooser.setAcceptAllFileFilterUsed(false);
 			// start from directory in config which should be set
 			String configDir = Config.getConfigString(Config.KEY_TRACK_DIR);
 			if (configDir != null) {_fileChooser.setCurrentDirectory(new File(configDir));}
 		}
+		_fileChooser.resetChoosableFileFilters();
+		_fileChooser.setFileFilter(new GenericFileFilter(inTypeKey, new String[] {inExtension}));
 		boolean chooseAgain = true;
 		while (chooseAgain)
 		{
@@ -637,8 +444,8 @@ public class Charter extends GenericFunction
 				// OK pressed and file chosen
 				File file = _fileChooser.getSelectedFile();
 				// Check file extension
-				if (!file.getName().toLowerCase().endsWith(".svg")) {
-					file = new File(file.getAbsolutePath() + ".svg");
+				if (!file.getName().toLowerCase().endsWith("." + inExtension)) {
+					file = new File(file.getAbsolutePath() + "." + inExtension);
 				}
 				// Check if file exists and if necessary prompt for overwrite
 				Object[] buttonTexts = {I18nManager.getText("button.overwrite"), I18nManager.getText("button.cancel")};
@@ -662,7 +469,7 @@ public class Charter extends GenericFunction
 	 * @param inNumCharts number of charts to draw
 	 * @return array of ints describing position and height of each subchart
 	 */
-	private static int[] getHeights(int inNumCharts)
+	static int[] getHeights(int inNumCharts)
 	{
 		if (inNumCharts <= 1) {return new int[] {0, 100};}
 		if (inNumCharts == 2) {return new int[] {25, 75, 0, 25};}
@@ -5,6 +5,13 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -12,6 +19,8 @@ import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import tim.prune.App;
 import tim.prune.GenericFunction;
@@ -22,7 +31,9 @@ import tim.prune.data.DataPoint;
 import tim.prune.data.Track;
 
 /**
- * Class to provide the function for track compression
+ * Class to provide the function for track compression.
+ * Previews are calculated on a background thread after typing pauses,
+ * and a new preview cancels any one still running.
  */
 public class CompressTrackFunction extends GenericFunction
 {
@@ -31,6 +42,19 @@ public class CompressTrackFunction extends GenericFunction
 	private JButton _okButton = null;
 	private CompressionAlgorithm[] _algorithms = null;
 	private SummaryLabel _summaryLabel = null;
+	/** Thread for calculating the previews */
+	private ExecutorService _previewExecutor = null;
+	/** Preview being calculated, if any */
+	private Future<?> _previewFuture = null;
+	/** Timer to start a preview once the parameters stop changing */
+	private Timer _previewTimer = null;
+	/** Number of the latest preview, so that results of older ones are ignored */
+	private int _previewNumber = 0;
+	/** Deletion flags, reused by each preview on the preview thread */
+	private boolean[] _deleteFlags = null;
+
+	/** Delay in milliseconds after a change before starting the preview */
+	private static final int PREVIEW_DELAY = 300;
 
 
 	/**
@@ -42,6 +66,22 @@ public class CompressTrackFunction extends GenericFunction
 		super(inApp);
 		_track = ((PruneApp)inApp).getTrackInfo().getTrack();
 		makeAlgorithms();
+		_previewExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable inRunnable)
+			{
+				// Don't let this thread keep the application running
+				Thread thread = new Thread(inRunnable, "compress-preview");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		_previewTimer = new Timer(PREVIEW_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e)
+			{
+				startPreview();
+			}
+		});
+		_previewTimer.setRepeats(false);
 	}
 
 	/** Get the name key */
@@ -63,25 +103,97 @@ public class CompressTrackFunction extends GenericFunction
 			_dialog.getContentPane().add(makeDialogComponents());
 			_dialog.pack();
 		}
-		preview();
+		startPreview();
 		_dialog.setVisible(true);
 	}
 
 	/**
-	 * Preview the compression by calling each algorithm in turn
-	 * @return array of delete flags
+	 * Start calculating a new preview in the background, cancelling any previous one
 	 */
-	private boolean[] preview()
+	private void startPreview()
 	{
+		_previewTimer.stop();
+		if (_previewFuture != null) {
+			_previewFuture.cancel(true);
+		}
+		final int previewNumber = ++_previewNumber;
+		final boolean[] activated = readSettings();
+		for (CompressionAlgorithm algorithm : _algorithms) {
+			algorithm.showPreviewStarted();
+		}
+		_summaryLabel.setCalculating();
+		_okButton.setEnabled(false);
+		// Scale the track on this thread, so the preview thread only reads it
+		_track.getXRange();
+		_previewFuture = _previewExecutor.submit(new Runnable() {
+			public void run()
+			{
+				calculatePreview(previewNumber, activated);
+			}
+		});
+	}
+
+	/**
+	 * Read the settings of all the algorithms from the dialog, so that
+	 * the preview thread doesn't need to access any gui components
+	 * @return flags showing which algorithms are activated
+	 */
+	private boolean[] readSettings()
+	{
+		boolean[] activated = new boolean[_algorithms.length];
+		for (int i=0; i<_algorithms.length; i++)
+		{
+			activated[i] = _algorithms[i].isActivated();
+			_algorithms[i].readParameters();
+		}
+		return activated;
+	}
+
+	/**
+	 * Run the activated algorithms in turn on the preview thread,
+	 * showing each result as soon as it's known
+	 * @param inPreviewNumber number of this preview
+	 * @param inActivated flags for the activated algorithms
+	 * @return array of delete flags, or null if cancelled
+	 */
+	private boolean[] calculatePreview(final int inPreviewNumber, boolean[] inActivated)
+	{
+		final int numPoints = _track.getNumPoints();
+		if (_deleteFlags == null || _deleteFlags.length != numPoints) {
+			_deleteFlags = new boolean[numPoints];
+		}
+		else {
+			Arrays.fill(_deleteFlags, false);
+		}
 		int numToDelete = 0;
-		boolean[] deleteFlags = new boolean[_track.getNumPoints()];
 		for (int i=0; i<_algorithms.length; i++)
 		{
-			numToDelete += _algorithms[i].preview(deleteFlags);
+			// Stop between algorithms if a newer preview has been requested
+			if (Thread.currentThread().isInterrupted()) {return null;}
+			final int algorithmIndex = i;
+			final int numDeleted = (inActivated[i] ? _algorithms[i].apply(_deleteFlags) : -1);
+			numToDelete += Math.max(numDeleted, 0);
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run()
+				{
+					if (inPreviewNumber == _previewNumber) {
+						_algorithms[algorithmIndex].showPreview(numDeleted);
+					}
+				}
+			});
 		}
-		_summaryLabel.setValue(numToDelete);
-		_okButton.setEnabled(numToDelete > 0);
-		return deleteFlags;
+		final int totalToDelete = numToDelete;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run()
+			{
+				if (inPreviewNumber == _previewNumber)
+				{
+					_summaryLabel.setValue(totalToDelete);
+					_okButton.setEnabled(totalToDelete > 0);
+				}
+			}
+		});
+		return _deleteFlags;
 	}
 
 
@@ -143,11 +255,11 @@ public class CompressTrackFunction extends GenericFunction
 	 */
 	private void makeAlgorithms()
 	{
-		// make listener to be informed of algorithm activation
+		// make listener to be informed of algorithm activation and parameter changes
 		ActionListener changeListener = new ActionListener() {
 			public void actionPerformed(ActionEvent arg0)
 			{
-				preview();
+				_previewTimer.restart();
 			};
 		};
 		// construct track details to be used by all algorithms
@@ -157,7 +269,10 @@ public class CompressTrackFunction extends GenericFunction
 			new DuplicatePointAlgorithm(_track, details, changeListener),
 			new ClosePointsAlgorithm(_track, details, changeListener),
 			new WackyPointAlgorithm(_track, details, changeListener),
-			new SingletonAlgorithm(_track, details, changeListener)
+			new SingletonAlgorithm(_track, details, changeListener),
+			new DouglasPeuckerAlgorithm(_track, details, changeListener),
+			new VisvalingamAlgorithm(_track, details, changeListener),
+			new SynchronisedDistanceAlgorithm(_track, details, changeListener)
 		};
 	}
 
@@ -167,7 +282,27 @@ public class CompressTrackFunction extends GenericFunction
 	 */
 	private void finish()
 	{
-		boolean[] deleteFlags = preview();
+		// Calculate the flags again with the current parameters, and wait for them
+		_previewTimer.stop();
+		if (_previewFuture != null) {
+			_previewFuture.cancel(true);
+		}
+		final int previewNumber = ++_previewNumber;
+		final boolean[] activated = readSettings();
+		_track.getXRange();
+		boolean[] deleteFlags = null;
+		try
+		{
+			deleteFlags = _previewExecutor.submit(new Callable<boolean[]>() {
+				public boolean[] call()
+				{
+					return calculatePreview(previewNumber, activated);
+				}
+			}).get();
+		}
+		catch (InterruptedException ie) {}
+		catch (ExecutionException ee) {}
+		if (deleteFlags == null) {return;}
 		// All flags are now combined in deleteFlags array
 		for (int i=0; i<deleteFlags.length; i++)
 		{
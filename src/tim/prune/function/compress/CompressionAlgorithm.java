@@ -68,23 +68,49 @@ public abstract class CompressionAlgorithm
 	}
 
 	/**
-	 * Preview the algorithm by counting the number of points deleted
-	 * @param inFlags array of deletion flags from previous algorithms
-	 * @return number of points to be deleted by this algorithm
+	 * Show the result of a preview
+	 * @param inNumDeleted number of points to be deleted, or -1 if not activated
+	 */
+	public void showPreview(int inNumDeleted)
+	{
+		if (inNumDeleted >= 0) {
+			_summaryLabel.setValue(inNumDeleted);
+		}
+		else {
+			_summaryLabel.clearValue();
+		}
+	}
+
+	/**
+	 * Show that a preview is being calculated
 	 */
-	public int preview(boolean[] inFlags)
+	public void showPreviewStarted()
 	{
-		int numDeleted = 0;
-		if (isActivated())
-		{
-			// Run the compression and set the deletion flags
-			numDeleted = compress(inFlags);
-			_summaryLabel.setValue(numDeleted);
+		if (isActivated()) {
+			_summaryLabel.setCalculating();
 		}
 		else {
 			_summaryLabel.clearValue();
 		}
-		return numDeleted;
+	}
+
+	/**
+	 * Read the parameters from the gui components, so that the algorithm can then be
+	 * run on another thread.  Must be called on the event dispatch thread.
+	 */
+	public void readParameters()
+	{
+		// No parameters by default
+	}
+
+	/**
+	 * Run the algorithm, either for a preview or without the dialog
+	 * @param inFlags array of deletion flags from previous algorithms
+	 * @return number of points to be deleted by this algorithm
+	 */
+	public int apply(boolean[] inFlags)
+	{
+		return compress(inFlags);
 	}
 
 
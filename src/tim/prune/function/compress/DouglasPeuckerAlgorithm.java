@@ -0,0 +1,125 @@
+package tim.prune.function.compress;
+
+import java.awt.Component;
+import java.awt.event.ActionListener;
+
+import tim.prune.data.Track;
+
+/**
+ * Douglas-Peucker algorithm for simplifying track segments.
+ * Each range is split at the point furthest from the line joining its ends,
+ * until no point is further away than the tolerance.  Ranges still to be split
+ * are kept on a stack rather than using recursion, so long segments can't
+ * overflow the call stack.
+ */
+public class DouglasPeuckerAlgorithm extends LineSimplificationAlgorithm
+{
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 * @param inDetails track details object
+	 * @param inListener listener to attach to activation control
+	 */
+	public DouglasPeuckerAlgorithm(Track inTrack, TrackDetails inDetails, ActionListener inListener)
+	{
+		super(inTrack, inDetails, inListener);
+	}
+
+	/**
+	 * Simplify a single segment
+	 * @param inIndices track indexes of the points
+	 * @param inX x values of the points
+	 * @param inY y values of the points
+	 * @param inScales metres per scaled unit at each point
+	 * @param inNumPoints number of points in the segment
+	 * @param inTolerance maximum distance from the simplified line in metres
+	 * @param inRemove array to set flags for the points to remove
+	 */
+	protected void simplify(int[] inIndices, double[] inX, double[] inY, double[] inScales, int inNumPoints,
+		double inTolerance, boolean[] inRemove)
+	{
+		// Start by removing everything apart from the ends
+		for (int i=1; i<inNumPoints-1; i++) {
+			inRemove[i] = true;
+		}
+		// Each range is a pair of start and end indexes
+		int[] stack = new int[inNumPoints * 2];
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		stack[stackSize++] = inNumPoints - 1;
+		while (stackSize > 0)
+		{
+			final int end = stack[--stackSize];
+			final int start = stack[--stackSize];
+			// Find the point furthest from the line between start and end, comparing squares
+			int furthest = -1;
+			double maxDistSquared = inTolerance * inTolerance;
+			for (int i=start+1; i<end; i++)
+			{
+				double distSquared = getSquaredDistanceFromLine(inX, inY, i, start, end) * inScales[i] * inScales[i];
+				if (distSquared > maxDistSquared)
+				{
+					maxDistSquared = distSquared;
+					furthest = i;
+				}
+			}
+			if (furthest >= 0)
+			{
+				// Keep this point and check the ranges either side of it
+				inRemove[furthest] = false;
+				if (furthest - start > 1)
+				{
+					stack[stackSize++] = start;
+					stack[stackSize++] = furthest;
+				}
+				if (end - furthest > 1)
+				{
+					stack[stackSize++] = furthest;
+					stack[stackSize++] = end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the squared distance of a point from the line between two others
+	 * @param inX x values of the points
+	 * @param inY y values of the points
+	 * @param inPoint index of point to check
+	 * @param inStart index of start of line
+	 * @param inEnd index of end of line
+	 * @return squared distance in scaled units
+	 */
+	private static double getSquaredDistanceFromLine(double[] inX, double[] inY, int inPoint, int inStart, int inEnd)
+	{
+		final double dx = inX[inEnd] - inX[inStart], dy = inY[inEnd] - inY[inStart];
+		final double lengthSquared = dx * dx + dy * dy;
+		double fraction = 0.0;
+		if (lengthSquared > 0.0)
+		{
+			// Project onto the line, but don't go beyond the ends
+			fraction = ((inX[inPoint] - inX[inStart]) * dx + (inY[inPoint] - inY[inStart]) * dy) / lengthSquared;
+			fraction = Math.max(0.0, Math.min(1.0, fraction));
+		}
+		final double distX = inX[inPoint] - inX[inStart] - fraction * dx;
+		final double distY = inY[inPoint] - inY[inStart] - fraction * dy;
+		return distX * distX + distY * distY;
+	}
+
+	/**
+	 * @return specific gui components for dialog
+	 */
+	protected Component getSpecificGuiComponents()
+	{
+		return getSpecificGuiComponents("dialog.compress.douglaspeucker.paramdesc", "10");
+	}
+
+	/**
+	 * @return title key for box
+	 */
+	protected String getTitleTextKey()
+	{
+		return "dialog.compress.douglaspeucker.title";
+	}
+}
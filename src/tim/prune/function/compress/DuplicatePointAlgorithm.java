@@ -2,17 +2,99 @@ package tim.prune.function.compress;
 
 import java.awt.Component;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import tim.prune.data.DataPoint;
 import tim.prune.data.Track;
 
 /**
- * Algorithm for detecting duplicate points to compress
+ * Algorithm for detecting duplicate points to compress.
+ * A point is a duplicate if one of the few points before it has the same position,
+ * or if any earlier point has the same position and the same timestamp,
+ * as happens when overlapping files are merged.
+ * Points are found using hash tables of point indexes, so the whole
+ * track is checked in linear time.
  */
 public class DuplicatePointAlgorithm extends CompressionAlgorithm
 {
 	/** Number of points before this one to consider as duplicates */
 	private static final int NUM_POINTS_TO_BACKTRACK = 20;
+	/** Number of points above which the hashes are calculated in parallel */
+	private static final int PARALLEL_THRESHOLD = 100000;
+
+	/**
+	 * Open-addressing hash table of point indexes, using the given hashes
+	 * and comparing points with the given matcher
+	 */
+	private static abstract class PointTable
+	{
+		/** Point index plus one for each slot, zero if empty */
+		private int[] _slots = null;
+		/** Hash of each point */
+		private int[] _hashes = null;
+
+		/**
+		 * Constructor
+		 * @param inHashes hash of each point
+		 * @param inMaxEntries maximum number of entries
+		 */
+		public PointTable(int[] inHashes, int inMaxEntries)
+		{
+			_hashes = inHashes;
+			int capacity = 16;
+			while (capacity < inMaxEntries * 2) {capacity *= 2;}
+			_slots = new int[capacity];
+		}
+
+		/**
+		 * @param inIndex index of point to look for
+		 * @return slot holding a matching point, or the empty slot to put it in
+		 */
+		public int findSlot(int inIndex)
+		{
+			final int mask = _slots.length - 1;
+			final int hash = _hashes[inIndex];
+			int slot = hash & mask;
+			while (_slots[slot] != 0)
+			{
+				final int other = _slots[slot] - 1;
+				if (_hashes[other] == hash && matches(inIndex, other)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * @param inSlot slot index
+		 * @return index of point in slot, or -1 if empty
+		 */
+		public int getIndex(int inSlot) {
+			return _slots[inSlot] - 1;
+		}
+
+		/**
+		 * @param inSlot slot index
+		 * @param inIndex index of point to put in slot
+		 */
+		public void setIndex(int inSlot, int inIndex) {
+			_slots[inSlot] = inIndex + 1;
+		}
+
+		/**
+		 * @param inIndex index of new point
+		 * @param inOther index of point already in table
+		 * @return true if they count as the same
+		 */
+		protected abstract boolean matches(int inIndex, int inOther);
+	}
+
 
 	/**
 	 * Constructor
@@ -32,32 +114,139 @@ public class DuplicatePointAlgorithm extends CompressionAlgorithm
 	 */
 	protected int compress(boolean[] inFlags)
 	{
-		int numPoints = _track.getNumPoints();
+		final int numPoints = _track.getNumPoints();
+		final int[] positionHashes = new int[numPoints];
+		final int[] timeHashes = new int[numPoints];
+		calculateHashes(positionHashes, timeHashes);
+		// Latest remaining point at each position
+		PointTable latestPoints = new PointTable(positionHashes, numPoints) {
+			protected boolean matches(int inIndex, int inOther) {
+				return _track.getPoint(inIndex).isDuplicate(_track.getPoint(inOther));
+			}
+		};
+		// Any remaining point at each position and time
+		PointTable timedPoints = new PointTable(timeHashes, numPoints) {
+			protected boolean matches(int inIndex, int inOther) {
+				return isTimedDuplicate(_track.getPoint(inIndex), _track.getPoint(inOther));
+			}
+		};
 		int numDeleted = 0;
-		// Loop over all points looking for duplicates
-		for (int i=1; i<numPoints; i++)
+		for (int i=0; i<numPoints; i++)
 		{
-			// Don't delete points which are already marked as deleted
-			if (!inFlags[i])
+			// Don't consider points which are already marked as deleted
+			if (inFlags[i]) {continue;}
+			final int latestSlot = latestPoints.findSlot(i);
+			final int latest = latestPoints.getIndex(latestSlot);
+			final boolean hasTime = _track.getPoint(i).hasTimestamp();
+			final int timedSlot = (hasTime ? timedPoints.findSlot(i) : -1);
+			if ((latest >= 0 && i - latest <= NUM_POINTS_TO_BACKTRACK)
+				|| (hasTime && timedPoints.getIndex(timedSlot) >= 0))
 			{
-				DataPoint currPoint = _track.getPoint(i);
-				// loop over last few points before this one
-				for (int j = i - NUM_POINTS_TO_BACKTRACK; j < i; j++) {
-					if (j < 0) {
-						j = 0;
-					} // only look at last few points, but not before 0
-					if (!inFlags[j]
-							&& currPoint.isDuplicate(_track.getPoint(j))) {
-						inFlags[i] = true;
-						numDeleted++;
-						break;
-					}
+				inFlags[i] = true;
+				numDeleted++;
+			}
+			else
+			{
+				latestPoints.setIndex(latestSlot, i);
+				if (hasTime) {
+					timedPoints.setIndex(timedSlot, i);
 				}
 			}
 		}
 		return numDeleted;
 	}
 
+	/**
+	 * @param inPoint1 first point
+	 * @param inPoint2 second point
+	 * @return true if the points are duplicates with the same timestamp
+	 */
+	private static boolean isTimedDuplicate(DataPoint inPoint1, DataPoint inPoint2)
+	{
+		return inPoint1.isDuplicate(inPoint2) && inPoint1.hasTimestamp() && inPoint2.hasTimestamp()
+			&& inPoint1.getTimestamp().getMilliseconds() == inPoint2.getTimestamp().getMilliseconds();
+	}
+
+	/**
+	 * Calculate the hashes of all the points, split into chunks for large tracks
+	 * @param inPositionHashes array for hashes of position and waypoint name
+	 * @param inTimeHashes array for hashes including the timestamp
+	 */
+	private void calculateHashes(final int[] inPositionHashes, final int[] inTimeHashes)
+	{
+		final int numPoints = inPositionHashes.length;
+		final int numThreads = (numPoints < PARALLEL_THRESHOLD ? 1 : Runtime.getRuntime().availableProcessors());
+		if (numThreads <= 1)
+		{
+			calculateHashes(inPositionHashes, inTimeHashes, 0, numPoints);
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			final int chunkSize = (numPoints + numThreads - 1) / numThreads;
+			ArrayList<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int start=0; start<numPoints; start+=chunkSize)
+			{
+				final int chunkStart = start;
+				final int chunkEnd = Math.min(start + chunkSize, numPoints);
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() {
+						calculateHashes(inPositionHashes, inTimeHashes, chunkStart, chunkEnd);
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> result : results) {
+				result.get();
+			}
+		}
+		catch (InterruptedException ie) {
+			throw new IllegalStateException(ie);
+		}
+		catch (ExecutionException ee) {
+			throw new IllegalStateException(ee.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Calculate the hashes of a range of points
+	 * @param inPositionHashes array for hashes of position and waypoint name
+	 * @param inTimeHashes array for hashes including the timestamp
+	 * @param inStart index of first point
+	 * @param inEnd index after last point
+	 */
+	private void calculateHashes(int[] inPositionHashes, int[] inTimeHashes, int inStart, int inEnd)
+	{
+		for (int i=inStart; i<inEnd; i++)
+		{
+			DataPoint point = _track.getPoint(i);
+			// Adding zero makes -0.0 the same as 0.0, as they're equal when compared
+			long bits = Double.doubleToLongBits(point.getLatitude().getDouble() + 0.0) * 31
+				+ Double.doubleToLongBits(point.getLongitude().getDouble() + 0.0);
+			if (point.isWaypoint()) {
+				bits = bits * 31 + point.getWaypointName().hashCode();
+			}
+			inPositionHashes[i] = mix(bits);
+			if (point.hasTimestamp()) {
+				inTimeHashes[i] = mix(bits * 31 + point.getTimestamp().getMilliseconds());
+			}
+		}
+	}
+
+	/**
+	 * @param inValue value to hash
+	 * @return hash with the bits spread out, so that similar values don't collide
+	 */
+	private static int mix(long inValue)
+	{
+		long value = inValue * 0x9E3779B97F4A7C15L;
+		return (int) (value ^ (value >>> 32));
+	}
+
 
 	/**
 	 * @return specific gui components for dialog
@@ -0,0 +1,97 @@
+package tim.prune.function.compress;
+
+import java.awt.event.ActionListener;
+
+import tim.prune.data.Distance;
+import tim.prune.data.Track;
+
+/**
+ * Superclass for algorithms which simplify the shape of each track segment
+ * while keeping within a tolerance given in metres.
+ * The start and end of each segment are always kept, and waypoints
+ * and points already deleted by previous algorithms are ignored.
+ */
+public abstract class LineSimplificationAlgorithm extends SingleParameterAlgorithm
+{
+	/** Metres per unit of the track's scaled x and y values on the equator */
+	private static final double METRES_PER_UNIT = Distance.convertRadiansToDistance(2.0 * Math.PI, Distance.Units.METRES);
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 * @param inDetails track details object
+	 * @param inListener listener to attach to activation control
+	 */
+	public LineSimplificationAlgorithm(Track inTrack, TrackDetails inDetails, ActionListener inListener)
+	{
+		super(inTrack, inDetails, inListener);
+	}
+
+	/**
+	 * Perform the compression on each segment in turn
+	 * @param inFlags deletion flags from previous algorithms
+	 * @return number of points deleted
+	 */
+	protected int compress(boolean[] inFlags)
+	{
+		final double tolerance = getParameter();
+		if (tolerance <= 0.0) {
+			// Parameter isn't valid, don't delete any
+			return 0;
+		}
+		final int numPoints = _track.getNumPoints();
+		// Arrays are shared by all the segments
+		int[] indices = new int[numPoints];
+		double[] xValues = new double[numPoints];
+		double[] yValues = new double[numPoints];
+		double[] scales = new double[numPoints];
+		boolean[] remove = new boolean[numPoints];
+		int numDeleted = 0;
+		int segmentSize = 0;
+		for (int i=0; i<=numPoints; i++)
+		{
+			// Simplify the segment so far when the next one starts, or at the end of the track,
+			// even if the point starting the next one has already been flagged for deletion
+			if (i == numPoints || _trackDetails.isSegmentStart(i))
+			{
+				if (segmentSize > 2)
+				{
+					simplify(indices, xValues, yValues, scales, segmentSize, tolerance, remove);
+					for (int p=0; p<segmentSize; p++)
+					{
+						if (remove[p])
+						{
+							inFlags[indices[p]] = true;
+							numDeleted++;
+							remove[p] = false;
+						}
+					}
+				}
+				segmentSize = 0;
+			}
+			if (i < numPoints && !inFlags[i] && !_track.getPoint(i).isWaypoint())
+			{
+				indices[segmentSize] = i;
+				xValues[segmentSize] = _track.getX(i);
+				yValues[segmentSize] = _track.getY(i);
+				scales[segmentSize] = METRES_PER_UNIT * Math.cos(Math.toRadians(_track.getPoint(i).getLatitude().getDouble()));
+				segmentSize++;
+			}
+		}
+		return numDeleted;
+	}
+
+	/**
+	 * Simplify a single segment
+	 * @param inIndices track indexes of the points
+	 * @param inX x values of the points, in the track's scaled units
+	 * @param inY y values of the points
+	 * @param inScales metres per scaled unit at each point
+	 * @param inNumPoints number of points in the segment
+	 * @param inTolerance tolerance given as parameter
+	 * @param inRemove array to set flags for the points to remove
+	 */
+	protected abstract void simplify(int[] inIndices, double[] inX, double[] inY, double[] inScales, int inNumPoints,
+		double inTolerance, boolean[] inRemove);
+}
@@ -1,6 +1,5 @@
 package tim.prune.function.compress;
 
-import java.awt.Component;
 import java.awt.GridLayout;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyListener;
@@ -22,6 +21,8 @@ public abstract class SingleParameterAlgorithm extends CompressionAlgorithm
 	private JTextField _parameterField = null;
 	/** Listener from parent dialog */
 	private ActionListener _listener = null;
+	/** Parameter value last read from the text field */
+	private double _parameter = 0.0;
 
 
 	/**
@@ -35,8 +36,16 @@ public abstract class SingleParameterAlgorithm extends CompressionAlgorithm
 		super(inTrack, inDetails, inListener);
 		_listener = inListener;
 		_parameterField = new JTextField();
-		// Add listener to parameter field to re-run preview (and en/disable ok) when param changed
-		_parameterField.addKeyListener(new KeyListener() {
+		addParameterListener(_parameterField);
+	}
+
+	/**
+	 * Add listener to a parameter field to re-run preview (and en/disable ok) when param changed
+	 * @param inField text field for a parameter
+	 */
+	protected void addParameterListener(JTextField inField)
+	{
+		inField.addKeyListener(new KeyListener() {
 			public void keyTyped(java.awt.event.KeyEvent arg0) {};
 			public void keyPressed(java.awt.event.KeyEvent arg0) {};
 			public void keyReleased(java.awt.event.KeyEvent arg0) {if (isActivated()) _listener.actionPerformed(null);};
@@ -48,34 +57,73 @@ public abstract class SingleParameterAlgorithm extends CompressionAlgorithm
 	 * @param inLabelKey key for label
 	 * @param inParamValue initial value of parameter
 	 */
-	protected Component getSpecificGuiComponents(String inLabelKey, String inParamValue)
+	protected JPanel getSpecificGuiComponents(String inLabelKey, String inParamValue)
 	{
 		// Create panel with label and text field
 		JPanel panel = new JPanel();
 		panel.setLayout(new GridLayout(0, 2));
+		addParameterRow(panel, inLabelKey, _parameterField, inParamValue);
+		return panel;
+	}
+
+	/**
+	 * Add a label and text field to the given panel
+	 * @param inPanel panel with two columns
+	 * @param inLabelKey key for label
+	 * @param inField text field for parameter
+	 * @param inParamValue initial value of parameter
+	 */
+	protected static void addParameterRow(JPanel inPanel, String inLabelKey, JTextField inField, String inParamValue)
+	{
 		JLabel label = new JLabel(I18nManager.getText(inLabelKey) + " : ");
 		label.setHorizontalAlignment(SwingConstants.RIGHT);
-		panel.add(label);
-		panel.add(_parameterField);
-		_parameterField.setText(inParamValue);
-		return panel;
+		inPanel.add(label);
+		inPanel.add(inField);
+		inField.setText(inParamValue);
 	}
 
 	/**
-	 * Parse the text field to get parameter
-	 * @return parameter given as double
+	 * Read the parameter from the text field
+	 */
+	public void readParameters()
+	{
+		_parameter = parseParameter(_parameterField);
+	}
+
+	/**
+	 * @return parameter as last read from the text field or set directly
 	 */
 	protected double getParameter()
+	{
+		return _parameter;
+	}
+
+	/**
+	 * Parse the given text field
+	 * @param inField text field for a parameter
+	 * @return parameter given as double, or zero if not valid
+	 */
+	protected static double parseParameter(JTextField inField)
 	{
 		double param = 0.0;
 		try {
 			// Parse from string
-			param = Double.parseDouble(_parameterField.getText());
+			param = Double.parseDouble(inField.getText());
 		}
 		catch (NumberFormatException nfe) {} // ignore, param stays zero
 		return param;
 	}
 
+	/**
+	 * Set the parameter without using the dialog
+	 * @param inValue value of parameter
+	 */
+	public void setParameter(double inValue)
+	{
+		_parameterField.setText("" + inValue);
+		_parameter = inValue;
+	}
+
 	/**
 	 * @return the text field component
 	 */
@@ -46,6 +46,15 @@ public class SummaryLabel extends JLabel
 		setEnabled(false);
 	}
 
+	/**
+	 * Show that the value is being calculated
+	 */
+	public void setCalculating()
+	{
+		setText(I18nManager.getText("dialog.compress.summarylabel") + ": ...");
+		setEnabled(false);
+	}
+
 	/**
 	 * Make a string describing the deletion
 	 * @param inNumToDelete number of points to delete
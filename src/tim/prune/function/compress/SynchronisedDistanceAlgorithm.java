@@ -0,0 +1,218 @@
+package tim.prune.function.compress;
+
+import java.awt.Component;
+import java.awt.event.ActionListener;
+
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import tim.prune.data.Altitude;
+import tim.prune.data.DataPoint;
+import tim.prune.data.Track;
+
+/**
+ * Time-aware line simplification using the synchronised euclidean distance.
+ * Like Douglas-Peucker, but each point is compared with the position it would have
+ * at the same time if moving at constant speed between the ends of the range,
+ * so the timing of the track is kept as well as its shape.
+ * Optionally the altitude can be kept within a separate tolerance, and
+ * the time between remaining points can be limited.
+ * Points without timestamps are always kept.
+ */
+public class SynchronisedDistanceAlgorithm extends LineSimplificationAlgorithm
+{
+	/** Text field for altitude tolerance */
+	private JTextField _altitudeField = new JTextField();
+	/** Text field for maximum time gap */
+	private JTextField _timeGapField = new JTextField();
+	/** Altitude tolerance in metres as last read, or 0 for no limit */
+	private double _altitudeTolerance = 0.0;
+	/** Maximum time gap in seconds as last read, or 0 for no limit */
+	private double _maxTimeGap = 0.0;
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 * @param inDetails track details object
+	 * @param inListener listener to attach to activation control
+	 */
+	public SynchronisedDistanceAlgorithm(Track inTrack, TrackDetails inDetails, ActionListener inListener)
+	{
+		super(inTrack, inDetails, inListener);
+		addParameterListener(_altitudeField);
+		addParameterListener(_timeGapField);
+	}
+
+	/**
+	 * Simplify a single segment, one run of timestamped points at a time
+	 * @param inIndices track indexes of the points
+	 * @param inX x values of the points
+	 * @param inY y values of the points
+	 * @param inScales metres per scaled unit at each point
+	 * @param inNumPoints number of points in the segment
+	 * @param inTolerance maximum distance from the synchronised position in metres
+	 * @param inRemove array to set flags for the points to remove
+	 */
+	protected void simplify(int[] inIndices, double[] inX, double[] inY, double[] inScales, int inNumPoints,
+		double inTolerance, boolean[] inRemove)
+	{
+		final double altitudeTolerance = _altitudeTolerance;
+		final double maxTimeGap = _maxTimeGap;
+		// Seconds and altitudes for each point, NaN if not present
+		double[] seconds = new double[inNumPoints];
+		double[] altitudes = new double[inNumPoints];
+		// Times are measured from the first point with a timestamp
+		DataPoint firstPoint = null;
+		for (int i=0; i<inNumPoints; i++)
+		{
+			DataPoint point = _track.getPoint(inIndices[i]);
+			if (firstPoint == null && point.hasTimestamp()) {
+				firstPoint = point;
+			}
+			seconds[i] = point.hasTimestamp() ?
+				point.getTimestamp().getSecondsSince(firstPoint.getTimestamp()) : Double.NaN;
+			altitudes[i] = point.hasAltitude() ? point.getAltitude().getValue(Altitude.Format.METRES) : Double.NaN;
+		}
+		int runStart = -1;
+		for (int i=0; i<=inNumPoints; i++)
+		{
+			if (i < inNumPoints && !Double.isNaN(seconds[i]))
+			{
+				if (runStart < 0) {runStart = i;}
+			}
+			else if (runStart >= 0)
+			{
+				if (i - runStart > 2) {
+					simplifyRun(inX, inY, inScales, seconds, altitudes, runStart, i-1,
+						inTolerance, altitudeTolerance, maxTimeGap, inRemove);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	/**
+	 * Simplify a run of points which all have timestamps
+	 * @param inX x values of the points
+	 * @param inY y values of the points
+	 * @param inScales metres per scaled unit at each point
+	 * @param inSeconds seconds of each point
+	 * @param inAltitudes altitudes of each point in metres, or NaN
+	 * @param inStart index of first point of run
+	 * @param inEnd index of last point of run
+	 * @param inTolerance maximum distance error in metres
+	 * @param inAltitudeTolerance maximum altitude error in metres, or 0 for no limit
+	 * @param inMaxTimeGap maximum seconds between kept points, or 0 for no limit
+	 * @param inRemove array to set flags for the points to remove
+	 */
+	private static void simplifyRun(double[] inX, double[] inY, double[] inScales, double[] inSeconds,
+		double[] inAltitudes, int inStart, int inEnd, double inTolerance, double inAltitudeTolerance,
+		double inMaxTimeGap, boolean[] inRemove)
+	{
+		for (int i=inStart+1; i<inEnd; i++) {
+			inRemove[i] = true;
+		}
+		// Ranges still to check, as pairs of start and end indexes
+		int[] stack = new int[(inEnd - inStart + 1) * 2];
+		int stackSize = 0;
+		stack[stackSize++] = inStart;
+		stack[stackSize++] = inEnd;
+		final double toleranceSquared = inTolerance * inTolerance;
+		while (stackSize > 0)
+		{
+			final int end = stack[--stackSize];
+			final int start = stack[--stackSize];
+			final double duration = inSeconds[end] - inSeconds[start];
+			// Find the point with the largest error relative to the tolerances
+			int worst = -1;
+			double maxError = 1.0;
+			for (int i=start+1; i<end; i++)
+			{
+				final double fraction = (duration > 0.0 ? (inSeconds[i] - inSeconds[start]) / duration : 0.0);
+				final double dx = inX[i] - inX[start] - fraction * (inX[end] - inX[start]);
+				final double dy = inY[i] - inY[start] - fraction * (inY[end] - inY[start]);
+				double error = (dx * dx + dy * dy) * inScales[i] * inScales[i] / toleranceSquared;
+				if (inAltitudeTolerance > 0.0 && !Double.isNaN(inAltitudes[i])
+					&& !Double.isNaN(inAltitudes[start]) && !Double.isNaN(inAltitudes[end]))
+				{
+					final double dAlt = (inAltitudes[i] - inAltitudes[start]
+						- fraction * (inAltitudes[end] - inAltitudes[start])) / inAltitudeTolerance;
+					error = Math.max(error, dAlt * dAlt);
+				}
+				if (error > maxError)
+				{
+					maxError = error;
+					worst = i;
+				}
+			}
+			// Split long ranges even if they're within tolerance
+			if (worst < 0 && inMaxTimeGap > 0.0 && duration > inMaxTimeGap && end - start > 1) {
+				worst = (start + end) / 2;
+			}
+			if (worst >= 0)
+			{
+				inRemove[worst] = false;
+				if (worst - start > 1)
+				{
+					stack[stackSize++] = start;
+					stack[stackSize++] = worst;
+				}
+				if (end - worst > 1)
+				{
+					stack[stackSize++] = worst;
+					stack[stackSize++] = end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Set the altitude tolerance without using the dialog
+	 * @param inMetres maximum altitude error in metres, or 0 for no limit
+	 */
+	public void setAltitudeTolerance(double inMetres)
+	{
+		_altitudeField.setText("" + inMetres);
+		_altitudeTolerance = inMetres;
+	}
+
+	/**
+	 * Set the maximum time gap without using the dialog
+	 * @param inSeconds maximum seconds between remaining points, or 0 for no limit
+	 */
+	public void setMaxTimeGap(double inSeconds)
+	{
+		_timeGapField.setText("" + inSeconds);
+		_maxTimeGap = inSeconds;
+	}
+
+	/**
+	 * Read all three parameters from the text fields
+	 */
+	public void readParameters()
+	{
+		super.readParameters();
+		_altitudeTolerance = parseParameter(_altitudeField);
+		_maxTimeGap = parseParameter(_timeGapField);
+	}
+
+	/**
+	 * @return specific gui components for dialog
+	 */
+	protected Component getSpecificGuiComponents()
+	{
+		JPanel panel = getSpecificGuiComponents("dialog.compress.synchronised.paramdesc", "10");
+		addParameterRow(panel, "dialog.compress.synchronised.altitudedesc", _altitudeField, "0");
+		addParameterRow(panel, "dialog.compress.synchronised.timegapdesc", _timeGapField, "0");
+		return panel;
+	}
+
+	/**
+	 * @return title key for box
+	 */
+	protected String getTitleTextKey()
+	{
+		return "dialog.compress.synchronised.title";
+	}
+}
@@ -0,0 +1,198 @@
+package tim.prune.function.compress;
+
+import java.awt.Component;
+import java.awt.event.ActionListener;
+
+import tim.prune.data.Track;
+
+/**
+ * Visvalingam-Whyatt algorithm for simplifying track segments.
+ * The point making the smallest triangle with its neighbours is removed
+ * repeatedly, until all remaining triangles are at least the given area.
+ * The points are kept in a heap ordered by area, so that each removal only
+ * needs the areas of its two neighbours to be updated.
+ */
+public class VisvalingamAlgorithm extends LineSimplificationAlgorithm
+{
+	/** Areas of the triangles in square metres */
+	private double[] _areas = null;
+	/** Heap of point indexes with the smallest area at the top */
+	private int[] _heap = null;
+	/** Areas in heap order, to save looking them up while sifting */
+	private double[] _heapAreas = null;
+	/** Position of each point in the heap */
+	private int[] _heapPositions = null;
+	/** Number of points in the heap */
+	private int _heapSize = 0;
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track object
+	 * @param inDetails track details object
+	 * @param inListener listener to attach to activation control
+	 */
+	public VisvalingamAlgorithm(Track inTrack, TrackDetails inDetails, ActionListener inListener)
+	{
+		super(inTrack, inDetails, inListener);
+	}
+
+	/**
+	 * Simplify a single segment
+	 * @param inIndices track indexes of the points
+	 * @param inX x values of the points
+	 * @param inY y values of the points
+	 * @param inScales metres per scaled unit at each point
+	 * @param inNumPoints number of points in the segment
+	 * @param inTolerance minimum area of triangles to keep, in square metres
+	 * @param inRemove array to set flags for the points to remove
+	 */
+	protected void simplify(int[] inIndices, double[] inX, double[] inY, double[] inScales, int inNumPoints,
+		double inTolerance, boolean[] inRemove)
+	{
+		// Neighbours of each point which haven't been removed yet
+		int[] prevPoints = new int[inNumPoints];
+		int[] nextPoints = new int[inNumPoints];
+		_areas = new double[inNumPoints];
+		_heap = new int[inNumPoints];
+		_heapAreas = new double[inNumPoints];
+		_heapPositions = new int[inNumPoints];
+		_heapSize = 0;
+		for (int i=1; i<inNumPoints-1; i++)
+		{
+			prevPoints[i] = i - 1;
+			nextPoints[i] = i + 1;
+			_areas[i] = getArea(inX, inY, inScales, i-1, i, i+1);
+			moveToHeapPosition(i, _heapSize++);
+		}
+		// Arrange the heap from the bottom up
+		for (int pos=_heapSize/2-1; pos>=0; pos--) {
+			siftDown(pos);
+		}
+		while (_heapSize > 0 && _heapAreas[0] < inTolerance)
+		{
+			// Remove the point with the smallest area from the heap and from the line
+			final int point = _heap[0];
+			final double area = _areas[point];
+			moveToHeapPosition(_heap[--_heapSize], 0);
+			siftDown(0);
+			inRemove[point] = true;
+			final int prev = prevPoints[point], next = nextPoints[point];
+			nextPoints[prev] = next;
+			prevPoints[next] = prev;
+			// Neighbours can't get smaller areas than the point just removed,
+			// otherwise they'd be removed based on a shape that's already gone
+			if (prev > 0) {
+				updateArea(prev, Math.max(area, getArea(inX, inY, inScales, prevPoints[prev], prev, next)));
+			}
+			if (next < inNumPoints - 1) {
+				updateArea(next, Math.max(area, getArea(inX, inY, inScales, prev, next, nextPoints[next])));
+			}
+		}
+		_areas = _heapAreas = null;
+		_heap = _heapPositions = null;
+	}
+
+	/**
+	 * Calculate the area of the triangle made by three points
+	 * @param inX x values of the points
+	 * @param inY y values of the points
+	 * @param inScales metres per scaled unit at each point
+	 * @param inPrev index of previous point
+	 * @param inPoint index of middle point
+	 * @param inNext index of next point
+	 * @return area in square metres
+	 */
+	private static double getArea(double[] inX, double[] inY, double[] inScales, int inPrev, int inPoint, int inNext)
+	{
+		final double area = Math.abs((inX[inPoint] - inX[inPrev]) * (inY[inNext] - inY[inPrev])
+			- (inX[inNext] - inX[inPrev]) * (inY[inPoint] - inY[inPrev])) / 2.0;
+		return area * inScales[inPoint] * inScales[inPoint];
+	}
+
+	/**
+	 * Change the area of a point still in the heap
+	 * @param inPoint index of point
+	 * @param inArea new area
+	 */
+	private void updateArea(int inPoint, double inArea)
+	{
+		final double oldArea = _areas[inPoint];
+		_areas[inPoint] = inArea;
+		if (inArea < oldArea) {
+			siftUp(_heapPositions[inPoint]);
+		}
+		else {
+			siftDown(_heapPositions[inPoint]);
+		}
+	}
+
+	/**
+	 * Move a point up the heap until its parent is smaller
+	 * @param inPosition current position in heap
+	 */
+	private void siftUp(int inPosition)
+	{
+		final int point = _heap[inPosition];
+		int position = inPosition;
+		while (position > 0)
+		{
+			final int parent = (position - 1) / 2;
+			if (_heapAreas[parent] <= _areas[point]) {break;}
+			moveToHeapPosition(_heap[parent], position);
+			position = parent;
+		}
+		moveToHeapPosition(point, position);
+	}
+
+	/**
+	 * Move a point down the heap until its children are larger
+	 * @param inPosition current position in heap
+	 */
+	private void siftDown(int inPosition)
+	{
+		if (inPosition >= _heapSize) {return;}
+		final int point = _heap[inPosition];
+		int position = inPosition;
+		while (true)
+		{
+			int child = position * 2 + 1;
+			if (child >= _heapSize) {break;}
+			if (child + 1 < _heapSize && _heapAreas[child + 1] < _heapAreas[child]) {
+				child++;
+			}
+			if (_heapAreas[child] >= _areas[point]) {break;}
+			moveToHeapPosition(_heap[child], position);
+			position = child;
+		}
+		moveToHeapPosition(point, position);
+	}
+
+	/**
+	 * Put a point at the given position in the heap
+	 * @param inPoint index of point
+	 * @param inPosition position in heap
+	 */
+	private void moveToHeapPosition(int inPoint, int inPosition)
+	{
+		_heap[inPosition] = inPoint;
+		_heapAreas[inPosition] = _areas[inPoint];
+		_heapPositions[inPoint] = inPosition;
+	}
+
+	/**
+	 * @return specific gui components for dialog
+	 */
+	protected Component getSpecificGuiComponents()
+	{
+		return getSpecificGuiComponents("dialog.compress.visvalingam.paramdesc", "50");
+	}
+
+	/**
+	 * @return title key for box
+	 */
+	protected String getTitleTextKey()
+	{
+		return "dialog.compress.visvalingam.title";
+	}
+}
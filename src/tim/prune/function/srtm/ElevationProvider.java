@@ -0,0 +1,23 @@
+package tim.prune.function.srtm;
+
+import tim.prune.gui.progress.ProgressMonitor;
+
+/**
+ * Interface for sources of terrain elevations, such as SRTM tiles
+ * downloaded from the internet or kept in a local directory.
+ * Positions are given as a batch so that each source can group
+ * them in whatever way suits its own data.
+ */
+public interface ElevationProvider
+{
+	/**
+	 * Look up the elevations of a batch of positions
+	 * @param inLatitudes latitudes in degrees
+	 * @param inLongitudes longitudes in degrees
+	 * @param inNumPositions number of positions to use from the arrays
+	 * @param inProgress monitor to show progress and check for cancelling, or null
+	 * @return elevations in metres, with NaN where none are available
+	 */
+	public double[] getElevations(double[] inLatitudes, double[] inLongitudes, int inNumPositions,
+		ProgressMonitor inProgress);
+}
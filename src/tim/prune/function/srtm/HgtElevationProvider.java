@@ -0,0 +1,61 @@
+package tim.prune.function.srtm;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ShortBuffer;
+
+/**
+ * Elevation provider using a directory of hgt files, which can either be
+ * used on its own or filled up with zipped tiles from a server.
+ * The server just needs to give each zip file under its tile name,
+ * for example a local http server standing in for the SRTM site.
+ */
+public class HgtElevationProvider extends TileElevationProvider
+{
+	/** Directory of hgt files */
+	private File _directory = null;
+	/** Url prefix of the zipped tiles, or null to only use the local files */
+	private String _urlPrefix = null;
+
+
+	/**
+	 * Constructor
+	 * @param inDirectory directory of hgt files
+	 * @param inUrlPrefix url prefix for downloading zipped tiles, or null to only use local files
+	 * @param inBicubic true to use bicubic interpolation where possible, false for bilinear
+	 */
+	public HgtElevationProvider(File inDirectory, String inUrlPrefix, boolean inBicubic)
+	{
+		super(inBicubic);
+		_directory = inDirectory;
+		_urlPrefix = inUrlPrefix;
+	}
+
+	/**
+	 * Get the heights of a single tile
+	 * @param inTile tile to get
+	 * @return buffer of heights, or null if not available
+	 * @throws IOException if the tile couldn't be read
+	 */
+	protected ShortBuffer getHeights(SrtmTile inTile) throws IOException
+	{
+		return HgtStore.getHeights(_directory, inTile, getUrl(inTile));
+	}
+
+	/**
+	 * @param inTile tile
+	 * @return url to download the zipped tile from, or null if not available
+	 */
+	protected URL getUrl(SrtmTile inTile)
+	{
+		if (_urlPrefix == null) {return null;}
+		try {
+			return new URL(_urlPrefix + inTile.getTileName());
+		}
+		catch (MalformedURLException e) {
+			return null;
+		}
+	}
+}
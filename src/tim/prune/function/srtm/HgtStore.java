@@ -0,0 +1,259 @@
+package tim.prune.function.srtm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import tim.prune.config.Config;
+
+/**
+ * Local store of SRTM hgt files, kept in a directory on disk.
+ * Each tile is taken from an hgt file if there is one, otherwise from an
+ * hgt.zip file in the directory, otherwise it is downloaded.  Zipped tiles are
+ * extracted once, and the hgt files are then memory-mapped so that heights are
+ * read straight from the file without being decoded into arrays.
+ * Both SRTM3 (1201x1201) and SRTM1 (3601x3601) files are accepted.
+ * The mappings are shared by all providers, and the least recently used ones
+ * are released when their total size exceeds the limit given by the config.
+ */
+public abstract class HgtStore
+{
+	/** Most recently used mappings, by file path */
+	private static final LinkedHashMap<String, ShortBuffer> _mappings = new LinkedHashMap<String, ShortBuffer>(16, 0.75f, true);
+	/** Total size of the mappings in bytes */
+	private static long _mappedBytes = 0L;
+	/** Locks for each tile, by file path, so that each tile is only fetched once */
+	private static final HashMap<String, Object> _tileLocks = new HashMap<String, Object>();
+
+	/** Default limit of mapped size in megabytes */
+	private static final int DEFAULT_CACHE_MEGABYTES = 256;
+	/** Number of samples along each side of an SRTM3 tile */
+	private static final int SRTM3_SIZE = 1201;
+	/** Number of samples along each side of an SRTM1 tile */
+	private static final int SRTM1_SIZE = 3601;
+	/** File extension of unzipped tiles */
+	private static final String HGT_EXTENSION = ".hgt";
+
+
+	/**
+	 * Get the heights of the given tile, mapping the local file if necessary
+	 * @param inDirectory directory of the store, created if necessary
+	 * @param inTile tile to get
+	 * @param inUrl url to download the zipped tile from if it isn't stored yet, or null
+	 * @return buffer of heights as rows from north to south, or null if not available
+	 * @throws IOException if the tile couldn't be read or stored
+	 */
+	public static ShortBuffer getHeights(File inDirectory, SrtmTile inTile, URL inUrl) throws IOException
+	{
+		if (!inDirectory.exists()) {
+			inDirectory.mkdirs();
+		}
+		if (!inDirectory.isDirectory()) {return null;}
+		final String name = getBaseName(inTile);
+		final String key = new File(inDirectory, name).getAbsolutePath();
+		ShortBuffer heights = getMapping(key);
+		if (heights == null)
+		{
+			// Different tiles can be fetched at once, but callers wanting the same tile wait for each other
+			synchronized (getTileLock(key))
+			{
+				heights = getMapping(key);
+				if (heights == null)
+				{
+					File hgtFile = findHgtFile(inDirectory, name, inUrl);
+					if (hgtFile != null)
+					{
+						heights = mapFile(hgtFile);
+						if (heights != null) {
+							addMapping(key, heights);
+						}
+					}
+				}
+			}
+		}
+		// Each caller gets its own position and limit
+		return (heights == null ? null : heights.duplicate());
+	}
+
+	/**
+	 * @param inKey key of mapping
+	 * @return mapped heights from the cache, or null if not there
+	 */
+	private static ShortBuffer getMapping(String inKey)
+	{
+		synchronized (_mappings) {
+			return _mappings.get(inKey);
+		}
+	}
+
+	/**
+	 * @param inKey key of tile
+	 * @return object to lock while fetching this tile
+	 */
+	private static Object getTileLock(String inKey)
+	{
+		synchronized (_tileLocks)
+		{
+			Object lock = _tileLocks.get(inKey);
+			if (lock == null)
+			{
+				lock = new Object();
+				_tileLocks.put(inKey, lock);
+			}
+			return lock;
+		}
+	}
+
+	/**
+	 * Add a mapping to the cache, releasing the least recently used ones if it's too big
+	 * @param inKey key of mapping
+	 * @param inHeights mapped heights
+	 */
+	private static void addMapping(String inKey, ShortBuffer inHeights)
+	{
+		final long maxBytes = 1024L * 1024L * Config.getConfigInt(Config.KEY_ELEVATION_CACHE, DEFAULT_CACHE_MEGABYTES);
+		synchronized (_mappings)
+		{
+			ShortBuffer previous = _mappings.put(inKey, inHeights);
+			if (previous != null) {
+				_mappedBytes -= 2L * previous.capacity();
+			}
+			_mappedBytes += 2L * inHeights.capacity();
+			// The newest mapping is always kept, even if it's bigger than the limit
+			Iterator<ShortBuffer> iterator = _mappings.values().iterator();
+			while (_mappedBytes > maxBytes && _mappings.size() > 1)
+			{
+				_mappedBytes -= 2L * iterator.next().capacity();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @param inTile tile
+	 * @return name of the tile without any extension
+	 */
+	private static String getBaseName(SrtmTile inTile)
+	{
+		String name = inTile.getTileName();
+		return name.substring(0, name.indexOf('.'));
+	}
+
+	/**
+	 * Find the local hgt file for the given tile, extracting or downloading it if necessary
+	 * @param inDirectory directory of the store
+	 * @param inName tile name without extension
+	 * @param inUrl url to download from, or null
+	 * @return hgt file, or null if not available
+	 * @throws IOException if the file couldn't be extracted or downloaded
+	 */
+	private static File findHgtFile(File inDirectory, String inName, URL inUrl) throws IOException
+	{
+		File hgtFile = new File(inDirectory, inName + HGT_EXTENSION);
+		if (hgtFile.isFile()) {return hgtFile;}
+		// Look for a zip file in the directory, otherwise download the zip
+		File zipFile = new File(inDirectory, inName + HGT_EXTENSION + ".zip");
+		InputStream inStream = null;
+		if (zipFile.isFile()) {
+			inStream = new FileInputStream(zipFile);
+		}
+		else if (inUrl != null) {
+			inStream = inUrl.openStream();
+		}
+		else {
+			return null;
+		}
+		try
+		{
+			return extractHgtFile(new ZipInputStream(inStream), hgtFile) ? hgtFile : null;
+		}
+		finally {
+			inStream.close();
+		}
+	}
+
+	/**
+	 * Extract the hgt file from the given zip stream
+	 * @param inStream zip stream containing the hgt file
+	 * @param inFile file to write
+	 * @return true if the file was extracted
+	 * @throws IOException if the stream couldn't be read or the file couldn't be written
+	 */
+	private static boolean extractHgtFile(ZipInputStream inStream, File inFile) throws IOException
+	{
+		ZipEntry entry = inStream.getNextEntry();
+		while (entry != null && !entry.getName().toLowerCase().endsWith(HGT_EXTENSION)) {
+			entry = inStream.getNextEntry();
+		}
+		if (entry == null) {return false;}
+		// Write to a temporary file first so that an interrupted download doesn't leave a broken tile,
+		// and give it a unique name in case another program is filling the same directory
+		File tempFile = File.createTempFile(inFile.getName(), ".part", inFile.getParentFile());
+		OutputStream outStream = new FileOutputStream(tempFile);
+		long numBytes = 0L;
+		try
+		{
+			byte[] buffer = new byte[65536];
+			int numRead = 0;
+			while ((numRead = inStream.read(buffer)) > 0)
+			{
+				outStream.write(buffer, 0, numRead);
+				numBytes += numRead;
+			}
+		}
+		finally {
+			outStream.close();
+		}
+		if (!isValidSize(numBytes) || !tempFile.renameTo(inFile))
+		{
+			tempFile.delete();
+			// Rename fails if the file has appeared in the meantime, which is fine
+			return inFile.isFile();
+		}
+		return true;
+	}
+
+	/**
+	 * @param inNumBytes size of file in bytes
+	 * @return true if this is the size of an SRTM1 or SRTM3 tile
+	 */
+	private static boolean isValidSize(long inNumBytes)
+	{
+		return inNumBytes == 2L * SRTM3_SIZE * SRTM3_SIZE || inNumBytes == 2L * SRTM1_SIZE * SRTM1_SIZE;
+	}
+
+	/**
+	 * Map the given hgt file into memory
+	 * @param inFile hgt file
+	 * @return buffer of big-endian heights, or null if the file isn't the right size
+	 * @throws IOException if the file couldn't be mapped
+	 */
+	private static ShortBuffer mapFile(File inFile) throws IOException
+	{
+		if (!isValidSize(inFile.length())) {return null;}
+		RandomAccessFile file = new RandomAccessFile(inFile, "r");
+		try
+		{
+			// The mapping stays valid after the file is closed
+			FileChannel channel = file.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+				.order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+		}
+		finally {
+			file.close();
+		}
+	}
+}
@@ -1,55 +1,29 @@
 package tim.prune.function.srtm;
 
-import java.awt.BorderLayout;
-import java.awt.Component;
-import java.awt.Dimension;
-import java.awt.FlowLayout;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.io.IOException;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.io.File;
 
-import javax.swing.JButton;
-import javax.swing.JDialog;
-import javax.swing.JLabel;
 import javax.swing.JOptionPane;
-import javax.swing.JPanel;
-import javax.swing.JProgressBar;
 
 import tim.prune.App;
 import tim.prune.DataSubscriber;
 import tim.prune.GenericFunction;
 import tim.prune.I18nManager;
 import tim.prune.UpdateMessageBroker;
+import tim.prune.config.Config;
 import tim.prune.data.DataPoint;
-import tim.prune.data.Field;
 import tim.prune.data.Track;
+import tim.prune.gui.progress.ProgressMonitor;
 import tim.prune.undo.UndoLookupSrtm;
 
 /**
  * Class to provide a lookup function for point altitudes
  * using the Space Shuttle's SRTM data files.
- * HGT files are downloaded into memory via HTTP and point altitudes
- * can then be interpolated from the 3m grid data.
+ * HGT files are taken from the local store, or downloaded via HTTP into
+ * the store if they're not there yet, and point altitudes can then be
+ * interpolated from the grid data.
  */
 public class LookupSrtmFunction extends GenericFunction implements Runnable
 {
-	/** function dialog */
-	private JDialog _dialog = null;
-	/** Progress bar for function */
-	private JProgressBar _progressBar = null;
-	/** Cancel flag */
-	private boolean _cancelled = false;
-
-	/** Expected size of hgt file in bytes */
-	private static final long HGT_SIZE = 2884802L;
-	/** Altitude below which is considered void */
-	private static final int VOID_VAL = -32768;
-
-
 	/**
 	 * Constructor
 	 * @param inApp App object
@@ -69,71 +43,19 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 	 */
 	public void begin()
 	{
-		if (_dialog == null)
-		{
-			_dialog = new JDialog(_parentFrame, I18nManager.getText(getNameKey()), false);
-			_dialog.setLocationRelativeTo(_parentFrame);
-			_dialog.getContentPane().add(makeDialogComponents());
-			_dialog.pack();
-		}
-		_progressBar.setMinimum(0);
-		_progressBar.setMaximum(100);
-		_progressBar.setValue(20);
-		_cancelled = false;
 		// start new thread for time-consuming part
 		new Thread(this).start();
 	}
 
-
-	/**
-	 * Make the dialog components
-	 * @return the GUI components for the dialog
-	 */
-	private Component makeDialogComponents()
-	{
-		JPanel dialogPanel = new JPanel();
-		dialogPanel.setLayout(new BorderLayout());
-		dialogPanel.add(new JLabel(I18nManager.getText("confirm.running")), BorderLayout.NORTH);
-		_progressBar = new JProgressBar();
-		_progressBar.setPreferredSize(new Dimension(250, 30));
-		dialogPanel.add(_progressBar, BorderLayout.CENTER);
-		// Cancel button at the bottom
-		JPanel buttonPanel = new JPanel();
-		buttonPanel.setLayout(new FlowLayout(FlowLayout.RIGHT));
-		JButton cancelButton = new JButton(I18nManager.getText("button.cancel"));
-		cancelButton.addActionListener(new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				_cancelled = true;
-			}
-		});
-		buttonPanel.add(cancelButton);
-		dialogPanel.add(buttonPanel, BorderLayout.SOUTH);
-		return dialogPanel;
-	}
-
 	/**
 	 * Run method using separate thread
 	 */
 	public void run()
 	{
-		// Compile list of tiles to get
+		// First, see what kind of points we have
 		Track track = _pruneApp.getTrackInfo().getTrack();
-		ArrayList<SrtmTile> tileList = new ArrayList<SrtmTile>();
-		boolean hasZeroAltitudePoints = false;
-		boolean hasNonZeroAltitudePoints = false;
-		// First, loop to see what kind of points we have
-		for (int i=0; i<track.getNumPoints(); i++)
-		{
-			if (track.getPoint(i).hasAltitude())
-			{
-				if (track.getPoint(i).getAltitude().getValue() == 0) {
-					hasZeroAltitudePoints = true;
-				}
-				else {
-					hasNonZeroAltitudePoints = true;
-				}
-			}
-		}
+		boolean hasZeroAltitudePoints = hasAltitudes(track, true);
+		boolean hasNonZeroAltitudePoints = hasAltitudes(track, false);
 		// Should we overwrite the zero altitude values?
 		boolean overwriteZeros = hasZeroAltitudePoints && !hasNonZeroAltitudePoints;
 		// If non-zero values present as well, ask user whether to overwrite the zeros or not
@@ -144,124 +66,28 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 			overwriteZeros = true;
 		}
 
-		_dialog.setVisible(true);
-		// Now loop again to extract the required tiles
-		for (int i=0; i<track.getNumPoints(); i++)
-		{
-			// Consider points which don't have altitudes or have zero values
-			if (!track.getPoint(i).hasAltitude() || (overwriteZeros && track.getPoint(i).getAltitude().getValue() == 0))
-			{
-				SrtmTile tile = new SrtmTile(track.getPoint(i));
-				boolean alreadyGot = false;
-				for (int t=0; t<tileList.size(); t++) {
-					if (tileList.get(t).equals(tile)) {
-						alreadyGot = true;
-					}
-				}
-				if (!alreadyGot) {tileList.add(tile);}
-			}
-		}
-		lookupValues(tileList, overwriteZeros);
-	}
-
-	/**
-	 * Lookup the values from SRTM data
-	 * @param inTileList list of tiles to get
-	 * @param inOverwriteZeros true to overwrite zero altitude values
-	 */
-	private void lookupValues(ArrayList<SrtmTile> inTileList, boolean inOverwriteZeros)
-	{
-		Track track = _pruneApp.getTrackInfo().getTrack();
 		UndoLookupSrtm undo = new UndoLookupSrtm(_pruneApp.getTrackInfo());
+		ProgressMonitor progress = new ProgressMonitor(true);
+		progress.start(I18nManager.getText(getNameKey()), 0);
 		int numAltitudesFound = 0;
-		// Update progress bar
-		_progressBar.setMaximum(inTileList.size());
-		_progressBar.setIndeterminate(inTileList.size() <= 1);
-		_progressBar.setValue(0);
-		// Get urls for each tile
-		URL[] urls = TileFinder.getUrls(inTileList);
-		for (int t=0; t<inTileList.size() && !_cancelled; t++)
+		int numNeeded = 0;
+		try
 		{
-			if (urls[t] != null)
-			{
-				SrtmTile tile = inTileList.get(t);
-				// System.out.println("tile " + t + " of " + tileList.size() + " = " + urls[t].toString());
-				try {
-					_progressBar.setValue(t);
-					final int ARRLENGTH = 1201*1201;
-					int[] heights = new int[ARRLENGTH];
-					// Open zipinputstream on url and check size
-					ZipInputStream inStream = new ZipInputStream(urls[t].openStream());
-					ZipEntry entry = inStream.getNextEntry();
-					boolean entryOk = (entry.getSize() == HGT_SIZE);
-					if (entryOk)
-					{
-						// Read entire file contents into one byte array
-						for (int i=0; i<ARRLENGTH; i++) {
-							heights[i] = inStream.read()*256 + inStream.read();
-							if (heights[i] >= 32768) {heights[i] -= 65536;}
-						}
-					}
-					//else {
-					//	System.out.println("length not ok: " + entry.getSize());
-					//}
-					// Close stream from url
-					inStream.close();
-
-					if (entryOk)
-					{
-						// Loop over all points in track, try to apply altitude from array
-						for (int p=0; p<track.getNumPoints(); p++)
-						{
-							DataPoint point = track.getPoint(p);
-							if (!point.hasAltitude() || (inOverwriteZeros && point.getAltitude().getValue() == 0)) {
-								if (new SrtmTile(point).equals(tile))
-								{
-									double x = (point.getLongitude().getDouble() - tile.getLongitude()) * 1200;
-									double y = 1201 - (point.getLatitude().getDouble() - tile.getLatitude()) * 1200;
-									int idx1 = ((int)y)*1201 + (int)x;
-									try {
-										int[] fouralts = {heights[idx1], heights[idx1+1], heights[idx1-1201], heights[idx1-1200]};
-										int numVoids = (fouralts[0]==VOID_VAL?1:0) + (fouralts[1]==VOID_VAL?1:0)
-											+ (fouralts[2]==VOID_VAL?1:0) + (fouralts[3]==VOID_VAL?1:0);
-										// if (numVoids > 0) System.out.println(numVoids + " voids found");
-										double altitude = 0.0;
-										switch (numVoids) {
-											case 0:	altitude = bilinearInterpolate(fouralts, x, y); break;
-											case 1: altitude = bilinearInterpolate(fixVoid(fouralts), x, y); break;
-											case 2:
-											case 3: altitude = averageNonVoid(fouralts); break;
-											default: altitude = VOID_VAL;
-										}
-										if (altitude != VOID_VAL) {
-											point.setFieldValue(Field.ALTITUDE, ""+altitude, false);
-											numAltitudesFound++;
-										}
-									}
-									catch (ArrayIndexOutOfBoundsException obe) {
-										//System.err.println("lat=" + point.getLatitude().getDouble() + ", x=" + x + ", y=" + y + ", idx=" + idx1);
-									}
-								}
-							}
-						}
-					}
-				}
-				catch (IOException ioe) {
-					//System.err.println("eek - " + ioe.getMessage());
-				}
-			}
+			numNeeded = countNeeded(track, overwriteZeros);
+			numAltitudesFound = lookupAltitudes(track, overwriteZeros, progress);
+		}
+		finally {
+			progress.finish();
 		}
-		_dialog.dispose();
 		if (numAltitudesFound > 0)
 		{
 			// Inform app including undo information
-			track.requestRescale();
 			UpdateMessageBroker.informSubscribers(DataSubscriber.DATA_ADDED_OR_REMOVED);
 			undo.setRedoData(_pruneApp.getTrackInfo());
 			_pruneApp.completeFunction(undo, I18nManager.getText("confirm.lookupsrtm1") + " " + numAltitudesFound
 				+ " " + I18nManager.getText("confirm.lookupsrtm2"));
 		}
-		else if (inTileList.size() > 0) {
+		else if (numNeeded > 0) {
 			_pruneApp.showErrorMessage(getNameKey(), "error.lookupsrtm.nonefound");
 		}
 		else {
@@ -270,56 +96,110 @@ public class LookupSrtmFunction extends GenericFunction implements Runnable
 	}
 
 	/**
-	 * Perform a bilinear interpolation on the given altitude array
-	 * @param inAltitudes array of four altitude values on corners of square (bl, br, tl, tr)
-	 * @param inX x coordinate
-	 * @param inY y coordinate
-	 * @return interpolated altitude
+	 * Lookup the missing altitudes of the given track without any dialogs,
+	 * for example from the command line.  Zero altitudes are only
+	 * replaced if the track has no other altitudes.
+	 * @param inTrack track to fill in
+	 * @return number of altitudes found
 	 */
-	private static double bilinearInterpolate(int[] inAltitudes, double inX, double inY)
+	public static int lookupAltitudes(Track inTrack)
 	{
-		double alpha = inX - (int) inX;
-		double beta  = 1 - (inY - (int) inY);
-		double alt = (1-alpha)*(1-beta)*inAltitudes[0] + alpha*(1-beta)*inAltitudes[1]
-			+ (1-alpha)*beta*inAltitudes[2] + alpha*beta*inAltitudes[3];
-		return alt;
+		final boolean overwriteZeros = !hasAltitudes(inTrack, false);
+		return lookupAltitudes(inTrack, overwriteZeros, null);
 	}
 
 	/**
-	 * Fix a single void in the given array by replacing it with the average of the others
-	 * @param inAltitudes array of altitudes containing one void
-	 * @return fixed array without voids
+	 * Lookup the altitudes of all the points which need them, as one batch
+	 * @param inTrack track to fill in
+	 * @param inOverwriteZeros true to overwrite zero altitude values
+	 * @param inProgress progress monitor, or null
+	 * @return number of altitudes found
 	 */
-	private static int[] fixVoid(int[] inAltitudes)
+	private static int lookupAltitudes(Track inTrack, boolean inOverwriteZeros, ProgressMonitor inProgress)
 	{
-		int[] fixed = new int[inAltitudes.length];
-		for (int i=0; i<inAltitudes.length; i++) {
-			if (inAltitudes[i] == VOID_VAL) {
-				fixed[i] = (int) Math.round(averageNonVoid(inAltitudes));
+		final int numNeeded = countNeeded(inTrack, inOverwriteZeros);
+		if (numNeeded == 0) {return 0;}
+		int[] indices = new int[numNeeded];
+		double[] latitudes = new double[numNeeded];
+		double[] longitudes = new double[numNeeded];
+		int n = 0;
+		for (int i=0; i<inTrack.getNumPoints(); i++)
+		{
+			DataPoint point = inTrack.getPoint(i);
+			if (needsAltitude(point, inOverwriteZeros))
+			{
+				indices[n] = i;
+				latitudes[n] = point.getLatitude().getDouble();
+				longitudes[n] = point.getLongitude().getDouble();
+				n++;
 			}
-			else {
-				fixed[i] = inAltitudes[i];
+		}
+		double[] altitudes = getProvider().getElevations(latitudes, longitudes, numNeeded, inProgress);
+		return inTrack.setAltitudes(indices, altitudes, numNeeded);
+	}
+
+	/**
+	 * @return elevation provider given by the config
+	 */
+	public static ElevationProvider getProvider()
+	{
+		String path = Config.getConfigString(Config.KEY_SRTM_DIR);
+		if (path == null) {
+			// Config hasn't been loaded, so just use a temporary directory
+			path = System.getProperty("java.io.tmpdir") + "/srtm";
+		}
+		File directory = new File(path);
+		final boolean bicubic = Config.getConfigBoolean(Config.KEY_ELEVATION_BICUBIC);
+		String urlPrefix = Config.getConfigString(Config.KEY_ELEVATION_URL);
+		if (urlPrefix != null && !urlPrefix.equals("")) {
+			return new HgtElevationProvider(directory, urlPrefix, bicubic);
+		}
+		return new SrtmElevationProvider(directory, bicubic);
+	}
+
+	/**
+	 * @param inTrack track to check
+	 * @param inOverwriteZeros true to overwrite zero altitude values
+	 * @return number of points needing altitudes
+	 */
+	private static int countNeeded(Track inTrack, boolean inOverwriteZeros)
+	{
+		int numNeeded = 0;
+		for (int i=0; i<inTrack.getNumPoints(); i++)
+		{
+			if (needsAltitude(inTrack.getPoint(i), inOverwriteZeros)) {
+				numNeeded++;
 			}
 		}
-		return fixed;
+		return numNeeded;
 	}
 
 	/**
-	 * Calculate the average of the non-void altitudes in the given array
-	 * @param inAltitudes array of altitudes with one or more voids
-	 * @return average of non-void altitudes
+	 * Check whether the track has any zero or non-zero altitudes
+	 * @param inTrack track to check
+	 * @param inZero true to look for zero altitudes, false for non-zero ones
+	 * @return true if any point has such an altitude
 	 */
-	private static final double averageNonVoid(int[] inAltitudes)
+	private static boolean hasAltitudes(Track inTrack, boolean inZero)
 	{
-		double totalAltitude = 0.0;
-		int numAlts = 0;
-		for (int i=0; i<inAltitudes.length; i++) {
-			if (inAltitudes[i] != VOID_VAL) {
-				totalAltitude += inAltitudes[i];
-				numAlts++;
+		for (int i=0; i<inTrack.getNumPoints(); i++)
+		{
+			DataPoint point = inTrack.getPoint(i);
+			if (point.hasAltitude() && (point.getAltitude().getValue() == 0) == inZero) {
+				return true;
 			}
 		}
-		if (numAlts < 1) {return VOID_VAL;}
-		return totalAltitude / numAlts;
+		return false;
+	}
+
+	/**
+	 * Check whether the given point needs an altitude
+	 * @param inPoint point to check
+	 * @param inOverwriteZeros true to overwrite zero altitude values
+	 * @return true if point has no altitude or a zero value to overwrite
+	 */
+	private static boolean needsAltitude(DataPoint inPoint, boolean inOverwriteZeros)
+	{
+		return !inPoint.hasAltitude() || (inOverwriteZeros && inPoint.getAltitude().getValue() == 0);
 	}
 }
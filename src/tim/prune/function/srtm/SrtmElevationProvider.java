@@ -0,0 +1,30 @@
+package tim.prune.function.srtm;
+
+import java.io.File;
+import java.net.URL;
+
+/**
+ * Elevation provider for the SRTM3 tiles, downloading any tiles
+ * not already in the local directory from the SRTM site
+ */
+public class SrtmElevationProvider extends HgtElevationProvider
+{
+	/**
+	 * Constructor
+	 * @param inDirectory directory of hgt files
+	 * @param inBicubic true to use bicubic interpolation where possible, false for bilinear
+	 */
+	public SrtmElevationProvider(File inDirectory, boolean inBicubic)
+	{
+		super(inDirectory, null, inBicubic);
+	}
+
+	/**
+	 * @param inTile tile
+	 * @return url of the zipped tile on the SRTM site, or null if there isn't one
+	 */
+	protected URL getUrl(SrtmTile inTile)
+	{
+		return TileFinder.getUrl(inTile);
+	}
+}
@@ -25,6 +25,17 @@ public class SrtmTile
 		_longitude = (int) Math.floor(longitude.getDouble());
 	}
 
+	/**
+	 * Constructor for the tile with the given south-west corner
+	 * @param inLatitude latitude in degrees
+	 * @param inLongitude longitude in degrees
+	 */
+	public SrtmTile(int inLatitude, int inLongitude)
+	{
+		_latitude = inLatitude;
+		_longitude = inLongitude;
+	}
+
 	/**
 	 * Check for equality
 	 * @param inOther other tile object
@@ -0,0 +1,367 @@
+package tim.prune.function.srtm;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import tim.prune.gui.progress.ProgressMonitor;
+
+/**
+ * Superclass for elevation providers whose data comes in tiles of one degree
+ * square, each being a square grid of heights in rows from north to south.
+ * The positions are sorted into their tiles in one pass, and the tiles are then
+ * read and interpolated in parallel on a pool shared by all providers.
+ */
+public abstract class TileElevationProvider implements ElevationProvider
+{
+	/** True to use bicubic interpolation, false for bilinear */
+	private boolean _bicubic = false;
+
+	/** Altitude below which is considered void */
+	private static final int VOID_VAL = -32768;
+
+	/** Pool shared by all lookups, so that simultaneous lookups don't each start their own threads */
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			public Thread newThread(Runnable inRunnable)
+			{
+				// Don't let these threads keep the application running
+				Thread thread = new Thread(inRunnable, "elevation-lookup");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+
+	/**
+	 * Constructor
+	 * @param inBicubic true to use bicubic interpolation where possible, false for bilinear
+	 */
+	public TileElevationProvider(boolean inBicubic)
+	{
+		_bicubic = inBicubic;
+	}
+
+	/**
+	 * Get the heights of a single tile
+	 * @param inTile tile to get
+	 * @return buffer of heights in rows from north to south, or null if not available
+	 * @throws IOException if the tile couldn't be read
+	 */
+	protected abstract ShortBuffer getHeights(SrtmTile inTile) throws IOException;
+
+	/**
+	 * Look up the elevations of a batch of positions
+	 * @param inLatitudes latitudes in degrees
+	 * @param inLongitudes longitudes in degrees
+	 * @param inNumPositions number of positions to use from the arrays
+	 * @param inProgress monitor to show progress and check for cancelling, or null
+	 * @return elevations in metres, with NaN where none are available
+	 */
+	public double[] getElevations(double[] inLatitudes, double[] inLongitudes, int inNumPositions,
+		ProgressMonitor inProgress)
+	{
+		double[] elevations = new double[inNumPositions];
+		Arrays.fill(elevations, Double.NaN);
+		ArrayList<TilePositions> tiles = findTiles(inLatitudes, inLongitudes, inNumPositions);
+		if (tiles.isEmpty()) {return elevations;}
+		if (inProgress != null) {
+			inProgress.setMaximum(tiles.size());
+		}
+		ArrayList<Future<double[]>> results = new ArrayList<Future<double[]>>();
+		try
+		{
+			for (TilePositions tile : tiles) {
+				results.add(EXECUTOR.submit(new TileLookup(tile, inLatitudes, inLongitudes)));
+			}
+			// Each task fills its own array, which is only copied from this thread
+			for (int t=0; t<tiles.size() && (inProgress == null || !inProgress.isCancelled()); t++)
+			{
+				TilePositions tile = tiles.get(t);
+				try
+				{
+					double[] tileElevations = results.get(t).get();
+					if (tileElevations != null)
+					{
+						for (int p=0; p<tile.getNumPositions(); p++) {
+							elevations[tile.getIndices()[p]] = tileElevations[p];
+						}
+					}
+				}
+				catch (Exception e) {} // tile can't be read, so skip it
+				if (inProgress != null) {
+					inProgress.update(tile.getTile().getTileName(), 1);
+				}
+			}
+		}
+		finally
+		{
+			// Drop any tiles still waiting if the lookup was cancelled
+			for (Future<double[]> result : results) {
+				result.cancel(false);
+			}
+		}
+		return elevations;
+	}
+
+	/**
+	 * Sort the positions into the tiles they need, in one pass
+	 * @param inLatitudes latitudes in degrees
+	 * @param inLongitudes longitudes in degrees
+	 * @param inNumPositions number of positions
+	 * @return list of tiles without repeats, each with its positions
+	 */
+	private static ArrayList<TilePositions> findTiles(double[] inLatitudes, double[] inLongitudes, int inNumPositions)
+	{
+		ArrayList<TilePositions> tiles = new ArrayList<TilePositions>();
+		HashMap<Integer, TilePositions> tilesByIndex = new HashMap<Integer, TilePositions>();
+		TilePositions currTile = null;
+		int currIndex = -1;
+		for (int i=0; i<inNumPositions; i++)
+		{
+			final int latitude = (int) Math.floor(inLatitudes[i]);
+			final int longitude = (int) Math.floor(inLongitudes[i]);
+			// Neighbouring positions are usually in the same tile, so only look up when it changes
+			final int tileIndex = (latitude + 90) * 361 + (longitude + 180);
+			if (currTile == null || tileIndex != currIndex)
+			{
+				currTile = tilesByIndex.get(tileIndex);
+				if (currTile == null)
+				{
+					currTile = new TilePositions(new SrtmTile(latitude, longitude));
+					tilesByIndex.put(tileIndex, currTile);
+					tiles.add(currTile);
+				}
+				currIndex = tileIndex;
+			}
+			currTile.addPosition(i);
+		}
+		return tiles;
+	}
+
+	/**
+	 * Calculate the elevations of the positions in a tile from its heights
+	 * @param inTile tile with its positions
+	 * @param inLatitudes latitudes in degrees
+	 * @param inLongitudes longitudes in degrees
+	 * @param inHeights heights of tile
+	 * @return elevations of the tile's positions, with NaN where none could be found
+	 */
+	private double[] calculateElevations(TilePositions inTile, double[] inLatitudes, double[] inLongitudes,
+		ShortBuffer inHeights)
+	{
+		final int gridSize = (int) Math.round(Math.sqrt(inHeights.capacity()));
+		final SrtmTile tile = inTile.getTile();
+		double[] elevations = new double[inTile.getNumPositions()];
+		for (int p=0; p<inTile.getNumPositions(); p++)
+		{
+			final int index = inTile.getIndices()[p];
+			// Position within the grid, counting rows from the north edge
+			double x = (inLongitudes[index] - tile.getLongitude()) * (gridSize-1);
+			double y = (tile.getLatitude() + 1 - inLatitudes[index]) * (gridSize-1);
+			int col = Math.max(0, Math.min((int) x, gridSize-2));
+			int row = Math.max(0, Math.min((int) y, gridSize-2));
+			double elevation = Double.NaN;
+			if (_bicubic) {
+				elevation = bicubicInterpolate(inHeights, gridSize, row, col, y - row, x - col);
+			}
+			if (Double.isNaN(elevation)) {
+				elevation = bilinearInterpolate(inHeights, gridSize, row, col, y - row, x - col);
+			}
+			elevations[p] = elevation;
+		}
+		return elevations;
+	}
+
+	/**
+	 * Interpolate bilinearly between the four heights around a position, filling any voids
+	 * @param inHeights heights of tile
+	 * @param inGridSize number of samples along each side
+	 * @param inRow row above the position
+	 * @param inCol column to the left of the position
+	 * @param inRowFraction fraction of the way down to the next row
+	 * @param inColFraction fraction of the way across to the next column
+	 * @return interpolated elevation, or NaN if all four heights are void
+	 */
+	private static double bilinearInterpolate(ShortBuffer inHeights, int inGridSize, int inRow, int inCol,
+		double inRowFraction, double inColFraction)
+	{
+		final int topLeft = inRow * inGridSize + inCol;
+		int[] fouralts = {inHeights.get(topLeft + inGridSize), inHeights.get(topLeft + inGridSize + 1),
+			inHeights.get(topLeft), inHeights.get(topLeft + 1)};
+		int numVoids = (fouralts[0]==VOID_VAL?1:0) + (fouralts[1]==VOID_VAL?1:0)
+			+ (fouralts[2]==VOID_VAL?1:0) + (fouralts[3]==VOID_VAL?1:0);
+		switch (numVoids)
+		{
+			case 0: break;
+			case 1: fouralts = fixVoid(fouralts); break;
+			case 2:
+			case 3: return averageNonVoid(fouralts);
+			default: return Double.NaN;
+		}
+		// Corners are bottom left, bottom right, top left, top right
+		final double alpha = inColFraction;
+		final double beta = 1.0 - inRowFraction;
+		return (1-alpha)*(1-beta)*fouralts[0] + alpha*(1-beta)*fouralts[1]
+			+ (1-alpha)*beta*fouralts[2] + alpha*beta*fouralts[3];
+	}
+
+	/**
+	 * Interpolate with Catmull-Rom splines through the sixteen heights around a position
+	 * @param inHeights heights of tile
+	 * @param inGridSize number of samples along each side
+	 * @param inRow row above the position
+	 * @param inCol column to the left of the position
+	 * @param inRowFraction fraction of the way down to the next row
+	 * @param inColFraction fraction of the way across to the next column
+	 * @return interpolated elevation, or NaN if too near the edge or any height is void
+	 */
+	private static double bicubicInterpolate(ShortBuffer inHeights, int inGridSize, int inRow, int inCol,
+		double inRowFraction, double inColFraction)
+	{
+		if (inRow < 1 || inCol < 1 || inRow > inGridSize-3 || inCol > inGridSize-3) {
+			return Double.NaN;
+		}
+		double[] rowValues = new double[4];
+		double[] colValues = new double[4];
+		for (int r=0; r<4; r++)
+		{
+			final int rowStart = (inRow - 1 + r) * inGridSize + inCol - 1;
+			for (int c=0; c<4; c++)
+			{
+				colValues[c] = inHeights.get(rowStart + c);
+				if (colValues[c] == VOID_VAL) {return Double.NaN;}
+			}
+			rowValues[r] = cubicInterpolate(colValues, inColFraction);
+		}
+		return cubicInterpolate(rowValues, inRowFraction);
+	}
+
+	/**
+	 * @param inValues four values at equal spacing
+	 * @param inFraction fraction of the way from the second value to the third
+	 * @return value of the Catmull-Rom spline at this point
+	 */
+	private static double cubicInterpolate(double[] inValues, double inFraction)
+	{
+		final double p0 = inValues[0], p1 = inValues[1], p2 = inValues[2], p3 = inValues[3];
+		return p1 + 0.5 * inFraction * (p2 - p0 + inFraction * (2*p0 - 5*p1 + 4*p2 - p3
+			+ inFraction * (3*(p1 - p2) + p3 - p0)));
+	}
+
+	/**
+	 * Fix a single void in the given array by replacing it with the average of the others
+	 * @param inAltitudes array of altitudes containing one void
+	 * @return fixed array without voids
+	 */
+	private static int[] fixVoid(int[] inAltitudes)
+	{
+		int[] fixed = new int[inAltitudes.length];
+		for (int i=0; i<inAltitudes.length; i++) {
+			if (inAltitudes[i] == VOID_VAL) {
+				fixed[i] = (int) Math.round(averageNonVoid(inAltitudes));
+			}
+			else {
+				fixed[i] = inAltitudes[i];
+			}
+		}
+		return fixed;
+	}
+
+	/**
+	 * Calculate the average of the non-void altitudes in the given array
+	 * @param inAltitudes array of altitudes with one or more voids
+	 * @return average of non-void altitudes
+	 */
+	private static final double averageNonVoid(int[] inAltitudes)
+	{
+		double totalAltitude = 0.0;
+		int numAlts = 0;
+		for (int i=0; i<inAltitudes.length; i++) {
+			if (inAltitudes[i] != VOID_VAL) {
+				totalAltitude += inAltitudes[i];
+				numAlts++;
+			}
+		}
+		if (numAlts < 1) {return VOID_VAL;}
+		return totalAltitude / numAlts;
+	}
+
+
+	/**
+	 * Tile together with the indexes of the positions within it
+	 */
+	private static class TilePositions
+	{
+		private SrtmTile _tile = null;
+		private int[] _indices = new int[16];
+		private int _numPositions = 0;
+
+		/**
+		 * Constructor
+		 * @param inTile tile
+		 */
+		public TilePositions(SrtmTile inTile)
+		{
+			_tile = inTile;
+		}
+
+		/**
+		 * @param inIndex index of position to add
+		 */
+		public void addPosition(int inIndex)
+		{
+			if (_numPositions == _indices.length) {
+				_indices = Arrays.copyOf(_indices, _numPositions * 2);
+			}
+			_indices[_numPositions++] = inIndex;
+		}
+
+		/** @return tile */
+		public SrtmTile getTile() {return _tile;}
+
+		/** @return indexes of positions, only the first getNumPositions() of which are used */
+		public int[] getIndices() {return _indices;}
+
+		/** @return number of positions */
+		public int getNumPositions() {return _numPositions;}
+	}
+
+	/**
+	 * Task to get the heights of a single tile and calculate the elevations of its positions
+	 */
+	private class TileLookup implements Callable<double[]>
+	{
+		private TilePositions _tile = null;
+		private double[] _latitudes = null, _longitudes = null;
+
+		/**
+		 * Constructor
+		 * @param inTile tile with its positions
+		 * @param inLatitudes latitudes of all positions
+		 * @param inLongitudes longitudes of all positions
+		 */
+		public TileLookup(TilePositions inTile, double[] inLatitudes, double[] inLongitudes)
+		{
+			_tile = inTile;
+			_latitudes = inLatitudes;
+			_longitudes = inLongitudes;
+		}
+
+		/**
+		 * @return elevations of the tile's positions, or null if the tile isn't available
+		 */
+		public double[] call() throws IOException
+		{
+			ShortBuffer heights = getHeights(_tile.getTile());
+			return (heights == null ? null : calculateElevations(_tile, _latitudes, _longitudes, heights));
+		}
+	}
+}
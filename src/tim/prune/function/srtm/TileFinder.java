@@ -3,7 +3,6 @@ package tim.prune.function.srtm;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
 
 
 /**
@@ -19,33 +18,42 @@ public abstract class TileFinder
 		"Islands", "South_America", "Africa"};
 
 
+	/** Contents of dat file, read when first needed */
+	private static byte[] _lookup = null;
+
+
 	/**
-	 * Get the Urls for the given list of tiles
-	 * @param inTiles list of Tiles to get
-	 * @return array of URLs
+	 * Get the Url for the given tile
+	 * @param inTile tile to get
+	 * @return URL, or null if there's no such tile
 	 */
-	public static URL[] getUrls(ArrayList<SrtmTile> inTiles)
+	public static URL getUrl(SrtmTile inTile)
 	{
-		if (inTiles == null || inTiles.size() < 1) {return null;}
-		URL[] urls = new URL[inTiles.size()];
-		// Read dat file into array
-		byte[] lookup = readDatFile();
-		for (int t=0; t<inTiles.size(); t++)
+		byte[] lookup = getLookup();
+		if (lookup == null) {return null;}
+		// Get byte from lookup array
+		int idx = (inTile.getLatitude() + 59)*360 + (inTile.getLongitude() + 180);
+		try
 		{
-			SrtmTile tile = inTiles.get(t);
-			// Get byte from lookup array
-			int idx = (tile.getLatitude() + 59)*360 + (tile.getLongitude() + 180);
-			try
-			{
-				int dir = lookup[idx];
-				if (dir > 0) {
-					try {
-						urls[t] = new URL(URL_PREFIX + CONTINENTS[dir] + "/" + tile.getTileName());
-					} catch (MalformedURLException e) {} // ignore error, url stays null
-				}
-			} catch (ArrayIndexOutOfBoundsException e) {} // ignore error, url stays null
+			int dir = lookup[idx];
+			if (dir > 0) {
+				try {
+					return new URL(URL_PREFIX + CONTINENTS[dir] + "/" + inTile.getTileName());
+				} catch (MalformedURLException e) {} // ignore error, url stays null
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {} // ignore error, url stays null
+		return null;
+	}
+
+	/**
+	 * @return contents of dat file, read on the first call
+	 */
+	private static synchronized byte[] getLookup()
+	{
+		if (_lookup == null) {
+			_lookup = readDatFile();
 		}
-		return urls;
+		return _lookup;
 	}
 
 	/**
@@ -43,6 +43,8 @@ public class PruneMenuManager extends MenuManager
 	private JMenuItem _exportTextItem = null;
 	private JMenuItem _exportKmlItem = null;
 	private JMenuItem _exportGpxItem = null;
+	private JMenuItem _exportMultiItem = null;
+	private JMenuItem _saveSessionItem = null;
 	private JMenuItem _undoItem = null;
 	private JMenuItem _redoItem = null;
 	private JMenuItem _clearUndoItem = null;
@@ -137,6 +139,8 @@ public class PruneMenuManager extends MenuManager
 		JMenuItem loadFromGpsMenuItem = makeMenuItem(FunctionLibrary.FUNCTION_GPSLOAD);
 		setShortcut(loadFromGpsMenuItem, "shortcut.menu.file.load");
 		fileMenu.add(loadFromGpsMenuItem);
+		// Follow live nmea stream
+		fileMenu.add(makeMenuItem(FunctionLibrary.FUNCTION_NMEASTREAM));
 		// Send to GPS
 		_sendGpsItem = makeMenuItem(FunctionLibrary.FUNCTION_GPSSAVE, false);
 		fileMenu.add(_sendGpsItem);
@@ -168,6 +172,12 @@ public class PruneMenuManager extends MenuManager
 		// Gpx
 		_exportGpxItem = makeMenuItem(FunctionLibrary.FUNCTION_GPXEXPORT, false);
 		fileMenu.add(_exportGpxItem);
+		// Several formats at once
+		_exportMultiItem = makeMenuItem(FunctionLibrary.FUNCTION_MULTIEXPORT, false);
+		fileMenu.add(_exportMultiItem);
+		// Session
+		_saveSessionItem = makeMenuItem(FunctionLibrary.FUNCTION_SESSIONSAVE, false);
+		fileMenu.add(_saveSessionItem);
 		// Text
 		_exportTextItem = new JMenuItem(I18nManager.getText("menu.file.exporttext"), null);
 		_exportTextAction = new ActionListener() {
@@ -538,6 +548,8 @@ public class PruneMenuManager extends MenuManager
 		settingsMenu.add(makeMenuItem(FunctionLibrary.FUNCTION_SET_COLOURS));
 		// Set line width used for drawing
 		settingsMenu.add(makeMenuItem(FunctionLibrary.FUNCTION_SET_LINE_WIDTH));
+		// Set filtering of altitude noise
+		settingsMenu.add(makeMenuItem(FunctionLibrary.FUNCTION_SET_ALTITUDE_FILTER));
 		// Set language
 		settingsMenu.add(makeMenuItem(FunctionLibrary.FUNCTION_SET_LANGUAGE));
 //		settingsMenu.addSeparator();
@@ -654,6 +666,8 @@ public class PruneMenuManager extends MenuManager
 		_saveButton.setEnabled(hasData);
 		_exportKmlItem.setEnabled(hasData);
 		_exportGpxItem.setEnabled(hasData);
+		_exportMultiItem.setEnabled(hasData);
+		_saveSessionItem.setEnabled(hasData);
 		_compressItem.setEnabled(hasData);
 		_deleteMarkedPointsItem.setEnabled(hasData && _track.hasMarkedPoints());
 		_rearrangeMenu.setEnabled(hasData && _track.hasTrackPoints() && _track.hasWaypoints());
@@ -664,11 +678,11 @@ public class PruneMenuManager extends MenuManager
 		_distanceItem.setEnabled(hasData);
 		_lookupSrtmItem.setEnabled(hasData);
 		_findWaypointItem.setEnabled(hasData && _track.hasWaypoints());
-		// is undo available?
-		boolean hasUndo = !_app.getUndoStack().isEmpty();
+		// is undo available? (not while undo recording is suspended, eg while streaming)
+		boolean hasUndo = _app.isUndoEnabled() && !_app.getUndoStack().isEmpty();
 		_undoItem.setEnabled(hasUndo);
 		_undoButton.setEnabled(hasUndo);
-		boolean hasRedo = !_app.getRedoStack().isEmpty();
+		boolean hasRedo = _app.isUndoEnabled() && !_app.getRedoStack().isEmpty();
 		_redoItem.setEnabled(hasRedo);
 		_redoButton.setEnabled(hasRedo);
 		_clearUndoItem.setEnabled(hasUndo || hasRedo);
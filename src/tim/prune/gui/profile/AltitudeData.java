@@ -4,6 +4,7 @@ import tim.prune.I18nManager;
 import tim.prune.data.Altitude;
 import tim.prune.data.DataPoint;
 import tim.prune.data.Track;
+import tim.prune.data.TrackMetrics;
 
 /**
  * Class to provide a source of altitude data for the profile chart
@@ -31,6 +32,8 @@ public class AltitudeData extends ProfileData
 		_hasData = false;
 		_altitudeFormat = Altitude.Format.NO_FORMAT;
 		if (_track != null) {
+			// Values come from the metrics so that any altitude filtering is shown
+			TrackMetrics metrics = _track.getMetrics();
 			for (int i=0; i<_track.getNumPoints(); i++)
 			{
 				DataPoint point = _track.getPoint(i);
@@ -40,10 +43,10 @@ public class AltitudeData extends ProfileData
 					if (_altitudeFormat == Altitude.Format.NO_FORMAT)
 					{
 						_altitudeFormat = point.getAltitude().getFormat();
-						_minValue = _maxValue = point.getAltitude().getValue();
+						_minValue = _maxValue = metrics.getAltitude(i, _altitudeFormat);
 					}
 					// Store the value and maintain max and min values
-					double value = point.getAltitude().getValue(_altitudeFormat);
+					double value = metrics.getAltitude(i, _altitudeFormat);
 					_pointValues[i] = value;
 					if (value < _minValue) {_minValue = value;}
 					if (value > _maxValue) {_maxValue = value;}
@@ -0,0 +1,216 @@
+package tim.prune.gui.profile;
+
+import java.awt.Color;
+import java.util.ArrayList;
+
+/**
+ * Class to hold the profile values reduced to one bin per pixel column.
+ * As the bars are all drawn up from the bottom of the chart, each bin only
+ * needs the highest value for each point colour in that column.
+ * The bins for the selected range are kept separately, so that a change of
+ * selection only needs the columns at the ends of the range to be rescanned.
+ */
+class ProfileBins
+{
+	/** Number of points in the data */
+	private int _numPoints = 0;
+	/** Number of columns */
+	private int _numColumns = 0;
+	/** Scale factor from point index to column */
+	private double _xScaleFactor = 0.0;
+	/** Distinct point colours, null for the default colour */
+	private ArrayList<Color> _colours = new ArrayList<Color>();
+	/** Highest value per colour for each column */
+	private ArrayList<double[]> _maxValues = new ArrayList<double[]>();
+	/** Flags for data per colour for each column */
+	private ArrayList<boolean[]> _hasData = new ArrayList<boolean[]>();
+	/** Highest value of any colour for each column */
+	private double[] _columnMax = null;
+	/** Flags for columns with any data */
+	private boolean[] _columnHasData = null;
+	/** Highest value of selected points for each column */
+	private double[] _selectedMax = null;
+	/** Flags for columns with selected data */
+	private boolean[] _selectedHasData = null;
+	/** Start and end of selected range */
+	private int _selStart = -1, _selEnd = -1;
+
+
+	/**
+	 * Constructor, filling the bins from the given data
+	 * @param inData profile data, already initialised
+	 * @param inNumPoints number of points
+	 * @param inNumColumns number of pixel columns
+	 */
+	public ProfileBins(ProfileData inData, int inNumPoints, int inNumColumns)
+	{
+		_numPoints = inNumPoints;
+		_numColumns = Math.max(inNumColumns, 1);
+		_xScaleFactor = 1.0 * _numColumns / Math.max(inNumPoints, 1);
+		_columnMax = new double[_numColumns];
+		_columnHasData = new boolean[_numColumns];
+		_selectedMax = new double[_numColumns];
+		_selectedHasData = new boolean[_numColumns];
+		int colourIndex = -1;
+		Color prevColour = null;
+		for (int p=0; p<inNumPoints; p++)
+		{
+			if (!inData.hasData(p)) {continue;}
+			// Colours usually come in long runs, so only look up when it changes
+			Color colour = inData.getColor(p);
+			if (colourIndex < 0 || colour != prevColour)
+			{
+				colourIndex = getColourIndex(colour);
+				prevColour = colour;
+			}
+			final int column = getColumn(p);
+			final double value = inData.getData(p);
+			double[] maxValues = _maxValues.get(colourIndex);
+			boolean[] hasData = _hasData.get(colourIndex);
+			if (!hasData[column] || value > maxValues[column])
+			{
+				maxValues[column] = value;
+				hasData[column] = true;
+			}
+			if (!_columnHasData[column] || value > _columnMax[column])
+			{
+				_columnMax[column] = value;
+				_columnHasData[column] = true;
+			}
+		}
+	}
+
+	/**
+	 * Find the index of the given colour, adding it if necessary
+	 * @param inColour colour of point
+	 * @return index of colour
+	 */
+	private int getColourIndex(Color inColour)
+	{
+		for (int i=0; i<_colours.size(); i++)
+		{
+			Color colour = _colours.get(i);
+			if (colour == null ? inColour == null : colour.equals(inColour)) {
+				return i;
+			}
+		}
+		_colours.add(inColour);
+		_maxValues.add(new double[_numColumns]);
+		_hasData.add(new boolean[_numColumns]);
+		return _colours.size() - 1;
+	}
+
+	/**
+	 * @param inPointIndex index of point
+	 * @return column for this point
+	 */
+	public int getColumn(int inPointIndex)
+	{
+		return Math.min((int) (_xScaleFactor * inPointIndex), _numColumns - 1);
+	}
+
+	/**
+	 * Update the bins for the selected range
+	 * @param inData profile data used for the bins
+	 * @param inStart index of first selected point, or -1 for none
+	 * @param inEnd index of last selected point
+	 */
+	public void setSelection(ProfileData inData, int inStart, int inEnd)
+	{
+		if (inStart == _selStart && inEnd == _selEnd) {return;}
+		// Clear the columns of the previous range
+		if (_selStart >= 0)
+		{
+			for (int c=getColumn(_selStart); c<=getColumn(_selEnd); c++) {
+				_selectedHasData[c] = false;
+			}
+		}
+		_selStart = inStart;
+		_selEnd = inEnd;
+		if (inStart < 0 || inEnd < inStart || inEnd >= _numPoints) {
+			_selStart = _selEnd = -1;
+			return;
+		}
+		final int startColumn = getColumn(inStart), endColumn = getColumn(inEnd);
+		// Columns in between only contain selected points
+		for (int c=startColumn+1; c<endColumn; c++)
+		{
+			_selectedHasData[c] = _columnHasData[c];
+			_selectedMax[c] = _columnMax[c];
+		}
+		// Columns at the ends need their selected points checking
+		for (int p=inStart; p<=inEnd && getColumn(p) == startColumn; p++) {
+			addSelectedValue(inData, p, startColumn);
+		}
+		if (endColumn > startColumn)
+		{
+			for (int p=inEnd; p>=inStart && getColumn(p) == endColumn; p--) {
+				addSelectedValue(inData, p, endColumn);
+			}
+		}
+	}
+
+	/**
+	 * Add the value of a selected point to its column
+	 * @param inData profile data
+	 * @param inPointIndex index of point
+	 * @param inColumn column of point
+	 */
+	private void addSelectedValue(ProfileData inData, int inPointIndex, int inColumn)
+	{
+		if (inData.hasData(inPointIndex))
+		{
+			final double value = inData.getData(inPointIndex);
+			if (!_selectedHasData[inColumn] || value > _selectedMax[inColumn])
+			{
+				_selectedMax[inColumn] = value;
+				_selectedHasData[inColumn] = true;
+			}
+		}
+	}
+
+	/** @return number of points used for the bins */
+	public int getNumPoints() {return _numPoints;}
+
+	/** @return number of columns */
+	public int getNumColumns() {return _numColumns;}
+
+	/** @return number of distinct colours */
+	public int getNumColours() {return _colours.size();}
+
+	/**
+	 * @param inColourIndex colour index
+	 * @return colour, or null for the default colour
+	 */
+	public Color getColour(int inColourIndex) {return _colours.get(inColourIndex);}
+
+	/**
+	 * @param inColourIndex colour index
+	 * @param inColumn column index
+	 * @return true if any points of this colour fall in this column
+	 */
+	public boolean hasData(int inColourIndex, int inColumn) {
+		return _hasData.get(inColourIndex)[inColumn];
+	}
+
+	/**
+	 * @param inColourIndex colour index
+	 * @param inColumn column index
+	 * @return highest value of this colour in this column
+	 */
+	public double getMaxValue(int inColourIndex, int inColumn) {
+		return _maxValues.get(inColourIndex)[inColumn];
+	}
+
+	/**
+	 * @param inColumn column index
+	 * @return true if any selected points fall in this column
+	 */
+	public boolean hasSelectedData(int inColumn) {return _selectedHasData[inColumn];}
+
+	/**
+	 * @param inColumn column index
+	 * @return highest value of selected points in this column
+	 */
+	public double getSelectedMaxValue(int inColumn) {return _selectedMax[inColumn];}
+}
@@ -12,6 +12,7 @@ import javax.swing.JLabel;
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
 
+import tim.prune.DataSubscriber;
 import tim.prune.I18nManager;
 import tim.prune.config.ColourScheme;
 import tim.prune.config.Config;
@@ -29,6 +30,10 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 	private double _xScaleFactor = 0.0;
 	/** Data to show on chart */
 	private ProfileData _data = null;
+	/** Flag set when the data needs to be fetched again */
+	private boolean _dataChanged = true;
+	/** Data reduced to pixel columns, or null if not made yet */
+	private ProfileBins _bins = null;
 	/** Label for chart type, units */
 	private JLabel _label = null;
 	/** Right-click popup menu */
@@ -81,7 +86,12 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 		paintBackground(g, colourScheme);
 		if (_track != null && _track.getNumPoints() > 0)
 		{
-			_data.init();
+			if (_dataChanged)
+			{
+				_data.init();
+				_bins = null;
+				_dataChanged = false;
+			}
 			_label.setText(_data.getLabel());
 			int width = getWidth();
 			int height = getHeight();
@@ -113,11 +123,17 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 			double yScaleFactor = 1.0 * usableHeight / (maxValue - minValue);
 			int barWidth = (int) (_xScaleFactor + 1.0);
 			int selectedPoint = _trackInfo.getSelection().getCurrentPointIndex();
+			// Bins only need remaking if the width or the data have changed
+			final int numColumns = width - 2 * BORDER_WIDTH - 1;
+			if (_bins == null || _bins.getNumColumns() != numColumns || _bins.getNumPoints() != numPoints) {
+				_bins = new ProfileBins(_data, numPoints, numColumns);
+			}
 			// selection start, end
-			int selectionStart = -1, selectionEnd = -1;
 			if (_trackInfo.getSelection().hasRangeSelected()) {
-				selectionStart = _trackInfo.getSelection().getStart();
-				selectionEnd = _trackInfo.getSelection().getEnd();
+				_bins.setSelection(_data, _trackInfo.getSelection().getStart(), _trackInfo.getSelection().getEnd());
+			}
+			else {
+				_bins.setSelection(_data, -1, -1);
 			}
 
 			// horizontal lines for scale - set to round numbers eg 500
@@ -138,24 +154,41 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 
 			try
 			{
-				// loop through points				
-				g.setColor(barColour);
-				for (int p = 0; p < numPoints; p++)
+				// loop through columns
+				final int numColours = _bins.getNumColours();
+				boolean[] drawn = new boolean[numColours];
+				for (int c = 0; c < _bins.getNumColumns(); c++)
 				{
-					Color c = _data.getColor(p);
-					c = c == null ? barColour : c;
-					if (p >= selectionStart && p <= selectionEnd)
-						c = rangeColour;
-
-					if( !g.getColor().equals(c) )
-						g.setColor(c);
-					
-					x = (int) (_xScaleFactor * p) + 1;
-					if (_data.hasData(p))
+					x = BORDER_WIDTH + c + 1;
+					// Draw the tallest bar first so that shorter ones of other colours stay visible
+					for (int i = 0; i < numColours; i++) {
+						drawn[i] = !_bins.hasData(i, c);
+					}
+					int tallest = 0;
+					while (tallest >= 0)
 					{
-						value = _data.getData(p);
-						y = (int) (yScaleFactor * (value - minValue));
-						g.fillRect(BORDER_WIDTH+x, height-BORDER_WIDTH - y, barWidth, y);
+						tallest = -1;
+						for (int i = 0; i < numColours; i++)
+						{
+							if (!drawn[i] && (tallest < 0 || _bins.getMaxValue(i, c) > _bins.getMaxValue(tallest, c))) {
+								tallest = i;
+							}
+						}
+						if (tallest >= 0)
+						{
+							Color colour = _bins.getColour(tallest);
+							g.setColor(colour == null ? barColour : colour);
+							y = (int) (yScaleFactor * (_bins.getMaxValue(tallest, c) - minValue));
+							g.fillRect(x, height-BORDER_WIDTH - y, barWidth, y);
+							drawn[tallest] = true;
+						}
+					}
+					// Selected points on top
+					if (_bins.hasSelectedData(c))
+					{
+						g.setColor(rangeColour);
+						y = (int) (yScaleFactor * (_bins.getSelectedMaxValue(c) - minValue));
+						g.fillRect(x, height-BORDER_WIDTH - y, barWidth, y);
 					}
 				}
 				// current point (make sure it's drawn last)
@@ -281,7 +314,12 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 	 */
 	public void dataUpdated(byte inUpdateType)
 	{
-		_data.init();
+		// A change of selection alone doesn't need the data to be fetched again
+		if ((inUpdateType & (DataSubscriber.DATA_ADDED_OR_REMOVED | DataSubscriber.DATA_EDITED
+			| DataSubscriber.WAYPOINTS_MODIFIED | DataSubscriber.UNITS_CHANGED)) > 0)
+		{
+			_dataChanged = true;
+		}
 		repaint();
 	}
 
@@ -330,7 +368,7 @@ public class ProfileChart extends GenericDisplay implements MouseListener
 		else if (inType == ChartType.SPEED && !(_data instanceof SpeedData)) {
 			_data = new SpeedData(_track);
 		}
-		_data.init();
+		_dataChanged = true;
 		repaint();
 	}
 
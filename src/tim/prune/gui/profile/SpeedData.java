@@ -2,9 +2,9 @@ package tim.prune.gui.profile;
 
 import tim.prune.I18nManager;
 import tim.prune.config.Config;
-import tim.prune.data.DataPoint;
 import tim.prune.data.Distance;
 import tim.prune.data.Track;
+import tim.prune.data.TrackMetrics;
 import tim.prune.data.Distance.Units;
 
 /**
@@ -32,35 +32,23 @@ public class SpeedData extends ProfileData
 		_metric = Config.getConfigBoolean(Config.KEY_METRIC_UNITS);
 		_hasData = false;
 		_minValue = _maxValue = 0.0;
-		if (_track != null) {
-			DataPoint prevPrevPoint = null, prevPoint = null, point = null;
-			for (int i=0; i<_track.getNumPoints(); i++)
+		if (_track != null)
+		{
+			// Speeds are shared with the charts, so only the units need converting here
+			TrackMetrics metrics = _track.getMetrics();
+			final Units units = _metric ? Units.KILOMETRES : Units.MILES;
+			for (int i=0; i<metrics.getNumPoints(); i++)
 			{
-				point = _track.getPoint(i);
-				if (prevPrevPoint != null && prevPrevPoint.hasTimestamp()
-					&& prevPoint != null && prevPoint.hasTimestamp()
-					&& point != null && point.hasTimestamp())
+				_pointHasData[i] = metrics.hasSpeed(i);
+				if (_pointHasData[i])
 				{
-					// All three points have timestamps
-					double seconds = point.getTimestamp().getSecondsSince(prevPrevPoint.getTimestamp());
-					if (seconds > 0)
-					{
-						double distInRads = DataPoint.calculateRadiansBetween(prevPrevPoint, prevPoint)
-							+ DataPoint.calculateRadiansBetween(prevPoint, point);
-						double dist = Distance.convertRadiansToDistance(distInRads, _metric?Units.KILOMETRES:Units.MILES);
-						// Store the value and maintain max and min values
-						double value = dist / seconds * 60.0 * 60.0;
-						_pointValues[i-1] = value;
-						if (value < _minValue || _minValue == 0.0) {_minValue = value;}
-						if (value > _maxValue) {_maxValue = value;}
-
-						_hasData = true;
-						_pointHasData[i-1] = true;
-					}
+					// Store the value and maintain max and min values
+					double value = Distance.convertRadiansToDistance(metrics.getSpeed(i), units) * 60.0 * 60.0;
+					_pointValues[i] = value;
+					if (value < _minValue || _minValue == 0.0) {_minValue = value;}
+					if (value > _maxValue) {_maxValue = value;}
+					_hasData = true;
 				}
-				// Exchange points
-				prevPrevPoint = prevPoint;
-				prevPoint = point;
 			}
 		}
 	}
@@ -2,19 +2,33 @@ package tim.prune.gui.progress;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
+import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JProgressBar;
 
+import tim.prune.I18nManager;
+
 public class ProgressMonitor {
 
 	private final JProgressBar progressBar;
 	private final JDialog progressDialog;
+	private volatile boolean cancelled = false;
+	private long startTime = 0L;
 	
 	public ProgressMonitor() {
+		this(false);
+	}
+
+	/**
+	 * @param cancellable true to show a cancel button, see isCancelled()
+	 */
+	public ProgressMonitor( boolean cancellable ) {
 		progressDialog = new JDialog();
 		progressDialog.setAlwaysOnTop(true);
-		progressDialog.setSize(450, 50);
+		progressDialog.setSize(450, cancellable ? 60 : 50);
 		progressDialog.setLocationRelativeTo(null);
 		
 		Container contentPane = progressDialog.getContentPane();
@@ -23,24 +37,77 @@ public class ProgressMonitor {
 		progressBar.setIndeterminate(true);
 		progressBar.setStringPainted(true);
 		contentPane.add(progressBar);
+		if( cancellable ) {
+			JButton cancelButton = new JButton(I18nManager.getText("button.cancel"));
+			cancelButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					cancelled = true;
+				}
+			});
+			contentPane.add(cancelButton, BorderLayout.EAST);
+		}
 	}
 	
 	public void start( String task, int totalWork ) {
 		if( totalWork <= 0 ) {
 			progressBar.setIndeterminate(true);
 		} else {
+			progressBar.setIndeterminate(false);
 			progressBar.setMaximum(totalWork);
 		}
+		startTime = System.currentTimeMillis();
 		progressDialog.setTitle(task == null ? "" : task);
 		progressDialog.setVisible(true);
 	}
 	
+	/**
+	 * Set the total amount of work once it's known, after start() was given none
+	 * @param totalWork total amount of work
+	 */
+	public void setMaximum( int totalWork ) {
+		progressBar.setIndeterminate(totalWork <= 1);
+		progressBar.setMaximum(totalWork);
+		progressBar.setValue(0);
+	}
+
 	public void update( String message, int workInc ) {
 		if( workInc > 0 ) {
 			progressBar.setValue(progressBar.getValue()+workInc);
 		}
 		progressBar.setString(message == null ? "" : message);
 	}
+
+	/**
+	 * Set the absolute amount of work done, and show the rate and the estimated time remaining
+	 * @param workDone work done so far, out of the total given to start()
+	 * @param units name of the work units for the rate, eg "kB"
+	 */
+	public void setProgress( int workDone, String units ) {
+		progressBar.setValue(workDone);
+		long elapsedMillis = System.currentTimeMillis() - startTime;
+		if( elapsedMillis <= 0 || workDone <= 0 ) {
+			return;
+		}
+		double rate = workDone * 1000.0 / elapsedMillis;
+		StringBuilder message = new StringBuilder();
+		message.append((int) rate).append(' ').append(units).append("/s");
+		if( !progressBar.isIndeterminate() ) {
+			int secsLeft = (int) ((progressBar.getMaximum() - workDone) / rate);
+			message.append(", ").append(secsLeft / 60).append(':');
+			if( secsLeft % 60 < 10 ) {
+				message.append('0');
+			}
+			message.append(secsLeft % 60).append(' ').append(I18nManager.getText("dialog.progress.remaining"));
+		}
+		progressBar.setString(message.toString());
+	}
+
+	/**
+	 * @return true if the cancel button has been pressed
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
 	
 	public void finish() {
 		progressDialog.setVisible(false);
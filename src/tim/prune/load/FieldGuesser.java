@@ -1,5 +1,7 @@
 package tim.prune.load;
 
+import java.util.Arrays;
+
 import tim.prune.I18nManager;
 import tim.prune.data.Field;
 import tim.prune.data.Latitude;
@@ -12,6 +14,14 @@ import tim.prune.data.Timestamp;
  */
 public abstract class FieldGuesser
 {
+	/** Fields which can be guessed, in order of priority */
+	private static final Field[] CANDIDATE_FIELDS = {Field.LATITUDE, Field.LONGITUDE, Field.ALTITUDE,
+		Field.WAYPT_NAME, Field.TIMESTAMP, Field.NEW_SEGMENT, Field.WAYPT_TYPE};
+	/** Maximum number of rows to sample from the data */
+	private static final int MAX_SAMPLE_ROWS = 50;
+	/** Fraction of sampled values which must match for a field to be chosen */
+	private static final double MIN_CONFIDENCE = 0.6;
+
 	/**
 	 * Try to guess whether the given line is a header line or data
 	 * @param inValues array of values from first non-blank line of file
@@ -39,93 +49,187 @@ public abstract class FieldGuesser
 	 * @return array of fields which hopefully match
 	 */
 	public static Field[] guessFields(String[] inValues)
+	{
+		return inferFields(null, inValues).getFields();
+	}
+
+
+	/**
+	 * Guess the fields of the given data by scoring each column against each candidate field.
+	 * Rows are sampled from across the whole data, and each value is first checked by cheap
+	 * character tests so that the full parsing is only tried on plausible values.
+	 * @param inRows all rows of data, or null to use just the first full row
+	 * @param inFirstFullRow first row with the most values, also used to spot a header
+	 * @return inference result with the chosen fields
+	 */
+	public static FieldInference inferFields(String[][] inRows, String[] inFirstFullRow)
 	{
 		// Guess whether it's a header line or not
-		boolean isHeader = isHeaderRow(inValues);
-		// make array of Fields
-		int numFields = inValues.length;
+		boolean isHeader = isHeaderRow(inFirstFullRow);
+		final int numFields = inFirstFullRow.length;
+		final int numCandidates = CANDIDATE_FIELDS.length;
 		Field[] fields = new Field[numFields];
-		// Loop over fields to try to guess the main ones
-		for (int f=0; f<numFields; f++)
+		double[][] scores = new double[numFields][numCandidates];
+		if (isHeader)
 		{
-			if (inValues[f] != null) {
-				String value = inValues[f].trim();
-				// check for latitude
-				if (!checkArrayHasField(fields, Field.LATITUDE) && fieldLooksLikeLatitude(value, isHeader))
-				{
-					fields[f] = Field.LATITUDE;
-					continue;
-				}
-				// check for longitude
-				if (!checkArrayHasField(fields, Field.LONGITUDE) && fieldLooksLikeLongitude(value, isHeader))
-				{
-					fields[f] = Field.LONGITUDE;
-					continue;
-				}
-				// check for altitude
-				if (!checkArrayHasField(fields, Field.ALTITUDE) && fieldLooksLikeAltitude(value, isHeader))
+			// Match the column names, in the same order as for data
+			for (int f=0; f<numFields; f++)
+			{
+				String value = (inFirstFullRow[f] == null ? null : inFirstFullRow[f].trim());
+				for (int c=0; c<numCandidates && fields[f] == null; c++)
 				{
-					fields[f] = Field.ALTITUDE;
-					continue;
+					if (!checkArrayHasField(fields, CANDIDATE_FIELDS[c]) && valueMatchesField(value, c, true))
+					{
+						fields[f] = CANDIDATE_FIELDS[c];
+						scores[f][c] = 1.0;
+					}
 				}
-				// check for waypoint name
-				if (!checkArrayHasField(fields, Field.WAYPT_NAME) && fieldLooksLikeName(value, isHeader))
-				{
-					fields[f] = Field.WAYPT_NAME;
-					continue;
+			}
+		}
+		// Score the remaining columns using a sample of the data
+		int[] numValues = new int[numFields];
+		int[][] numMatches = new int[numFields][numCandidates];
+		if (!isHeader) {
+			scoreRow(inFirstFullRow, fields, numValues, numMatches);
+		}
+		if (inRows != null && inRows.length > 0)
+		{
+			final int step = Math.max(1, inRows.length / MAX_SAMPLE_ROWS);
+			for (int r=0; r<inRows.length; r+=step)
+			{
+				if (inRows[r] != null && !Arrays.equals(inRows[r], inFirstFullRow)) {
+					scoreRow(inRows[r], fields, numValues, numMatches);
 				}
-				// check for timestamp
-				if (!checkArrayHasField(fields, Field.TIMESTAMP) && fieldLooksLikeTimestamp(value, isHeader))
-				{
-					fields[f] = Field.TIMESTAMP;
-					continue;
+			}
+		}
+		for (int f=0; f<numFields; f++)
+		{
+			if (fields[f] == null && numValues[f] > 0)
+			{
+				for (int c=0; c<numCandidates; c++) {
+					scores[f][c] = 1.0 * numMatches[f][c] / numValues[f];
 				}
-				// check for tracksegment
-				if (!checkArrayHasField(fields, Field.NEW_SEGMENT) && fieldLooksLikeSegment(value, isHeader))
+			}
+		}
+		// Repeatedly choose the best remaining score, with ties going to the higher
+		// priority field and then the leftmost column
+		boolean chosen = true;
+		while (chosen)
+		{
+			chosen = false;
+			int bestField = -1, bestCandidate = -1;
+			double bestScore = 0.0;
+			for (int c=0; c<numCandidates; c++)
+			{
+				if (checkArrayHasField(fields, CANDIDATE_FIELDS[c])) {continue;}
+				for (int f=0; f<numFields; f++)
 				{
-					fields[f] = Field.NEW_SEGMENT;
-					continue;
+					if (fields[f] == null && scores[f][c] >= MIN_CONFIDENCE && scores[f][c] > bestScore)
+					{
+						bestScore = scores[f][c];
+						bestField = f;
+						bestCandidate = c;
+					}
 				}
-				// check for waypoint type
-				if (!checkArrayHasField(fields, Field.WAYPT_TYPE) && fieldLooksLikeWaypointType(value, isHeader))
-				{
-					fields[f] = Field.WAYPT_TYPE;
-					continue;
+			}
+			if (bestField >= 0)
+			{
+				fields[bestField] = CANDIDATE_FIELDS[bestCandidate];
+				chosen = true;
+			}
+		}
+		fillRemainingFields(fields);
+		return new FieldInference(fields);
+	}
+
+
+	/**
+	 * Count the matches of the values in one row against each candidate field
+	 * @param inValues values of row
+	 * @param inFields fields already chosen from the header, these columns are skipped
+	 * @param inNumValues counts of non-empty values for each column
+	 * @param inNumMatches counts of matches for each column and candidate
+	 */
+	private static void scoreRow(String[] inValues, Field[] inFields, int[] inNumValues, int[][] inNumMatches)
+	{
+		final int numFields = Math.min(inValues.length, inFields.length);
+		for (int f=0; f<numFields; f++)
+		{
+			if (inFields[f] != null || inValues[f] == null) {continue;}
+			String value = inValues[f].trim();
+			if (value.equals("")) {continue;}
+			inNumValues[f]++;
+			for (int c=0; c<CANDIDATE_FIELDS.length; c++)
+			{
+				if (valueMatchesField(value, c, false)) {
+					inNumMatches[f][c]++;
 				}
 			}
 		}
+	}
+
+
+	/**
+	 * Check whether the given value could belong to the specified candidate field
+	 * @param inValue trimmed value from file
+	 * @param inCandidate index of candidate field
+	 * @param inIsHeader true if this is a header line, false for data
+	 * @return true if it matches
+	 */
+	private static boolean valueMatchesField(String inValue, int inCandidate, boolean inIsHeader)
+	{
+		switch (inCandidate)
+		{
+			case 0: return (inIsHeader || couldBeCoordinate(inValue)) && fieldLooksLikeLatitude(inValue, inIsHeader);
+			case 1: return (inIsHeader || couldBeCoordinate(inValue)) && fieldLooksLikeLongitude(inValue, inIsHeader);
+			case 2: return fieldLooksLikeAltitude(inValue, inIsHeader);
+			case 3: return fieldLooksLikeName(inValue, inIsHeader);
+			case 4: return (inIsHeader || couldBeTimestamp(inValue)) && fieldLooksLikeTimestamp(inValue, inIsHeader);
+			case 5: return fieldLooksLikeSegment(inValue, inIsHeader);
+			case 6: return fieldLooksLikeWaypointType(inValue, inIsHeader);
+		}
+		return false;
+	}
+
+
+	/**
+	 * Fill in the fields which weren't guessed, making sure that latitude and longitude are present
+	 * @param inFields array of fields, with nulls for the unknown columns
+	 */
+	private static void fillRemainingFields(Field[] inFields)
+	{
+		final int numFields = inFields.length;
 		// Fill in the rest of the fields using just custom fields
 		// Could try to guess other fields (waypoint type, segment) or unguessed altitude, name, but keep simple for now
 		String customPrefix = I18nManager.getText("fieldname.prefix") + " ";
 		int customFieldNum = 0;
 		for (int f=0; f<numFields; f++) {
-			if (fields[f] == null)
+			if (inFields[f] == null)
 			{
 				// Make sure lat and long are filled in if not already
-				if (!checkArrayHasField(fields, Field.LATITUDE)) {
-					fields[f] = Field.LATITUDE;
+				if (!checkArrayHasField(inFields, Field.LATITUDE)) {
+					inFields[f] = Field.LATITUDE;
 				}
-				else if (!checkArrayHasField(fields, Field.LONGITUDE)) {
-					fields[f] = Field.LONGITUDE;
+				else if (!checkArrayHasField(inFields, Field.LONGITUDE)) {
+					inFields[f] = Field.LONGITUDE;
 				}
 				else {
 					customFieldNum++;
-					fields[f] = new Field(customPrefix + (customFieldNum));
+					inFields[f] = new Field(customPrefix + (customFieldNum));
 				}
 			}
 		}
 		// Do a final check to make sure lat and long are in there
-		if (!checkArrayHasField(fields, Field.LATITUDE)) {
-			fields[0] = Field.LATITUDE;
+		if (!checkArrayHasField(inFields, Field.LATITUDE)) {
+			inFields[0] = Field.LATITUDE;
 		}
-		else if (!checkArrayHasField(fields, Field.LONGITUDE)) {
-			fields[1] = Field.LONGITUDE;
+		else if (!checkArrayHasField(inFields, Field.LONGITUDE)) {
+			inFields[1] = Field.LONGITUDE;
 		}
 		// Longitude _could_ have overwritten latitude in position 1
-		if (!checkArrayHasField(fields, Field.LATITUDE)) {
-			fields[0] = Field.LATITUDE;
+		if (!checkArrayHasField(inFields, Field.LATITUDE)) {
+			inFields[0] = Field.LATITUDE;
 		}
-		return fields;
 	}
 
 
@@ -148,6 +252,52 @@ public abstract class FieldGuesser
 	}
 
 
+	/**
+	 * Cheap check of the characters before trying to parse a coordinate
+	 * @param inValue value from file
+	 * @return false if the value can't be a coordinate, true if it might be
+	 */
+	private static boolean couldBeCoordinate(String inValue)
+	{
+		boolean hasDigit = false, hasSeparator = false;
+		for (int i=0; i<inValue.length(); i++)
+		{
+			char currChar = inValue.charAt(i);
+			if (currChar >= '0' && currChar <= '9') {
+				hasDigit = true;
+			}
+			// The only letters allowed are cardinals
+			else if (Character.isLetter(currChar) && "NSEW".indexOf(currChar) < 0) {
+				return false;
+			}
+			else if (i > 0 || (currChar != '-' && currChar != '+')) {
+				hasSeparator = true;
+			}
+		}
+		// Plain whole numbers are much more likely to be altitudes or counters
+		return hasDigit && hasSeparator;
+	}
+
+	/**
+	 * Cheap check of the characters before trying to parse a timestamp
+	 * @param inValue value from file
+	 * @return false if the value can't be a timestamp, true if it might be
+	 */
+	private static boolean couldBeTimestamp(String inValue)
+	{
+		if (inValue.length() < 7) {return false;}
+		int numDigits = 0;
+		for (int i=0; i<inValue.length(); i++)
+		{
+			char currChar = inValue.charAt(i);
+			if (currChar >= '0' && currChar <= '9') {
+				numDigits++;
+			}
+		}
+		// Need at least a year or a number of seconds
+		return numDigits >= 4;
+	}
+
 	/**
 	 * Check whether the given String looks like a Latitude value
 	 * @param inValue value from file
@@ -0,0 +1,30 @@
+package tim.prune.load;
+
+import tim.prune.data.Field;
+
+/**
+ * Class to hold the result of guessing the fields of a text file
+ */
+public class FieldInference
+{
+	/** Chosen fields, one per column */
+	private Field[] _fields = null;
+
+
+	/**
+	 * Constructor
+	 * @param inFields chosen fields
+	 */
+	public FieldInference(Field[] inFields)
+	{
+		_fields = inFields;
+	}
+
+	/**
+	 * @return array of chosen fields
+	 */
+	public Field[] getFields()
+	{
+		return _fields;
+	}
+}
@@ -14,6 +14,7 @@ import tim.prune.config.Config;
 import tim.prune.load.xml.GzipFileLoader;
 import tim.prune.load.xml.XmlFileLoader;
 import tim.prune.load.xml.ZipFileLoader;
+import tim.prune.save.SessionSaver;
 
 
 /**
@@ -31,6 +32,7 @@ public class FileLoader
 	private XmlFileLoader _xmlFileLoader = null;
 	private ZipFileLoader _zipFileLoader = null;
 	private GzipFileLoader _gzipFileLoader = null;
+	private SessionLoader _sessionLoader = null;
 
 
 	/**
@@ -51,6 +53,7 @@ public class FileLoader
 			_xmlFileLoader = new XmlFileLoader(inApp, inFileLoaded);
 			_zipFileLoader = new ZipFileLoader(inApp, _xmlFileLoader);
 			_gzipFileLoader = new GzipFileLoader(inApp, _xmlFileLoader);
+			_sessionLoader = new SessionLoader((PruneApp)inApp);
 		} else {
 			_xmlFileLoader = new XmlFileLoader(inApp, inFileLoaded);
 			_zipFileLoader = new ZipFileLoader(inApp, _xmlFileLoader);
@@ -94,6 +97,7 @@ public class FileLoader
 				FileFilter gpxFilter = new GenericFileFilter("filetype.gpx", new String[] {"gpx"});
 //				_fileChooser.addChoosableFileFilter(new GenericFileFilter("filetype.txt", new String[] {"txt", "text"}));
 				_fileChooser.addChoosableFileFilter(gpxFilter);
+				_fileChooser.addChoosableFileFilter(new GenericFileFilter("filetype.session", new String[] {SessionSaver.SESSION_EXTENSION}));
 //				_fileChooser.addChoosableFileFilter(new GenericFileFilter("filetype.kml", new String[] {"kml"}));
 //				_fileChooser.addChoosableFileFilter(new GenericFileFilter("filetype.kmz", new String[] {"kmz"}));
 				_fileChooser.setFileFilter(gpxFilter);
@@ -177,6 +181,11 @@ public class FileLoader
 			// Use gzip loader for gzipped xml
 			_gzipFileLoader.openFile(inFile);
 		}
+		else if (fileExtension.equals("." + SessionSaver.SESSION_EXTENSION) && _sessionLoader != null)
+		{
+			// Use session loader for binary session files
+			_sessionLoader.openFile(inFile);
+		}
 		else if (fileExtension.equals("nmea"))
 		{
 			_nmeaFileLoader.openFile(inFile);
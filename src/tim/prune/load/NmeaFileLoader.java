@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import tim.prune.PruneApp;
 import tim.prune.data.Altitude;
@@ -33,6 +34,28 @@ public class NmeaFileLoader
 	 * @param inFile File to open
 	 */
 	public void openFile(File inFile)
+	{
+		Object[][] data = null;
+		try {
+			data = loadData(inFile);
+		}
+		catch (IOException ioe) {
+			_app.showErrorMessage("error.load.dialogtitle", "error.load.noread");
+		}
+		if (data != null && data.length > 0)
+		{
+			_app.informDataLoaded(getFieldArray(), data,
+				Altitude.Format.METRES, new SourceInfo(inFile, SourceInfo.FILE_TYPE.NMEA));
+		}
+	}
+
+	/**
+	 * Read the fixes from the given file without informing the app
+	 * @param inFile File to read
+	 * @return data array with the fields given by getFieldArray()
+	 * @throws IOException if the file couldn't be read
+	 */
+	public static Object[][] loadData(File inFile) throws IOException
 	{
 		BufferedReader reader = null;
 		ArrayList<NmeaMessage> messages = new ArrayList<NmeaMessage>();
@@ -78,9 +101,6 @@ public class NmeaFileLoader
 				currLine = reader.readLine();
 			}
 		}
-		catch (IOException ioe) {
-			_app.showErrorMessage("error.load.dialogtitle", "error.load.noread");
-		}
 		finally
 		{
 			// close file ignoring errors
@@ -89,11 +109,7 @@ public class NmeaFileLoader
 			}
 			catch (Exception e) {}
 		}
-		if (messages.size() > 0)
-		{
-			_app.informDataLoaded(getFieldArray(), makeDataArray(messages),
-				Altitude.Format.METRES, new SourceInfo(inFile, SourceInfo.FILE_TYPE.NMEA));
-		}
+		return makeDataArray(messages);
 	}
 
 	/**
@@ -101,7 +117,7 @@ public class NmeaFileLoader
 	 * @param inLine line to process
 	 * @return message object
 	 */
-	private static NmeaMessage processGGA(String inLine)
+	static NmeaMessage processGGA(String inLine)
 	{
 		// Only consider lines which are long enough and begin with the GPS position sentence
 		if (inLine == null || inLine.length() < 20 || !inLine.startsWith("$GPGGA")) {
@@ -126,7 +142,7 @@ public class NmeaFileLoader
 	 * @param inLine line to process
 	 * @return date, if any
 	 */
-	private static String getDateFromRMC(String inLine)
+	static String getDateFromRMC(String inLine)
 	{
 		// Only consider lines which are long enough and begin with the RMC sentence
 		if (inLine == null || inLine.length() < 20 || !inLine.startsWith("$GPRMC")) {
@@ -147,7 +163,7 @@ public class NmeaFileLoader
 	 * @param inList list of messages
 	 * @return object array for loading
 	 */
-	private static Object[][] makeDataArray(ArrayList<NmeaMessage> inList)
+	static Object[][] makeDataArray(List<NmeaMessage> inList)
 	{
 		Object[][] result = new Object[inList.size()][];
 		for (int i=0; i<inList.size(); i++) {
@@ -159,7 +175,7 @@ public class NmeaFileLoader
 	/**
 	 * @see tim.prune.load.xml.XmlHandler#getFieldArray()
 	 */
-	public Field[] getFieldArray()
+	public static Field[] getFieldArray()
 	{
 		final Field[] fields = {Field.LATITUDE, Field.LONGITUDE, Field.ALTITUDE,
 			Field.TIMESTAMP, Field.NEW_SEGMENT};
@@ -55,6 +55,13 @@ public class NmeaMessage
 		_date = inDate;
 	}
 
+	/**
+	 * @return true if a date has been set
+	 */
+	public boolean hasDate() {
+		return _date != null;
+	}
+
 	/**
 	 * @return String array for loading
 	 */
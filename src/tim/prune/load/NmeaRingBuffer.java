@@ -0,0 +1,91 @@
+package tim.prune.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded buffer of the most recent NMEA fixes received from a stream.
+ * When full, each new fix overwrites the oldest one which hasn't been taken yet.
+ * Filled by the reading thread and emptied by the display refresh.
+ */
+public class NmeaRingBuffer
+{
+	/** Array of messages */
+	private NmeaMessage[] _messages = null;
+	/** Index of the oldest message */
+	private int _start = 0;
+	/** Number of messages held */
+	private int _size = 0;
+	/** Number of messages overwritten before they were taken */
+	private long _numDropped = 0L;
+
+
+	/**
+	 * Constructor
+	 * @param inCapacity maximum number of messages to hold
+	 */
+	public NmeaRingBuffer(int inCapacity)
+	{
+		_messages = new NmeaMessage[Math.max(1, inCapacity)];
+	}
+
+	/**
+	 * Add a message, overwriting the oldest one if the buffer is full
+	 * @param inMessage message to add
+	 */
+	public synchronized void add(NmeaMessage inMessage)
+	{
+		if (_size == _messages.length)
+		{
+			_messages[_start] = inMessage;
+			_start = (_start + 1) % _messages.length;
+			_numDropped++;
+		}
+		else
+		{
+			_messages[(_start + _size) % _messages.length] = inMessage;
+			_size++;
+		}
+	}
+
+	/**
+	 * Set the date of all the held messages which don't have one yet
+	 * @param inDate date from RMC sentence
+	 */
+	public synchronized void setMissingDates(String inDate)
+	{
+		for (int i=0; i<_size; i++)
+		{
+			NmeaMessage message = _messages[(_start + i) % _messages.length];
+			if (!message.hasDate()) {
+				message.setDate(inDate);
+			}
+		}
+	}
+
+	/**
+	 * Take all the held messages, leaving the buffer empty
+	 * @return list of messages, oldest first
+	 */
+	public synchronized List<NmeaMessage> takeAll()
+	{
+		List<NmeaMessage> result = new ArrayList<NmeaMessage>(_size);
+		for (int i=0; i<_size; i++)
+		{
+			final int index = (_start + i) % _messages.length;
+			result.add(_messages[index]);
+			_messages[index] = null;
+		}
+		_start = 0;
+		_size = 0;
+		return result;
+	}
+
+	/**
+	 * @return number of messages overwritten before they could be taken
+	 */
+	public synchronized long getNumDropped()
+	{
+		return _numDropped;
+	}
+}
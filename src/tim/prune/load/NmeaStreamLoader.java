@@ -0,0 +1,290 @@
+package tim.prune.load;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.List;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import tim.prune.App;
+import tim.prune.GenericFunction;
+import tim.prune.I18nManager;
+import tim.prune.UpdateMessageBroker;
+import tim.prune.config.Config;
+import tim.prune.data.Altitude;
+import tim.prune.data.FileInfo;
+import tim.prune.data.OnlineCompressor;
+import tim.prune.data.SourceInfo;
+import tim.prune.data.Track;
+import tim.prune.data.TrackInfo;
+import tim.prune.undo.UndoLoad;
+
+/**
+ * Function to follow a live stream of NMEA sentences, for example from
+ * a serial bridge, a named pipe or a TCP socket given as host:port.
+ * Fixes are read on a separate thread into a ring buffer, and added to the track
+ * in batches by a timer.  Only the most recent points are kept, and if a tolerance
+ * is configured then points are dropped as they arrive if they add nothing to the shape.
+ * Edits made while streaming are kept, and are undone together with the stream.
+ * Calling the function again stops the stream.
+ */
+public class NmeaStreamLoader extends GenericFunction implements Runnable
+{
+	/** Source being read */
+	private InputStream _stream = null;
+	/** Socket if reading from the network, otherwise null */
+	private Socket _socket = null;
+	/** Flag set while the stream is being read */
+	private volatile boolean _running = false;
+	/** Fixes received but not yet shown */
+	private NmeaRingBuffer _buffer = null;
+	/** Timer to add new fixes to the track */
+	private Timer _timer = null;
+	/** Source information for the stream */
+	private SourceInfo _sourceInfo = null;
+	/** Data replaced by the stream, kept until the stream stops and the undo operation can be made */
+	private TrackInfo _oldTrackInfo = null;
+	/** Maximum number of points to keep */
+	private int _windowSize = 0;
+	/** Compressor to drop points as they arrive, or null to keep all */
+	private OnlineCompressor _compressor = null;
+
+	/** Default interval between display updates in milliseconds */
+	private static final int DEFAULT_REFRESH_MILLIS = 1000;
+	/** Default maximum number of points */
+	private static final int DEFAULT_WINDOW_SIZE = 10000;
+
+
+	/**
+	 * Constructor
+	 * @param inApp app object
+	 */
+	public NmeaStreamLoader(App inApp)
+	{
+		super(inApp);
+	}
+
+	/** Get name key */
+	public String getNameKey() {
+		return "function.nmeastream";
+	}
+
+	/**
+	 * Begin the function, either by asking for the source and starting, or by stopping
+	 */
+	public void begin()
+	{
+		if (_running)
+		{
+			stop();
+			return;
+		}
+		Object source = JOptionPane.showInputDialog(_parentFrame,
+			I18nManager.getText("dialog.nmeastream.source"), I18nManager.getText(getNameKey()),
+			JOptionPane.QUESTION_MESSAGE, null, null, Config.getConfigString(Config.KEY_NMEA_SOURCE));
+		if (source == null || source.toString().trim().equals("")) {
+			return;
+		}
+		String sourceName = source.toString().trim();
+		try
+		{
+			openStream(sourceName);
+		}
+		catch (IOException ioe)
+		{
+			_app.showErrorMessageNoLookup(getNameKey(),
+				I18nManager.getText("error.nmeastream.open") + " " + sourceName + ": " + ioe.getMessage());
+			return;
+		}
+		Config.setConfigString(Config.KEY_NMEA_SOURCE, sourceName);
+		start(sourceName);
+	}
+
+	/**
+	 * Open the given source
+	 * @param inSource host:port for a socket, otherwise a file, pipe or device path
+	 * @throws IOException if the source couldn't be opened
+	 */
+	private void openStream(String inSource) throws IOException
+	{
+		_socket = null;
+		final int colonPos = inSource.lastIndexOf(':');
+		if (colonPos > 0 && inSource.indexOf('/') < 0 && inSource.indexOf('\\') < 0
+			&& inSource.substring(colonPos + 1).matches("\\d+"))
+		{
+			_socket = new Socket(inSource.substring(0, colonPos), Integer.parseInt(inSource.substring(colonPos + 1)));
+			_stream = _socket.getInputStream();
+		}
+		else {
+			_stream = new FileInputStream(inSource);
+		}
+	}
+
+	/**
+	 * Replace the current data with the live track and start reading
+	 * @param inSourceName name of source
+	 */
+	private void start(String inSourceName)
+	{
+		_windowSize = Math.max(2, Config.getConfigInt(Config.KEY_NMEA_WINDOW, DEFAULT_WINDOW_SIZE));
+		_buffer = new NmeaRingBuffer(_windowSize);
+		final int tolerance = Config.getConfigInt(Config.KEY_NMEA_TOLERANCE, 0);
+		_compressor = (tolerance > 0 ? new OnlineCompressor(tolerance) : null);
+		_sourceInfo = new SourceInfo(inSourceName, SourceInfo.FILE_TYPE.NMEA);
+		TrackInfo trackInfo = _pruneApp.getTrackInfo();
+		Track oldTrack = new Track();
+		oldTrack.load(trackInfo.getTrack());
+		_oldTrackInfo = new TrackInfo(oldTrack);
+		_oldTrackInfo.setFileInfo(trackInfo.getFileInfo());
+		trackInfo.getSelection().clearAll();
+		trackInfo.getTrack().load(new Track());
+		trackInfo.setFileInfo(new FileInfo());
+		// Edits while streaming can't be undone separately, as the oldest points are removed underneath them
+		_app.setUndoEnabled(false);
+		_running = true;
+		new Thread(this).start();
+		_timer = new Timer(Config.getConfigInt(Config.KEY_NMEA_REFRESH, DEFAULT_REFRESH_MILLIS), new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showNewFixes();
+			}
+		});
+		_timer.start();
+		UpdateMessageBroker.informSubscribers(I18nManager.getText("confirm.nmeastream.started") + " '" + inSourceName + "'");
+	}
+
+	/**
+	 * Run method to read the stream in a separate thread
+	 */
+	public void run()
+	{
+		BufferedReader reader = null;
+		String lastDate = null;
+		boolean newSegment = true;
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(_stream, "US-ASCII"));
+			String currLine = null;
+			while (_running && (currLine = reader.readLine()) != null)
+			{
+				NmeaMessage message = NmeaFileLoader.processGGA(currLine.trim());
+				if (message != null)
+				{
+					if (message.hasFix())
+					{
+						message.setSegment(newSegment);
+						message.setDate(lastDate);
+						_buffer.add(message);
+					}
+					// Start a new segment if fix lost
+					newSegment = !message.hasFix();
+				}
+				else
+				{
+					String date = NmeaFileLoader.getDateFromRMC(currLine.trim());
+					if (date != null)
+					{
+						if (lastDate == null) {
+							// Backfill fixes received before the first date
+							_buffer.setMissingDates(date);
+						}
+						lastDate = date;
+					}
+				}
+			}
+		}
+		catch (IOException ioe)
+		{
+			if (_running) {
+				_app.showErrorMessageNoLookup(getNameKey(), I18nManager.getText("error.nmeastream.read") + " " + ioe.getMessage());
+			}
+		}
+		finally
+		{
+			try {
+				if (reader != null) reader.close();
+			}
+			catch (IOException e) {}
+		}
+		// Stream has ended by itself, so tidy up
+		if (_running)
+		{
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					stop();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Add the fixes received since the last call to the current track, drop the oldest
+	 * points beyond the window size and select the latest point so the map follows it
+	 */
+	private void showNewFixes()
+	{
+		List<NmeaMessage> messages = _buffer.takeAll();
+		if (messages.isEmpty()) {return;}
+		TrackInfo trackInfo = _pruneApp.getTrackInfo();
+		Track track = trackInfo.getTrack();
+		track.appendPoints(NmeaFileLoader.getFieldArray(), NmeaFileLoader.makeDataArray(messages),
+			0, messages.size(), Altitude.Format.METRES, _compressor);
+		final int numExtra = track.getNumPoints() - _windowSize;
+		if (numExtra > 0) {
+			track.deleteRange(0, numExtra - 1);
+		}
+		trackInfo.selectPoint(track.getNumPoints() - 1);
+		UpdateMessageBroker.informSubscribers();
+	}
+
+	/**
+	 * Stop reading the stream and keep the received points as a single undoable load
+	 */
+	private void stop()
+	{
+		if (!_running) {return;}
+		_running = false;
+		_timer.stop();
+		// Closing the source stops the reading thread if it's blocked
+		try
+		{
+			if (_socket != null) {_socket.close();}
+			else {_stream.close();}
+		}
+		catch (IOException e) {}
+		showNewFixes();
+		_app.setUndoEnabled(true);
+		TrackInfo trackInfo = _pruneApp.getTrackInfo();
+		final int numPoints = trackInfo.getTrack().getNumPoints();
+		// Now the number of points is known, so it can be shown in the undo list
+		Track loadedTrack = new Track();
+		loadedTrack.load(trackInfo.getTrack());
+		UndoLoad undo = new UndoLoad(loadedTrack, _sourceInfo, _oldTrackInfo, numPoints, UndoLoad.LOAD);
+		_oldTrackInfo = null;
+		if (numPoints > 0)
+		{
+			_sourceInfo.populatePointObjects(trackInfo.getTrack(), numPoints);
+			trackInfo.getFileInfo().addSource(_sourceInfo);
+			_app.getUndoStack().add(undo);
+			_app.getMenuManager().informFileLoaded();
+		}
+		else
+		{
+			// Nothing received, so put back the previous data
+			try {
+				undo.performUndo(trackInfo);
+			}
+			catch (Exception e) {}
+		}
+		UpdateMessageBroker.informSubscribers();
+		UpdateMessageBroker.informSubscribers(I18nManager.getText("confirm.nmeastream.stopped")
+			+ " (" + numPoints + ")");
+	}
+}
@@ -0,0 +1,194 @@
+package tim.prune.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream which reads its source on a background thread into a
+ * bounded queue of chunks.  Wrapping a decompressing stream with this
+ * lets the inflating run at the same time as the parsing of the output.
+ */
+public class ReadAheadInputStream extends InputStream implements Runnable
+{
+	/** Source stream, only read by the background thread */
+	private InputStream _source = null;
+	/** Size of each chunk */
+	private int _chunkSize = 0;
+	/** Queue of chunks read but not yet consumed */
+	private BlockingQueue<byte[]> _queue = null;
+	/** Chunk currently being consumed */
+	private byte[] _chunk = null;
+	/** Position in current chunk */
+	private int _chunkPos = 0;
+	/** Exception thrown by the source, if any */
+	private volatile IOException _exception = null;
+	/** Flag set when the stream is closed by the consumer */
+	private volatile boolean _closed = false;
+	/** Flag set when the background thread has stopped reading */
+	private boolean _readerDone = false;
+	/** Flag set when the end of the source has been reached */
+	private boolean _finished = false;
+
+	/** Empty chunk used to mark the end of the source */
+	private static final byte[] END_MARKER = new byte[0];
+	/** Default chunk size in bytes */
+	private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	/** Default maximum number of chunks held in the queue */
+	private static final int DEFAULT_NUM_CHUNKS = 16;
+
+
+	/**
+	 * Constructor using default buffer sizes
+	 * @param inSource source stream, usually a decompressing stream
+	 */
+	public ReadAheadInputStream(InputStream inSource)
+	{
+		this(inSource, DEFAULT_CHUNK_SIZE, DEFAULT_NUM_CHUNKS);
+	}
+
+	/**
+	 * Constructor
+	 * @param inSource source stream, usually a decompressing stream
+	 * @param inChunkSize size of each chunk in bytes
+	 * @param inNumChunks maximum number of chunks to read ahead
+	 */
+	public ReadAheadInputStream(InputStream inSource, int inChunkSize, int inNumChunks)
+	{
+		_source = inSource;
+		_chunkSize = inChunkSize;
+		_queue = new ArrayBlockingQueue<byte[]>(inNumChunks);
+		Thread reader = new Thread(this, "ReadAheadInputStream");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Run method for the background thread, to fill the queue
+	 */
+	public void run()
+	{
+		try
+		{
+			byte[] buffer = new byte[_chunkSize];
+			while (!_closed)
+			{
+				int numRead = _source.read(buffer, 0, buffer.length);
+				if (numRead < 0) {break;}
+				if (numRead > 0) {
+					enqueue(Arrays.copyOf(buffer, numRead));
+				}
+			}
+		}
+		catch (IOException ioe) {
+			_exception = ioe;
+		}
+		finally
+		{
+			enqueue(END_MARKER);
+			synchronized (this)
+			{
+				_readerDone = true;
+				if (_closed) {closeSource();}
+			}
+		}
+	}
+
+	/**
+	 * Add a chunk to the queue, waiting for space unless the stream is closed
+	 * @param inChunk chunk to add
+	 */
+	private void enqueue(byte[] inChunk)
+	{
+		try
+		{
+			while (!_closed && !_queue.offer(inChunk, 100, TimeUnit.MILLISECONDS)) {}
+		}
+		catch (InterruptedException ie) {
+			_closed = true;
+		}
+	}
+
+	/**
+	 * Make sure there is a chunk with data to read from
+	 * @return true if data available, false if end of stream
+	 * @throws IOException if the source threw an exception
+	 */
+	private boolean fillChunk() throws IOException
+	{
+		if (_closed) {throw new IOException("Stream closed");}
+		while (!_finished && (_chunk == null || _chunkPos >= _chunk.length))
+		{
+			try {
+				_chunk = _queue.take();
+			}
+			catch (InterruptedException ie) {
+				throw new IOException(ie.getMessage());
+			}
+			_chunkPos = 0;
+			if (_chunk == END_MARKER)
+			{
+				_finished = true;
+				_chunk = null;
+			}
+		}
+		if (_exception != null) {throw _exception;}
+		return !_finished;
+	}
+
+	/**
+	 * @return next byte, or -1 at the end of the stream
+	 */
+	public int read() throws IOException
+	{
+		if (!fillChunk()) {return -1;}
+		return _chunk[_chunkPos++] & 0xff;
+	}
+
+	/**
+	 * Read bytes into the given array
+	 * @return number of bytes read, or -1 at the end of the stream
+	 */
+	public int read(byte[] inBuffer, int inOffset, int inLength) throws IOException
+	{
+		if (inLength == 0) {return 0;}
+		if (!fillChunk()) {return -1;}
+		int numBytes = Math.min(inLength, _chunk.length - _chunkPos);
+		System.arraycopy(_chunk, _chunkPos, inBuffer, inOffset, numBytes);
+		_chunkPos += numBytes;
+		return numBytes;
+	}
+
+	/**
+	 * @return number of bytes which can be read without blocking
+	 */
+	public int available()
+	{
+		return (_chunk == null ? 0 : _chunk.length - _chunkPos);
+	}
+
+	/**
+	 * Close the stream and the source, stopping the background thread.
+	 * If the thread is still reading, it closes the source when it stops.
+	 */
+	public void close()
+	{
+		synchronized (this)
+		{
+			_closed = true;
+			if (_readerDone) {closeSource();}
+		}
+		_queue.clear();
+	}
+
+	/**
+	 * Close the source stream, ignoring errors
+	 */
+	private void closeSource()
+	{
+		try {_source.close();} catch (IOException e) {}
+	}
+}
@@ -0,0 +1,252 @@
+package tim.prune.load;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import tim.prune.I18nManager;
+import tim.prune.PruneApp;
+import tim.prune.data.Altitude;
+import tim.prune.data.DataPoint;
+import tim.prune.data.Field;
+import tim.prune.data.FieldList;
+import tim.prune.data.FileInfo;
+import tim.prune.data.SourceInfo;
+import tim.prune.data.Timestamp;
+import tim.prune.data.Track;
+import tim.prune.load.xml.GpxMetadata;
+import tim.prune.save.SessionSaver;
+
+/**
+ * Class to reopen a binary session file written by the SessionSaver.
+ * Uncompressed files are memory-mapped and the columns read directly
+ * from the mapped buffer, so no text parsing of the original formats is needed.
+ */
+public class SessionLoader implements Runnable
+{
+	private PruneApp _app = null;
+	private File _file = null;
+
+
+	/**
+	 * Constructor
+	 * @param inApp Application object to inform of track load
+	 */
+	public SessionLoader(PruneApp inApp)
+	{
+		_app = inApp;
+	}
+
+	/**
+	 * Open the selected file
+	 * @param inFile File to open
+	 */
+	public void openFile(File inFile)
+	{
+		_file = inFile;
+		// start new thread in case file is large
+		new Thread(this).start();
+	}
+
+	/**
+	 * Run method, to read the file
+	 */
+	public void run()
+	{
+		try
+		{
+			FileInfo fileInfo = new FileInfo();
+			Track track = readSession(_file, fileInfo);
+			_app.informSessionLoaded(track, fileInfo, _file.getName());
+		}
+		catch (Exception e)
+		{
+			_app.showErrorMessageNoLookup("error.load.dialogtitle",
+				I18nManager.getText("error.load.othererror") + " " + e.getMessage());
+			_app.informNoDataLoaded();
+		}
+	}
+
+
+	/**
+	 * Read the given session file
+	 * @param inFile file to read
+	 * @param inFileInfo file info object to receive the restored sources
+	 * @return Track object containing the restored points
+	 * @throws IOException if the file could not be read or has the wrong format
+	 */
+	public static Track readSession(File inFile, FileInfo inFileInfo) throws IOException
+	{
+		FileInputStream inStream = new FileInputStream(inFile);
+		try
+		{
+			FileChannel channel = inStream.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			// Check header
+			if (buffer.remaining() < SessionSaver.HEADER_LENGTH) {
+				throw new IOException(I18nManager.getText("error.load.session.format"));
+			}
+			for (int i=0; i<SessionSaver.SESSION_MAGIC.length; i++)
+			{
+				if (buffer.get() != SessionSaver.SESSION_MAGIC[i]) {
+					throw new IOException(I18nManager.getText("error.load.session.format"));
+				}
+			}
+			final int version = buffer.getInt();
+			if (version > SessionSaver.SESSION_VERSION) {
+				throw new IOException(I18nManager.getText("error.load.session.version") + " " + version);
+			}
+			final int flags = buffer.getInt();
+			ByteBuffer body = buffer.slice();
+			if ((flags & SessionSaver.FLAG_DEFLATE) != 0)
+			{
+				// Compressed bodies have to be inflated into memory first
+				inStream.getChannel().position(SessionSaver.HEADER_LENGTH);
+				body = ByteBuffer.wrap(inflate(new InflaterInputStream(inStream, new Inflater(), 64 * 1024)));
+			}
+			return readBody(body, inFileInfo);
+		}
+		finally {
+			try {inStream.close();} catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * Read the whole of the given stream into a byte array
+	 * @param inStream stream to read
+	 * @return byte array
+	 * @throws IOException on read failure
+	 */
+	private static byte[] inflate(InputStream inStream) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+		byte[] chunk = new byte[64 * 1024];
+		int numRead = 0;
+		while ((numRead = inStream.read(chunk)) > 0) {
+			out.write(chunk, 0, numRead);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Read the session body
+	 * @param inBuffer buffer positioned at start of body
+	 * @param inFileInfo file info object to receive the restored sources
+	 * @return restored Track
+	 */
+	private static Track readBody(ByteBuffer inBuffer, FileInfo inFileInfo)
+	{
+		byte[] scratch = new byte[256];
+		// Metadata
+		String version = readString(inBuffer, scratch);
+		String creator = readString(inBuffer, scratch);
+		String name = readString(inBuffer, scratch);
+		String desc = readString(inBuffer, scratch);
+		// Field list
+		final int numFields = inBuffer.getInt();
+		Field[] fields = new Field[numFields];
+		for (int f=0; f<numFields; f++)
+		{
+			int builtInIndex = inBuffer.getInt();
+			fields[f] = (builtInIndex < 0 ? new Field(readString(inBuffer, scratch)) : Field.getBuiltInField(builtInIndex));
+		}
+		FieldList fieldList = new FieldList(fields);
+		// Per-point attribute columns, read in bulk from the buffer
+		final int numPoints = inBuffer.getInt();
+		byte[] pointFlags = new byte[numPoints];
+		inBuffer.get(pointFlags);
+		int[] colours = new int[numPoints];
+		inBuffer.asIntBuffer().get(colours);
+		inBuffer.position(inBuffer.position() + numPoints * 4);
+		byte[] altFormats = new byte[numPoints];
+		inBuffer.get(altFormats);
+		String[] altitudes = new String[numPoints];
+		for (int i=0; i<numPoints; i++) {
+			altitudes[i] = readString(inBuffer, scratch);
+		}
+		long[] millis = new long[numPoints];
+		inBuffer.asLongBuffer().get(millis);
+		inBuffer.position(inBuffer.position() + numPoints * 8);
+		// Field values, one column at a time
+		String[][] values = new String[numPoints][numFields];
+		for (int f=0; f<numFields; f++)
+		{
+			for (int i=0; i<numPoints; i++) {
+				values[i][f] = readString(inBuffer, scratch);
+			}
+		}
+		// Make points
+		Altitude.Format[] formats = Altitude.Format.values();
+		DataPoint[] points = new DataPoint[numPoints];
+		for (int i=0; i<numPoints; i++)
+		{
+			Color colour = ((pointFlags[i] & SessionSaver.POINT_HAS_COLOUR) != 0 ? new Color(colours[i], true) : null);
+			Altitude altitude = (altitudes[i] == null ? Altitude.NONE : new Altitude(altitudes[i], formats[altFormats[i]]));
+			Timestamp timestamp = ((pointFlags[i] & SessionSaver.POINT_HAS_TIMESTAMP) != 0 ? new Timestamp(millis[i]) : new Timestamp(null));
+			points[i] = new DataPoint(values[i], fieldList, altitude, timestamp, colour);
+			if ((pointFlags[i] & SessionSaver.POINT_MODIFIED) != 0) {
+				points[i].setModified(false);
+			}
+		}
+		Track track = new Track();
+		track.load(fieldList, points);
+		track.setGpxMetadata(new GpxMetadata(version, creator, name, desc));
+		// Sources
+		SourceInfo.FILE_TYPE[] types = SourceInfo.FILE_TYPE.values();
+		final int numSources = inBuffer.getInt();
+		for (int s=0; s<numSources; s++)
+		{
+			SourceInfo.FILE_TYPE type = types[inBuffer.getInt()];
+			String sourceName = readString(inBuffer, scratch);
+			String path = readString(inBuffer, scratch);
+			SourceInfo source = (path == null ? new SourceInfo(sourceName, type) : new SourceInfo(new File(path), type));
+			final int numSourcePoints = inBuffer.getInt();
+			DataPoint[] sourcePoints = new DataPoint[inBuffer.getInt()];
+			for (int i=0; i<sourcePoints.length; i++)
+			{
+				int trackIndex = inBuffer.getInt();
+				sourcePoints[i] = (trackIndex >= 0 ? points[trackIndex] : null);
+			}
+			int[] pointIndices = null;
+			final int numIndices = inBuffer.getInt();
+			if (numIndices >= 0)
+			{
+				pointIndices = new int[numIndices];
+				inBuffer.asIntBuffer().get(pointIndices);
+				inBuffer.position(inBuffer.position() + numIndices * 4);
+			}
+			source.restorePoints(numSourcePoints, sourcePoints, pointIndices);
+			inFileInfo.addSource(source);
+		}
+		return track;
+	}
+
+	/**
+	 * Read a string written by the SessionSaver
+	 * @param inBuffer buffer to read from
+	 * @param inScratch scratch array for copying bytes, used if large enough
+	 * @return String, or null
+	 */
+	private static String readString(ByteBuffer inBuffer, byte[] inScratch)
+	{
+		final int length = inBuffer.getInt();
+		if (length < 0) {return null;}
+		if (inBuffer.hasArray())
+		{
+			// Decode directly from backing array
+			final int start = inBuffer.arrayOffset() + inBuffer.position();
+			inBuffer.position(inBuffer.position() + length);
+			return new String(inBuffer.array(), start, length, SessionSaver.UTF8);
+		}
+		byte[] bytes = (length <= inScratch.length ? inScratch : new byte[length]);
+		inBuffer.get(bytes, 0, length);
+		return new String(bytes, 0, length, SessionSaver.UTF8);
+	}
+}
@@ -514,8 +514,8 @@ public class TextFileLoader
 		}
 		else
 		{
-			// Take first full row of file and use it to guess fields
-			startFieldArray = FieldGuesser.guessFields(splitter.getFirstFullRow());
+			// Use a sample of rows from the whole file to guess fields
+			startFieldArray = FieldGuesser.inferFields(tableData, splitter.getFirstFullRow()).getFields();
 		}
 
 		_fieldTableModel.updateData(startFieldArray);
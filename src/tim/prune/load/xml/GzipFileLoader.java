@@ -2,6 +2,7 @@ package tim.prune.load.xml;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.SAXParser;
@@ -11,6 +12,7 @@ import tim.prune.App;
 import tim.prune.I18nManager;
 import tim.prune.data.FileInfo;
 import tim.prune.data.SourceInfo;
+import tim.prune.load.ReadAheadInputStream;
 
 /**
  * Class to handle the loading of gzipped xml files
@@ -39,10 +41,11 @@ public class GzipFileLoader
 	 */
 	public void openFile(File inFile)
 	{
-		GZIPInputStream istream = null;
+		InputStream istream = null;
 		try
 		{
-			istream = new GZIPInputStream(new FileInputStream(inFile));
+			// Inflate on a separate thread so that it overlaps with the parsing
+			istream = new ReadAheadInputStream(new GZIPInputStream(new FileInputStream(inFile), 64 * 1024));
 			_xmlLoader.reset();
 			SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
 			saxParser.parse(istream, _xmlLoader);
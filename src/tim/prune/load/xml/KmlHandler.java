@@ -147,12 +147,20 @@ public class KmlHandler extends XmlHandler
 	 */
 	public String[][] getDataArray()
 	{
-		int numPoints = _pointList.size();
+		return getDataArray(0);
+	}
+
+	/**
+	 * @see tim.prune.load.xml.XmlHandler#getDataArray(int)
+	 */
+	public String[][] getDataArray(int inStartIndex)
+	{
+		int numPoints = Math.max(0, _pointList.size() - inStartIndex);
 		// construct data array
 		String[][] result = new String[numPoints][];
 		for (int i=0; i<numPoints; i++)
 		{
-			result[i] = _pointList.get(i);
+			result[i] = _pointList.get(inStartIndex + i);
 		}
 		return result;
 	}
@@ -3,7 +3,9 @@ package tim.prune.load.xml;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
+import javax.swing.SwingUtilities;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
@@ -15,8 +17,11 @@ import tim.prune.App;
 import tim.prune.DrawApp;
 import tim.prune.FileLoadedInterface;
 import tim.prune.I18nManager;
+import tim.prune.PruneApp;
+import tim.prune.data.Field;
 import tim.prune.data.FileInfo;
 import tim.prune.data.SourceInfo;
+import tim.prune.gui.progress.ProgressMonitor;
 
 /**
  * Class for handling loading of Xml files, and passing the
@@ -29,6 +34,17 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 	private FileLoadedInterface _fileLoaded = null;
 	private XmlHandler _handler = null;
 	private String _unknownType = null;
+	/** Channel of file being read, used to measure progress */
+	private FileChannel _channel = null;
+	/** Progress monitor, only shown once the load has taken a while */
+	private ProgressMonitor _progress = null;
+	/** Time at which to next update the progress and show the points so far */
+	private long _nextUpdateTime = 0L;
+	/** Number of points already passed to the app during the load */
+	private int _numPointsPassed = 0;
+
+	/** Interval in milliseconds between progress updates during a load */
+	private static final long UPDATE_INTERVAL = 500L;
 
 
 	/**
@@ -58,6 +74,9 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 	{
 		_handler = null;
 		_unknownType = null;
+		_channel = null;
+		_progress = null;
+		_numPointsPassed = 0;
 	}
 
 	/**
@@ -85,7 +104,14 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 			// Construct a SAXParser and use this as a default handler
 			SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
 			inStream = new FileInputStream(_file);
+			// Points are shown while loading only if they'll be passed to the app afterwards
+			if (_fileLoaded == _app && _app instanceof PruneApp)
+			{
+				_channel = inStream.getChannel();
+				_nextUpdateTime = System.currentTimeMillis() + UPDATE_INTERVAL;
+			}
 			saxParser.parse(inStream, this);
+			finishProgress();
 
 			// Check whether handler was properly instantiated
 			if (_handler == null)
@@ -106,10 +132,24 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 		}
 		catch (Exception e)
 		{
-			// Show error dialog
-			_app.showErrorMessageNoLookup("error.load.dialogtitle",
-				I18nManager.getText("error.load.othererror") + " " + e.getMessage());
-			e.printStackTrace();
+			final boolean cancelled = (_progress != null && _progress.isCancelled());
+			finishProgress();
+			if (_app instanceof PruneApp) {
+				((PruneApp) _app).cancelPartialData();
+			}
+			if (cancelled)
+			{
+				if (_app instanceof PruneApp) {
+					((PruneApp) _app).informNoDataLoaded();
+				}
+			}
+			else
+			{
+				// Show error dialog
+				_app.showErrorMessageNoLookup("error.load.dialogtitle",
+					I18nManager.getText("error.load.othererror") + " " + e.getMessage());
+				e.printStackTrace();
+			}
 		}
 		finally {
 			try {inStream.close();} catch (IOException e2) {}
@@ -176,10 +216,73 @@ public class XmlFileLoader extends DefaultHandler implements Runnable
 		{
 			// Handler instantiated so pass tags on to it
 			_handler.endElement(uri, localName, qName);
+			if (_channel != null && System.currentTimeMillis() >= _nextUpdateTime) {
+				updateProgress();
+			}
 		}
 		super.endElement(uri, localName, qName);
 	}
 
+	/**
+	 * Update the progress monitor and pass the points parsed so far to the app
+	 * @throws SAXException if the load has been cancelled, to stop the parsing
+	 */
+	private void updateProgress() throws SAXException
+	{
+		try
+		{
+			if (_progress == null)
+			{
+				// Load is taking a while, so show progress in kB
+				_progress = new ProgressMonitor(true);
+				_progress.start(I18nManager.getText("function.open") + " " + _file.getName(),
+					(int) (_channel.size() / 1024));
+			}
+			if (_progress.isCancelled()) {
+				throw new SAXException(I18nManager.getText("button.cancel"));
+			}
+			_progress.setProgress((int) (_channel.position() / 1024), "kB");
+		}
+		catch (IOException e) {} // can't measure progress but parsing can carry on
+		// Only the points parsed since the last update are passed on, to be added on the event thread
+		final String[][] data = _handler.getDataArray(_numPointsPassed);
+		if (data != null && data.length > 0)
+		{
+			final Field[] fields = _handler.getFieldArray();
+			final int startIndex = _numPointsPassed;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					((PruneApp) _app).informPartialDataLoaded(fields, data, startIndex);
+				}
+			});
+			_numPointsPassed += data.length;
+		}
+		_nextUpdateTime = System.currentTimeMillis() + UPDATE_INTERVAL;
+	}
+
+	/**
+	 * Close the progress monitor if it was shown, and wait until the app has
+	 * received all the points passed during the load
+	 */
+	private void finishProgress()
+	{
+		if (_progress != null) {
+			_progress.finish();
+		}
+		_channel = null;
+		if (_numPointsPassed > 0)
+		{
+			try
+			{
+				// Updates are run in order, so once this is run all the earlier ones have been too
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {}
+				});
+			}
+			catch (Exception e) {} // interrupted, so the final load will just parse all the points again
+		}
+	}
+
 	/**
 	 * @return The Xml handler used for the parsing
 	 */
@@ -2,6 +2,7 @@ package tim.prune.load.xml;
 
 import org.xml.sax.helpers.DefaultHandler;
 
+import tim.prune.data.Field;
 import tim.prune.data.FileInfo;
 
 /**
@@ -10,4 +11,29 @@ import tim.prune.data.FileInfo;
 public abstract class XmlHandler extends DefaultHandler
 {
 	public abstract FileInfo getFileInfo();
+
+	/**
+	 * @return field array describing the point data, or null if the handler doesn't produce points
+	 */
+	public Field[] getFieldArray()
+	{
+		return null;
+	}
+
+	/**
+	 * @return the points parsed so far as a 2d array, or null if the handler doesn't produce points
+	 */
+	public String[][] getDataArray()
+	{
+		return getDataArray(0);
+	}
+
+	/**
+	 * @param inStartIndex index of first point to include
+	 * @return the points parsed so far from the given index onwards, or null if the handler doesn't produce points
+	 */
+	public String[][] getDataArray(int inStartIndex)
+	{
+		return null;
+	}
 }
@@ -1,8 +1,15 @@
 package tim.prune.load.xml;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -11,8 +18,12 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import tim.prune.App;
+import tim.prune.data.Field;
 import tim.prune.data.FileInfo;
 import tim.prune.data.SourceInfo;
+import tim.prune.data.TrackFileInfo;
+import tim.prune.load.ReadAheadInputStream;
+import tim.prune.load.TrackNameList;
 
 /**
  * Class to handle the loading of zipped xml files
@@ -36,53 +47,218 @@ public class ZipFileLoader
 	}
 
 	/**
-	 * Open the selected file and select appropriate xml loader
+	 * Open the selected file and combine all the xml entries inside it
 	 * @param inFile File to open
 	 */
 	public void openFile(File inFile)
 	{
+		ZipFile file = null;
 		try
 		{
-			ZipFile file = new ZipFile(inFile);
-			Enumeration<?> entries = file.entries();
-			boolean xmlFound = false;
-			while (entries.hasMoreElements() && !xmlFound)
-			{
-				ZipEntry entry = (ZipEntry) entries.nextElement();
-				String entryName = entry.toString();
-				if (entryName != null && entryName.length() > 4)
-				{
-					String suffix = entryName.substring(entryName.length()-4).toLowerCase();
-					if (suffix.equals(".kml") || suffix.equals(".gpx") || suffix.equals(".xml"))
-					{
-						_xmlLoader.reset();
-						SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-						saxParser.parse(file.getInputStream(entry), _xmlLoader);
-						XmlHandler handler = _xmlLoader.getHandler();
-						if (handler == null) {
-							_app.showErrorMessage("error.load.dialogtitle", "error.load.othererror");
-						}
-						else {
-							// Send back to app
-							SourceInfo sourceInfo = new SourceInfo(inFile,
-									(handler instanceof GpxHandler?SourceInfo.FILE_TYPE.GPX:SourceInfo.FILE_TYPE.KML));
-							FileInfo fileInfo = handler.getFileInfo();
-							fileInfo.addSource(sourceInfo);
-							_app.onFileLoaded(fileInfo);
-							xmlFound = true;
-						}
-					}
-				}
-			}
-			file.close();
+			file = new ZipFile(inFile);
+			List<XmlHandler> handlers = parseEntries(_app, file);
 			// Check whether there was an xml file inside
-			if (!xmlFound) {
+			if (handlers == null) {
 				_app.showErrorMessage("error.load.dialogtitle", "error.load.noxmlinzip");
 			}
+			else if (handlers.isEmpty()) {
+				_app.showErrorMessage("error.load.dialogtitle", "error.load.othererror");
+			}
+			else
+			{
+				// Send back to app
+				XmlHandler firstHandler = handlers.get(0);
+				SourceInfo sourceInfo = new SourceInfo(inFile,
+						(firstHandler instanceof GpxHandler?SourceInfo.FILE_TYPE.GPX:SourceInfo.FILE_TYPE.KML));
+				FileInfo fileInfo = combineFileInfos(handlers);
+				fileInfo.addSource(sourceInfo);
+				_app.onFileLoaded(fileInfo);
+			}
 		}
 		catch (Exception e) {
 			System.err.println("ZipFile Error: " + e.getClass().getName() + " -message= " + e.getMessage());
 		}
+		finally
+		{
+			try {
+				if (file != null) {file.close();}
+			}
+			catch (IOException e2) {}
+		}
+	}
+
+	/**
+	 * Parse all the xml entries of the given archive.
+	 * The entries are found in one pass over the archive and then parsed concurrently,
+	 * each being inflated on its own read-ahead thread.
+	 * @param inApp app to pass to the xml loaders, or null
+	 * @param inFile zip file
+	 * @return handlers of the entries which could be parsed, in the order of the entries,
+	 *         or null if there weren't any xml entries
+	 * @throws Exception if the archive couldn't be read or parsed
+	 */
+	public static List<XmlHandler> parseEntries(App inApp, ZipFile inFile) throws Exception
+	{
+		ArrayList<ZipEntry> xmlEntries = new ArrayList<ZipEntry>();
+		Enumeration<?> entries = inFile.entries();
+		while (entries.hasMoreElements())
+		{
+			ZipEntry entry = (ZipEntry) entries.nextElement();
+			if (isXmlEntry(entry)) {
+				xmlEntries.add(entry);
+			}
+		}
+		if (xmlEntries.isEmpty()) {return null;}
+		final int numThreads = Math.min(xmlEntries.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			ArrayList<Future<XmlHandler>> results = new ArrayList<Future<XmlHandler>>();
+			for (ZipEntry entry : xmlEntries) {
+				results.add(executor.submit(new EntryParser(inApp, inFile, entry)));
+			}
+			// Collect the handlers in the order of the entries
+			ArrayList<XmlHandler> handlers = new ArrayList<XmlHandler>();
+			for (Future<XmlHandler> result : results)
+			{
+				XmlHandler handler = result.get();
+				if (handler != null) {
+					handlers.add(handler);
+				}
+			}
+			return handlers;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param inEntry zip entry
+	 * @return true if the entry name has a kml, gpx or xml suffix
+	 */
+	private static boolean isXmlEntry(ZipEntry inEntry)
+	{
+		String entryName = inEntry.toString();
+		if (entryName != null && entryName.length() > 4)
+		{
+			String suffix = entryName.substring(entryName.length()-4).toLowerCase();
+			return suffix.equals(".kml") || suffix.equals(".gpx") || suffix.equals(".xml");
+		}
+		return false;
+	}
+
+	/**
+	 * Combine the results of parsing several entries into a single file info.
+	 * Only track data can be combined, otherwise the first result is used.
+	 * @param inHandlers list of handlers, at least one
+	 * @return combined file info
+	 */
+	public static FileInfo combineFileInfos(List<XmlHandler> inHandlers)
+	{
+		ArrayList<TrackFileInfo> trackInfos = new ArrayList<TrackFileInfo>();
+		for (XmlHandler handler : inHandlers)
+		{
+			FileInfo info = handler.getFileInfo();
+			if (!(info instanceof TrackFileInfo)) {
+				return inHandlers.get(0).getFileInfo();
+			}
+			trackInfos.add((TrackFileInfo) info);
+		}
+		if (trackInfos.size() == 1) {
+			return trackInfos.get(0);
+		}
+		// Make union of fields and count the points
+		ArrayList<Field> fields = new ArrayList<Field>();
+		int numPoints = 0;
+		boolean hasLinks = false, hasTrackNames = false;
+		GpxMetadata metadata = null;
+		for (TrackFileInfo info : trackInfos)
+		{
+			for (Field field : info.getFieldArray())
+			{
+				if (!fields.contains(field)) {
+					fields.add(field);
+				}
+			}
+			numPoints += info.getDataArray().length;
+			hasLinks = hasLinks || info.getLinkArray() != null;
+			hasTrackNames = hasTrackNames || info.getTrackNameList() != null;
+			if (metadata == null) {metadata = info.getGpxMetaData();}
+		}
+		String[][] data = new String[numPoints][];
+		String[] links = (hasLinks ? new String[numPoints] : null);
+		TrackNameList trackNames = (hasTrackNames ? new TrackNameList() : null);
+		int pointIndex = 0, trackOffset = 0;
+		for (TrackFileInfo info : trackInfos)
+		{
+			// Map each field of this entry to its position in the combined list
+			Field[] entryFields = info.getFieldArray();
+			int[] fieldMap = new int[entryFields.length];
+			for (int f=0; f<entryFields.length; f++) {
+				fieldMap[f] = fields.indexOf(entryFields[f]);
+			}
+			String[][] entryData = info.getDataArray();
+			String[] entryLinks = info.getLinkArray();
+			for (int i=0; i<entryData.length; i++)
+			{
+				String[] row = new String[fields.size()];
+				for (int f=0; f<entryFields.length && f<entryData[i].length; f++) {
+					row[fieldMap[f]] = entryData[i][f];
+				}
+				data[pointIndex + i] = row;
+				if (links != null && entryLinks != null) {
+					links[pointIndex + i] = entryLinks[i];
+				}
+			}
+			if (trackNames != null) {
+				trackOffset = appendTrackNames(trackNames, info.getTrackNameList(), entryData.length, trackOffset);
+			}
+			pointIndex += entryData.length;
+		}
+		return new TrackFileInfo(data, fields.toArray(new Field[0]), trackNames, links, metadata);
+	}
+
+	/**
+	 * Append the tracks of one entry to the combined track name list
+	 * @param inCombined combined list to add to
+	 * @param inEntryNames track names of entry, or null if none
+	 * @param inNumPoints number of points in entry
+	 * @param inTrackOffset track number to start from
+	 * @return track number to use for the following entry
+	 */
+	private static int appendTrackNames(TrackNameList inCombined, TrackNameList inEntryNames,
+		int inNumPoints, int inTrackOffset)
+	{
+		if (inEntryNames == null || inEntryNames.getNumTracks() == 0)
+		{
+			// No track information, so treat all the points as one track
+			for (int i=0; i<inNumPoints; i++) {
+				inCombined.addPoint(inTrackOffset, null, true);
+			}
+			return inTrackOffset + 1;
+		}
+		// Waypoints keep the previous track number so that they don't start a new track
+		int trackNum = inTrackOffset - 1;
+		for (int i=0; i<inNumPoints; i++)
+		{
+			boolean isTrackpoint = false;
+			for (int t=0; t<inEntryNames.getNumTracks(); t++)
+			{
+				final int start = inEntryNames.getStartIndex(t);
+				if (i >= start && i < start + inEntryNames.getNumPointsInTrack(t))
+				{
+					trackNum = inTrackOffset + t;
+					isTrackpoint = true;
+					inCombined.addPoint(trackNum, inEntryNames.getTrackName(t), true);
+					break;
+				}
+			}
+			if (!isTrackpoint) {
+				inCombined.addPoint(trackNum, null, false);
+			}
+		}
+		return inTrackOffset + inEntryNames.getNumTracks();
 	}
 
 	/**
@@ -95,30 +271,25 @@ public class ZipFileLoader
 		{
 			ZipInputStream zis = new ZipInputStream(inStream);
 			boolean xmlFound = false;
-			while (!xmlFound && zis.available() > 0)
+			ZipEntry entry = null;
+			while (!xmlFound && (entry = zis.getNextEntry()) != null)
 			{
-				ZipEntry entry = zis.getNextEntry();
-				String entryName = entry.toString();
-				if (entryName != null && entryName.length() > 4)
+				if (isXmlEntry(entry))
 				{
-					String suffix = entryName.substring(entryName.length()-4).toLowerCase();
-					if (suffix.equals(".kml") || suffix.equals(".gpx") || suffix.equals(".xml"))
-					{
-						_xmlLoader.reset();
-						SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-						saxParser.parse(zis, _xmlLoader);
-						XmlHandler handler = _xmlLoader.getHandler();
-						if (handler == null) {
-							_app.showErrorMessage("error.load.dialogtitle", "error.load.othererror");
-						}
-						else {
-							// Send back to app
-							SourceInfo sourceInfo = new SourceInfo("gpsies", SourceInfo.FILE_TYPE.GPSIES);
-							FileInfo fileInfo = handler.getFileInfo();
-							fileInfo.addSource(sourceInfo);
-							_app.onFileLoaded(fileInfo);
-							xmlFound = true;
-						}
+					_xmlLoader.reset();
+					SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+					saxParser.parse(new ReadAheadInputStream(zis), _xmlLoader);
+					XmlHandler handler = _xmlLoader.getHandler();
+					if (handler == null) {
+						_app.showErrorMessage("error.load.dialogtitle", "error.load.othererror");
+					}
+					else {
+						// Send back to app
+						SourceInfo sourceInfo = new SourceInfo("gpsies", SourceInfo.FILE_TYPE.GPSIES);
+						FileInfo fileInfo = handler.getFileInfo();
+						fileInfo.addSource(sourceInfo);
+						_app.onFileLoaded(fileInfo);
+						xmlFound = true;
 					}
 				}
 			}
@@ -131,4 +302,45 @@ public class ZipFileLoader
 			System.err.println("ZipStream Error: " + e.getClass().getName() + " -message= " + e.getMessage());
 		}
 	}
+
+	/**
+	 * Task to parse a single entry of the archive with its own loader
+	 */
+	private static class EntryParser implements Callable<XmlHandler>
+	{
+		private App _app = null;
+		private ZipFile _zipFile = null;
+		private ZipEntry _entry = null;
+
+		/**
+		 * Constructor
+		 * @param inApp app to pass to the xml loader, or null
+		 * @param inZipFile zip file
+		 * @param inEntry entry to parse
+		 */
+		public EntryParser(App inApp, ZipFile inZipFile, ZipEntry inEntry)
+		{
+			_app = inApp;
+			_zipFile = inZipFile;
+			_entry = inEntry;
+		}
+
+		/**
+		 * @return handler after parsing, or null if not recognised
+		 */
+		public XmlHandler call() throws Exception
+		{
+			XmlFileLoader loader = new XmlFileLoader(_app);
+			InputStream inStream = new ReadAheadInputStream(_zipFile.getInputStream(_entry));
+			try
+			{
+				SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+				saxParser.parse(inStream, loader);
+				return loader.getHandler();
+			}
+			finally {
+				inStream.close();
+			}
+		}
+	}
 }
@@ -0,0 +1,61 @@
+package tim.prune.save;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Superclass of the file formats which an export job can write.
+ * Each encoder writes its own file, so several can run at once.
+ */
+public abstract class ExportEncoder
+{
+	/**
+	 * @return name of format for messages, eg GPX
+	 */
+	public abstract String getFormatName();
+
+	/**
+	 * @return usual file extension without the dot
+	 */
+	public abstract String getFileExtension();
+
+	/**
+	 * Open the writer for the given file
+	 * @param inFile file to write
+	 * @return writer object
+	 * @throws IOException if file couldn't be opened
+	 */
+	protected ExportWriter openWriter(File inFile) throws IOException
+	{
+		return new ExportWriter(new FileOutputStream(inFile));
+	}
+
+	/**
+	 * Write the given points
+	 * @param inWriter writer object
+	 * @param inPoints points to write
+	 * @return number of points written
+	 * @throws IOException on write failure
+	 */
+	protected abstract int writePoints(ExportWriter inWriter, ExportPoints inPoints) throws IOException;
+
+	/**
+	 * Export the given points to the given file
+	 * @param inFile file to write
+	 * @param inPoints points to write
+	 * @return number of points written
+	 * @throws IOException on failure
+	 */
+	public int export(File inFile, ExportPoints inPoints) throws IOException
+	{
+		ExportWriter writer = openWriter(inFile);
+		try
+		{
+			return writePoints(writer, inPoints);
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package tim.prune.save;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Job to export the same points to several files at once.
+ * The points are chosen once, then each target file is
+ * written by its own encoder on a pool of threads.
+ * Doesn't use any gui, so can be run from the command line too.
+ */
+public class ExportJob
+{
+	/** Points to export */
+	private ExportPoints _points = null;
+	/** Files to write */
+	private ArrayList<File> _files = new ArrayList<File>();
+	/** Encoders for each file */
+	private ArrayList<ExportEncoder> _encoders = new ArrayList<ExportEncoder>();
+
+
+	/**
+	 * Class to hold the outcome of writing one target
+	 */
+	public static class Result
+	{
+		private String _formatName = null;
+		private File _file = null;
+		private int _numPoints = 0;
+		private long _numBytes = 0L;
+		private long _millis = 0L;
+		private IOException _error = null;
+
+		/** @return name of format */
+		public String getFormatName() {return _formatName;}
+		/** @return file written */
+		public File getFile() {return _file;}
+		/** @return number of points written */
+		public int getNumPoints() {return _numPoints;}
+		/** @return size of file in bytes */
+		public long getNumBytes() {return _numBytes;}
+		/** @return time taken in milliseconds */
+		public long getMillis() {return _millis;}
+		/** @return exception if the export failed, otherwise null */
+		public IOException getError() {return _error;}
+
+		/**
+		 * @return number of points written per second
+		 */
+		public long getPointsPerSecond()
+		{
+			return _numPoints * 1000L / Math.max(1L, _millis);
+		}
+
+		/**
+		 * @return number of kilobytes written per second
+		 */
+		public long getKilobytesPerSecond()
+		{
+			return _numBytes * 1000L / 1024L / Math.max(1L, _millis);
+		}
+	}
+
+	/**
+	 * Task to write a single target
+	 */
+	private class TargetWriter implements Callable<Result>
+	{
+		private int _index = 0;
+
+		/** @param inIndex index of target */
+		public TargetWriter(int inIndex) {
+			_index = inIndex;
+		}
+
+		/** Write the file and measure it */
+		public Result call()
+		{
+			Result result = new Result();
+			ExportEncoder encoder = _encoders.get(_index);
+			result._formatName = encoder.getFormatName();
+			result._file = _files.get(_index);
+			final long startTime = System.currentTimeMillis();
+			try {
+				result._numPoints = encoder.export(result._file, _points);
+			}
+			catch (IOException ioe) {
+				result._error = ioe;
+			}
+			result._millis = System.currentTimeMillis() - startTime;
+			result._numBytes = result._file.length();
+			return result;
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param inPoints points to export
+	 */
+	public ExportJob(ExportPoints inPoints)
+	{
+		_points = inPoints;
+	}
+
+	/**
+	 * Add a target file to the job
+	 * @param inFile file to write
+	 * @param inEncoder encoder for the file format
+	 */
+	public void addTarget(File inFile, ExportEncoder inEncoder)
+	{
+		_files.add(inFile);
+		_encoders.add(inEncoder);
+	}
+
+	/**
+	 * @return number of targets
+	 */
+	public int getNumTargets()
+	{
+		return _files.size();
+	}
+
+	/**
+	 * @param inIndex index of target
+	 * @return file to be written for this target
+	 */
+	public File getTargetFile(int inIndex)
+	{
+		return _files.get(inIndex);
+	}
+
+	/**
+	 * Write all the targets in parallel and wait for them to finish
+	 * @return results in the order the targets were added
+	 */
+	public List<Result> run()
+	{
+		List<Result> results = new ArrayList<Result>();
+		if (_files.isEmpty()) {return results;}
+		final int numThreads = Math.min(_files.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			List<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for (int i=0; i<_files.size(); i++) {
+				futures.add(executor.submit(new TargetWriter(i)));
+			}
+			for (int i=0; i<futures.size(); i++)
+			{
+				try {
+					results.add(futures.get(i).get());
+				}
+				catch (ExecutionException ee)
+				{
+					// Unexpected exception, so record it against this target
+					Result result = new Result();
+					result._formatName = _encoders.get(i).getFormatName();
+					result._file = _files.get(i);
+					result._error = new IOException(ee.getCause().toString());
+					results.add(result);
+				}
+				catch (InterruptedException ie) {
+					break;
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		return results;
+	}
+}
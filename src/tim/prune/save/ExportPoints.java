@@ -0,0 +1,170 @@
+package tim.prune.save;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import tim.prune.data.DataPoint;
+import tim.prune.data.Track;
+import tim.prune.data.TrackInfo;
+
+/**
+ * Read-only view of the points chosen for export, in track order.
+ * Only the range and the point types are stored, and the points are taken
+ * from the track as they're written, so exporting a large selection doesn't
+ * need a copy of it.  Each loop over the view has its own iterator,
+ * so the same view can be given to several exporters, even on different threads.
+ */
+public class ExportPoints implements Iterable<DataPoint>
+{
+	/** Track to take points from */
+	private Track _track = null;
+	/** Index of first point in range */
+	private int _start = 0;
+	/** Index of last point in range */
+	private int _end = -1;
+	/** True to include track points */
+	private boolean _trackpoints = false;
+	/** True to include waypoints */
+	private boolean _waypoints = false;
+	/** Number of chosen points */
+	private int _numPoints = 0;
+	/** True if any of the chosen points are track points */
+	private boolean _hasTrackpoints = false;
+	/** True if any of the chosen points are waypoints */
+	private boolean _hasWaypoints = false;
+
+
+	/**
+	 * Iterator over the chosen points, skipping the other types
+	 */
+	private class PointIterator implements Iterator<DataPoint>
+	{
+		/** Index of next point to check */
+		private int _index = _start;
+		/** Next chosen point, or null if finished */
+		private DataPoint _nextPoint = null;
+
+		/** Constructor */
+		public PointIterator() {
+			findNext();
+		}
+
+		/** Move on to the next chosen point, if any */
+		private void findNext()
+		{
+			_nextPoint = null;
+			// Stop early if the track has been shortened in the meantime
+			final int end = Math.min(_end, _track.getNumPoints() - 1);
+			while (_nextPoint == null && _index <= end)
+			{
+				DataPoint point = _track.getPoint(_index++);
+				if (point != null && isChosen(point)) {
+					_nextPoint = point;
+				}
+			}
+		}
+
+		/** @return true if there are more points */
+		public boolean hasNext() {
+			return _nextPoint != null;
+		}
+
+		/** @return next point */
+		public DataPoint next()
+		{
+			if (_nextPoint == null) {throw new NoSuchElementException();}
+			DataPoint point = _nextPoint;
+			findNext();
+			return point;
+		}
+
+		/** Not supported, the view is read-only */
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param inTrack track to export
+	 * @param inTrackpoints true to include track points
+	 * @param inWaypoints true to include waypoints
+	 * @param inStart index of first point to include
+	 * @param inEnd index of last point to include
+	 */
+	public ExportPoints(Track inTrack, boolean inTrackpoints, boolean inWaypoints, int inStart, int inEnd)
+	{
+		_track = inTrack;
+		_trackpoints = inTrackpoints;
+		_waypoints = inWaypoints;
+		_start = Math.max(inStart, 0);
+		_end = Math.min(inEnd, inTrack.getNumPoints() - 1);
+		// Count the chosen points without keeping them
+		for (int i=_start; i<=_end; i++)
+		{
+			DataPoint point = inTrack.getPoint(i);
+			if (isChosen(point))
+			{
+				_numPoints++;
+				if (point.isWaypoint()) {_hasWaypoints = true;}
+				else {_hasTrackpoints = true;}
+			}
+		}
+	}
+
+	/**
+	 * Constructor using the current selection
+	 * @param inInfo track info object
+	 * @param inTrackpoints true to include track points
+	 * @param inWaypoints true to include waypoints
+	 * @param inJustSelection true to only include the selected range
+	 */
+	public ExportPoints(TrackInfo inInfo, boolean inTrackpoints, boolean inWaypoints, boolean inJustSelection)
+	{
+		this(inInfo.getTrack(), inTrackpoints, inWaypoints,
+			inJustSelection ? inInfo.getSelection().getStart() : 0,
+			inJustSelection ? inInfo.getSelection().getEnd() : inInfo.getTrack().getNumPoints() - 1);
+	}
+
+	/**
+	 * @param inPoint point to check
+	 * @return true if the point is one of the chosen types
+	 */
+	private boolean isChosen(DataPoint inPoint)
+	{
+		return inPoint.isWaypoint() ? _waypoints : _trackpoints;
+	}
+
+	/**
+	 * @return number of chosen points
+	 */
+	public int getNumPoints()
+	{
+		return _numPoints;
+	}
+
+	/**
+	 * @return iterator over the chosen points in track order
+	 */
+	public Iterator<DataPoint> iterator()
+	{
+		return new PointIterator();
+	}
+
+	/**
+	 * @return true if any track points were chosen
+	 */
+	public boolean hasTrackpoints()
+	{
+		return _hasTrackpoints;
+	}
+
+	/**
+	 * @return true if any waypoints were chosen
+	 */
+	public boolean hasWaypoints()
+	{
+		return _hasWaypoints;
+	}
+}
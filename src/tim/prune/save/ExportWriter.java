@@ -0,0 +1,240 @@
+package tim.prune.save;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import tim.prune.data.Coordinate;
+import tim.prune.data.Timestamp;
+
+/**
+ * Buffered writer for exporting large tracks.
+ * Numbers and timestamps are formatted straight into the buffer
+ * without creating Strings for them.  Each instance has its own
+ * buffers and calendar, so exports on different threads don't interfere.
+ */
+public class ExportWriter extends Writer
+{
+	/** Writer to encode the characters */
+	private OutputStreamWriter _writer = null;
+	/** Buffer of characters not yet passed to the encoder */
+	private char[] _buffer = new char[BUFFER_SIZE];
+	/** Number of characters in buffer */
+	private int _count = 0;
+	/** Scratch space for the digits of a number */
+	private char[] _digits = new char[20];
+	/** Calendar for splitting timestamps into fields */
+	private Calendar _calendar = new GregorianCalendar();
+
+	/** Number of characters to buffer */
+	private static final int BUFFER_SIZE = 32 * 1024;
+	/** Number of bytes to buffer */
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	/** Powers of ten for fixed decimal places */
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L,
+		1000000L, 10000000L, 100000000L, 1000000000L};
+	/** Values at least this big are written by Double.toString */
+	private static final double MAX_FIXED_VALUE = 1e9;
+
+
+	/**
+	 * Constructor using the default encoding
+	 * @param inStream stream to write to
+	 */
+	public ExportWriter(OutputStream inStream)
+	{
+		_writer = new OutputStreamWriter(new BufferedOutputStream(inStream, STREAM_BUFFER_SIZE));
+	}
+
+	/**
+	 * Constructor
+	 * @param inStream stream to write to
+	 * @param inEncoding name of character encoding
+	 * @throws UnsupportedEncodingException if encoding not known
+	 */
+	public ExportWriter(OutputStream inStream, String inEncoding) throws UnsupportedEncodingException
+	{
+		_writer = new OutputStreamWriter(new BufferedOutputStream(inStream, STREAM_BUFFER_SIZE), inEncoding);
+	}
+
+	/**
+	 * @return name of character encoding
+	 */
+	public String getEncoding()
+	{
+		return _writer.getEncoding();
+	}
+
+	/**
+	 * Write a single character
+	 */
+	public void write(int inChar) throws IOException
+	{
+		if (_count == _buffer.length) {flushBuffer();}
+		_buffer[_count++] = (char) inChar;
+	}
+
+	/**
+	 * Write part of a character array
+	 */
+	public void write(char[] inChars, int inOffset, int inLength) throws IOException
+	{
+		if (inLength >= _buffer.length)
+		{
+			// Too big to buffer, so pass straight on
+			flushBuffer();
+			_writer.write(inChars, inOffset, inLength);
+			return;
+		}
+		if (inLength > _buffer.length - _count) {flushBuffer();}
+		System.arraycopy(inChars, inOffset, _buffer, _count, inLength);
+		_count += inLength;
+	}
+
+	/**
+	 * Write part of a String
+	 */
+	public void write(String inString, int inOffset, int inLength) throws IOException
+	{
+		int offset = inOffset;
+		final int end = inOffset + inLength;
+		while (offset < end)
+		{
+			if (_count == _buffer.length) {flushBuffer();}
+			final int numChars = Math.min(end - offset, _buffer.length - _count);
+			inString.getChars(offset, offset + numChars, _buffer, _count);
+			_count += numChars;
+			offset += numChars;
+		}
+	}
+
+	/**
+	 * Write a number with a fixed number of decimal places and a decimal point,
+	 * rounded in the same way as by a DecimalFormat with that many places
+	 * @param inValue value to write
+	 * @param inNumDecimals number of decimal places, from 0 to 9
+	 */
+	public void writeDecimal(double inValue, int inNumDecimals) throws IOException
+	{
+		if (Double.isNaN(inValue) || Math.abs(inValue) >= MAX_FIXED_VALUE)
+		{
+			write(Double.toString(inValue));
+			return;
+		}
+		final long power = POWERS_OF_TEN[inNumDecimals];
+		final double product = Math.abs(inValue) * power;
+		long scaled = Math.round(product);
+		if (Math.abs(product - Math.floor(product) - 0.5) <= 2.0 * Math.ulp(product))
+		{
+			// Too close to halfway to trust the multiplied value, so round the exact value
+			// half-even like DecimalFormat does
+			scaled = new BigDecimal(Math.abs(inValue)).setScale(inNumDecimals, RoundingMode.HALF_EVEN)
+				.unscaledValue().longValue();
+		}
+		// Like DecimalFormat, negative values keep their sign even if they round to zero
+		if (Math.copySign(1.0, inValue) < 0.0) {write('-');}
+		writeNumber(scaled / power, 1);
+		if (inNumDecimals > 0)
+		{
+			write('.');
+			writeNumber(scaled % power, inNumDecimals);
+		}
+	}
+
+	/**
+	 * Write a coordinate in decimal degrees with a decimal point,
+	 * giving the same text as Coordinate.FORMAT_DECIMAL_FORCE_POINT
+	 * @param inCoordinate coordinate to write
+	 */
+	public void writeCoordinate(Coordinate inCoordinate) throws IOException
+	{
+		if (inCoordinate.hasDecimalPointOriginal()) {
+			write(inCoordinate.output(Coordinate.FORMAT_NONE));
+		}
+		else {
+			writeDecimal(inCoordinate.getDouble(), 8);
+		}
+	}
+
+	/**
+	 * Write a timestamp in the form given by Timestamp.FORMAT_ISO_8601
+	 * @param inTimestamp timestamp to write
+	 */
+	public void writeTimestamp(Timestamp inTimestamp) throws IOException
+	{
+		_calendar.setTimeInMillis(inTimestamp.getMilliseconds());
+		writeNumber(_calendar.get(Calendar.YEAR), 4);
+		write('-');
+		writeNumber(_calendar.get(Calendar.MONTH) + 1, 2);
+		write('-');
+		writeNumber(_calendar.get(Calendar.DAY_OF_MONTH), 2);
+		write('T');
+		writeNumber(_calendar.get(Calendar.HOUR_OF_DAY), 2);
+		write(':');
+		writeNumber(_calendar.get(Calendar.MINUTE), 2);
+		write(':');
+		writeNumber(_calendar.get(Calendar.SECOND), 2);
+		write('Z');
+	}
+
+	/**
+	 * Write a non-negative whole number padded with leading zeros
+	 * @param inValue value to write
+	 * @param inMinDigits minimum number of digits
+	 */
+	private void writeNumber(long inValue, int inMinDigits) throws IOException
+	{
+		int numDigits = 0;
+		long value = inValue;
+		do
+		{
+			_digits[numDigits++] = (char) ('0' + (value % 10));
+			value /= 10;
+		}
+		while (value > 0);
+		while (numDigits < inMinDigits) {
+			_digits[numDigits++] = '0';
+		}
+		// digits are in reverse order
+		while (numDigits > 0) {
+			write(_digits[--numDigits]);
+		}
+	}
+
+	/**
+	 * Pass the buffered characters on to the encoder
+	 */
+	private void flushBuffer() throws IOException
+	{
+		if (_count > 0)
+		{
+			_writer.write(_buffer, 0, _count);
+			_count = 0;
+		}
+	}
+
+	/**
+	 * Flush all buffers
+	 */
+	public void flush() throws IOException
+	{
+		flushBuffer();
+		_writer.flush();
+	}
+
+	/**
+	 * Flush and close the writer and the stream
+	 */
+	public void close() throws IOException
+	{
+		flushBuffer();
+		_writer.close();
+	}
+}
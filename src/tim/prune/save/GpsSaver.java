@@ -10,7 +10,6 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
@@ -272,7 +271,7 @@ public class GpsSaver extends GenericFunction implements Runnable
 		String trackName = _trackNameField.getText();
 		if (trackName == null || trackName.equals("")) {trackName = "prune";}
 		// Generate the GPX file and send to the GPS
-		OutputStreamWriter writer = new OutputStreamWriter(process.getOutputStream());
+		ExportWriter writer = new ExportWriter(process.getOutputStream());
 		boolean[] saveFlags = {true, true, true, true, false, true}; // export everything
 		GpxExporter.exportData(writer, ((PruneApp)_pruneApp).getTrackInfo(), trackName, null, saveFlags, false);
 		writer.close();
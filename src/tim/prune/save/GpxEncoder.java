@@ -0,0 +1,48 @@
+package tim.prune.save;
+
+import java.io.IOException;
+
+/**
+ * Encoder to write gpx files in an export job
+ */
+public class GpxEncoder extends ExportEncoder
+{
+	/** Name of track, or null */
+	private String _name = null;
+	/** Description of track, or null */
+	private String _description = null;
+	/** True to include timestamps */
+	private boolean _timestamps = true;
+
+
+	/**
+	 * Constructor
+	 * @param inName name of track (optional)
+	 * @param inDescription description of track (optional)
+	 * @param inTimestamps true to include timestamps
+	 */
+	public GpxEncoder(String inName, String inDescription, boolean inTimestamps)
+	{
+		_name = inName;
+		_description = inDescription;
+		_timestamps = inTimestamps;
+	}
+
+	/** @return name of format */
+	public String getFormatName() {
+		return "GPX";
+	}
+
+	/** @return file extension */
+	public String getFileExtension() {
+		return "gpx";
+	}
+
+	/**
+	 * Write the points as gpx
+	 */
+	protected int writePoints(ExportWriter inWriter, ExportPoints inPoints) throws IOException
+	{
+		return GpxExporter.writeGpx(inWriter, inPoints, _name, _description, _timestamps, null);
+	}
+}
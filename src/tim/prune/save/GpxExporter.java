@@ -9,8 +9,6 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 
 import javax.swing.BorderFactory;
@@ -236,11 +234,11 @@ public class GpxExporter extends GenericFunction implements Runnable
 	 */
 	public void run()
 	{
-		OutputStreamWriter writer = null;
+		ExportWriter writer = null;
 		try
 		{
 			// normal writing to file
-			writer = new OutputStreamWriter(new FileOutputStream(_exportFile));
+			writer = new ExportWriter(new FileOutputStream(_exportFile));
 			final boolean[] saveFlags = {_pointTypeSelector.getTrackpointsSelected(), _pointTypeSelector.getWaypointsSelected(),
 				_pointTypeSelector.getJustSelection(), _timestampsCheckbox.isSelected()};
 			// write file
@@ -286,15 +284,33 @@ public class GpxExporter extends GenericFunction implements Runnable
 	 * @return number of points written
 	 * @throws IOException if io errors occur on write
 	 */
-	public static int exportData(OutputStreamWriter inWriter, TrackInfo inInfo, String inName,
+	public static int exportData(ExportWriter inWriter, TrackInfo inInfo, String inName,
 		String inDesc, boolean[] inSaveFlags, boolean inUseCopy) throws IOException
 	{
 		// Instantiate source file cachers in case we want to copy output
 		GpxCacherList gpxCachers = null;
 		if (inUseCopy) gpxCachers = new GpxCacherList(inInfo.getFileInfo());
+		ExportPoints points = new ExportPoints(inInfo, inSaveFlags[0], inSaveFlags[1], inSaveFlags[2]);
+		return writeGpx(inWriter, points, inName, inDesc, inSaveFlags[3], gpxCachers);
+	}
+
+	/**
+	 * Write the given points as gpx
+	 * @param inWriter writer object
+	 * @param inPoints points to write
+	 * @param inName name of track (optional)
+	 * @param inDesc description of track (optional)
+	 * @param inTimestamps true to export timestamps
+	 * @param inCachers cachers to copy the source from, or null
+	 * @return number of points written
+	 * @throws IOException if io errors occur on write
+	 */
+	static int writeGpx(ExportWriter inWriter, ExportPoints inPoints, String inName,
+		String inDesc, boolean inTimestamps, GpxCacherList inCachers) throws IOException
+	{
 		// Write or copy headers
 		inWriter.write(getXmlHeaderString(inWriter));
-		inWriter.write(getGpxHeaderString(gpxCachers));
+		inWriter.write(getGpxHeaderString(inCachers));
 		// Name field
 		String trackName = "PruneTrack";
 		if (inName != null && !inName.equals(""))
@@ -309,53 +325,35 @@ public class GpxExporter extends GenericFunction implements Runnable
 		inWriter.write((inDesc != null && !inDesc.equals(""))?inDesc:"Export from Prune");
 		inWriter.write("</desc>\n");
 
-		int i = 0;
-		DataPoint point = null;
-		final boolean exportTrackpoints = inSaveFlags[0];
-		final boolean exportWaypoints = inSaveFlags[1];
-		final boolean exportSelection = inSaveFlags[2];
-		final boolean exportTimestamps = inSaveFlags[3];
-		// Examine selection
-		int selStart = -1, selEnd = -1;
-		if (exportSelection) {
-			selStart = inInfo.getSelection().getStart();
-			selEnd = inInfo.getSelection().getEnd();
-		}
 		// Loop over waypoints
-		final int numPoints = inInfo.getTrack().getNumPoints();
 		int numSaved = 0;
-		for (i=0; i<numPoints; i++)
+		for (DataPoint point : inPoints)
 		{
-			point = inInfo.getTrack().getPoint(i);
-			if (!exportSelection || (i>=selStart && i<=selEnd)) {
-				// Make a wpt element for each waypoint
-				if (point.isWaypoint()) {
-					if (exportWaypoints)
-					{
-						String pointSource = (inUseCopy?getPointSource(gpxCachers, point):null);
-						if (pointSource != null) {
-							inWriter.write(pointSource);
-							inWriter.write('\n');
-						}
-						else {
-							exportWaypoint(point, inWriter, exportTimestamps);
-						}
-						numSaved++;
-					}
+			// Make a wpt element for each waypoint
+			if (point.isWaypoint())
+			{
+				String pointSource = getPointSource(inCachers, point);
+				if (pointSource != null) {
+					inWriter.write(pointSource);
+					inWriter.write('\n');
+				}
+				else {
+					exportWaypoint(point, inWriter, inTimestamps);
 				}
+				numSaved++;
 			}
 		}
 		// Export both route points and then track points
-		if (exportTrackpoints)
+		if (inPoints.hasTrackpoints())
 		{
 			// Output all route points (if any)
-			numSaved += writeTrackPoints(inWriter, inInfo, exportSelection, exportTrackpoints, 
-					exportTimestamps, true, gpxCachers, "<rtept", "\t<rte><number>1</number>\n",
+			numSaved += writeTrackPoints(inWriter, inPoints,
+					inTimestamps, true, inCachers, "<rtept", "\t<rte><number>1</number>\n",
 				null, "\t</rte>\n");
 			// Output all track points, if any
 			String trackStart = "\t<trk><name>" + trackName + "</name><number>1</number><trkseg>\n";
-			numSaved += writeTrackPoints(inWriter, inInfo, exportSelection, exportTrackpoints, 
-					exportTimestamps, false, gpxCachers, "<trkpt", trackStart,
+			numSaved += writeTrackPoints(inWriter, inPoints,
+					inTimestamps, false, inCachers, "<trkpt", trackStart,
 				"\t</trkseg>\n\t<trkseg>\n", "\t</trkseg></trk>\n");
 		}
 
@@ -364,11 +362,9 @@ public class GpxExporter extends GenericFunction implements Runnable
 	}
 
 	/**
-	 * Loop through the track outputting the relevant track points
+	 * Loop through the points outputting the relevant track points
 	 * @param inWriter writer object for output
-	 * @param inInfo track info object containing track
-	 * @param inExportSelection true to just output current selection
-	 * @param inExportTrackpoints true to output track points
+	 * @param inPoints points to export
 	 * @param inExportTimestamps true to include timestamps in export
 	 * @param inOnlyCopies true to only export if source can be copied
 	 * @param inCachers list of GpxCachers
@@ -377,47 +373,39 @@ public class GpxExporter extends GenericFunction implements Runnable
 	 * @param inSegmentTag tag to output between segments (or null)
 	 * @param inEndTag end tag to output
 	 */
-	private static int writeTrackPoints(OutputStreamWriter inWriter,
-		TrackInfo inInfo, boolean inExportSelection, boolean inExportTrackpoints,
-		boolean exportTimestamps,
+	private static int writeTrackPoints(ExportWriter inWriter,
+		ExportPoints inPoints, boolean exportTimestamps,
 		boolean inOnlyCopies, GpxCacherList inCachers, String inPointTag,
 		String inStartTag, String inSegmentTag, String inEndTag)
 	throws IOException
 	{
 		// Note: far too many input parameters to this method but avoids duplication
 		// of output functionality for writing track points and route points
-		int numPoints = inInfo.getTrack().getNumPoints();
-		int selStart = inInfo.getSelection().getStart();
-		int selEnd = inInfo.getSelection().getEnd();
 		int numSaved = 0;
 		// Loop over track points
-		for (int i=0; i<numPoints; i++)
+		for (DataPoint point : inPoints)
 		{
-			DataPoint point = inInfo.getTrack().getPoint(i);
-			if ((!inExportSelection || (i>=selStart && i<=selEnd)) && !point.isWaypoint())
+			if (!point.isWaypoint())
 			{
-				if (inExportTrackpoints)
+				// get the source from the point (if any)
+				String pointSource = getPointSource(inCachers, point);
+				// Clear point source if it's the wrong type of point (eg changed from waypoint or route point)
+				if (pointSource != null && !pointSource.toLowerCase().startsWith(inPointTag)) {pointSource = null;}
+				if (pointSource != null || !inOnlyCopies)
 				{
-					// get the source from the point (if any)
-					String pointSource = getPointSource(inCachers, point);
-					// Clear point source if it's the wrong type of point (eg changed from waypoint or route point)
-					if (pointSource != null && !pointSource.toLowerCase().startsWith(inPointTag)) {pointSource = null;}
-					if (pointSource != null || !inOnlyCopies)
-					{
-						// restart track segment if necessary
-						if ((numSaved > 0) && point.getSegmentStart() && (inSegmentTag != null)) {
-							inWriter.write(inSegmentTag);
-						}
-						if (numSaved == 0) {inWriter.write(inStartTag);}
-						if (pointSource != null) {
-							inWriter.write(pointSource);
-							inWriter.write('\n');
-						}
-						else {
-							if (!inOnlyCopies) {exportTrackpoint(point, inWriter, exportTimestamps);}
-						}
-						numSaved++;
+					// restart track segment if necessary
+					if ((numSaved > 0) && point.getSegmentStart() && (inSegmentTag != null)) {
+						inWriter.write(inSegmentTag);
+					}
+					if (numSaved == 0) {inWriter.write(inStartTag);}
+					if (pointSource != null) {
+						inWriter.write(pointSource);
+						inWriter.write('\n');
+					}
+					else {
+						if (!inOnlyCopies) {exportTrackpoint(point, inWriter, exportTimestamps);}
 					}
+					numSaved++;
 				}
 			}
 		}
@@ -486,7 +474,7 @@ public class GpxExporter extends GenericFunction implements Runnable
 	 * @param inWriter writer object
 	 * @return header string defining encoding
 	 */
-	private static String getXmlHeaderString(OutputStreamWriter inWriter)
+	private static String getXmlHeaderString(ExportWriter inWriter)
 	{
 		String encoding = inWriter.getEncoding();
 		try {
@@ -525,26 +513,26 @@ public class GpxExporter extends GenericFunction implements Runnable
 	 * @param inAudio true to export link to audio
 	 * @throws IOException on write failure
 	 */
-	private static void exportWaypoint(DataPoint inPoint, Writer inWriter, boolean inTimestamps)
+	private static void exportWaypoint(DataPoint inPoint, ExportWriter inWriter, boolean inTimestamps)
 		throws IOException
 	{
 		inWriter.write("\t<wpt lat=\"");
-		inWriter.write(inPoint.getLatitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLatitude());
 		inWriter.write("\" lon=\"");
-		inWriter.write(inPoint.getLongitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLongitude());
 		inWriter.write("\">\n");
 		// altitude if available
 		if (inPoint.hasAltitude())
 		{
 			inWriter.write("\t\t<ele>");
-			inWriter.write("" + inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
+			inWriter.write(inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
 			inWriter.write("</ele>\n");
 		}
 		// timestamp if available (point might have timestamp and then be turned into a waypoint)
 		if (inPoint.hasTimestamp() && inTimestamps)
 		{
 			inWriter.write("\t\t<time>");
-			inWriter.write(inPoint.getTimestamp().getText(Timestamp.FORMAT_ISO_8601));
+			inWriter.writeTimestamp(inPoint.getTimestamp());
 			inWriter.write("</time>\n");
 		}
 		// write waypoint name after elevation and time
@@ -575,26 +563,26 @@ public class GpxExporter extends GenericFunction implements Runnable
 	 * @param inExportPhoto true to export photo link
 	 * @param inExportAudio true to export audio link
 	 */
-	private static void exportTrackpoint(DataPoint inPoint, Writer inWriter, boolean inTimestamps)
+	private static void exportTrackpoint(DataPoint inPoint, ExportWriter inWriter, boolean inTimestamps)
 		throws IOException
 	{
 		inWriter.write("\t\t<trkpt lat=\"");
-		inWriter.write(inPoint.getLatitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLatitude());
 		inWriter.write("\" lon=\"");
-		inWriter.write(inPoint.getLongitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLongitude());
 		inWriter.write("\">");
 		// altitude
 		if (inPoint.hasAltitude())
 		{
 			inWriter.write("<ele>");
-			inWriter.write("" + inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
+			inWriter.write(inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
 			inWriter.write("</ele>");
 		}
 		// timestamp if available (and selected)
 		if (inPoint.hasTimestamp() && inTimestamps)
 		{
 			inWriter.write("<time>");
-			inWriter.write(inPoint.getTimestamp().getText(Timestamp.FORMAT_ISO_8601));
+			inWriter.writeTimestamp(inPoint.getTimestamp());
 			inWriter.write("</time>");
 		}
 		inWriter.write("</trkpt>\n");
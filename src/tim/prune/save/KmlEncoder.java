@@ -0,0 +1,69 @@
+package tim.prune.save;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Encoder to write kml or kmz files in an export job
+ */
+public class KmlEncoder extends ExportEncoder
+{
+	/** Title of data, or null */
+	private String _title = null;
+	/** Hex code of track colour */
+	private String _colourCode = null;
+	/** True for absolute altitudes */
+	private boolean _absoluteAltitudes = false;
+	/** True to compress to a kmz file */
+	private boolean _kmz = false;
+
+
+	/**
+	 * Constructor
+	 * @param inTitle title of data (optional)
+	 * @param inColourCode hex code rrggbb of track colour
+	 * @param inAbsoluteAltitudes true for absolute altitudes
+	 * @param inKmz true to write a kmz file instead of kml
+	 */
+	public KmlEncoder(String inTitle, String inColourCode, boolean inAbsoluteAltitudes, boolean inKmz)
+	{
+		_title = inTitle;
+		_colourCode = inColourCode;
+		_absoluteAltitudes = inAbsoluteAltitudes;
+		_kmz = inKmz;
+	}
+
+	/** @return name of format */
+	public String getFormatName() {
+		return _kmz ? "KMZ" : "KML";
+	}
+
+	/** @return file extension */
+	public String getFileExtension() {
+		return _kmz ? "kmz" : "kml";
+	}
+
+	/**
+	 * Open the writer, inside a zip entry if kmz was requested
+	 */
+	protected ExportWriter openWriter(File inFile) throws IOException
+	{
+		if (!_kmz) {
+			return new ExportWriter(new FileOutputStream(inFile), "UTF-8");
+		}
+		ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(inFile));
+		zipOutputStream.putNextEntry(new ZipEntry(KmlExporter.KML_FILENAME_IN_KMZ));
+		return new ExportWriter(zipOutputStream, "UTF-8");
+	}
+
+	/**
+	 * Write the points as kml
+	 */
+	protected int writePoints(ExportWriter inWriter, ExportPoints inPoints) throws IOException
+	{
+		return KmlExporter.writeKml(inWriter, inPoints, _title, _colourCode, _absoluteAltitudes);
+	}
+}
@@ -11,8 +11,6 @@ import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -36,7 +34,6 @@ import tim.prune.UpdateMessageBroker;
 import tim.prune.config.ColourUtils;
 import tim.prune.config.Config;
 import tim.prune.data.Altitude;
-import tim.prune.data.Coordinate;
 import tim.prune.data.DataPoint;
 import tim.prune.data.Field;
 import tim.prune.data.Track;
@@ -66,10 +63,7 @@ public class KmlExporter extends GenericFunction implements Runnable
 	private ColourChooser _colourChooser = null;
 
 	// Filename of Kml file within zip archive
-	private static final String KML_FILENAME_IN_KMZ = "doc.kml";
-	// Default width and height of thumbnail images in Kmz
-	private static final int DEFAULT_THUMBNAIL_WIDTH = 240;
-	private static final int DEFAULT_THUMBNAIL_HEIGHT = 240;
+	static final String KML_FILENAME_IN_KMZ = "doc.kml";
 	// Default track colour
 	private static final Color DEFAULT_TRACK_COLOUR = new Color(204, 0, 0); // red
 
@@ -285,13 +279,7 @@ public class KmlExporter extends GenericFunction implements Runnable
 		_okButton.setEnabled(false);
 		_descriptionField.setEnabled(false);
 
-		// Determine photo thumbnail size from config
-		int thumbWidth = Config.getConfigInt(Config.KEY_KMZ_IMAGE_WIDTH);
-		if (thumbWidth < DEFAULT_THUMBNAIL_WIDTH) {thumbWidth = DEFAULT_THUMBNAIL_WIDTH;}
-		int thumbHeight = Config.getConfigInt(Config.KEY_KMZ_IMAGE_HEIGHT);
-		if (thumbHeight < DEFAULT_THUMBNAIL_HEIGHT) {thumbHeight = DEFAULT_THUMBNAIL_HEIGHT;}
-
-		OutputStreamWriter writer = null;
+		ExportWriter writer = null;
 		ZipOutputStream zipOutputStream = null;
 		try
 		{
@@ -299,13 +287,13 @@ public class KmlExporter extends GenericFunction implements Runnable
 			if (!_kmzCheckbox.isSelected())
 			{
 				// normal writing to file
-				writer = new OutputStreamWriter(new FileOutputStream(_exportFile));
+				writer = new ExportWriter(new FileOutputStream(_exportFile), "UTF-8");
 			}
 			else
 			{
 				// kmz requested - need zip output stream
 				zipOutputStream = new ZipOutputStream(new FileOutputStream(_exportFile));
-				writer = new OutputStreamWriter(zipOutputStream);
+				writer = new ExportWriter(zipOutputStream, "UTF-8");
 				// Make an entry in the zip file for the kml file
 				ZipEntry kmlEntry = new ZipEntry(KML_FILENAME_IN_KMZ);
 				zipOutputStream.putNextEntry(kmlEntry);
@@ -354,68 +342,66 @@ public class KmlExporter extends GenericFunction implements Runnable
 	/**
 	 * Export the information to the given writer
 	 * @param inWriter writer object
-	 * @param inExportImages true if image thumbnails are to be referenced
 	 * @return number of points written
 	 */
-	private int exportData(OutputStreamWriter inWriter)
+	private int exportData(ExportWriter inWriter)
+	throws IOException
+	{
+		ExportPoints points = new ExportPoints(_trackInfo, _pointTypeSelector.getTrackpointsSelected(),
+			_pointTypeSelector.getWaypointsSelected(), _pointTypeSelector.getJustSelection());
+		String title = null;
+		if (_descriptionField != null) {
+			title = _descriptionField.getText();
+		}
+		return writeKml(inWriter, points, title, ColourUtils.makeHexCode(_colourPatch.getBackground()),
+			_altitudesCheckbox.isSelected());
+	}
+
+	/**
+	 * Write the given points as kml
+	 * @param inWriter writer object
+	 * @param inPoints points to write
+	 * @param inTitle title for the data, or null
+	 * @param inColourCode hex code rrggbb of track colour
+	 * @param inAbsoluteAltitudes true for absolute altitudes
+	 * @return number of points written
+	 */
+	static int writeKml(ExportWriter inWriter, ExportPoints inPoints, String inTitle,
+		String inColourCode, boolean inAbsoluteAltitudes)
 	throws IOException
 	{
-		boolean writeTrack = _pointTypeSelector.getTrackpointsSelected();
-		boolean writeWaypoints = _pointTypeSelector.getWaypointsSelected();
-		boolean justSelection = _pointTypeSelector.getJustSelection();
 		inWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<kml xmlns=\"http://earth.google.com/kml/2.1\">\n<Folder>\n");
 		inWriter.write("\t<name>");
-		if (_descriptionField != null && _descriptionField.getText() != null && !_descriptionField.getText().equals(""))
+		if (inTitle != null && !inTitle.equals(""))
 		{
-			inWriter.write(_descriptionField.getText());
+			inWriter.write(inTitle);
 		}
 		else {
 			inWriter.write("Export from Prune");
 		}
 		inWriter.write("</name>\n");
 
-		// Examine selection if required
-		int selStart = -1, selEnd = -1;
-		if (justSelection) {
-			selStart = _trackInfo.getSelection().getStart();
-			selEnd = _trackInfo.getSelection().getEnd();
-		}
-
-		boolean absoluteAltitudes = _altitudesCheckbox.isSelected();
-		int i = 0;
-		DataPoint point = null;
-		boolean hasTrackpoints = false;
-		final int numPoints = _track.getNumPoints();
 		int numSaved = 0;
 		// Loop over waypoints
-		for (i=0; i<numPoints; i++)
+		for (DataPoint point : inPoints)
 		{
-			point = _track.getPoint(i);
-			boolean writeCurrentPoint = !justSelection || (i>=selStart && i<=selEnd);
 			// Make a blob for each waypoint
 			if (point.isWaypoint())
 			{
-				if (writeWaypoints && writeCurrentPoint)
-				{
-					exportWaypoint(point, inWriter, absoluteAltitudes);
-					numSaved++;
-				}
-			}
-			else
-			{
-				hasTrackpoints = true;
+				exportWaypoint(point, inWriter, inAbsoluteAltitudes);
+				numSaved++;
 			}
 		}
 		// Make a line for the track, if there is one
-		if (hasTrackpoints && writeTrack)
+		if (inPoints.hasTrackpoints())
 		{
 			// Set up strings for start and end of track segment
 			String trackStart = "\t<Placemark>\n\t\t<name>track</name>\n\t\t<Style>\n\t\t\t<LineStyle>\n"
-				+ "\t\t\t\t<color>cc" + reverse(ColourUtils.makeHexCode(_colourPatch.getBackground())) + "</color>\n"
+				+ "\t\t\t\t<color>cc" + reverse(inColourCode) + "</color>\n"
 				+ "\t\t\t\t<width>4</width>\n\t\t\t</LineStyle>\n"
 				+ "\t\t\t<PolyStyle><color>33cc0000</color></PolyStyle>\n"
 				+ "\t\t</Style>\n\t\t<LineString>\n";
-			if (absoluteAltitudes) {
+			if (inAbsoluteAltitudes) {
 				trackStart += "\t\t\t<extrude>1</extrude>\n\t\t\t<altitudeMode>absolute</altitudeMode>\n";
 			}
 			else {
@@ -428,11 +414,9 @@ public class KmlExporter extends GenericFunction implements Runnable
 			inWriter.write(trackStart);
 			// Loop over track points
 			boolean firstTrackpoint = true;
-			for (i=0; i<numPoints; i++)
+			for (DataPoint point : inPoints)
 			{
-				point = _track.getPoint(i);
-				boolean writeCurrentPoint = !justSelection || (i>=selStart && i<=selEnd);
-				if (!point.isWaypoint() && writeCurrentPoint)
+				if (!point.isWaypoint())
 				{
 					// start new track segment if necessary
 					if (point.getSegmentStart() && !firstTrackpoint) {
@@ -468,7 +452,7 @@ public class KmlExporter extends GenericFunction implements Runnable
 	 * @param inAbsoluteAltitude true for absolute altitude
 	 * @throws IOException on write failure
 	 */
-	private void exportWaypoint(DataPoint inPoint, Writer inWriter, boolean inAbsoluteAltitude) throws IOException
+	private static void exportWaypoint(DataPoint inPoint, ExportWriter inWriter, boolean inAbsoluteAltitude) throws IOException
 	{
 		String name = inPoint.getWaypointName().trim();
 		exportNamedPoint(inPoint, inWriter, name, null, null, inAbsoluteAltitude);
@@ -484,7 +468,7 @@ public class KmlExporter extends GenericFunction implements Runnable
 	 * @param inAbsoluteAltitude true for absolute altitudes
 	 * @throws IOException on write failure
 	 */
-	private void exportNamedPoint(DataPoint inPoint, Writer inWriter, String inName,
+	private static void exportNamedPoint(DataPoint inPoint, ExportWriter inWriter, String inName,
 		String inDesc, String inStyle, boolean inAbsoluteAltitude)
 	throws IOException
 	{
@@ -512,13 +496,13 @@ public class KmlExporter extends GenericFunction implements Runnable
 			inWriter.write("\t\t\t<altitudeMode>clampToGround</altitudeMode>\n");
 		}
 		inWriter.write("\t\t\t<coordinates>");
-		inWriter.write(inPoint.getLongitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLongitude());
 		inWriter.write(',');
-		inWriter.write(inPoint.getLatitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLatitude());
 		inWriter.write(',');
 		// Altitude if point has one
 		if (inPoint.hasAltitude()) {
-			inWriter.write("" + inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
+			inWriter.write(inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
 		}
 		else {
 			inWriter.write('0');
@@ -532,15 +516,15 @@ public class KmlExporter extends GenericFunction implements Runnable
 	 * @param inPoint trackpoint to export
 	 * @param inWriter writer object
 	 */
-	private void exportTrackpoint(DataPoint inPoint, Writer inWriter) throws IOException
+	private static void exportTrackpoint(DataPoint inPoint, ExportWriter inWriter) throws IOException
 	{
-		inWriter.write(inPoint.getLongitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLongitude());
 		inWriter.write(',');
-		inWriter.write(inPoint.getLatitude().output(Coordinate.FORMAT_DECIMAL_FORCE_POINT));
+		inWriter.writeCoordinate(inPoint.getLatitude());
 		// Altitude if point has one
 		inWriter.write(',');
 		if (inPoint.hasAltitude()) {
-			inWriter.write("" + inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
+			inWriter.write(inPoint.getAltitude().getStringValue(Altitude.Format.METRES));
 		}
 		else {
 			inWriter.write('0');
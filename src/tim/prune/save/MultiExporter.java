@@ -0,0 +1,224 @@
+package tim.prune.save;
+
+import java.io.File;
+import java.util.List;
+
+import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+
+import tim.prune.App;
+import tim.prune.GenericFunction;
+import tim.prune.I18nManager;
+import tim.prune.UpdateMessageBroker;
+import tim.prune.config.Config;
+import tim.prune.data.Field;
+import tim.prune.data.FieldList;
+import tim.prune.data.TrackInfo;
+
+/**
+ * Function to export the track to gpx, kmz and text files in one go,
+ * writing the files in parallel
+ */
+public class MultiExporter extends GenericFunction implements Runnable
+{
+	private TrackInfo _trackInfo = null;
+	private JFileChooser _fileChooser = null;
+	private JCheckBox _gpxCheckbox = null;
+	private JCheckBox _kmzCheckbox = null;
+	private JCheckBox _textCheckbox = null;
+	/** Chosen file name without extension */
+	private File _baseFile = null;
+	/** Job to run */
+	private ExportJob _job = null;
+
+
+	/**
+	 * Constructor
+	 * @param inApp app object
+	 */
+	public MultiExporter(App inApp)
+	{
+		super(inApp);
+		_trackInfo = _pruneApp.getTrackInfo();
+	}
+
+	/** Get name key */
+	public String getNameKey() {
+		return "function.exportmulti";
+	}
+
+	/**
+	 * Select the file name and formats, and start the export
+	 */
+	public void begin()
+	{
+		if (_fileChooser == null)
+		{
+			_fileChooser = new JFileChooser();
+			_fileChooser.setDialogType(JFileChooser.SAVE_DIALOG);
+			JPanel formatPanel = new JPanel();
+			formatPanel.setLayout(new BoxLayout(formatPanel, BoxLayout.Y_AXIS));
+			_gpxCheckbox = new JCheckBox("GPX", true);
+			formatPanel.add(_gpxCheckbox);
+			_kmzCheckbox = new JCheckBox("KMZ", true);
+			formatPanel.add(_kmzCheckbox);
+			_textCheckbox = new JCheckBox("CSV", true);
+			formatPanel.add(_textCheckbox);
+			_fileChooser.setAccessory(formatPanel);
+			// start from directory in config which should be set
+			String configDir = Config.getConfigString(Config.KEY_TRACK_DIR);
+			if (configDir != null) {_fileChooser.setCurrentDirectory(new File(configDir));}
+		}
+		boolean chooseAgain = false;
+		do
+		{
+			chooseAgain = false;
+			if (_fileChooser.showSaveDialog(_parentFrame) == JFileChooser.APPROVE_OPTION)
+			{
+				// Remove any extension, each format adds its own
+				File file = _fileChooser.getSelectedFile();
+				String name = file.getName();
+				final int dotPos = name.lastIndexOf('.');
+				if (dotPos > 0) {
+					file = new File(file.getParentFile(), name.substring(0, dotPos));
+				}
+				ExportJob job = makeJob(_trackInfo, file, _gpxCheckbox.isSelected(),
+					_kmzCheckbox.isSelected(), _textCheckbox.isSelected());
+				if (job.getNumTargets() == 0) {return;}
+				// Check if any of the files exist and if necessary prompt for overwrite, listing them
+				StringBuilder existingFiles = new StringBuilder();
+				for (int i=0; i<job.getNumTargets(); i++)
+				{
+					if (job.getTargetFile(i).exists()) {
+						existingFiles.append('\n').append(job.getTargetFile(i).getName());
+					}
+				}
+				Object[] buttonTexts = {I18nManager.getText("button.overwrite"), I18nManager.getText("button.cancel")};
+				if (existingFiles.length() == 0 || JOptionPane.showOptionDialog(_parentFrame,
+						I18nManager.getText("dialog.save.overwrite.text") + "\n" + existingFiles,
+						I18nManager.getText("dialog.save.overwrite.title"), JOptionPane.YES_NO_OPTION,
+						JOptionPane.WARNING_MESSAGE, null, buttonTexts, buttonTexts[1])
+					== JOptionPane.YES_OPTION)
+				{
+					// New files or overwrite confirmed
+					_baseFile = file;
+					_job = job;
+					new Thread(this).start();
+				}
+				else
+				{
+					// files exist and overwrite cancelled - select again
+					chooseAgain = true;
+				}
+			}
+		} while (chooseAgain);
+	}
+
+	/**
+	 * Make the export job for the chosen formats
+	 * @param inTrackInfo track info object
+	 * @param inBaseFile file name without extension
+	 * @param inGpx true for gpx
+	 * @param inKmz true for kmz
+	 * @param inText true for comma-separated text
+	 * @return export job
+	 */
+	public static ExportJob makeJob(TrackInfo inTrackInfo, File inBaseFile,
+		boolean inGpx, boolean inKmz, boolean inText)
+	{
+		return makeJob(new ExportPoints(inTrackInfo, true, true, false), inTrackInfo.getTrack().getFieldList(),
+			inBaseFile, null, inGpx, false, inKmz, inText);
+	}
+
+	/**
+	 * Make the export job for the chosen formats from the given points
+	 * @param inPoints points to export
+	 * @param inFieldList fields of the track, used for the text export
+	 * @param inBaseFile file name without extension
+	 * @param inName name to give the track inside gpx and kml files, or null
+	 * @param inGpx true for gpx
+	 * @param inKml true for kml
+	 * @param inKmz true for kmz
+	 * @param inText true for comma-separated text
+	 * @return export job
+	 */
+	public static ExportJob makeJob(ExportPoints inPoints, FieldList inFieldList, File inBaseFile, String inName,
+		boolean inGpx, boolean inKml, boolean inKmz, boolean inText)
+	{
+		ExportJob job = new ExportJob(inPoints);
+		if (inGpx) {
+			addTarget(job, inBaseFile, new GpxEncoder(inName, null, true));
+		}
+		if (inKml || inKmz)
+		{
+			String colour = Config.getConfigString(Config.KEY_KML_TRACK_COLOUR);
+			if (colour == null) {colour = "cc0000";}
+			if (inKml) {
+				addTarget(job, inBaseFile, new KmlEncoder(inName, colour, false, false));
+			}
+			if (inKmz) {
+				addTarget(job, inBaseFile, new KmlEncoder(inName, colour, false, true));
+			}
+		}
+		if (inText)
+		{
+			Field[] fields = new Field[inFieldList.getNumFields()];
+			for (int i=0; i<fields.length; i++) {
+				fields[i] = inFieldList.getField(i);
+			}
+			addTarget(job, inBaseFile, new TextEncoder(fields, ','));
+		}
+		return job;
+	}
+
+	/**
+	 * Add a target to the job using the encoder's file extension
+	 */
+	private static void addTarget(ExportJob inJob, File inBaseFile, ExportEncoder inEncoder)
+	{
+		inJob.addTarget(new File(inBaseFile.getPath() + "." + inEncoder.getFileExtension()), inEncoder);
+	}
+
+	/**
+	 * Run method for exporting in a separate thread
+	 */
+	public void run()
+	{
+		List<ExportJob.Result> results = _job.run();
+		StringBuilder message = new StringBuilder();
+		boolean failed = false;
+		for (ExportJob.Result result : results)
+		{
+			message.append(result.getFormatName()).append(": ").append(result.getFile().getName());
+			if (result.getError() == null)
+			{
+				message.append(" - ").append(result.getNumPoints()).append(' ')
+					.append(I18nManager.getText("confirm.exportmulti.points")).append(", ")
+					.append(result.getPointsPerSecond()).append(' ')
+					.append(I18nManager.getText("confirm.exportmulti.pointspersec")).append(", ")
+					.append(result.getKilobytesPerSecond()).append(" kB/s\n");
+			}
+			else
+			{
+				message.append(" - ").append(I18nManager.getText("error.save.failed"))
+					.append(" : ").append(result.getError().getMessage()).append('\n');
+				failed = true;
+			}
+		}
+		// Store directory in config for later
+		Config.setConfigString(Config.KEY_TRACK_DIR, _baseFile.getAbsoluteFile().getParentFile().getAbsolutePath());
+		if (failed) {
+			_app.showErrorMessageNoLookup("error.save.dialogtitle", message.toString());
+		}
+		else
+		{
+			UpdateMessageBroker.informSubscribers(I18nManager.getText("confirm.exportmulti.done")
+				+ " " + _baseFile.getName());
+			JOptionPane.showMessageDialog(_parentFrame, message.toString(),
+				I18nManager.getText(getNameKey()), JOptionPane.INFORMATION_MESSAGE);
+		}
+	}
+}
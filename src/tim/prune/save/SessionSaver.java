@@ -0,0 +1,311 @@
+package tim.prune.save;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+
+import tim.prune.App;
+import tim.prune.GenericFunction;
+import tim.prune.I18nManager;
+import tim.prune.UpdateMessageBroker;
+import tim.prune.config.Config;
+import tim.prune.data.Altitude;
+import tim.prune.data.DataPoint;
+import tim.prune.data.Field;
+import tim.prune.data.FieldList;
+import tim.prune.data.FileInfo;
+import tim.prune.data.SourceInfo;
+import tim.prune.data.Track;
+import tim.prune.data.TrackInfo;
+import tim.prune.load.GenericFileFilter;
+import tim.prune.load.xml.GpxMetadata;
+
+/**
+ * Class to save the whole track, including its sources and metadata,
+ * into a compact binary session file which can be reopened without
+ * parsing the original text formats again.
+ * The layout is a fixed header followed by a body which may be deflated:
+ * metadata, field list, per-point attribute columns including the parsed
+ * altitudes and timestamps, one column of values per field, then the source mappings.
+ */
+public class SessionSaver extends GenericFunction implements Runnable
+{
+	private TrackInfo _trackInfo = null;
+	private JFileChooser _fileChooser = null;
+	private JCheckBox _compressCheckbox = null;
+	private File _saveFile = null;
+
+	/** File extension for session files */
+	public static final String SESSION_EXTENSION = "prs";
+	/** Magic bytes at the start of every session file */
+	public static final byte[] SESSION_MAGIC = {'P', 'R', 'U', 'N', 'E', 'S', 'E', 'S'};
+	/** Current version of the session format */
+	public static final int SESSION_VERSION = 1;
+	/** Header flag for a deflated body */
+	public static final int FLAG_DEFLATE = 1;
+	/** Length of header in bytes (magic, version, flags) */
+	public static final int HEADER_LENGTH = SESSION_MAGIC.length + 8;
+	/** Per-point flag for a point modified since loading */
+	public static final int POINT_MODIFIED = 1;
+	/** Per-point flag for a point with its own colour */
+	public static final int POINT_HAS_COLOUR = 2;
+	/** Per-point flag for a point with a valid timestamp */
+	public static final int POINT_HAS_TIMESTAMP = 4;
+	/** Charset used for all strings */
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * Constructor
+	 * @param inApp app object
+	 */
+	public SessionSaver(App inApp)
+	{
+		super(inApp);
+		_trackInfo = _pruneApp.getTrackInfo();
+	}
+
+	/** Get name key */
+	public String getNameKey() {
+		return "function.savesession";
+	}
+
+	/**
+	 * Select the file and start the save
+	 */
+	public void begin()
+	{
+		if (_fileChooser == null)
+		{
+			_fileChooser = new JFileChooser();
+			_fileChooser.setDialogType(JFileChooser.SAVE_DIALOG);
+			_fileChooser.setFileFilter(new GenericFileFilter("filetype.session", new String[] {SESSION_EXTENSION}));
+			_fileChooser.setAcceptAllFileFilterUsed(false);
+			_compressCheckbox = new JCheckBox(I18nManager.getText("dialog.savesession.compress"));
+			_compressCheckbox.setSelected(false);
+			_fileChooser.setAccessory(_compressCheckbox);
+			// start from directory in config which should be set
+			String configDir = Config.getConfigString(Config.KEY_TRACK_DIR);
+			if (configDir != null) {_fileChooser.setCurrentDirectory(new File(configDir));}
+		}
+		// Allow choose again if an existing file is selected
+		boolean chooseAgain = false;
+		do
+		{
+			chooseAgain = false;
+			if (_fileChooser.showSaveDialog(_parentFrame) == JFileChooser.APPROVE_OPTION)
+			{
+				File file = _fileChooser.getSelectedFile();
+				if (!file.getName().toLowerCase().endsWith("." + SESSION_EXTENSION)) {
+					file = new File(file.getAbsolutePath() + "." + SESSION_EXTENSION);
+				}
+				Object[] buttonTexts = {I18nManager.getText("button.overwrite"), I18nManager.getText("button.cancel")};
+				if (!file.exists() || JOptionPane.showOptionDialog(_parentFrame,
+						I18nManager.getText("dialog.save.overwrite.text"),
+						I18nManager.getText("dialog.save.overwrite.title"), JOptionPane.YES_NO_OPTION,
+						JOptionPane.WARNING_MESSAGE, null, buttonTexts, buttonTexts[1])
+					== JOptionPane.YES_OPTION)
+				{
+					// new file or overwrite confirmed, so save in separate thread
+					_saveFile = file;
+					new Thread(this).start();
+				}
+				else {
+					chooseAgain = true;
+				}
+			}
+		} while (chooseAgain);
+	}
+
+	/**
+	 * Run method for saving in a separate thread
+	 */
+	public void run()
+	{
+		try
+		{
+			final int numPoints = saveSession(_saveFile, _trackInfo, _compressCheckbox.isSelected());
+			// Store directory in config for later
+			Config.setConfigString(Config.KEY_TRACK_DIR, _saveFile.getParentFile().getAbsolutePath());
+			UpdateMessageBroker.informSubscribers(I18nManager.getText("confirm.save.ok1")
+				 + " " + numPoints + " " + I18nManager.getText("confirm.save.ok2")
+				 + " " + _saveFile.getAbsolutePath());
+		}
+		catch (IOException ioe)
+		{
+			JOptionPane.showMessageDialog(_parentFrame,
+				I18nManager.getText("error.save.failed") + " : " + ioe.getMessage(),
+				I18nManager.getText("error.save.dialogtitle"), JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+
+	/**
+	 * Save the given track and its sources into a session file
+	 * @param inFile file to write
+	 * @param inInfo track info object
+	 * @param inCompress true to deflate the body
+	 * @return number of points written
+	 * @throws IOException if io errors occur on write
+	 */
+	public static int saveSession(File inFile, TrackInfo inInfo, boolean inCompress) throws IOException
+	{
+		FileOutputStream fileStream = new FileOutputStream(inFile);
+		DataOutputStream out = null;
+		boolean finished = false;
+		try
+		{
+			// Header is never compressed
+			DataOutputStream header = new DataOutputStream(fileStream);
+			header.write(SESSION_MAGIC);
+			header.writeInt(SESSION_VERSION);
+			header.writeInt(inCompress ? FLAG_DEFLATE : 0);
+			OutputStream bodyStream = fileStream;
+			if (inCompress) {
+				bodyStream = new DeflaterOutputStream(fileStream, new Deflater(Deflater.BEST_SPEED), 64 * 1024);
+			}
+			out = new DataOutputStream(new BufferedOutputStream(bodyStream, 64 * 1024));
+			final int numPoints = writeBody(out, inInfo.getTrack(), inInfo.getFileInfo());
+			out.close();
+			finished = true;
+			return numPoints;
+		}
+		finally
+		{
+			if (!finished)
+			{
+				try {
+					if (out != null) {out.close();}
+					else {fileStream.close();}
+				}
+				catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Write the session body
+	 * @param inStream stream to write to
+	 * @param inTrack track containing points
+	 * @param inFileInfo file info containing sources
+	 * @return number of points written
+	 * @throws IOException on write failure
+	 */
+	private static int writeBody(DataOutputStream inStream, Track inTrack, FileInfo inFileInfo)
+		throws IOException
+	{
+		// Metadata
+		GpxMetadata metadata = inTrack.getGpxMetadata();
+		writeString(inStream, metadata.getVersion());
+		writeString(inStream, metadata.getCreator());
+		writeString(inStream, metadata.getName());
+		writeString(inStream, metadata.getDesc());
+		// Field list, with built-in fields stored independently of language
+		FieldList fieldList = inTrack.getFieldList();
+		final int numFields = fieldList.getNumFields();
+		inStream.writeInt(numFields);
+		for (int f=0; f<numFields; f++)
+		{
+			Field field = fieldList.getField(f);
+			int builtInIndex = field.getBuiltInIndex();
+			inStream.writeInt(builtInIndex);
+			if (builtInIndex < 0) {writeString(inStream, field.getName());}
+		}
+		// Per-point attribute columns
+		final int numPoints = inTrack.getNumPoints();
+		inStream.writeInt(numPoints);
+		for (int i=0; i<numPoints; i++)
+		{
+			DataPoint point = inTrack.getPoint(i);
+			inStream.writeByte((point.isModified() ? POINT_MODIFIED : 0) | (point.getColor() != null ? POINT_HAS_COLOUR : 0)
+				| (point.hasTimestamp() ? POINT_HAS_TIMESTAMP : 0));
+		}
+		for (int i=0; i<numPoints; i++)
+		{
+			Color colour = inTrack.getPoint(i).getColor();
+			inStream.writeInt(colour == null ? 0 : colour.getRGB());
+		}
+		// Altitudes and timestamps are stored as parsed, as offsets may have been added to them
+		for (int i=0; i<numPoints; i++) {
+			inStream.writeByte(inTrack.getPoint(i).getAltitude().getFormat().ordinal());
+		}
+		for (int i=0; i<numPoints; i++)
+		{
+			Altitude altitude = inTrack.getPoint(i).getAltitude();
+			writeString(inStream, altitude.isValid() ? altitude.getStringValue(Altitude.Format.NO_FORMAT) : null);
+		}
+		for (int i=0; i<numPoints; i++) {
+			inStream.writeLong(inTrack.getPoint(i).getTimestamp().getMilliseconds());
+		}
+		// One column of values for each field
+		for (int f=0; f<numFields; f++)
+		{
+			Field field = fieldList.getField(f);
+			for (int i=0; i<numPoints; i++) {
+				writeString(inStream, inTrack.getPoint(i).getFieldValue(field));
+			}
+		}
+		// Sources, with their point objects referenced by track index
+		IdentityHashMap<DataPoint, Integer> trackIndices = new IdentityHashMap<DataPoint, Integer>(numPoints * 2);
+		for (int i=0; i<numPoints; i++) {
+			trackIndices.put(inTrack.getPoint(i), Integer.valueOf(i));
+		}
+		final int numSources = inFileInfo.getNumFiles();
+		inStream.writeInt(numSources);
+		for (int s=0; s<numSources; s++)
+		{
+			SourceInfo source = inFileInfo.getSource(s);
+			inStream.writeInt(source.getFileType().ordinal());
+			writeString(inStream, source.getName());
+			writeString(inStream, source.getFile() == null ? null : source.getFile().getAbsolutePath());
+			inStream.writeInt(source.getNumPoints());
+			final int numObjects = source.getNumPointObjects();
+			inStream.writeInt(numObjects);
+			for (int i=0; i<numObjects; i++)
+			{
+				Integer trackIndex = trackIndices.get(source.getPointObject(i));
+				inStream.writeInt(trackIndex == null ? -1 : trackIndex.intValue());
+			}
+			int[] pointIndices = source.getPointIndices();
+			inStream.writeInt(pointIndices == null ? -1 : pointIndices.length);
+			if (pointIndices != null)
+			{
+				for (int i=0; i<pointIndices.length; i++) {
+					inStream.writeInt(pointIndices[i]);
+				}
+			}
+		}
+		return numPoints;
+	}
+
+	/**
+	 * Write a string as length and utf-8 bytes, with a negative length for null
+	 * @param inStream stream to write to
+	 * @param inString string to write, may be null
+	 * @throws IOException on write failure
+	 */
+	private static void writeString(DataOutputStream inStream, String inString) throws IOException
+	{
+		if (inString == null) {
+			inStream.writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = inString.getBytes(UTF8);
+			inStream.writeInt(bytes.length);
+			inStream.write(bytes);
+		}
+	}
+}
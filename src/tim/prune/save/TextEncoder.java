@@ -0,0 +1,51 @@
+package tim.prune.save;
+
+import java.io.IOException;
+
+import tim.prune.data.Altitude;
+import tim.prune.data.Coordinate;
+import tim.prune.data.Field;
+import tim.prune.data.Timestamp;
+
+/**
+ * Encoder to write delimited text files in an export job,
+ * with the values as they were loaded
+ */
+public class TextEncoder extends ExportEncoder
+{
+	/** Fields to write */
+	private Field[] _fields = null;
+	/** Delimiter character */
+	private char _delimiter = ',';
+
+
+	/**
+	 * Constructor
+	 * @param inFields fields to write for each point
+	 * @param inDelimiter delimiter character
+	 */
+	public TextEncoder(Field[] inFields, char inDelimiter)
+	{
+		_fields = inFields;
+		_delimiter = inDelimiter;
+	}
+
+	/** @return name of format */
+	public String getFormatName() {
+		return "Text";
+	}
+
+	/** @return file extension */
+	public String getFileExtension() {
+		return _delimiter == ',' ? "csv" : "txt";
+	}
+
+	/**
+	 * Write the points as text with a header row
+	 */
+	protected int writePoints(ExportWriter inWriter, ExportPoints inPoints) throws IOException
+	{
+		return TrackFileSaver.writeText(inWriter, inPoints, _fields, _delimiter, true,
+			Coordinate.FORMAT_NONE, Altitude.Format.NO_FORMAT, Timestamp.FORMAT_ORIGINAL);
+	}
+}
@@ -9,8 +9,9 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -419,8 +420,7 @@ public class TrackFileSaver
 	private boolean saveToFile(File inSaveFile)
 	{
 		// TODO: Shorten method
-		FileWriter writer = null;
-		final String lineSeparator = System.getProperty("line.separator");
+		ExportWriter writer = null;
 		boolean saveOK = true;
 		// Get coordinate format and altitude format
 		int coordFormat = Coordinate.FORMAT_NONE;
@@ -457,72 +457,21 @@ public class TrackFileSaver
 			try
 			{
 				// Create output file
-				writer = new FileWriter(saveFile);
-				// Determine delimiter character to use
-				final char delimiter = getDelimiter();
-				FieldInfo info = null;
-
-				StringBuffer buffer = null;
-				int numFields = _model.getRowCount();
-				boolean firstField = true;
-				// Write header row if required
-				if (_headerRowCheckbox.isSelected())
+				writer = new ExportWriter(new FileOutputStream(saveFile));
+				// Collect the selected fields
+				ArrayList<Field> fields = new ArrayList<Field>();
+				final int numFields = _model.getRowCount();
+				for (int f=0; f<numFields; f++)
 				{
-					buffer = new StringBuffer();
-					for (int f=0; f<numFields; f++)
-					{
-						info = _model.getFieldInfo(f);
-						if (info.isSelected())
-						{
-							// output field separator
-							if (!firstField) {
-								buffer.append(delimiter);
-							}
-							buffer.append(info.getField().getName());
-							firstField = false;
-						}
+					FieldInfo info = _model.getFieldInfo(f);
+					if (info.isSelected()) {
+						fields.add(info.getField());
 					}
-					writer.write(buffer.toString());
-					writer.write(lineSeparator);
-				}
-
-				// Examine selection
-				int selStart = -1, selEnd = -1;
-				if (_pointTypeSelector.getJustSelection()) {
-					selStart = _app.getTrackInfo().getSelection().getStart();
-					selEnd = _app.getTrackInfo().getSelection().getEnd();
-				}
-				// Loop over points outputting each in turn to buffer
-				Track track = _app.getTrackInfo().getTrack();
-				final int numPoints = track.getNumPoints();
-				int numSaved = 0;
-				for (int p=0; p<numPoints; p++)
-				{
-					DataPoint point = track.getPoint(p);
-					boolean savePoint = ((point.isWaypoint() && _pointTypeSelector.getWaypointsSelected())
-						|| (!point.isWaypoint() && _pointTypeSelector.getTrackpointsSelected()))
-						&& (!_pointTypeSelector.getJustSelection() || (p>=selStart && p<=selEnd));
-					if (!savePoint) {continue;}
-					numSaved++;
-					firstField = true;
-					buffer = new StringBuffer();
-					for (int f=0; f<numFields; f++)
-					{
-						info = _model.getFieldInfo(f);
-						if (info.isSelected())
-						{
-							// output field separator
-							if (!firstField) {
-								buffer.append(delimiter);
-							}
-							saveField(buffer, point, info.getField(), coordFormat, altitudeFormat, timestampFormat);
-							firstField = false;
-						}
-					}
-					// Output to file
-					writer.write(buffer.toString());
-					writer.write(lineSeparator);
 				}
+				ExportPoints points = new ExportPoints(_app.getTrackInfo(), _pointTypeSelector.getTrackpointsSelected(),
+					_pointTypeSelector.getWaypointsSelected(), _pointTypeSelector.getJustSelection());
+				final int numSaved = writeText(writer, points, fields.toArray(new Field[fields.size()]),
+					getDelimiter(), _headerRowCheckbox.isSelected(), coordFormat, altitudeFormat, timestampFormat);
 				// Store directory in config for later
 				Config.setConfigString(Config.KEY_TRACK_DIR, saveFile.getParentFile().getAbsolutePath());
 				// Save successful
@@ -555,31 +504,80 @@ public class TrackFileSaver
 
 
 	/**
-	 * Format the given field and append to the given buffer for saving
-	 * @param inBuffer buffer to append to
+	 * Write the given points as delimited text, one line per point
+	 * @param inWriter writer object
+	 * @param inPoints points to write
+	 * @param inFields fields to write for each point
+	 * @param inDelimiter delimiter character
+	 * @param inHeaderRow true to write a header row with the field names
+	 * @param inCoordFormat coordinate format
+	 * @param inAltitudeFormat altitude format
+	 * @param inTimestampFormat timestamp format
+	 * @return number of points written
+	 */
+	static int writeText(ExportWriter inWriter, ExportPoints inPoints, Field[] inFields, char inDelimiter,
+		boolean inHeaderRow, int inCoordFormat, Altitude.Format inAltitudeFormat, int inTimestampFormat)
+	throws IOException
+	{
+		final String lineSeparator = System.getProperty("line.separator");
+		// Write header row if required
+		if (inHeaderRow)
+		{
+			for (int f=0; f<inFields.length; f++)
+			{
+				// output field separator
+				if (f > 0) {
+					inWriter.write(inDelimiter);
+				}
+				inWriter.write(inFields[f].getName());
+			}
+			inWriter.write(lineSeparator);
+		}
+		// Loop over points outputting each in turn
+		int numSaved = 0;
+		for (DataPoint point : inPoints)
+		{
+			for (int f=0; f<inFields.length; f++)
+			{
+				// output field separator
+				if (f > 0) {
+					inWriter.write(inDelimiter);
+				}
+				saveField(inWriter, point, inFields[f], inCoordFormat, inAltitudeFormat, inTimestampFormat);
+			}
+			inWriter.write(lineSeparator);
+			numSaved++;
+		}
+		return numSaved;
+	}
+
+	/**
+	 * Format the given field and write it to the given writer
+	 * @param inWriter writer to write to
 	 * @param inPoint point object
 	 * @param inField field object
 	 * @param inCoordFormat coordinate format
 	 * @param inAltitudeFormat altitude format
 	 * @param inTimestampFormat timestamp format
 	 */
-	private void saveField(StringBuffer inBuffer, DataPoint inPoint, Field inField,
+	private static void saveField(ExportWriter inWriter, DataPoint inPoint, Field inField,
 		int inCoordFormat, Altitude.Format inAltitudeFormat, int inTimestampFormat)
+	throws IOException
 	{
 		// Output field according to type
 		if (inField == Field.LATITUDE)
 		{
-			inBuffer.append(inPoint.getLatitude().output(inCoordFormat));
+			inWriter.write(inPoint.getLatitude().output(inCoordFormat));
 		}
 		else if (inField == Field.LONGITUDE)
 		{
-			inBuffer.append(inPoint.getLongitude().output(inCoordFormat));
+			inWriter.write(inPoint.getLongitude().output(inCoordFormat));
 		}
 		else if (inField == Field.ALTITUDE)
 		{
 			try
 			{
-				inBuffer.append(inPoint.getAltitude().getStringValue(inAltitudeFormat));
+				inWriter.write(inPoint.getAltitude().getStringValue(inAltitudeFormat));
 			}
 			catch (NullPointerException npe) {}
 		}
@@ -589,11 +587,14 @@ public class TrackFileSaver
 			{
 				if (inTimestampFormat == Timestamp.FORMAT_ORIGINAL) {
 					// output original string
-					inBuffer.append(inPoint.getFieldValue(Field.TIMESTAMP));
+					inWriter.write(inPoint.getFieldValue(Field.TIMESTAMP));
+				}
+				else if (inTimestampFormat == Timestamp.FORMAT_ISO_8601) {
+					inWriter.writeTimestamp(inPoint.getTimestamp());
 				}
 				else {
 					// format value accordingly
-					inBuffer.append(inPoint.getTimestamp().getText(inTimestampFormat));
+					inWriter.write(inPoint.getTimestamp().getText(inTimestampFormat));
 				}
 			}
 		}
@@ -602,7 +603,7 @@ public class TrackFileSaver
 			String value = inPoint.getFieldValue(inField);
 			if (value != null)
 			{
-				inBuffer.append(value);
+				inWriter.write(value);
 			}
 		}
 	}
@@ -1,25 +1,54 @@
 package tim.prune.save.xml;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import tim.prune.data.DataPoint;
 import tim.prune.data.SourceInfo;
+import tim.prune.load.ReadAheadInputStream;
 
 /**
- * Class to read in a GPX file and cache all the point strings
+ * Class to read in a GPX file and remember where all the point strings are.
+ * Plain files are memory-mapped and each point is only decoded when it's asked for;
+ * compressed files have their point bytes kept together in one buffer.
  */
 public class GpxCacher implements TagReceiver
 {
 	private SourceInfo _sourceInfo = null;
 	private String _headerString = null;
-	private String[] _strings = null;
+	/** Byte offsets of the point tags */
+	private long[] _offsets = null;
+	/** Byte lengths of the point tags */
+	private int[] _lengths = null;
 	private int _pointNum = 0;
+	/** Source bytes, either mapped from the file or copied from a compressed stream */
+	private ByteBuffer _sourceBytes = null;
+	/** Copied bytes of the point tags if the source is compressed, otherwise null */
+	private ByteArrayOutputStream _copiedBytes = null;
+	/** Encoding of the source */
+	private Charset _charset = null;
+
+	/** Number of bytes to check for the xml declaration */
+	private static final int DECLARATION_LENGTH = 200;
+	/** Pattern to find the encoding in the xml declaration */
+	private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding=[\"']([A-Za-z0-9._:-]+)[\"']");
 
 
 	/**
@@ -29,7 +58,8 @@ public class GpxCacher implements TagReceiver
 	public GpxCacher(SourceInfo inInfo)
 	{
 		_sourceInfo = inInfo;
-		_strings = new String[inInfo.getNumPoints()];
+		_offsets = new long[inInfo.getNumPoints()];
+		_lengths = new int[inInfo.getNumPoints()];
 		_pointNum = 0;
 		// Should be a gpx file, but might be raw, zipped or gzipped
 		File gpxFile = inInfo.getFile();
@@ -39,41 +69,71 @@ public class GpxCacher implements TagReceiver
 			GpxSlicer slicer = new GpxSlicer(this);
 			InputStream istream = null;
 			BufferedInputStream bstream = null;
+			ZipFile zipFile = null;
 			try {
 				if (fileName.endsWith(".gpx") || fileName.endsWith(".xml")) {
-					istream = new FileInputStream(inInfo.getFile());
+					istream = new FileInputStream(gpxFile);
 				}
 				else if (fileName.endsWith(".zip")) {
-					istream = getZipInputStream(inInfo.getFile());
+					zipFile = new ZipFile(gpxFile);
+					istream = getZipInputStream(zipFile);
 				}
 				else if (fileName.endsWith(".gz")) {
-					istream = new GZIPInputStream(new FileInputStream(inInfo.getFile()));
+					istream = new ReadAheadInputStream(new GZIPInputStream(new FileInputStream(gpxFile)));
 				}
 				else {
-					System.out.println("GpxCacher unrecognised file type: " + inInfo.getFile().getName());
+					System.out.println("GpxCacher unrecognised file type: " + gpxFile.getName());
 				}
 				if (istream != null) {
 					bstream = new BufferedInputStream(istream);
+					_charset = readCharset(bstream);
+					if (zipFile != null || istream instanceof ReadAheadInputStream) {
+						_copiedBytes = new ByteArrayOutputStream();
+					}
 					slicer.slice(bstream);
 					bstream.close();
+					if (_copiedBytes == null) {
+						_sourceBytes = mapFile(gpxFile);
+					}
+					else
+					{
+						_sourceBytes = ByteBuffer.wrap(_copiedBytes.toByteArray());
+						_copiedBytes = null;
+					}
 				}
 			} catch (Exception e) {
 				// TODO: Handle errors here with a list of warnings?
 				e.printStackTrace();
 			}
+			finally
+			{
+				try {
+					if (zipFile != null) {zipFile.close();}
+				}
+				catch (IOException e) {}
+			}
 		}
 	}
 
 	/**
 	 * Accept a tag from the slicer
 	 */
-	public void reportTag(String inTag)
+	public void reportTag(byte[] inBytes, int inLength, long inOffset)
 	{
 		if (_headerString == null) {
-			_headerString = inTag;
+			_headerString = new String(inBytes, 0, inLength, _charset);
 		}
-		else {
-			_strings[_pointNum] = inTag;
+		else if (_pointNum < _offsets.length)
+		{
+			if (_copiedBytes == null) {
+				_offsets[_pointNum] = inOffset;
+			}
+			else
+			{
+				_offsets[_pointNum] = _copiedBytes.size();
+				_copiedBytes.write(inBytes, 0, inLength);
+			}
+			_lengths[_pointNum] = inLength;
 			_pointNum++;
 		}
 	}
@@ -95,38 +155,82 @@ public class GpxCacher implements TagReceiver
 	public String getSourceString(DataPoint inPoint)
 	{
 		int index = _sourceInfo.getIndex(inPoint);
-		if (index >= 0) {
-			return _strings[index];
+		if (index >= 0 && index < _pointNum && _sourceBytes != null)
+		{
+			ByteBuffer slice = _sourceBytes.duplicate();
+			slice.limit((int) _offsets[index] + _lengths[index]);
+			slice.position((int) _offsets[index]);
+			return _charset.decode(slice).toString();
 		}
 		return null;
 	}
 
 	/**
-	 * Get an inputstream of a GPX file inside a zip
-	 * @param inFile File object describing zip file
-	 * @return input stream for Xml parser
+	 * Read the encoding from the xml declaration at the start of the stream
+	 * @param inStream stream, which is reset to the start afterwards
+	 * @return charset of declared encoding, or UTF-8 if not found
+	 */
+	private static Charset readCharset(BufferedInputStream inStream) throws IOException
+	{
+		inStream.mark(DECLARATION_LENGTH);
+		byte[] start = new byte[DECLARATION_LENGTH];
+		int numRead = 0, n = 0;
+		while (numRead < start.length && (n = inStream.read(start, numRead, start.length - numRead)) > 0) {
+			numRead += n;
+		}
+		inStream.reset();
+		Matcher matcher = ENCODING_PATTERN.matcher(new String(start, 0, numRead, "ISO-8859-1"));
+		if (matcher.find())
+		{
+			try {
+				return Charset.forName(matcher.group(1));
+			}
+			catch (Exception e) {} // unknown encoding
+		}
+		return Charset.forName("UTF-8");
+	}
+
+	/**
+	 * Map the given file into memory so that the point strings can be read from it
+	 * @param inFile gpx file
+	 * @return read-only buffer of file contents
 	 */
-	private static InputStream getZipInputStream(File inFile)
+	private static ByteBuffer mapFile(File inFile) throws IOException
 	{
+		FileInputStream fis = new FileInputStream(inFile);
 		try
 		{
-			ZipInputStream zis = new ZipInputStream(new FileInputStream(inFile));
-			while (zis.available() > 0)
+			FileChannel channel = fis.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Get an inputstream of the GPX files inside a zip, one after the other
+	 * @param inFile zip file
+	 * @return input stream for slicer, or null if no gpx found
+	 */
+	private static InputStream getZipInputStream(ZipFile inFile) throws IOException
+	{
+		List<InputStream> streams = new ArrayList<InputStream>();
+		Enumeration<? extends ZipEntry> entries = inFile.entries();
+		while (entries.hasMoreElements())
+		{
+			String entryName = entries.nextElement().getName();
+			if (entryName != null && entryName.length() > 4)
 			{
-				ZipEntry entry = zis.getNextEntry();
-				String entryName = entry.toString();
-				if (entryName != null && entryName.length() > 4)
-				{
-					String suffix = entryName.substring(entryName.length()-4).toLowerCase();
-					if (suffix.equals(".gpx") || suffix.equals(".xml")) {
-						// First matching file so must be gpx
-						return zis;
-					}
+				String suffix = entryName.substring(entryName.length()-4).toLowerCase();
+				if (suffix.equals(".gpx") || suffix.equals(".xml")) {
+					streams.add(inFile.getInputStream(inFile.getEntry(entryName)));
 				}
 			}
 		}
-		catch (Exception e) {} // ignore errors
 		// not found - error!
-		return null;
+		if (streams.isEmpty()) {return null;}
+		// Inflate in the background
+		return new ReadAheadInputStream(new SequenceInputStream(Collections.enumeration(streams)));
 	}
 }
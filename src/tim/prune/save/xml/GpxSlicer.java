@@ -4,28 +4,32 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Class to slice up a gpx stream and report the found tags
- * back to a listener.
- * Used by Gpx caching to re-read and store the gpx source
+ * Class to slice up a gpx stream and report the positions of
+ * the found tags back to a listener.
+ * Works on the raw bytes, so the offsets can be used to copy the source
+ * without decoding the whole file.
+ * Used by Gpx caching to re-read the gpx source
  */
 public class GpxSlicer
 {
 	/** listener to receive tags */
 	private TagReceiver _receiver = null;
-	/** string builder for copying source xml */
-	private StringBuilder _builder = null;
+	/** buffer for the bytes since the start of the current tag */
+	private byte[] _buffer = null;
+	/** number of bytes in buffer */
+	private int _bufferLength = 0;
 
-	// character sequences for start and end of tags
-	private static final char[] GPX_START = "<gpx".toCharArray();
-	private static final char[] GPX_END = ">".toCharArray();
-	private static final char[] TRKPT_START = "<trkpt".toCharArray();
-	private static final char[] TRKPT_END = "/trkpt>".toCharArray();
-	private static final char[] WPT_START = "<wpt".toCharArray();
-	private static final char[] WPT_END = "/wpt>".toCharArray();
-	private static final char[] RTEPT_START = "<rtept".toCharArray();
-	private static final char[] RTEPT_END = "/rtept>".toCharArray();
-	private static final char[] CDATA_START = "<![CDATA[".toCharArray();
-	private static final char[] CDATA_END = "]]>".toCharArray();
+	// byte sequences for start and end of tags
+	private static final byte[] GPX_START = getBytes("<gpx");
+	private static final byte[] GPX_END = getBytes(">");
+	private static final byte[] TRKPT_START = getBytes("<trkpt");
+	private static final byte[] TRKPT_END = getBytes("/trkpt>");
+	private static final byte[] WPT_START = getBytes("<wpt");
+	private static final byte[] WPT_END = getBytes("/wpt>");
+	private static final byte[] RTEPT_START = getBytes("<rtept");
+	private static final byte[] RTEPT_END = getBytes("/rtept>");
+	private static final byte[] CDATA_START = getBytes("<![CDATA[");
+	private static final byte[] CDATA_END = getBytes("]]>");
 
 
 	/**
@@ -43,21 +47,34 @@ public class GpxSlicer
 	 */
 	public void slice(InputStream inStream)
 	{
-		_builder = new StringBuilder(100);
+		_buffer = new byte[1024];
+		_bufferLength = 0;
 		boolean insideTag = false;
 		boolean insideCdata = false;
-		char[] endTag = null;
+		byte[] endTag = null;
 		boolean foundHeader = false;
+		long position = -1L;
+		long tagStart = 0L;
 		int b = 0;
 		try
 		{
 			while ((b = inStream.read()) >= 0)
 			{
+				position++;
 				if (!insideTag && !insideCdata) {
-					if (b == '<') _builder.setLength(0);
+					if (b == '<') {
+						_bufferLength = 0;
+						tagStart = position;
+					}
+				}
+				// copy byte
+				if (_bufferLength == _buffer.length)
+				{
+					byte[] bigger = new byte[_buffer.length * 2];
+					System.arraycopy(_buffer, 0, bigger, 0, _bufferLength);
+					_buffer = bigger;
 				}
-				// copy character
-				_builder.append((char)b);
+				_buffer[_bufferLength++] = (byte) b;
 
 				if (insideCdata) {
 					// Just look for end of cdata block
@@ -93,8 +110,8 @@ public class GpxSlicer
 					{
 						// Look for end of found tag
 						if (foundSequence(endTag)) {
-							_receiver.reportTag(_builder.toString());
-							_builder.setLength(0);
+							_receiver.reportTag(_buffer, _bufferLength, tagStart);
+							_bufferLength = 0;
 							insideTag = false;
 						}
 					}
@@ -107,22 +124,31 @@ public class GpxSlicer
 	}
 
 	/**
-	 * Look for the given character sequence in the last characters read
-	 * @param inChars sequence to look for
+	 * Look for the given byte sequence in the last bytes read
+	 * @param inBytes sequence to look for
 	 * @return true if sequence found
 	 */
-	private boolean foundSequence(char[] inChars)
+	private boolean foundSequence(byte[] inBytes)
 	{
-		final int numChars = inChars.length;
-		final int bufflen = _builder.length();
-		if (bufflen < numChars) {return false;}
-		for (int i=0; i<numChars; i++)
+		final int numBytes = inBytes.length;
+		if (_bufferLength < numBytes) {return false;}
+		for (int i=0; i<numBytes; i++)
 		{
-			char searchChar = inChars[numChars - 1 - i];
-			char sourceChar = _builder.charAt(bufflen - 1 - i);
-			if (searchChar != sourceChar) {return false;}
-			//if (Character.toLowerCase(searchChar) != Character.toLowerCase(sourceChar)) {return false;}
+			if (inBytes[numBytes - 1 - i] != _buffer[_bufferLength - 1 - i]) {return false;}
 		}
 		return true;
 	}
+
+	/**
+	 * @param inString ascii string
+	 * @return bytes of the string
+	 */
+	private static byte[] getBytes(String inString)
+	{
+		byte[] bytes = new byte[inString.length()];
+		for (int i=0; i<bytes.length; i++) {
+			bytes[i] = (byte) inString.charAt(i);
+		}
+		return bytes;
+	}
 }
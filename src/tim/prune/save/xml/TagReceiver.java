@@ -1,14 +1,16 @@
 package tim.prune.save.xml;
 
 /**
- * Interface for receivers of tag strings
+ * Interface for receivers of tag positions
  * used for reading tags from xml and reporting them back to a listener
  */
 public interface TagReceiver
 {
 	/**
-	 * Method to give a tag string to a listener
-	 * @param inTag xml tag
+	 * Method to give the position and bytes of a tag to a listener
+	 * @param inBytes buffer holding the raw bytes of the xml tag, only valid during this call
+	 * @param inLength number of bytes in the tag
+	 * @param inOffset byte offset of the start of the tag in the source stream
 	 */
-	public void reportTag(String inTag);
+	public void reportTag(byte[] inBytes, int inLength, long inOffset);
 }
@@ -103,5 +103,6 @@ public class UndoConvertNamesToTimes implements UndoOperation
 				}
 			}
 		}
+		track.requestRescale();
 	}
 }
@@ -86,6 +86,7 @@ public class UndoDeleteFieldValues implements UndoOperation
 		for (int i=_startIndex; i<= _endIndex; i++) {
 			track.getPoint(i).setFieldValue(_field, null, false);
 		}
+		track.requestRescale();
 		((PruneApp) app).getTrackInfo().getSelection().markInvalid();
 		UpdateMessageBroker.informSubscribers(DataSubscriber.DATA_EDITED);
 		UpdateMessageBroker.informSubscribers(I18nManager.getText("confirm.deletefieldvalues"));
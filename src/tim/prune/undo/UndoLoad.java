@@ -26,6 +26,8 @@ public class UndoLoad implements UndoOperation
 	private FileInfo _oldFileInfo = null;
 	private Track _loadedTrack;
 	private SourceInfo _sourceInfo;
+	private FileInfo _loadedFileInfo = null;
+	private String _loadedName = null;
 
 
 	/**
@@ -65,6 +67,22 @@ public class UndoLoad implements UndoOperation
 	}
 
 
+	/**
+	 * Constructor for loading a session, which brings its own sources
+	 * @param inLoadedTrack track restored from session
+	 * @param inLoadedFileInfo sources restored from session
+	 * @param inName name of session file
+	 * @param inOldTrackInfo track info being replaced
+	 */
+	public UndoLoad(Track inLoadedTrack, FileInfo inLoadedFileInfo, String inName,
+			TrackInfo inOldTrackInfo)
+	{
+		this(inLoadedTrack, (SourceInfo) null, inOldTrackInfo, inLoadedTrack.getNumPoints(), LOAD);
+		_loadedFileInfo = inLoadedFileInfo;
+		_loadedName = inName;
+	}
+
+
 	/**
 	 * @return description of operation including number of points loaded
 	 */
@@ -115,6 +133,15 @@ public class UndoLoad implements UndoOperation
 	public void performRedo(App app) throws UndoException {
 		TrackInfo trackInfo = ((PruneApp) app).getTrackInfo();
 		Track track = trackInfo.getTrack();
+		if (_loadedFileInfo != null) {
+			trackInfo.getSelection().clearAll();
+			track.load(_loadedTrack);
+			trackInfo.setFileInfo(_loadedFileInfo.clone());
+			UpdateMessageBroker.informSubscribers();
+			UpdateMessageBroker.informSubscribers(I18nManager.getText("confirm.loadfile")
+				+ " '" + _loadedName + "'");
+			return;
+		}
 		if (_operation == APPEND) {
 			track.combine(_loadedTrack);
 			// set source information
@@ -82,6 +82,7 @@ public class UndoLookupSrtm implements UndoOperation
 				}
 			}
 		}
+		inTrackInfo.getTrack().requestRescale();
 		UpdateMessageBroker.informSubscribers();
 	}
 
@@ -105,6 +106,7 @@ public class UndoLookupSrtm implements UndoOperation
 				}
 			}
 		}
+		((PruneApp) app).getTrackInfo().getTrack().requestRescale();
 		((PruneApp) app).completeFunction(null, I18nManager.getText("confirm.lookupsrtm1") + " " + numAltitudesFound
 				+ " " + I18nManager.getText("confirm.lookupsrtm2"));
 		UpdateMessageBroker.informSubscribers();